@@ -0,0 +1,28 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common;
+
+import javax.xml.ws.WebServiceException;
+
+/**
+ * Thrown instead of making a call when the daily call budget of the
+ * application is used up
+ *
+ * @version 1.0
+ *
+ */
+public class CallBudgetExceededException extends WebServiceException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CallBudgetExceededException(String message) {
+		super(message);
+	}
+}
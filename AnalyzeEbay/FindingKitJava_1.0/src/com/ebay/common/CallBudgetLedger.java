@@ -0,0 +1,176 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Count of the calls made today against a daily call budget.
+ *
+ * eBay call limits reset at midnight Pacific time, so that is when the count
+ * starts again. The count is saved to a file every few calls (and by save) as
+ * a single "yyyy-MM-dd&lt;tab&gt;calls" line, so runs on the same day share the
+ * budget. Without a file the count is only kept in memory.
+ *
+ * @version 1.0
+ *
+ */
+public class CallBudgetLedger {
+
+	private static final Logger logger = Logger.getLogger(CallBudgetLedger.class);
+
+	private static final TimeZone QUOTA_TIME_ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+	private static final int SAVE_EVERY = 16;
+
+	private final File file;
+	private final int dailyBudget;
+	private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+	private String day;
+	private int calls;
+	private int unsaved;
+
+	/**
+	 * Create a ledger, loading today's count from the file if there is one
+	 *
+	 * @param file, file the count is saved to, null to keep it in memory only
+	 * @param dailyBudget, most calls a day, 0 for no budget
+	 */
+	public CallBudgetLedger(File file, int dailyBudget) {
+		this.file = file;
+		this.dailyBudget = dailyBudget;
+		dayFormat.setTimeZone(QUOTA_TIME_ZONE);
+		day = today();
+		if (file != null && file.exists()) {
+			load();
+		}
+	}
+
+	/**
+	 * Count a call if the budget of today allows it
+	 *
+	 * @return true if the call was counted, false if the budget is used up
+	 */
+	public synchronized boolean tryRecordCall() {
+		rollDay();
+		if (dailyBudget > 0 && calls >= dailyBudget) {
+			return false;
+		}
+		calls++;
+		if (++unsaved >= SAVE_EVERY) {
+			save();
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of calls counted today
+	 */
+	public synchronized int getCallsToday() {
+		rollDay();
+		return calls;
+	}
+
+	/**
+	 * @return most calls a day, 0 for no budget
+	 */
+	public int getDailyBudget() {
+		return dailyBudget;
+	}
+
+	/**
+	 * @return calls left today, Integer.MAX_VALUE if there is no budget
+	 */
+	public synchronized int getRemaining() {
+		rollDay();
+		return dailyBudget > 0 ? Math.max(0, dailyBudget - calls) : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Save the count to the file, replacing it as a whole so a crash leaves
+	 * either the old or the new count
+	 */
+	public synchronized void save() {
+		unsaved = 0;
+		if (file == null) {
+			return;
+		}
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+			try {
+				writer.write(day + "\t" + calls + "\n");
+			} finally {
+				writer.close();
+			}
+			if (!temp.renameTo(file)) {
+				// renameTo doesn't replace an existing file on every platform
+				file.delete();
+				if (!temp.renameTo(file)) {
+					throw new IOException("can not rename " + temp + " to " + file);
+				}
+			}
+		} catch (IOException e) {
+			logger.error("fail to save call budget ledger " + file, e);
+		}
+	}
+
+	// load the saved count, it only counts if it was saved today
+	private void load() {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			try {
+				String line = reader.readLine();
+				if (line != null) {
+					String[] fields = line.trim().split("\t");
+					if (fields.length == 2 && fields[0].equals(day)) {
+						calls = Integer.parseInt(fields[1]);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			logger.error("fail to load call budget ledger " + file, e);
+		} catch (NumberFormatException e) {
+			logger.error("invalid call budget ledger " + file, e);
+		}
+	}
+
+	// start a new count when the day changes
+	private void rollDay() {
+		String today = today();
+		if (!today.equals(day)) {
+			day = today;
+			calls = 0;
+			save();
+		}
+	}
+
+	private String today() {
+		return dayFormat.format(new Date());
+	}
+}
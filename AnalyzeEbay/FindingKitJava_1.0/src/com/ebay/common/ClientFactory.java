@@ -39,7 +39,9 @@ public class ClientFactory {
 	private static final Logger logger = Logger.getLogger(ClientFactory.class);
 	
 	/**
-	 *  A static fractory method to get eBay SOA service client proxy instance
+	 *  A static fractory method to get eBay SOA service client proxy instance.
+	 *  A new proxy is returned for every call, see ServiceClientPool for
+	 *  proxies reused per thread.
 	 * 
 	 * @param <I> service endpoint interface generic
 	 * @param <C> service client generic
@@ -55,30 +57,36 @@ public class ClientFactory {
 			ClientConfig clientConfig, String servcieTrackingName) {
 		
 		// Get namespace and service name from annotation on the service client
-		String targetNamespace = serviceClient.getAnnotation(WebServiceClient.class).targetNamespace();
+		final String targetNamespace = serviceClient.getAnnotation(WebServiceClient.class).targetNamespace();
 		String serviceName = serviceClient.getAnnotation(WebServiceClient.class).name();
-		QName serviceQName = new QName(targetNamespace, serviceName);
+		final QName serviceQName = new QName(targetNamespace, serviceName);
 		
 		// wsdl is in the same package as the service client
 		String wsdlLocation = serviceClient.getAnnotation(WebServiceClient.class).wsdlLocation();
-	    URL wsdlUrl = serviceClient.getResource(wsdlLocation);
+	    final URL wsdlUrl = serviceClient.getResource(wsdlLocation);
 	    
 	    if (wsdlUrl == null) {
 	    	logger.error("Can not find wsdl on specified location: " + wsdlLocation);
 	    	throw new RuntimeException("can not find wsdl on specified location: " + wsdlLocation);
 	    }
 	    
-	    logger.debug("begin to create service instance ... ");
-	    logger.debug("wsdl : " + wsdlUrl.toString());
-	    logger.debug("service : " + serviceQName.toString());
-	    
 	    // Service objects provide the client view of a Web service.
-	    // can be used to create proxy for a target service endpoint
-	    Service service = Service.create(wsdlUrl, serviceQName);
-	    
-	    // enable handlers on the service, for logging, http header setting, etc...
-	    HandlerResolver hr = new ServiceHandlerResolver();
-	    service.setHandlerResolver(hr);
+	    // can be used to create proxy for a target service endpoint.
+	    // Creating one parses the wsdl, so it is created once and shared by all ports.
+	    Service service = ServiceClientPool.getService(serviceClient, new ServiceClientPool.ServiceCreator() {
+	    	public Service create() {
+	    	    logger.debug("begin to create service instance ... ");
+	    	    logger.debug("wsdl : " + wsdlUrl.toString());
+	    	    logger.debug("service : " + serviceQName.toString());
+	    	    
+	    	    Service service = Service.create(wsdlUrl, serviceQName);
+	    	    
+	    	    // enable handlers on the service, for logging, http header setting, etc...
+	    	    HandlerResolver hr = new ServiceHandlerResolver();
+	    	    service.setHandlerResolver(hr);
+	    	    return service;
+	    	}
+	    });
 	    
 	    // get service endpoint name
         QName serviceEndpiontQName = null;
@@ -89,10 +97,12 @@ public class ClientFactory {
         
         I port = null;
         // get proxy for a target service endpoint
-        if (serviceEndpiontQName != null) {
-        	port = service.getPort(serviceEndpiontQName, serviceEndpointInterface);
-        } else {
-        	port = service.getPort(serviceEndpointInterface);
+        synchronized (service) {
+	        if (serviceEndpiontQName != null) {
+	        	port = service.getPort(serviceEndpiontQName, serviceEndpointInterface);
+	        } else {
+	        	port = service.getPort(serviceEndpointInterface);
+	        }
         }
         
         // set http headers required by eBay SOA service
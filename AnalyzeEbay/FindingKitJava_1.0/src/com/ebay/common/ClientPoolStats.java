@@ -0,0 +1,76 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common;
+
+/**
+ * Snapshot of the statistics of the ServiceClientPool
+ *
+ * @version 1.0
+ */
+public class ClientPoolStats {
+
+	private final long hits;
+	private final long misses;
+	private final long portCreationNanos;
+	private final long serviceCreations;
+	private final long serviceCreationNanos;
+
+	ClientPoolStats(long hits, long misses, long portCreationNanos,
+			long serviceCreations, long serviceCreationNanos) {
+		this.hits = hits;
+		this.misses = misses;
+		this.portCreationNanos = portCreationNanos;
+		this.serviceCreations = serviceCreations;
+		this.serviceCreationNanos = serviceCreationNanos;
+	}
+
+	/**
+	 * @return number of requests served by an already created port
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of requests that had to create a new port
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return total time spent creating ports, in milliseconds
+	 */
+	public long getPortCreationMillis() {
+		return portCreationNanos / 1000000L;
+	}
+
+	/**
+	 * @return number of Service instances created, i.e. wsdl parses
+	 */
+	public long getServiceCreations() {
+		return serviceCreations;
+	}
+
+	/**
+	 * @return total time spent creating Service instances, in milliseconds
+	 */
+	public long getServiceCreationMillis() {
+		return serviceCreationNanos / 1000000L;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + hits + ", misses=" + misses
+			+ ", portCreationMillis=" + getPortCreationMillis()
+			+ ", serviceCreations=" + serviceCreations
+			+ ", serviceCreationMillis=" + getServiceCreationMillis();
+	}
+}
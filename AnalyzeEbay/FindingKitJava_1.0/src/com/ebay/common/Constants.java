@@ -21,6 +21,13 @@ public interface Constants {
     
 	//used in jax-ws handlers
     public static final String HANDLER_CLIENT_CONFIG = "client_config";
+    
+    //request context property with the Integer priority of a call, see RateLimiter
+    public static final String CALL_PRIORITY = "com.ebay.common.callPriority";
+    
+    //request context property, Boolean.TRUE when the caller tells the RateLimiter whether each response was
+    //throttled, so RateLimitHandler doesn't read the body of the responses, see RateLimitHandler
+    public static final String RATE_LIMIT_REPORTED_BY_CALLER = "com.ebay.common.rateLimitReportedByCaller";
 	
     //for http headers
     public static final String HTTP_READ_TIMEOUT = "com.sun.xml.ws.request.timeout";
@@ -0,0 +1,271 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.ebay.services.client.ClientConfig;
+
+/**
+ * Token bucket that schedules the calls of an application id.
+ *
+ * Tokens are added at callsPerSecond up to burst, and a call takes one. Calls
+ * waiting for a token are served highest priority first, then in arrival
+ * order. Every call is counted in a CallBudgetLedger, and once the daily
+ * budget is used up calls fail with CallBudgetExceededException.
+ *
+ * When a response carries a throttling error the limiter backs off: calls are
+ * paused (1 second, doubling on each further throttle up to 5 minutes) and the
+ * rate is halved. Each call that isn't throttled resets the pause and gives
+ * back a tenth of the configured rate. With callsPerSecond 0 there is no
+ * steady rate, only the pauses.
+ *
+ * There is one limiter per application id, shared by every client built by
+ * ClientFactory (see RateLimitHandler).
+ *
+ * @version 1.0
+ *
+ */
+public class RateLimiter {
+
+	private static final Logger logger = Logger.getLogger(RateLimiter.class);
+
+	/**
+	 * Priority of calls that don't set one
+	 */
+	public static final int DEFAULT_PRIORITY = 5;
+
+	private static final long INITIAL_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final long MAX_BACKOFF_NANOS = TimeUnit.MINUTES.toNanos(5);
+	private static final double MIN_RATE_FRACTION = 1.0 / 64;
+	private static final double RECOVERY_FRACTION = 0.1;
+
+	private static final Map<String, RateLimiter> limiters = new HashMap<String, RateLimiter>();
+
+	private final double baseRate;
+	private final double burst;
+	private final CallBudgetLedger ledger;
+
+	private final PriorityQueue<Waiter> waiters = new PriorityQueue<Waiter>();
+	private long sequence;
+
+	private double rate;
+	private double tokens;
+	private long lastRefillNanos;
+	private long pausedUntilNanos;
+	private long backoffNanos = INITIAL_BACKOFF_NANOS;
+
+	private long calls;
+	private long throttles;
+	private long waitNanos;
+
+	/**
+	 * Create a limiter
+	 *
+	 * @param callsPerSecond, steady call rate, 0 for no steady rate
+	 * @param burst, most calls made at once after being idle
+	 * @param ledger, ledger the calls are counted in
+	 */
+	public RateLimiter(double callsPerSecond, int burst, CallBudgetLedger ledger) {
+		this.baseRate = callsPerSecond;
+		this.burst = Math.max(1, burst);
+		this.ledger = ledger;
+		this.rate = callsPerSecond;
+		this.tokens = this.burst;
+		this.lastRefillNanos = System.nanoTime();
+		this.pausedUntilNanos = lastRefillNanos;
+	}
+
+	/**
+	 * Get the limiter of the application id of a config, creating it from the
+	 * config's settings if this is the first call for the application id
+	 *
+	 * @param config, client-side configuration object
+	 * @return the limiter
+	 */
+	public static synchronized RateLimiter forApplication(ClientConfig config) {
+		String applicationId = config.getApplicationId() == null ? "" : config.getApplicationId();
+		RateLimiter limiter = limiters.get(applicationId);
+		if (limiter == null) {
+			String ledgerFile = config.getCallBudgetLedgerFile();
+			final CallBudgetLedger ledger = new CallBudgetLedger(
+					ledgerFile == null ? null : new File(ledgerFile), config.getDailyCallBudget());
+			limiter = new RateLimiter(config.getRateLimitCallsPerSecond(), config.getRateLimitBurst(), ledger);
+			limiters.put(applicationId, limiter);
+
+			// the ledger is saved every few calls, save the last ones on exit
+			Runtime.getRuntime().addShutdownHook(new Thread("call-budget-ledger") {
+				@Override
+				public void run() {
+					ledger.save();
+				}
+			});
+		}
+		return limiter;
+	}
+
+	/**
+	 * Wait for the turn of a call
+	 *
+	 * @param priority, priority of the call, higher is served first
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 * @throws CallBudgetExceededException if the daily call budget is used up
+	 */
+	public void acquire(int priority) throws InterruptedException {
+		long start = System.nanoTime();
+		synchronized (this) {
+			Waiter waiter = new Waiter(priority, sequence++);
+			waiters.add(waiter);
+			try {
+				while (true) {
+					long now = System.nanoTime();
+					refill(now);
+
+					long delay;
+					if (waiters.peek() != waiter) {
+						// woken when the waiter ahead leaves
+						delay = 0;
+					} else if (now - pausedUntilNanos < 0) {
+						delay = pausedUntilNanos - now;
+					} else if (rate > 0 && tokens < 1) {
+						delay = (long)((1 - tokens) / rate * 1e9) + 1;
+					} else {
+						if (!ledger.tryRecordCall()) {
+							throw new CallBudgetExceededException("daily call budget of "
+									+ ledger.getDailyBudget() + " calls is used up");
+						}
+						if (rate > 0) {
+							tokens -= 1;
+						}
+						calls++;
+						waitNanos += now - start;
+						return;
+					}
+
+					if (delay == 0) {
+						wait();
+					} else {
+						TimeUnit.NANOSECONDS.timedWait(this, delay);
+					}
+				}
+			} finally {
+				waiters.remove(waiter);
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Back off after a call was throttled. Throttles of calls sent before the
+	 * current pause ended don't extend it.
+	 */
+	public synchronized void onThrottled() {
+		throttles++;
+		long now = System.nanoTime();
+		if (now - pausedUntilNanos < 0) {
+			return;
+		}
+		pausedUntilNanos = now + backoffNanos;
+		logger.warn("call throttled, pausing calls for " + TimeUnit.NANOSECONDS.toMillis(backoffNanos) + "ms");
+		backoffNanos = Math.min(MAX_BACKOFF_NANOS, backoffNanos * 2);
+		if (baseRate > 0) {
+			rate = Math.max(baseRate * MIN_RATE_FRACTION, rate / 2);
+			tokens = Math.min(tokens, 0);
+		}
+	}
+
+	/**
+	 * Recover from backing off after a call that wasn't throttled
+	 */
+	public synchronized void onSuccess() {
+		backoffNanos = INITIAL_BACKOFF_NANOS;
+		if (rate < baseRate) {
+			rate = Math.min(baseRate, rate + baseRate * RECOVERY_FRACTION);
+		}
+	}
+
+	/**
+	 * @return the ledger the calls are counted in
+	 */
+	public CallBudgetLedger getLedger() {
+		return ledger;
+	}
+
+	/**
+	 * @return current call rate per second, 0 if there is no steady rate
+	 */
+	public synchronized double getCurrentRate() {
+		return rate;
+	}
+
+	/**
+	 * @return number of calls let through
+	 */
+	public synchronized long getCalls() {
+		return calls;
+	}
+
+	/**
+	 * @return number of throttled calls reported
+	 */
+	public synchronized long getThrottles() {
+		return throttles;
+	}
+
+	/**
+	 * @return total time calls waited for their turn, in milliseconds
+	 */
+	public synchronized long getWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+	}
+
+	@Override
+	public synchronized String toString() {
+		int budget = ledger.getDailyBudget();
+		return "calls=" + calls + ", callsToday=" + ledger.getCallsToday()
+				+ (budget > 0 ? "/" + budget : "") + ", throttles=" + throttles
+				+ ", waitMillis=" + getWaitMillis() + ", rate=" + rate;
+	}
+
+	// add the tokens earned since the last refill
+	private void refill(long now) {
+		if (rate > 0) {
+			tokens = Math.min(burst, tokens + (now - lastRefillNanos) * rate / 1e9);
+		}
+		lastRefillNanos = now;
+	}
+
+	/**
+	 * A call waiting for its turn, ordered highest priority then earliest first
+	 */
+	private static class Waiter implements Comparable<Waiter> {
+
+		private final int priority;
+		private final long sequence;
+
+		private Waiter(int priority, long sequence) {
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		public int compareTo(Waiter other) {
+			if (priority != other.priority) {
+				return priority > other.priority ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+		}
+	}
+}
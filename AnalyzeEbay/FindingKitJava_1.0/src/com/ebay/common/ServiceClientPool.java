@@ -0,0 +1,186 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlSeeAlso;
+import javax.xml.ws.Service;
+
+import org.apache.log4j.Logger;
+
+import com.ebay.services.client.ClientConfig;
+
+/**
+ * A per JVM pool of eBay SOA service clients.
+ *
+ * The Service (and with it the parsed wsdl and the JAXB context of the port) is
+ * created once per service client class and shared by every port. JAX-WS ports
+ * are not thread safe, so ports are confined to the thread that asked for them
+ * and reused by that thread for the same ClientConfig instance.
+ *
+ * @version 1.0
+ */
+public class ServiceClientPool {
+
+	private static final Logger logger = Logger.getLogger(ServiceClientPool.class);
+
+	private static final ConcurrentMap<Class<?>, Service> services =
+		new ConcurrentHashMap<Class<?>, Service>();
+
+	private static final ConcurrentMap<Class<?>, JAXBContext> jaxbContexts =
+		new ConcurrentHashMap<Class<?>, JAXBContext>();
+
+	// per thread ports, keyed by ClientConfig identity then service endpoint interface
+	private static final ThreadLocal<Map<ClientConfig, Map<Class<?>, Object>>> ports =
+		new ThreadLocal<Map<ClientConfig, Map<Class<?>, Object>>>() {
+			@Override
+			protected Map<ClientConfig, Map<Class<?>, Object>> initialValue() {
+				return new IdentityHashMap<ClientConfig, Map<Class<?>, Object>>();
+			}
+		};
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong portCreationNanos = new AtomicLong();
+	private static final AtomicLong serviceCreations = new AtomicLong();
+	private static final AtomicLong serviceCreationNanos = new AtomicLong();
+
+	private ServiceClientPool() {
+	}
+
+	/**
+	 * Get a service client proxy confined to the calling thread. The same proxy is
+	 * returned to a thread for every call with the same clientConfig instance, it
+	 * must not be handed to other threads.
+	 *
+	 * @param <I> service endpoint interface generic
+	 * @param <C> service client generic
+	 * @param serviceEndpointInterface, service endpoint interface class
+	 * @param serviceClient, service client class
+	 * @param clientConfig, client side configuration
+	 * @param serviceTrackingName, serviceName for usage tracking
+	 * @return instance implementing client endpoint interface
+	 */
+	public static <I, C> I getServiceClient(
+			Class<I> serviceEndpointInterface,
+			Class<C> serviceClient,
+			ClientConfig clientConfig, String serviceTrackingName) {
+
+		Map<ClientConfig, Map<Class<?>, Object>> threadPorts = ports.get();
+		Map<Class<?>, Object> configPorts = threadPorts.get(clientConfig);
+		if (configPorts == null) {
+			configPorts = new HashMap<Class<?>, Object>();
+			threadPorts.put(clientConfig, configPorts);
+		}
+
+		Object port = configPorts.get(serviceEndpointInterface);
+		if (port != null) {
+			hits.incrementAndGet();
+			return serviceEndpointInterface.cast(port);
+		}
+
+		misses.incrementAndGet();
+		long start = System.nanoTime();
+		I newPort = ClientFactory.getServiceClient(serviceEndpointInterface,
+				serviceClient, clientConfig, serviceTrackingName);
+		portCreationNanos.addAndGet(System.nanoTime() - start);
+
+		configPorts.put(serviceEndpointInterface, newPort);
+		return newPort;
+	}
+
+	/**
+	 * Release the calling thread's proxies created for the clientConfig instance.
+	 *
+	 * @param clientConfig, client side configuration
+	 */
+	public static void release(ClientConfig clientConfig) {
+		ports.get().remove(clientConfig);
+	}
+
+	/**
+	 * Get the shared Service of a service client class, creating it on first use.
+	 *
+	 * @param <C> service client generic
+	 * @param serviceClient, service client class
+	 * @param factory, creates the Service if it is not pooled yet
+	 * @return the shared Service
+	 */
+	static <C> Service getService(Class<C> serviceClient, ServiceCreator factory) {
+		Service service = services.get(serviceClient);
+		if (service == null) {
+			synchronized (services) {
+				service = services.get(serviceClient);
+				if (service == null) {
+					long start = System.nanoTime();
+					service = factory.create();
+					serviceCreationNanos.addAndGet(System.nanoTime() - start);
+					serviceCreations.incrementAndGet();
+					services.put(serviceClient, service);
+				}
+			}
+		}
+		return service;
+	}
+
+	/**
+	 * Get the shared JAXB context for the request and response types of a service
+	 * endpoint interface, i.e. the classes listed in its XmlSeeAlso annotation.
+	 *
+	 * @param serviceEndpointInterface, service endpoint interface class
+	 * @return the shared JAXB context
+	 */
+	public static JAXBContext getJAXBContext(Class<?> serviceEndpointInterface) {
+		JAXBContext context = jaxbContexts.get(serviceEndpointInterface);
+		if (context == null) {
+			XmlSeeAlso seeAlso = serviceEndpointInterface.getAnnotation(XmlSeeAlso.class);
+			if (seeAlso == null) {
+				throw new IllegalArgumentException("no XmlSeeAlso annotation on "
+						+ serviceEndpointInterface.getName());
+			}
+			try {
+				context = JAXBContext.newInstance(seeAlso.value());
+			} catch (JAXBException e) {
+				logger.error("fail to create JAXB context for " + serviceEndpointInterface.getName(), e);
+				throw new RuntimeException(e);
+			}
+			JAXBContext existing = jaxbContexts.putIfAbsent(serviceEndpointInterface, context);
+			if (existing != null) {
+				context = existing;
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Get a snapshot of the pool statistics
+	 *
+	 * @return pool statistics
+	 */
+	public static ClientPoolStats getStats() {
+		return new ClientPoolStats(hits.get(), misses.get(), portCreationNanos.get(),
+				serviceCreations.get(), serviceCreationNanos.get());
+	}
+
+	/**
+	 * Creates a Service for the pool
+	 */
+	interface ServiceCreator {
+		Service create();
+	}
+}
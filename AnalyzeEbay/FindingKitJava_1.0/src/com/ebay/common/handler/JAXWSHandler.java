@@ -9,6 +9,7 @@ eBaySDKLicense file that is under the eBay SDK install directory.
 */
 package com.ebay.common.handler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
 import java.util.Collections;
 import java.util.Iterator;
@@ -16,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.xml.namespace.QName;
 import javax.xml.soap.SOAPException;
@@ -23,6 +25,7 @@ import javax.xml.soap.SOAPMessage;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
@@ -45,6 +48,22 @@ import com.ebay.services.client.ClientConfig;
 public class JAXWSHandler implements SOAPHandler<SOAPMessageContext> {
     
 	private static final Logger logger = Logger.getLogger(JAXWSHandler.class);
+	
+	// creating a transformer is expensive and they aren't thread safe, so each thread keeps one
+	private static final ThreadLocal<Transformer> prettyTransformer = new ThreadLocal<Transformer>() {
+		@Override
+		protected Transformer initialValue() {
+			try {
+				TransformerFactory factory = TransformerFactory.newInstance();
+				factory.setAttribute("indent-number", new Integer(2));
+				Transformer transformer = factory.newTransformer();
+				transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+				return transformer;
+			} catch (TransformerConfigurationException e) {
+				throw new IllegalStateException("fail to create XML transformer", e);
+			}
+		}
+	};
     
     @SuppressWarnings("unchecked")
 	public boolean handleMessage(SOAPMessageContext smc) {
@@ -56,11 +75,7 @@ public class JAXWSHandler implements SOAPHandler<SOAPMessageContext> {
         if (request.booleanValue()) {//for request message
         	
         	// log soap request
-        	if (clientConfig.isSoapMessageLoggingEnabled()) {
-	        	String xmlStr = this.getXmlString(smc.getMessage());
-	        	xmlStr = "sending soap request message ...\r\n" + xmlStr;
-	        	logger.info(xmlStr);
-        	}
+        	this.logSoapMessage(smc, clientConfig, "sending soap request message ...");
         	
         	// eBay SOA service need operation name to be set on http header
         	// we extract operation name from soap message and set it on request http header
@@ -96,17 +111,72 @@ public class JAXWSHandler implements SOAPHandler<SOAPMessageContext> {
 				}
 			}
         	
-        	if (clientConfig.isSoapMessageLoggingEnabled()) {
-	        	String xmlStr = this.getXmlString(smc.getMessage());
-	        	xmlStr = "receiving soap response message ...\r\n" + xmlStr;
-	        	logger.info(xmlStr);
-        	}
+        	this.logSoapMessage(smc, clientConfig, "receiving soap response message ...");
         	
         }
    	
         return true;
     }
     
+    // log a soap message the way the client config asks for: pretty printed or raw,
+    // to log4j or streamed to a rotating file
+    private void logSoapMessage(SOAPMessageContext smc, ClientConfig clientConfig, String header) {
+    	if (!this.isLogged(smc, clientConfig)) {
+    		return;
+    	}
+    	
+    	SOAPMessage message = smc.getMessage();
+    	int maxBytes = clientConfig.getSoapMessageLogMaxBytes();
+    	
+    	if (clientConfig.isSoapMessagePrettyPrint()) {
+    		String xmlStr = this.getXmlString(message);
+    		if (xmlStr != null && maxBytes > 0 && xmlStr.length() > maxBytes) {
+    			xmlStr = xmlStr.substring(0, maxBytes) + "\r\n...[truncated " + (xmlStr.length() - maxBytes) + " chars]";
+    		}
+    		logger.info(header + "\r\n" + xmlStr);
+    	} else if (clientConfig.getSoapMessageLogFile() != null) {
+    		SoapMessageLog.getLog(clientConfig.getSoapMessageLogFile(), clientConfig.getSoapMessageLogFileMaxBytes(),
+    				clientConfig.getSoapMessageLogFileCount()).write(header, message, maxBytes);
+    	} else {
+    		try {
+    			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    			SoapMessageLog.LimitedOutputStream limited = new SoapMessageLog.LimitedOutputStream(bytes, maxBytes);
+    			message.writeTo(limited);
+    			String xmlStr = bytes.toString("UTF-8");
+    			if (limited.dropped > 0) {
+    				xmlStr += "\r\n...[truncated " + limited.dropped + " bytes]";
+    			}
+    			logger.info(header + "\r\n" + xmlStr);
+    		} catch (Exception e) {
+    			logger.error("fail to write SOAP message", e);
+    		}
+    	}
+    }
+    
+    // decide whether a soap message is logged, by operation and sample rate
+    private boolean isLogged(SOAPMessageContext smc, ClientConfig clientConfig) {
+    	if (!clientConfig.isSoapMessageLoggingEnabled()) {
+    		return false;
+    	}
+    	// nothing to do when the message would go to log4j and info is off
+    	if ((clientConfig.isSoapMessagePrettyPrint() || clientConfig.getSoapMessageLogFile() == null)
+    			&& !logger.isInfoEnabled()) {
+    		return false;
+    	}
+    	
+    	Set<String> operations = clientConfig.getSoapMessageLogOperations();
+    	if (operations != null) {
+    		// from the message context rather than the body, so the response isn't parsed just to log it
+    		QName operation = (QName)smc.get(MessageContext.WSDL_OPERATION);
+    		if (operation == null || !operations.contains(operation.getLocalPart())) {
+    			return false;
+    		}
+    	}
+    	
+    	double sampleRate = clientConfig.getSoapMessageLogSampleRate();
+    	return sampleRate >= 1.0 || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+    
 	// get xml string from SOAPMessage
     private String getXmlString(SOAPMessage message) {
 
@@ -126,10 +196,7 @@ public class JAXWSHandler implements SOAPHandler<SOAPMessageContext> {
         StreamResult strResult = new StreamResult(new StringWriter());
         
         if(payload != null) {
-            TransformerFactory factory = TransformerFactory.newInstance();
-            factory.setAttribute("indent-number", new Integer(2));
-            Transformer transformer = factory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            Transformer transformer = prettyTransformer.get();
             transformer.transform(payload, strResult);
 
 	    	result = strResult.getWriter().toString();
@@ -155,11 +222,7 @@ public class JAXWSHandler implements SOAPHandler<SOAPMessageContext> {
     	//get clientConfig from SOAPMessageContext
     	ClientConfig clientConfig = (ClientConfig)smc.get(Constants.HANDLER_CLIENT_CONFIG);
 
-    	if (clientConfig.isSoapMessageLoggingEnabled()) {
-        	String xmlStr = this.getXmlString(smc.getMessage());
-        	xmlStr = "receiving soap fault message ...\r\n" + xmlStr;
-        	logger.info(xmlStr);
-    	}
+    	this.logSoapMessage(smc, clientConfig, "receiving soap fault message ...");
 		
 		return true;
 		
@@ -0,0 +1,166 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common.handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.ws.handler.MessageContext;
+import javax.xml.ws.handler.soap.SOAPHandler;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+
+import org.apache.log4j.Logger;
+
+import com.ebay.common.Constants;
+import com.ebay.common.metrics.ServiceMetrics;
+import com.ebay.services.client.ClientConfig;
+
+/**
+ * Jax-ws handler that records the latency and byte counts of every call in
+ * ServiceMetrics.
+ *
+ * It is the last handler of the chain, so the latency covers the http
+ * exchange and not the other handlers. The response wire size is taken from
+ * the Content-Length header (the compressed size when gzip is used). The
+ * request size isn't known to a handler, and counting it or the uncompressed
+ * response payload serializes the message again, so both are only counted
+ * when ClientConfig.metricsPayloadBytesEnabled is set.
+ *
+ * @version 1.0
+ *
+ */
+public class MetricsHandler implements SOAPHandler<SOAPMessageContext> {
+
+	private static final Logger logger = Logger.getLogger(MetricsHandler.class);
+
+	private static final String START_NANOS = "com.ebay.common.metrics.startNanos";
+	private static final String REQUEST_BYTES = "com.ebay.common.metrics.requestBytes";
+	private static final String UNKNOWN_OPERATION = "unknown";
+
+	public boolean handleMessage(SOAPMessageContext smc) {
+		ClientConfig clientConfig = (ClientConfig)smc.get(Constants.HANDLER_CLIENT_CONFIG);
+		if (clientConfig == null || !clientConfig.isMetricsEnabled()) {
+			return true;
+		}
+
+		Boolean request = (Boolean)smc.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY);
+		if (request.booleanValue()) {
+			if (clientConfig.isMetricsPayloadBytesEnabled()) {
+				smc.put(REQUEST_BYTES, Long.valueOf(countBytes(smc.getMessage())));
+				smc.setScope(REQUEST_BYTES, MessageContext.Scope.HANDLER);
+			}
+			// last thing before the request is sent
+			smc.put(START_NANOS, Long.valueOf(System.nanoTime()));
+			smc.setScope(START_NANOS, MessageContext.Scope.HANDLER);
+		} else {
+			record(smc, clientConfig, false);
+		}
+		return true;
+	}
+
+	public boolean handleFault(SOAPMessageContext smc) {
+		ClientConfig clientConfig = (ClientConfig)smc.get(Constants.HANDLER_CLIENT_CONFIG);
+		if (clientConfig != null && clientConfig.isMetricsEnabled()) {
+			record(smc, clientConfig, true);
+		}
+		return true;
+	}
+
+	public void close(MessageContext mc) {
+	}
+
+	public Set<QName> getHeaders() {
+		return null;
+	}
+
+	// record a response or fault against the request it answers
+	private void record(SOAPMessageContext smc, ClientConfig clientConfig, boolean fault) {
+		long endNanos = System.nanoTime();
+
+		Long startNanos = (Long)smc.get(START_NANOS);
+		if (startNanos == null) {
+			logger.debug("no request start time in the message context, call not recorded");
+			return;
+		}
+		Long requestBytes = (Long)smc.get(REQUEST_BYTES);
+
+		long payloadBytes = -1;
+		if (clientConfig.isMetricsPayloadBytesEnabled()) {
+			payloadBytes = countBytes(smc.getMessage());
+		}
+
+		ServiceMetrics.forOperation(getOperationName(smc)).recordCall(startNanos.longValue(), endNanos,
+				requestBytes == null ? -1 : requestBytes.longValue(), getContentLength(smc), payloadBytes, fault);
+	}
+
+	// get the operation name from the message context
+	static String getOperationName(MessageContext mc) {
+		QName operation = (QName)mc.get(MessageContext.WSDL_OPERATION);
+		return operation == null ? UNKNOWN_OPERATION : operation.getLocalPart();
+	}
+
+	// get the Content-Length of the http response, -1 if it isn't there
+	@SuppressWarnings("unchecked")
+	private static long getContentLength(MessageContext mc) {
+		Map<String, List<String>> headers = (Map<String, List<String>>)mc.get(MessageContext.HTTP_RESPONSE_HEADERS);
+		if (headers == null) {
+			return -1;
+		}
+		for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+			if ("Content-Length".equalsIgnoreCase(entry.getKey())
+					&& entry.getValue() != null && !entry.getValue().isEmpty()) {
+				try {
+					return Long.parseLong(entry.getValue().get(0).trim());
+				} catch (NumberFormatException e) {
+					return -1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	// size of a serialized soap message, -1 if it can't be serialized
+	private static long countBytes(SOAPMessage message) {
+		CountingOutputStream counter = new CountingOutputStream();
+		try {
+			message.writeTo(counter);
+			return counter.count;
+		} catch (SOAPException e) {
+			logger.debug("fail to count soap message bytes", e);
+		} catch (IOException e) {
+			logger.debug("fail to count soap message bytes", e);
+		}
+		return -1;
+	}
+
+	/**
+	 * Output stream that only counts the bytes written to it
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
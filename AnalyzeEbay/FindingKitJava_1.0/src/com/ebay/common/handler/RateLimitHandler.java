@@ -0,0 +1,160 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common.handler;
+
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.Node;
+import javax.xml.soap.SOAPBody;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPFault;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.handler.MessageContext;
+import javax.xml.ws.handler.soap.SOAPHandler;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+
+import org.apache.log4j.Logger;
+import org.w3c.dom.NodeList;
+
+import com.ebay.common.Constants;
+import com.ebay.common.RateLimiter;
+import com.ebay.services.client.ClientConfig;
+
+/**
+ * Jax-ws handler that schedules every call through the RateLimiter of the
+ * application id.
+ *
+ * A request waits for its turn before it is sent, with the priority set in
+ * the request context under Constants.CALL_PRIORITY (RateLimiter.DEFAULT_PRIORITY
+ * if not set). A response or fault carrying one of the throttling error ids of
+ * the ClientConfig makes the limiter back off, any other response lets it recover.
+ *
+ * Looking for the error ids of a response means reading its body into a SAAJ
+ * tree, on top of the unmarshalling the client does anyway. A caller that
+ * reads the errors of the response itself sets Constants.RATE_LIMIT_REPORTED_BY_CALLER
+ * in the request context and calls RateLimiter.onThrottled or onSuccess, and
+ * then only faults are read here.
+ *
+ * @version 1.0
+ *
+ */
+public class RateLimitHandler implements SOAPHandler<SOAPMessageContext> {
+
+	private static final Logger logger = Logger.getLogger(RateLimitHandler.class);
+
+	private static final String ERROR_MESSAGE = "errorMessage";
+	private static final String ERROR = "error";
+	private static final String ERROR_ID = "errorId";
+
+	public boolean handleMessage(SOAPMessageContext smc) {
+		ClientConfig clientConfig = (ClientConfig)smc.get(Constants.HANDLER_CLIENT_CONFIG);
+		if (clientConfig == null || !clientConfig.isRateLimitEnabled()) {
+			return true;
+		}
+
+		RateLimiter limiter = RateLimiter.forApplication(clientConfig);
+		Boolean request = (Boolean)smc.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY);
+		if (request.booleanValue()) {
+			Integer priority = (Integer)smc.get(Constants.CALL_PRIORITY);
+			try {
+				limiter.acquire(priority == null ? RateLimiter.DEFAULT_PRIORITY : priority.intValue());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new WebServiceException("interrupted while waiting for the rate limiter", e);
+			}
+		} else if (Boolean.TRUE.equals(smc.get(Constants.RATE_LIMIT_REPORTED_BY_CALLER))) {
+			return true;
+		} else if (isThrottled(smc, clientConfig.getThrottlingErrorIds())) {
+			limiter.onThrottled();
+		} else {
+			limiter.onSuccess();
+		}
+		return true;
+	}
+
+	public boolean handleFault(SOAPMessageContext smc) {
+		ClientConfig clientConfig = (ClientConfig)smc.get(Constants.HANDLER_CLIENT_CONFIG);
+		if (clientConfig != null && clientConfig.isRateLimitEnabled()
+				&& isThrottled(smc, clientConfig.getThrottlingErrorIds())) {
+			RateLimiter.forApplication(clientConfig).onThrottled();
+		}
+		return true;
+	}
+
+	public void close(MessageContext mc) {
+	}
+
+	public Set<QName> getHeaders() {
+		return null;
+	}
+
+	// look for a throttling error id in the errorMessage of a response or the detail of a fault
+	private static boolean isThrottled(SOAPMessageContext smc, Set<String> throttlingErrorIds) {
+		if (throttlingErrorIds == null || throttlingErrorIds.isEmpty()) {
+			return false;
+		}
+		try {
+			SOAPBody body = smc.getMessage().getSOAPBody();
+			if (body == null) {
+				return false;
+			}
+
+			SOAPFault fault = body.getFault();
+			if (fault != null) {
+				NodeList errorIds = fault.getElementsByTagNameNS("*", ERROR_ID);
+				for (int i = 0; i < errorIds.getLength(); i++) {
+					if (throttlingErrorIds.contains(errorIds.item(i).getTextContent().trim())) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			// errorMessage is a direct child of the response, so the search result isn't walked
+			SOAPElement response = firstChildElement(body, null);
+			if (response == null) {
+				return false;
+			}
+			for (Iterator<?> children = response.getChildElements(); children.hasNext();) {
+				Object child = children.next();
+				if (!(child instanceof SOAPElement) || !ERROR_MESSAGE.equals(((SOAPElement)child).getLocalName())) {
+					continue;
+				}
+				for (Iterator<?> errors = ((SOAPElement)child).getChildElements(); errors.hasNext();) {
+					Object error = errors.next();
+					if (error instanceof SOAPElement && ERROR.equals(((SOAPElement)error).getLocalName())) {
+						SOAPElement errorId = firstChildElement((SOAPElement)error, ERROR_ID);
+						if (errorId != null && throttlingErrorIds.contains(errorId.getValue() == null
+								? "" : errorId.getValue().trim())) {
+							return true;
+						}
+					}
+				}
+			}
+		} catch (SOAPException e) {
+			logger.debug("fail to read error ids of the response", e);
+		}
+		return false;
+	}
+
+	// first child element with a local name, or the first child element if name is null
+	private static SOAPElement firstChildElement(SOAPElement parent, String name) {
+		for (Iterator<?> children = parent.getChildElements(); children.hasNext();) {
+			Object child = children.next();
+			if (child instanceof SOAPElement && (name == null || name.equals(((Node)child).getLocalName()))) {
+				return (SOAPElement)child;
+			}
+		}
+		return null;
+	}
+}
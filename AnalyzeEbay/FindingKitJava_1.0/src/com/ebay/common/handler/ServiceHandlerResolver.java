@@ -32,6 +32,12 @@ public class ServiceHandlerResolver implements HandlerResolver {
 		//add handler for logging, header setting
 		JAXWSHandler handler = new JAXWSHandler();
 		handlerChain.add(handler);
+
+		//add handler for rate limiting, before metrics so waiting for a turn isn't counted as latency
+		handlerChain.add(new RateLimitHandler());
+
+		//add handler for call metrics, last so its latency is closest to the http exchange
+		handlerChain.add(new MetricsHandler());
 		
 		return handlerChain;
 	}
@@ -0,0 +1,339 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common.handler;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Rotating log file that soap messages are streamed to as raw bytes.
+ *
+ * SOAPMessage.writeTo writes the payload into a byte array on the calling
+ * thread, so no string or DOM transformation of the message is made and
+ * threads logging at once don't wait for each other. The bytes are queued to
+ * a single writer thread per file, which appends them through a 64KB buffer
+ * and flushes it when it fills, when no message has come for a second or a
+ * second after the last flush, and when the log is closed. Callers only wait
+ * when the writer is a full queue of messages behind.
+ *
+ * When the file reaches its size limit it is renamed to file.1 (file.1 to
+ * file.2 and so on, the oldest is deleted) and a new file is started. There
+ * is one log per file path, shared by every handler; the logs still open
+ * are closed when the JVM shuts down.
+ *
+ * @version 1.0
+ *
+ */
+public class SoapMessageLog implements Closeable {
+
+	private static final Logger logger = Logger.getLogger(SoapMessageLog.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int QUEUE_CAPACITY = 1024;
+	private static final long FLUSH_MILLIS = 1000;
+
+	// queued by close, the writer stops once it takes it
+	private static final byte[] CLOSE = new byte[0];
+
+	private static final Map<String, SoapMessageLog> logs = new HashMap<String, SoapMessageLog>();
+	private static boolean shutdownHookAdded = false;
+
+	private final File file;
+	private final String path;
+	private final long maxBytes;
+	private final int fileCount;
+
+	private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_CAPACITY);
+	private final Thread writer;
+	private volatile boolean closed = false;
+
+	// only used by the writer thread
+	private OutputStream out;
+	private long size;
+
+	private SoapMessageLog(String path, long maxBytes, int fileCount) {
+		this.file = new File(path);
+		this.path = path;
+		this.maxBytes = maxBytes;
+		this.fileCount = fileCount;
+
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeQueued();
+			}
+		}, "SoapMessageLog " + file.getName());
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Get the log of a file path, the rotation settings of the first call for
+	 * a path are used.
+	 *
+	 * @param path, path of the log file
+	 * @param maxBytes, size the file is rotated at
+	 * @param fileCount, number of rotated files kept
+	 * @return the log
+	 */
+	public static synchronized SoapMessageLog getLog(String path, long maxBytes, int fileCount) {
+		SoapMessageLog log = logs.get(path);
+		if (log == null) {
+			log = new SoapMessageLog(path, maxBytes, fileCount);
+			logs.put(path, log);
+			if (!shutdownHookAdded) {
+				Runtime.getRuntime().addShutdownHook(new Thread("SoapMessageLog shutdown") {
+					@Override
+					public void run() {
+						closeAll();
+					}
+				});
+				shutdownHookAdded = true;
+			}
+		}
+		return log;
+	}
+
+	/**
+	 * Close every log that is open, writing out the messages queued to them
+	 */
+	public static void closeAll() {
+		List<SoapMessageLog> open;
+		synchronized (SoapMessageLog.class) {
+			open = new ArrayList<SoapMessageLog>(logs.values());
+		}
+		for (SoapMessageLog log : open) {
+			log.close();
+		}
+	}
+
+	/**
+	 * Stream a soap message to the log
+	 *
+	 * @param header, line written before the message
+	 * @param message, the soap message
+	 * @param maxMessageBytes, most bytes of the message written, 0 for no limit
+	 */
+	public void write(String header, SOAPMessage message, int maxMessageBytes) {
+		byte[] record;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			bytes.write((header + "\r\n").getBytes(UTF_8));
+			LimitedOutputStream limited = new LimitedOutputStream(bytes, maxMessageBytes);
+			message.writeTo(limited);
+			String trailer = limited.dropped > 0
+					? "\r\n...[truncated " + limited.dropped + " bytes]\r\n\r\n" : "\r\n\r\n";
+			bytes.write(trailer.getBytes(UTF_8));
+			record = bytes.toByteArray();
+		} catch (IOException e) {
+			logger.error("fail to write soap message to " + file, e);
+			return;
+		} catch (SOAPException e) {
+			logger.error("fail to write soap message to " + file, e);
+			return;
+		}
+
+		if (closed) {
+			logger.warn("soap message log " + file + " is closed, message dropped");
+			return;
+		}
+		try {
+			queue.put(record);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Write out the messages queued so far and close the file. Messages
+	 * written after the log is closed are dropped; the next getLog of the path
+	 * opens a new log.
+	 */
+	public void close() {
+		synchronized (SoapMessageLog.class) {
+			if (logs.get(path) == this) {
+				logs.remove(path);
+			}
+		}
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			queue.put(CLOSE);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// writer thread loop, appends the queued messages to the file until the log is closed
+	private void writeQueued() {
+		long lastFlush = System.currentTimeMillis();
+		boolean unflushed = false;
+		while (true) {
+			byte[] record;
+			try {
+				record = queue.poll(FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				record = CLOSE;
+			}
+
+			try {
+				if (record == CLOSE) {
+					if (out != null) {
+						out.close();
+						out = null;
+					}
+					return;
+				}
+
+				if (record != null) {
+					if (out == null) {
+						open();
+					}
+					out.write(record);
+					size += record.length;
+					unflushed = true;
+					if (size >= maxBytes) {
+						// closing the file flushes it
+						rotate();
+						unflushed = false;
+						lastFlush = System.currentTimeMillis();
+						continue;
+					}
+				}
+
+				long now = System.currentTimeMillis();
+				if (unflushed && (record == null || now - lastFlush >= FLUSH_MILLIS)) {
+					out.flush();
+					unflushed = false;
+					lastFlush = now;
+				}
+			} catch (IOException e) {
+				logger.error("fail to write soap message to " + file, e);
+				closeQuietly();
+				unflushed = false;
+			}
+		}
+	}
+
+	// open the log file for appending
+	private void open() throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		size = file.length();
+		out = new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE);
+	}
+
+	// drop the file after a failed write, the next message opens it again
+	private void closeQuietly() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// already reported
+			}
+			out = null;
+		}
+	}
+
+	// move file to file.1, file.1 to file.2 ... and start a new file
+	private void rotate() throws IOException {
+		out.close();
+		out = null;
+
+		new File(file.getPath() + "." + fileCount).delete();
+		for (int i = fileCount - 1; i >= 1; i--) {
+			File rotated = new File(file.getPath() + "." + i);
+			if (rotated.exists()) {
+				rotated.renameTo(new File(file.getPath() + "." + (i + 1)));
+			}
+		}
+		if (fileCount > 0) {
+			file.renameTo(new File(file.getPath() + ".1"));
+		} else {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Output stream that passes on at most a limit of bytes and counts the rest
+	 */
+	static class LimitedOutputStream extends FilterOutputStream {
+
+		private final int limit;
+		long written;
+		long dropped;
+
+		/**
+		 * @param out, the stream to write to, it is not closed
+		 * @param limit, most bytes passed on, 0 for no limit
+		 */
+		LimitedOutputStream(OutputStream out, int limit) {
+			super(out);
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (limit > 0 && written >= limit) {
+				dropped++;
+			} else {
+				out.write(b);
+				written++;
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			int passed = len;
+			if (limit > 0) {
+				passed = (int)Math.max(0, Math.min(len, limit - written));
+			}
+			if (passed > 0) {
+				out.write(b, off, passed);
+				written += passed;
+			}
+			dropped += len - passed;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in microseconds, in the style of HdrHistogram.
+ *
+ * Values below 128 have a bucket each. Above that, every power of two range
+ * is split into 64 linear buckets, so a recorded value is off by at most
+ * 1/64 (about 1.6%) of itself. Values up to 2^36 microseconds (about 19
+ * hours) are tracked, larger values are counted in the last bucket.
+ *
+ * @version 1.0
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int LINEAR_BITS = 7;
+	private static final int LINEAR_COUNT = 1 << LINEAR_BITS;
+	private static final int SUB_BUCKETS = LINEAR_COUNT / 2;
+	private static final int MAX_SHIFT = 30;
+	private static final int BUCKET_COUNT = LINEAR_COUNT + MAX_SHIFT * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+	/**
+	 * Record a value
+	 *
+	 * @param value, latency in microseconds, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long current;
+		while (value < (current = min.get()) && !min.compareAndSet(current, value)) {
+		}
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+		}
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return smallest recorded value, 0 if none
+	 */
+	public long getMin() {
+		return count.get() == 0 ? 0 : min.get();
+	}
+
+	/**
+	 * @return largest recorded value, 0 if none
+	 */
+	public long getMax() {
+		return count.get() == 0 ? 0 : max.get();
+	}
+
+	/**
+	 * @return mean of the recorded values, 0 if none
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double)sum.get() / n;
+	}
+
+	/**
+	 * Get the value at a percentile, as the highest value equivalent to the
+	 * bucket the percentile falls in (never more than the recorded max)
+	 *
+	 * @param percentile, between 0 and 100
+	 * @return the value, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100.0 * n));
+		long cumulative = 0;
+		for (int index = 0; index < BUCKET_COUNT; index++) {
+			cumulative += counts.get(index);
+			if (cumulative >= rank) {
+				return Math.min(highestEquivalentValue(index), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	// bucket of a value
+	static int indexOf(long value) {
+		if (value < LINEAR_COUNT) {
+			return (int)value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (LINEAR_BITS - 1);
+		if (shift > MAX_SHIFT) {
+			return BUCKET_COUNT - 1;
+		}
+		return LINEAR_COUNT + (shift - 1) * SUB_BUCKETS + (int)((value >>> shift) - SUB_BUCKETS);
+	}
+
+	// highest value that falls in a bucket
+	static long highestEquivalentValue(int index) {
+		if (index < LINEAR_COUNT) {
+			return index;
+		}
+		int shift = (index - LINEAR_COUNT) / SUB_BUCKETS + 1;
+		long lowest = (long)((index - LINEAR_COUNT) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,205 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency, byte, ack and item counts of a single service operation.
+ * Every counter can be updated from any thread.
+ *
+ * @version 1.0
+ *
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+	private final String operation;
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong faults = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+
+	private final AtomicLong requestBytes = new AtomicLong();
+	private final AtomicLong responseWireBytes = new AtomicLong();
+	private final AtomicLong responsePayloadBytes = new AtomicLong();
+	// bytes of the responses whose wire and payload size are both known
+	private final AtomicLong comparedWireBytes = new AtomicLong();
+	private final AtomicLong comparedPayloadBytes = new AtomicLong();
+
+	private final AtomicLong successAcks = new AtomicLong();
+	private final AtomicLong warningAcks = new AtomicLong();
+	private final AtomicLong failureAcks = new AtomicLong();
+	private final AtomicLong partialFailureAcks = new AtomicLong();
+	private final AtomicLong items = new AtomicLong();
+
+	// span of time calls were made in, for items per second
+	private final AtomicLong firstStartNanos = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong lastEndNanos = new AtomicLong(Long.MIN_VALUE);
+
+	OperationMetrics(String operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * Record a call that got a response or a fault
+	 *
+	 * @param startNanos, System.nanoTime when the request was sent
+	 * @param endNanos, System.nanoTime when the response was received
+	 * @param requestBytes, size of the request payload, -1 if not known
+	 * @param responseWireBytes, size of the response on the wire (compressed), -1 if not known
+	 * @param responsePayloadBytes, size of the uncompressed response payload, -1 if not known
+	 * @param fault, true if the response was a soap fault
+	 */
+	public void recordCall(long startNanos, long endNanos, long requestBytes,
+			long responseWireBytes, long responsePayloadBytes, boolean fault) {
+		calls.incrementAndGet();
+		if (fault) {
+			faults.incrementAndGet();
+		}
+		latency.record((endNanos - startNanos) / 1000L);
+
+		if (requestBytes >= 0) {
+			this.requestBytes.addAndGet(requestBytes);
+		}
+		if (responseWireBytes >= 0) {
+			this.responseWireBytes.addAndGet(responseWireBytes);
+		}
+		if (responsePayloadBytes >= 0) {
+			this.responsePayloadBytes.addAndGet(responsePayloadBytes);
+		}
+		if (responseWireBytes >= 0 && responsePayloadBytes >= 0) {
+			comparedWireBytes.addAndGet(responseWireBytes);
+			comparedPayloadBytes.addAndGet(responsePayloadBytes);
+		}
+
+		long current;
+		while (startNanos < (current = firstStartNanos.get()) && !firstStartNanos.compareAndSet(current, startNanos)) {
+		}
+		while (endNanos > (current = lastEndNanos.get()) && !lastEndNanos.compareAndSet(current, endNanos)) {
+		}
+	}
+
+	/**
+	 * Record the ack and number of items of an unmarshalled response
+	 *
+	 * @param ack, the ack value (Success, Warning, Failure or PartialFailure), null if missing
+	 * @param itemCount, number of items in the response
+	 */
+	public void recordResponse(String ack, int itemCount) {
+		if ("Success".equals(ack)) {
+			successAcks.incrementAndGet();
+		} else if ("Warning".equals(ack)) {
+			warningAcks.incrementAndGet();
+		} else if ("PartialFailure".equals(ack)) {
+			partialFailureAcks.incrementAndGet();
+		} else {
+			failureAcks.incrementAndGet();
+		}
+		items.addAndGet(itemCount);
+	}
+
+	/**
+	 * Record that a call is being retried
+	 */
+	public void recordRetry() {
+		retries.incrementAndGet();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getCalls() {
+		return calls.get();
+	}
+
+	public long getFaults() {
+		return faults.get();
+	}
+
+	public long getRetries() {
+		return retries.get();
+	}
+
+	public double getLatencyMeanMillis() {
+		return latency.getMean() / 1000.0;
+	}
+
+	public double getLatencyP50Millis() {
+		return latency.getValueAtPercentile(50) / 1000.0;
+	}
+
+	public double getLatencyP90Millis() {
+		return latency.getValueAtPercentile(90) / 1000.0;
+	}
+
+	public double getLatencyP99Millis() {
+		return latency.getValueAtPercentile(99) / 1000.0;
+	}
+
+	public double getLatencyMaxMillis() {
+		return latency.getMax() / 1000.0;
+	}
+
+	public long getRequestBytes() {
+		return requestBytes.get();
+	}
+
+	public long getResponseWireBytes() {
+		return responseWireBytes.get();
+	}
+
+	public long getResponsePayloadBytes() {
+		return responsePayloadBytes.get();
+	}
+
+	/**
+	 * @return percentage of the response payload bytes saved by compression,
+	 * over the responses whose wire and payload size are both known, 0 if none
+	 */
+	public double getCompressionSavingPercent() {
+		long payload = comparedPayloadBytes.get();
+		return payload == 0 ? 0 : 100.0 * (1.0 - (double)comparedWireBytes.get() / payload);
+	}
+
+	public long getSuccessAcks() {
+		return successAcks.get();
+	}
+
+	public long getWarningAcks() {
+		return warningAcks.get();
+	}
+
+	public long getFailureAcks() {
+		return failureAcks.get();
+	}
+
+	public long getPartialFailureAcks() {
+		return partialFailureAcks.get();
+	}
+
+	public long getItems() {
+		return items.get();
+	}
+
+	/**
+	 * @return items per second over the time from the first request sent to
+	 * the last response received, 0 if no calls were made
+	 */
+	public double getItemsPerSecond() {
+		long span = lastEndNanos.get() - firstStartNanos.get();
+		return span <= 0 ? 0 : items.get() * 1e9 / span;
+	}
+}
@@ -0,0 +1,57 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common.metrics;
+
+/**
+ * JMX view of the metrics of a single service operation
+ *
+ * @version 1.0
+ *
+ */
+public interface OperationMetricsMBean {
+
+	String getOperation();
+
+	long getCalls();
+
+	long getFaults();
+
+	long getRetries();
+
+	double getLatencyMeanMillis();
+
+	double getLatencyP50Millis();
+
+	double getLatencyP90Millis();
+
+	double getLatencyP99Millis();
+
+	double getLatencyMaxMillis();
+
+	long getRequestBytes();
+
+	long getResponseWireBytes();
+
+	long getResponsePayloadBytes();
+
+	double getCompressionSavingPercent();
+
+	long getSuccessAcks();
+
+	long getWarningAcks();
+
+	long getFailureAcks();
+
+	long getPartialFailureAcks();
+
+	long getItems();
+
+	double getItemsPerSecond();
+}
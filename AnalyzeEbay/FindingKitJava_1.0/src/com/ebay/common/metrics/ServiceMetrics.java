@@ -0,0 +1,137 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.common.metrics;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Registry of the metrics of every service operation called in the JVM.
+ *
+ * The metrics of an operation are created on first use and registered as an
+ * MBean under com.ebay.common:type=ServiceMetrics,operation=&lt;operation&gt;.
+ * writeSummary dumps every operation as a JSON document, e.g. at the end of a run.
+ *
+ * @version 1.0
+ *
+ */
+public class ServiceMetrics {
+
+	private static final Logger logger = Logger.getLogger(ServiceMetrics.class);
+
+	private static final String MBEAN_DOMAIN = "com.ebay.common";
+
+	private static final ConcurrentMap<String, OperationMetrics> operations =
+		new ConcurrentHashMap<String, OperationMetrics>();
+
+	private ServiceMetrics() {
+	}
+
+	/**
+	 * Get the metrics of an operation, creating and registering them if this
+	 * is the first call for it
+	 *
+	 * @param operation, the operation name, e.g. findCompletedItems
+	 * @return the metrics
+	 */
+	public static OperationMetrics forOperation(String operation) {
+		OperationMetrics metrics = operations.get(operation);
+		if (metrics == null) {
+			OperationMetrics created = new OperationMetrics(operation);
+			metrics = operations.putIfAbsent(operation, created);
+			if (metrics == null) {
+				metrics = created;
+				register(created);
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * @return the metrics of every operation called so far, by operation name
+	 */
+	public static List<OperationMetrics> getOperations() {
+		List<OperationMetrics> result = new ArrayList<OperationMetrics>(operations.values());
+		Collections.sort(result, new Comparator<OperationMetrics>() {
+			public int compare(OperationMetrics o1, OperationMetrics o2) {
+				return o1.getOperation().compareTo(o2.getOperation());
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Write the metrics of every operation as a JSON document
+	 *
+	 * @param out, writer the document is written to, it is flushed but not closed
+	 */
+	public static void writeSummary(PrintWriter out) {
+		out.println("{");
+		out.println("  \"operations\": [");
+		List<OperationMetrics> list = getOperations();
+		for (int i = 0; i < list.size(); i++) {
+			OperationMetrics m = list.get(i);
+			out.println("    {");
+			out.println("      \"operation\": \"" + m.getOperation().replace("\\", "\\\\").replace("\"", "\\\"") + "\",");
+			out.println("      \"calls\": " + m.getCalls() + ",");
+			out.println("      \"faults\": " + m.getFaults() + ",");
+			out.println("      \"retries\": " + m.getRetries() + ",");
+			out.println("      \"latencyMillis\": {\"mean\": " + format(m.getLatencyMeanMillis())
+					+ ", \"p50\": " + format(m.getLatencyP50Millis())
+					+ ", \"p90\": " + format(m.getLatencyP90Millis())
+					+ ", \"p99\": " + format(m.getLatencyP99Millis())
+					+ ", \"max\": " + format(m.getLatencyMaxMillis()) + "},");
+			out.println("      \"requestBytes\": " + m.getRequestBytes() + ",");
+			out.println("      \"responseWireBytes\": " + m.getResponseWireBytes() + ",");
+			out.println("      \"responsePayloadBytes\": " + m.getResponsePayloadBytes() + ",");
+			out.println("      \"compressionSavingPercent\": " + format(m.getCompressionSavingPercent()) + ",");
+			out.println("      \"acks\": {\"Success\": " + m.getSuccessAcks()
+					+ ", \"Warning\": " + m.getWarningAcks()
+					+ ", \"PartialFailure\": " + m.getPartialFailureAcks()
+					+ ", \"Failure\": " + m.getFailureAcks() + "},");
+			out.println("      \"items\": " + m.getItems() + ",");
+			out.println("      \"itemsPerSecond\": " + format(m.getItemsPerSecond()));
+			out.println(i == list.size() - 1 ? "    }" : "    },");
+		}
+		out.println("  ]");
+		out.println("}");
+		out.flush();
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.US, "%.3f", value);
+	}
+
+	// register the MBean of an operation, metrics are still kept if JMX isn't available
+	private static void register(OperationMetrics metrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(MBEAN_DOMAIN + ":type=ServiceMetrics,operation="
+					+ ObjectName.quote(metrics.getOperation()));
+			if (!server.isRegistered(name)) {
+				server.registerMBean(metrics, name);
+			}
+		} catch (Exception e) {
+			logger.warn("fail to register metrics MBean of " + metrics.getOperation(), e);
+		}
+	}
+}
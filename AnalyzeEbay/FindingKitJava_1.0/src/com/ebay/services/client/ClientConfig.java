@@ -9,6 +9,9 @@ eBaySDKLicense file that is under the eBay SDK install directory.
 */
 package com.ebay.services.client;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * Config object for eBay SOA service client 
  * 
@@ -40,6 +43,66 @@ public class ClientConfig {
 	 * Should soap message logging be enabled or not
 	 */
 	private boolean soapMessageLoggingEnabled = true;
+	/**
+	 * Should logged soap messages be pretty printed, or logged as the raw payload bytes
+	 */
+	private boolean soapMessagePrettyPrint = true;
+	/**
+	 * File the raw soap messages are streamed to, null to log them through log4j
+	 */
+	private String soapMessageLogFile;
+	/**
+	 * Size in bytes the soap message log file is rotated at
+	 */
+	private long soapMessageLogFileMaxBytes = 10L * 1024 * 1024;
+	/**
+	 * Number of rotated soap message log files kept
+	 */
+	private int soapMessageLogFileCount = 5;
+	/**
+	 * Fraction of soap messages logged
+	 */
+	private double soapMessageLogSampleRate = 1.0;
+	/**
+	 * Operations whose soap messages are logged, null for every operation
+	 */
+	private Set<String> soapMessageLogOperations;
+	/**
+	 * Most bytes of a soap message logged, 0 for no limit
+	 */
+	private int soapMessageLogMaxBytes = 0;
+	/**
+	 * Should call latency and byte counts be recorded in ServiceMetrics or not
+	 */
+	private boolean metricsEnabled = true;
+	/**
+	 * Should the request and uncompressed response payload sizes be counted or not
+	 */
+	private boolean metricsPayloadBytesEnabled = false;
+	/**
+	 * Should calls be scheduled by the RateLimiter of the application id or not
+	 */
+	private boolean rateLimitEnabled = true;
+	/**
+	 * Steady call rate of the application id, 0 for no steady rate
+	 */
+	private double rateLimitCallsPerSecond = 0;
+	/**
+	 * Most calls made at once after being idle
+	 */
+	private int rateLimitBurst = 10;
+	/**
+	 * Most calls a day of the application id, 0 for no budget
+	 */
+	private int dailyCallBudget = 0;
+	/**
+	 * File the calls made today are counted in, null to count in memory only
+	 */
+	private String callBudgetLedgerFile;
+	/**
+	 * Error ids of the responses that mean a call was throttled
+	 */
+	private Set<String> throttlingErrorIds = Collections.singleton("10001");
 	
 	/**
 	 * Http timeout setting
@@ -169,6 +232,273 @@ public class ClientConfig {
 		this.soapMessageLoggingEnabled = soapMessageLoggingEnabled;
 	}
 	
+	/**
+	 * Is soap message pretty printing enabled or not
+	 * 
+	 * @return true if logged soap messages are pretty printed, false if the raw payload is logged
+	 */
+	public boolean isSoapMessagePrettyPrint() {
+		return soapMessagePrettyPrint;
+	}
+	/**
+	 * Set soap message pretty printing enabled or not. Pretty printing transforms
+	 * the whole message into a string, logging the raw payload streams its bytes
+	 * without a transformation.
+	 * 
+	 * @param soapMessagePrettyPrint
+	 */
+	public void setSoapMessagePrettyPrint(boolean soapMessagePrettyPrint) {
+		this.soapMessagePrettyPrint = soapMessagePrettyPrint;
+	}
+	
+	/**
+	 * Get the file raw soap messages are streamed to
+	 * 
+	 * @return log file path, null if soap messages are logged through log4j
+	 */
+	public String getSoapMessageLogFile() {
+		return soapMessageLogFile;
+	}
+	/**
+	 * Set the file raw soap messages are streamed to, the file is rotated
+	 * once it reaches soapMessageLogFileMaxBytes. Only used when pretty
+	 * printing is disabled. If not set, soap messages are logged through log4j.
+	 * 
+	 * @param soapMessageLogFile
+	 */
+	public void setSoapMessageLogFile(String soapMessageLogFile) {
+		this.soapMessageLogFile = soapMessageLogFile;
+	}
+	
+	/**
+	 * Get the size the soap message log file is rotated at
+	 * 
+	 * @return size in bytes
+	 */
+	public long getSoapMessageLogFileMaxBytes() {
+		return soapMessageLogFileMaxBytes;
+	}
+	/**
+	 * Set the size the soap message log file is rotated at, default 10MB
+	 * 
+	 * @param soapMessageLogFileMaxBytes
+	 */
+	public void setSoapMessageLogFileMaxBytes(long soapMessageLogFileMaxBytes) {
+		this.soapMessageLogFileMaxBytes = soapMessageLogFileMaxBytes;
+	}
+	
+	/**
+	 * Get the number of rotated soap message log files kept
+	 * 
+	 * @return number of files
+	 */
+	public int getSoapMessageLogFileCount() {
+		return soapMessageLogFileCount;
+	}
+	/**
+	 * Set the number of rotated soap message log files kept, default 5
+	 * 
+	 * @param soapMessageLogFileCount
+	 */
+	public void setSoapMessageLogFileCount(int soapMessageLogFileCount) {
+		this.soapMessageLogFileCount = soapMessageLogFileCount;
+	}
+	
+	/**
+	 * Get the fraction of soap messages logged
+	 * 
+	 * @return sample rate between 0 and 1
+	 */
+	public double getSoapMessageLogSampleRate() {
+		return soapMessageLogSampleRate;
+	}
+	/**
+	 * Set the fraction of soap messages logged, default 1 (every message)
+	 * 
+	 * @param soapMessageLogSampleRate
+	 */
+	public void setSoapMessageLogSampleRate(double soapMessageLogSampleRate) {
+		this.soapMessageLogSampleRate = soapMessageLogSampleRate;
+	}
+	
+	/**
+	 * Get the operations whose soap messages are logged
+	 * 
+	 * @return operation names, null if every operation is logged
+	 */
+	public Set<String> getSoapMessageLogOperations() {
+		return soapMessageLogOperations;
+	}
+	/**
+	 * Set the operations whose soap messages are logged, e.g. findCompletedItems.
+	 * If not set, every operation is logged.
+	 * 
+	 * @param soapMessageLogOperations
+	 */
+	public void setSoapMessageLogOperations(Set<String> soapMessageLogOperations) {
+		this.soapMessageLogOperations = soapMessageLogOperations;
+	}
+	
+	/**
+	 * Get the most bytes of a soap message logged
+	 * 
+	 * @return limit in bytes, 0 for no limit
+	 */
+	public int getSoapMessageLogMaxBytes() {
+		return soapMessageLogMaxBytes;
+	}
+	/**
+	 * Set the most bytes of a soap message logged, the rest of the message
+	 * is cut off. Default 0, no limit.
+	 * 
+	 * @param soapMessageLogMaxBytes
+	 */
+	public void setSoapMessageLogMaxBytes(int soapMessageLogMaxBytes) {
+		this.soapMessageLogMaxBytes = soapMessageLogMaxBytes;
+	}
+	
+	/**
+	 * Is metrics recording enabled or not
+	 * 
+	 * @return true if call latency and byte counts are recorded in ServiceMetrics
+	 */
+	public boolean isMetricsEnabled() {
+		return metricsEnabled;
+	}
+	/**
+	 * Set metrics recording enabled or not, default true
+	 * 
+	 * @param metricsEnabled
+	 */
+	public void setMetricsEnabled(boolean metricsEnabled) {
+		this.metricsEnabled = metricsEnabled;
+	}
+	
+	/**
+	 * Is counting the request and uncompressed response payload sizes enabled or not
+	 * 
+	 * @return true if the request and response payload bytes are counted
+	 */
+	public boolean isMetricsPayloadBytesEnabled() {
+		return metricsPayloadBytesEnabled;
+	}
+	/**
+	 * Set counting the request and uncompressed response payload sizes enabled
+	 * or not. Counting serializes each request and response again, default false.
+	 * 
+	 * @param metricsPayloadBytesEnabled
+	 */
+	public void setMetricsPayloadBytesEnabled(boolean metricsPayloadBytesEnabled) {
+		this.metricsPayloadBytesEnabled = metricsPayloadBytesEnabled;
+	}
+	
+	/**
+	 * Is scheduling calls by the RateLimiter of the application id enabled or not
+	 * 
+	 * @return true if calls are rate limited
+	 */
+	public boolean isRateLimitEnabled() {
+		return rateLimitEnabled;
+	}
+	/**
+	 * Set scheduling calls by the RateLimiter of the application id enabled or not, default true
+	 * 
+	 * @param rateLimitEnabled
+	 */
+	public void setRateLimitEnabled(boolean rateLimitEnabled) {
+		this.rateLimitEnabled = rateLimitEnabled;
+	}
+	
+	/**
+	 * Get the steady call rate of the application id
+	 * 
+	 * @return calls per second, 0 for no steady rate
+	 */
+	public double getRateLimitCallsPerSecond() {
+		return rateLimitCallsPerSecond;
+	}
+	/**
+	 * Set the steady call rate of the application id, default 0 (no steady rate,
+	 * calls are only paused after being throttled). The limiter of an application
+	 * id takes the settings of the first config it is used with.
+	 * 
+	 * @param rateLimitCallsPerSecond
+	 */
+	public void setRateLimitCallsPerSecond(double rateLimitCallsPerSecond) {
+		this.rateLimitCallsPerSecond = rateLimitCallsPerSecond;
+	}
+	
+	/**
+	 * Get the most calls made at once after being idle
+	 * 
+	 * @return burst size
+	 */
+	public int getRateLimitBurst() {
+		return rateLimitBurst;
+	}
+	/**
+	 * Set the most calls made at once after being idle, default 10
+	 * 
+	 * @param rateLimitBurst
+	 */
+	public void setRateLimitBurst(int rateLimitBurst) {
+		this.rateLimitBurst = rateLimitBurst;
+	}
+	
+	/**
+	 * Get the most calls a day of the application id
+	 * 
+	 * @return daily call budget, 0 for no budget
+	 */
+	public int getDailyCallBudget() {
+		return dailyCallBudget;
+	}
+	/**
+	 * Set the most calls a day of the application id, default 0 (no budget).
+	 * Once it is used up calls fail with CallBudgetExceededException.
+	 * 
+	 * @param dailyCallBudget
+	 */
+	public void setDailyCallBudget(int dailyCallBudget) {
+		this.dailyCallBudget = dailyCallBudget;
+	}
+	
+	/**
+	 * Get the file the calls made today are counted in
+	 * 
+	 * @return file path, null if calls are counted in memory only
+	 */
+	public String getCallBudgetLedgerFile() {
+		return callBudgetLedgerFile;
+	}
+	/**
+	 * Set the file the calls made today are counted in, so the daily budget
+	 * is shared by runs on the same day, default null (count in memory only)
+	 * 
+	 * @param callBudgetLedgerFile
+	 */
+	public void setCallBudgetLedgerFile(String callBudgetLedgerFile) {
+		this.callBudgetLedgerFile = callBudgetLedgerFile;
+	}
+	
+	/**
+	 * Get the error ids of the responses that mean a call was throttled
+	 * 
+	 * @return set of error ids
+	 */
+	public Set<String> getThrottlingErrorIds() {
+		return throttlingErrorIds;
+	}
+	/**
+	 * Set the error ids of the responses that mean a call was throttled,
+	 * default 10001 (call limit exceeded)
+	 * 
+	 * @param throttlingErrorIds
+	 */
+	public void setThrottlingErrorIds(Set<String> throttlingErrorIds) {
+		this.throttlingErrorIds = throttlingErrorIds;
+	}
+	
 	/**
 	 * Get current http timeout setting
 	 * 
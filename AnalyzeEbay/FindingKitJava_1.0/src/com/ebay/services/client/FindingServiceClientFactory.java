@@ -9,8 +9,11 @@ eBaySDKLicense file that is under the eBay SDK install directory.
 */
 package com.ebay.services.client;
 
+import javax.xml.bind.JAXBContext;
+
 import com.ebay.common.ClientFactory;
 import com.ebay.common.Constants;
+import com.ebay.common.ServiceClientPool;
 import com.ebay.services.finding.FindingService;
 import com.ebay.services.finding.FindingServicePortType;
 
@@ -36,5 +39,29 @@ public class FindingServiceClientFactory {
         			config, Constants.FINDING_SERVICE_TRACKING_NAME);
         return serviceClient;
 	}
+	
+	/**
+	 * Get a pooled client object which can communicate with
+	 * Finding service. The client is confined to the calling thread
+	 * and reused for every call with the same config instance.
+	 * 
+	 * @param config, client-side configuration object
+	 * @return a client object which implements the interface
+	 *         of Finding service.
+	 */
+	public static FindingServicePortType getPooledServiceClient(ClientConfig config) {
+		return ServiceClientPool.getServiceClient(FindingServicePortType.class, FindingService.class,
+				config, Constants.FINDING_SERVICE_TRACKING_NAME);
+	}
+	
+	/**
+	 * Get the shared JAXB context of the Finding service
+	 * request and response types.
+	 * 
+	 * @return the JAXB context
+	 */
+	public static JAXBContext getJAXBContext() {
+		return ServiceClientPool.getJAXBContext(FindingServicePortType.class);
+	}
 
 }
@@ -0,0 +1,545 @@
+/*
+Copyright (c) 2011 eBay, Inc.
+
+This program is licensed under the terms of the eBay Common Development and
+Distribution License (CDDL) Version 1.0 (the "License") and any subsequent
+version thereof released by eBay.  The then-current version of the License
+can be found at https://www.codebase.ebay.com/Licenses.html and in the
+eBaySDKLicense file that is under the eBay SDK install directory.
+*/
+package com.ebay.services.stub;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jws.WebService;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.ws.Endpoint;
+import javax.xml.ws.WebServiceException;
+
+import com.ebay.services.finding.AckValue;
+import com.ebay.services.finding.Amount;
+import com.ebay.services.finding.BaseServiceResponse;
+import com.ebay.services.finding.Condition;
+import com.ebay.services.finding.ErrorCategory;
+import com.ebay.services.finding.ErrorData;
+import com.ebay.services.finding.ErrorMessage;
+import com.ebay.services.finding.ErrorSeverity;
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.FindCompletedItemsResponse;
+import com.ebay.services.finding.FindItemsAdvancedRequest;
+import com.ebay.services.finding.FindItemsAdvancedResponse;
+import com.ebay.services.finding.FindItemsByCategoryRequest;
+import com.ebay.services.finding.FindItemsByCategoryResponse;
+import com.ebay.services.finding.FindItemsByKeywordsRequest;
+import com.ebay.services.finding.FindItemsByKeywordsResponse;
+import com.ebay.services.finding.FindItemsByProductRequest;
+import com.ebay.services.finding.FindItemsByProductResponse;
+import com.ebay.services.finding.FindItemsForFavoriteSearchRequest;
+import com.ebay.services.finding.FindItemsForFavoriteSearchResponse;
+import com.ebay.services.finding.FindItemsIneBayStoresRequest;
+import com.ebay.services.finding.FindItemsIneBayStoresResponse;
+import com.ebay.services.finding.FindingServicePortType;
+import com.ebay.services.finding.GetHistogramsRequest;
+import com.ebay.services.finding.GetHistogramsResponse;
+import com.ebay.services.finding.GetSearchKeywordsRecommendationRequest;
+import com.ebay.services.finding.GetSearchKeywordsRecommendationResponse;
+import com.ebay.services.finding.GetVersionRequest;
+import com.ebay.services.finding.GetVersionResponse;
+import com.ebay.services.finding.ItemFilter;
+import com.ebay.services.finding.ListingInfo;
+import com.ebay.services.finding.PaginationOutput;
+import com.ebay.services.finding.SearchItem;
+import com.ebay.services.finding.SearchResult;
+import com.ebay.services.finding.SellerInfo;
+import com.ebay.services.finding.SellingStatus;
+
+/**
+ * Local stand-in of the Finding service, for load testing clients offline.
+ *
+ * findCompletedItems answers with synthesized pages. Items end one every
+ * itemSpacingMillis, item n (its id is a base derived from the keywords plus n)
+ * ending at n * itemSpacingMillis since the epoch, so items keep their id and
+ * end time across calls and runs, new items keep ending as time passes, and a
+ * search sees the newest totalEntries of them. EndTimeFrom, EndTimeTo,
+ * MinPrice, MaxPrice and Condition filters are applied, and pages are sorted
+ * newest first. Like the real service only the first maxPages pages can be
+ * fetched.
+ *
+ * Every call sleeps latencyMillis plus up to latencyJitterMillis, and then
+ * fails with the configured rates: failureRate answers a Failure ack with a
+ * System error, throttleRate a Failure ack with error 10001 (call limit
+ * exceeded), requestErrorRate a Failure ack with a Request error, and
+ * faultRate a soap fault. The other operations answer a Failure ack saying
+ * they aren't supported.
+ *
+ * Run as "FindingServiceStub --port 8089 --items 10000 --latency 50 ..." (see
+ * main), or publish one in process with publish, and point the client at it
+ * with ClientConfig.setEndPointAddress.
+ *
+ * @version 1.0
+ *
+ */
+@WebService(endpointInterface = "com.ebay.services.finding.FindingServicePortType",
+		serviceName = "FindingService", portName = "FindingServiceSOAPPort",
+		targetNamespace = "http://www.ebay.com/marketplace/search/v1/services")
+public class FindingServiceStub implements FindingServicePortType {
+
+	/**
+	 * Path the stub is published under
+	 */
+	public static final String PATH = "/services/search/FindingService/v1";
+
+	private static final String VERSION = "1.13.0";
+	private static final String DOMAIN = "Marketplace";
+	private static final long SYSTEM_ERROR_ID = 10000;
+	private static final long THROTTLING_ERROR_ID = 10001;
+	private static final long REQUEST_ERROR_ID = 10002;
+	private static final String[] LISTING_TYPES = {"Auction", "FixedPrice", "StoreInventory", "AuctionWithBIN"};
+	private static final double DEFAULT_MIN_PRICE = 1;
+	private static final double DEFAULT_MAX_PRICE = 500;
+
+	private volatile int totalEntries = 10000;
+	private volatile int maxPages = 100;
+	private volatile long itemSpacingMillis = 60000;
+	private volatile long latencyMillis = 0;
+	private volatile long latencyJitterMillis = 0;
+	private volatile double failureRate = 0;
+	private volatile double throttleRate = 0;
+	private volatile double faultRate = 0;
+	private volatile double requestErrorRate = 0;
+
+	private final Random errorRandom = new Random(1);
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong injectedErrors = new AtomicLong();
+
+	/**
+	 * Publish a stub on a local port, with a pool of threads answering calls
+	 * so that concurrent calls aren't serialized
+	 *
+	 * @param stub, the stub
+	 * @param port, port to listen on
+	 * @param threads, number of threads answering calls
+	 * @return the endpoint, stop it to shut the stub down
+	 */
+	public static Endpoint publish(FindingServiceStub stub, int port, int threads) {
+		Endpoint endpoint = Endpoint.create(stub);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		endpoint.setExecutor(executor);
+		endpoint.publish(getAddress(port));
+		return endpoint;
+	}
+
+	/**
+	 * @param port, port the stub listens on
+	 * @return the address to set with ClientConfig.setEndPointAddress
+	 */
+	public static String getAddress(int port) {
+		return "http://localhost:" + port + PATH;
+	}
+
+	/**
+	 * Run a stub until the process is killed
+	 *
+	 * @param args, options: --port n (8089), --threads n (64), --items n (10000),
+	 * --pages n (100), --spacing millis (60000), --latency millis (0),
+	 * --jitter millis (0), --failureRate r (0), --throttleRate r (0),
+	 * --faultRate r (0), --requestErrorRate r (0), --seed n (1)
+	 */
+	public static void main(String[] args) {
+		FindingServiceStub stub = new FindingServiceStub();
+		int port = 8089;
+		int threads = 64;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String name = args[i];
+			String value = args[i + 1];
+			if ("--port".equals(name)) {
+				port = Integer.parseInt(value);
+			} else if ("--threads".equals(name)) {
+				threads = Integer.parseInt(value);
+			} else if ("--seed".equals(name)) {
+				stub.setSeed(Long.parseLong(value));
+			} else if ("--items".equals(name)) {
+				stub.setTotalEntries(Integer.parseInt(value));
+			} else if ("--pages".equals(name)) {
+				stub.setMaxPages(Integer.parseInt(value));
+			} else if ("--spacing".equals(name)) {
+				stub.setItemSpacingMillis(Long.parseLong(value));
+			} else if ("--latency".equals(name)) {
+				stub.setLatencyMillis(Long.parseLong(value));
+			} else if ("--jitter".equals(name)) {
+				stub.setLatencyJitterMillis(Long.parseLong(value));
+			} else if ("--failureRate".equals(name)) {
+				stub.setFailureRate(Double.parseDouble(value));
+			} else if ("--throttleRate".equals(name)) {
+				stub.setThrottleRate(Double.parseDouble(value));
+			} else if ("--faultRate".equals(name)) {
+				stub.setFaultRate(Double.parseDouble(value));
+			} else if ("--requestErrorRate".equals(name)) {
+				stub.setRequestErrorRate(Double.parseDouble(value));
+			} else {
+				throw new IllegalArgumentException("unknown option: " + name);
+			}
+		}
+
+		publish(stub, port, threads);
+		System.out.println("Finding service stub listening on " + getAddress(port));
+	}
+
+	public FindCompletedItemsResponse findCompletedItems(FindCompletedItemsRequest request) {
+		FindCompletedItemsResponse response = new FindCompletedItemsResponse();
+		if (!answer(response)) {
+			return response;
+		}
+
+		// the newest item ending now, the window is narrowed by the end time filters
+		long newest = System.currentTimeMillis() / itemSpacingMillis;
+		long oldest = newest - totalEntries + 1;
+		double minPrice = DEFAULT_MIN_PRICE;
+		double maxPrice = DEFAULT_MAX_PRICE;
+		int conditionId = 3000;
+		String conditionName = "Used";
+		for (ItemFilter filter : request.getItemFilter()) {
+			if (filter.getName() == null || filter.getValue().isEmpty()) {
+				continue;
+			}
+			String value = filter.getValue().get(0);
+			switch (filter.getName()) {
+			case END_TIME_FROM:
+				oldest = Math.max(oldest, ceilDiv(parseTime(value), itemSpacingMillis));
+				break;
+			case END_TIME_TO:
+				newest = Math.min(newest, Math.floorDiv(parseTime(value), itemSpacingMillis));
+				break;
+			case MIN_PRICE:
+				minPrice = Double.parseDouble(value);
+				break;
+			case MAX_PRICE:
+				maxPrice = Double.parseDouble(value);
+				break;
+			case CONDITION:
+				if ("New".equals(value)) {
+					conditionId = 1000;
+					conditionName = "New";
+				} else if (value.matches("\\d+")) {
+					conditionId = Integer.parseInt(value);
+					conditionName = value;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		if (maxPrice < minPrice) {
+			maxPrice = minPrice;
+		}
+
+		int entriesPerPage = 100;
+		int pageNumber = 1;
+		if (request.getPaginationInput() != null) {
+			if (request.getPaginationInput().getEntriesPerPage() != null) {
+				entriesPerPage = Math.max(1, request.getPaginationInput().getEntriesPerPage());
+			}
+			if (request.getPaginationInput().getPageNumber() != null) {
+				pageNumber = Math.max(1, request.getPaginationInput().getPageNumber());
+			}
+		}
+
+		long count = Math.max(0, newest - oldest + 1);
+		int totalPages = (int)Math.min(maxPages, (count + entriesPerPage - 1) / entriesPerPage);
+		long idBase = 100000000000L + (long)((request.getKeywords() == null ? 0 : request.getKeywords().hashCode()) & 0x3ff)
+				* 10000000000L;
+
+		SearchResult searchResult = new SearchResult();
+		if (pageNumber <= totalPages) {
+			long first = newest - (long)(pageNumber - 1) * entriesPerPage;
+			long last = Math.max(oldest, first - entriesPerPage + 1);
+			for (long n = first; n >= last; n--) {
+				searchResult.getItem().add(newItem(n, idBase, request.getKeywords(),
+						minPrice, maxPrice, conditionId, conditionName));
+			}
+		}
+		searchResult.setCount(searchResult.getItem().size());
+		response.setSearchResult(searchResult);
+
+		PaginationOutput paginationOutput = new PaginationOutput();
+		paginationOutput.setPageNumber(pageNumber);
+		paginationOutput.setEntriesPerPage(entriesPerPage);
+		paginationOutput.setTotalPages(totalPages);
+		paginationOutput.setTotalEntries((int)Math.min(Integer.MAX_VALUE, count));
+		response.setPaginationOutput(paginationOutput);
+		return response;
+	}
+
+	public FindItemsAdvancedResponse findItemsAdvanced(FindItemsAdvancedRequest request) {
+		return unsupported(new FindItemsAdvancedResponse(), "findItemsAdvanced");
+	}
+
+	public FindItemsByKeywordsResponse findItemsByKeywords(FindItemsByKeywordsRequest request) {
+		return unsupported(new FindItemsByKeywordsResponse(), "findItemsByKeywords");
+	}
+
+	public FindItemsByCategoryResponse findItemsByCategory(FindItemsByCategoryRequest request) {
+		return unsupported(new FindItemsByCategoryResponse(), "findItemsByCategory");
+	}
+
+	public FindItemsByProductResponse findItemsByProduct(FindItemsByProductRequest request) {
+		return unsupported(new FindItemsByProductResponse(), "findItemsByProduct");
+	}
+
+	public FindItemsIneBayStoresResponse findItemsIneBayStores(FindItemsIneBayStoresRequest request) {
+		return unsupported(new FindItemsIneBayStoresResponse(), "findItemsIneBayStores");
+	}
+
+	public FindItemsForFavoriteSearchResponse findItemsForFavoriteSearch(FindItemsForFavoriteSearchRequest request) {
+		return unsupported(new FindItemsForFavoriteSearchResponse(), "findItemsForFavoriteSearch");
+	}
+
+	public GetHistogramsResponse getHistograms(GetHistogramsRequest request) {
+		return unsupported(new GetHistogramsResponse(), "getHistograms");
+	}
+
+	public GetSearchKeywordsRecommendationResponse getSearchKeywordsRecommendation(
+			GetSearchKeywordsRecommendationRequest request) {
+		return unsupported(new GetSearchKeywordsRecommendationResponse(), "getSearchKeywordsRecommendation");
+	}
+
+	public GetVersionResponse getVersion(GetVersionRequest request) {
+		GetVersionResponse response = new GetVersionResponse();
+		answer(response);
+		return response;
+	}
+
+	/**
+	 * @return number of calls answered
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * @return number of calls answered with an injected error or fault
+	 */
+	public long getInjectedErrors() {
+		return injectedErrors.get();
+	}
+
+	/**
+	 * Set the seed of the random the injected errors are drawn from, default 1.
+	 * The items don't depend on it.
+	 *
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		synchronized (errorRandom) {
+			errorRandom.setSeed(seed);
+		}
+	}
+
+	/**
+	 * Set the number of items a search sees, default 10000
+	 *
+	 * @param totalEntries
+	 */
+	public void setTotalEntries(int totalEntries) {
+		this.totalEntries = totalEntries;
+	}
+
+	/**
+	 * Set the most pages of a search that can be fetched, default 100
+	 *
+	 * @param maxPages
+	 */
+	public void setMaxPages(int maxPages) {
+		this.maxPages = maxPages;
+	}
+
+	/**
+	 * Set the time between the end times of consecutive items, default 60000
+	 *
+	 * @param itemSpacingMillis
+	 */
+	public void setItemSpacingMillis(long itemSpacingMillis) {
+		this.itemSpacingMillis = Math.max(1, itemSpacingMillis);
+	}
+
+	/**
+	 * Set the least time a call takes, default 0
+	 *
+	 * @param latencyMillis
+	 */
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	/**
+	 * Set the most random time added to the latency of a call, default 0
+	 *
+	 * @param latencyJitterMillis
+	 */
+	public void setLatencyJitterMillis(long latencyJitterMillis) {
+		this.latencyJitterMillis = latencyJitterMillis;
+	}
+
+	/**
+	 * Set the share of calls answered with a System error, default 0
+	 *
+	 * @param failureRate
+	 */
+	public void setFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+	}
+
+	/**
+	 * Set the share of calls answered with a throttling error, default 0
+	 *
+	 * @param throttleRate
+	 */
+	public void setThrottleRate(double throttleRate) {
+		this.throttleRate = throttleRate;
+	}
+
+	/**
+	 * Set the share of calls answered with a soap fault, default 0
+	 *
+	 * @param faultRate
+	 */
+	public void setFaultRate(double faultRate) {
+		this.faultRate = faultRate;
+	}
+
+	/**
+	 * Set the share of calls answered with a Request error, one that calling
+	 * again doesn't help, default 0
+	 *
+	 * @param requestErrorRate
+	 */
+	public void setRequestErrorRate(double requestErrorRate) {
+		this.requestErrorRate = requestErrorRate;
+	}
+
+	// sleep the latency, inject an error if one is drawn, and fill the common fields
+	// returns false if the response is an injected error
+	private boolean answer(BaseServiceResponse response) {
+		calls.incrementAndGet();
+		long sleep = latencyMillis
+				+ (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+		if (sleep > 0) {
+			try {
+				Thread.sleep(sleep);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		response.setVersion(VERSION);
+		response.setTimestamp(new GregorianCalendar(TimeZone.getTimeZone("GMT")));
+
+		double draw;
+		synchronized (errorRandom) {
+			draw = errorRandom.nextDouble();
+		}
+		if (draw < faultRate) {
+			injectedErrors.incrementAndGet();
+			throw new WebServiceException("injected fault");
+		}
+		if (draw < faultRate + failureRate) {
+			injectedErrors.incrementAndGet();
+			fail(response, SYSTEM_ERROR_ID, ErrorCategory.SYSTEM, "Injected system error.");
+			return false;
+		}
+		if (draw < faultRate + failureRate + throttleRate) {
+			injectedErrors.incrementAndGet();
+			fail(response, THROTTLING_ERROR_ID, ErrorCategory.APPLICATION,
+					"Service call has exceeded the number of times the operation is allowed to be called.");
+			return false;
+		}
+		if (draw < faultRate + failureRate + throttleRate + requestErrorRate) {
+			injectedErrors.incrementAndGet();
+			fail(response, REQUEST_ERROR_ID, ErrorCategory.REQUEST, "Injected request error.");
+			return false;
+		}
+		response.setAck(AckValue.SUCCESS);
+		return true;
+	}
+
+	// answer an operation the stub doesn't implement
+	private <T extends BaseServiceResponse> T unsupported(T response, String operation) {
+		if (answer(response)) {
+			fail(response, SYSTEM_ERROR_ID, ErrorCategory.REQUEST, operation + " is not supported by the stub.");
+		}
+		return response;
+	}
+
+	private static void fail(BaseServiceResponse response, long errorId, ErrorCategory category, String message) {
+		ErrorData error = new ErrorData();
+		error.setErrorId(errorId);
+		error.setDomain(DOMAIN);
+		error.setSeverity(ErrorSeverity.ERROR);
+		error.setCategory(category);
+		error.setMessage(message);
+		ErrorMessage errorMessage = new ErrorMessage();
+		errorMessage.getError().add(error);
+		response.setErrorMessage(errorMessage);
+		response.setAck(AckValue.FAILURE);
+	}
+
+	// item n, its fields only depend on n and the keywords
+	private SearchItem newItem(long n, long idBase, String keywords, double minPrice, double maxPrice,
+			int conditionId, String conditionName) {
+		long hash = mix(n);
+
+		SearchItem item = new SearchItem();
+		item.setItemId(Long.toString(idBase + n % 10000000000L));
+		item.setTitle((keywords == null ? "Item" : keywords) + " #" + n);
+
+		Amount price = new Amount();
+		price.setCurrencyId("USD");
+		price.setValue(Math.round((minPrice + (hash >>> 11) * 0x1.0p-53 * (maxPrice - minPrice)) * 100) / 100.0);
+		SellingStatus sellingStatus = new SellingStatus();
+		sellingStatus.setCurrentPrice(price);
+		sellingStatus.setConvertedCurrentPrice(price);
+		sellingStatus.setSellingState("EndedWithSales");
+		item.setSellingStatus(sellingStatus);
+
+		Calendar endTime = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+		endTime.setTimeInMillis(n * itemSpacingMillis);
+		ListingInfo listingInfo = new ListingInfo();
+		listingInfo.setEndTime(endTime);
+		listingInfo.setListingType(LISTING_TYPES[(int)((hash >>> 3) % LISTING_TYPES.length)]);
+		item.setListingInfo(listingInfo);
+
+		Condition condition = new Condition();
+		condition.setConditionId(conditionId);
+		condition.setConditionDisplayName(conditionName);
+		item.setCondition(condition);
+
+		SellerInfo sellerInfo = new SellerInfo();
+		sellerInfo.setSellerUserName("seller" + ((hash >>> 7) % 1000));
+		item.setSellerInfo(sellerInfo);
+		return item;
+	}
+
+	// parse an ISO 8601 time filter value to epoch millis
+	private static long parseTime(String value) {
+		return DatatypeConverter.parseDateTime(value).getTimeInMillis();
+	}
+
+	private static long ceilDiv(long x, long y) {
+		return -Math.floorDiv(-x, y);
+	}
+
+	// splitmix64 finalizer, spreads n over every bit
+	private static long mix(long n) {
+		long z = n * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
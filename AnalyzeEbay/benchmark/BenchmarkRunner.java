@@ -0,0 +1,121 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Minimal benchmark harness: runs a benchmark for a number of warmup iterations, then times the measured iterations
+ * and prints the mean, min and max time per iteration and the mean time per row.
+ *
+ * Each iteration is set up and torn down outside the timed section, and the garbage collector is asked to run before
+ * it so a collection of the previous iteration's garbage is less likely to land in the timing. The value returned by
+ * a run is kept in a volatile field so the JIT can't drop the work that computed it.
+ */
+public class BenchmarkRunner
+{
+	private final int warmupIterations;
+	private final int iterations;
+	private final PrintStream out;
+
+	private volatile Object sink;
+
+	/**
+	 * A benchmarked piece of work
+	 */
+	public static abstract class Benchmark
+	{
+		/**
+		 * Prepares an iteration, not timed
+		 * @param iteration - the number of the iteration, starting at 0 with the warmup iterations
+		 * @throws Exception
+		 */
+		public void setUp(int iteration) throws Exception
+		{
+		}
+
+		/**
+		 * Runs the timed work of an iteration
+		 * @return a value computed by the work, so it isn't optimized away
+		 * @throws Exception
+		 */
+		public abstract Object run() throws Exception;
+
+		/**
+		 * Cleans up after an iteration, not timed
+		 * @throws Exception
+		 */
+		public void tearDown() throws Exception
+		{
+		}
+	}
+
+	/**
+	 * Constructor for a runner
+	 * @param warmupIterations - the number of iterations run before timing
+	 * @param iterations - the number of timed iterations
+	 * @param out - print stream the results are printed to
+	 */
+	public BenchmarkRunner(int warmupIterations, int iterations, PrintStream out)
+	{
+		if (iterations < 1)
+		{
+			throw new IllegalArgumentException("iterations must be at least 1: " + iterations);
+		}
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.out = out;
+	}
+
+	/**
+	 * Prints the header of the result lines
+	 */
+	public void printHeader()
+	{
+		out.println(String.format("%-22s %10s %12s %12s %12s %10s", "benchmark", "rows", "mean ms", "min ms", "max ms",
+				"ns/row"));
+	}
+
+	/**
+	 * Runs and times a benchmark and prints its result line
+	 * @param name - the name printed for the benchmark
+	 * @param rows - the number of rows the benchmark processes per iteration
+	 * @param benchmark - the benchmark
+	 * @return the time of each timed iteration in nanoseconds
+	 * @throws Exception - if the benchmark failed
+	 */
+	public long[] measure(String name, long rows, Benchmark benchmark) throws Exception
+	{
+		long[] nanos = new long[iterations];
+		for (int i = 0; i < warmupIterations + iterations; i++)
+		{
+			benchmark.setUp(i);
+			System.gc();
+			try
+			{
+				long start = System.nanoTime();
+				sink = benchmark.run();
+				long elapsed = System.nanoTime() - start;
+				if (i >= warmupIterations)
+				{
+					nanos[i - warmupIterations] = elapsed;
+				}
+			}
+			finally
+			{
+				benchmark.tearDown();
+			}
+		}
+
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		double mean = 0;
+		for (long n : nanos)
+		{
+			mean += n;
+		}
+		mean /= nanos.length;
+
+		out.println(String.format("%-22s %10d %12.2f %12.2f %12.2f %10.1f", name, rows, mean / 1e6, sorted[0] / 1e6,
+				sorted[sorted.length - 1] / 1e6, rows == 0 ? 0 : mean / rows));
+		sink = null;
+		return nanos;
+	}
+}
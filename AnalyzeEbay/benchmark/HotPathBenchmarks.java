@@ -0,0 +1,576 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+
+import com.ebay.services.client.FindingServiceClientFactory;
+import com.ebay.services.finding.AckValue;
+import com.ebay.services.finding.FindCompletedItemsResponse;
+import com.ebay.services.finding.ObjectFactory;
+import com.ebay.services.finding.PaginationOutput;
+import com.ebay.services.finding.SearchItem;
+import com.ebay.services.finding.SearchResult;
+
+/**
+ * Benchmarks of the hot paths of a run of the program, on synthetic datasets of increasing size:
+ *
+ * blobRead - reading the serialized SearchItems of an old blob file into records
+ * itemStoreRead - reading the records of an item store
+ * dedup - adding the item ids of a harvest to the item id index of its query
+ * sortNewestFirst, sortNewestFirstIndex - sorting the items by end time with the comparator and with IndexSort
+ * endTimeParse, endTimeParseJaxb - parsing the end time text of the items with EpochTime and DatatypeConverter
+ * fullReportExact, fullReportSketch - the aggregation and printing of the full report
+ * percentilesExact, percentilesSketch - the stats of a single bucket with all the prices
+ * jaxbUnmarshal - unmarshalling canned 100 item FindCompletedItems responses, rows/100 of them
+ * itemListPrintWriter - writing the item list file line by line with a PrintWriter, as older versions did
+ * itemListText, itemListCsv, itemListJsonl, itemListBinary - writing the item list file with each report encoder
+ *
+ * Usage: HotPathBenchmarks [--rows 10000,100000,1000000] [--warmup 3] [--iterations 5] [--only name,name]
+ *
+ * 10000000 rows is supported but needs a large heap (-Xmx8g or so).
+ */
+public class HotPathBenchmarks
+{
+	private static final long SEED = 42;
+	private static final int BLOB_RESET_INTERVAL = 10000;
+	private static final int RESPONSE_ITEMS = 100;
+
+	private static final String[] BENCHMARKS = {"blobRead", "itemStoreRead", "dedup", "sortNewestFirst",
+			"sortNewestFirstIndex", "endTimeParse", "endTimeParseJaxb", "fullReportExact", "fullReportSketch",
+			"percentilesExact", "percentilesSketch", "jaxbUnmarshal", "itemListPrintWriter", "itemListText",
+			"itemListCsv", "itemListJsonl", "itemListBinary"};
+
+	private static final String[][] ITEM_LIST_FORMATS = {{"itemListText", ReportEncoders.TEXT},
+			{"itemListCsv", ReportEncoders.CSV}, {"itemListJsonl", ReportEncoders.JSON_LINES},
+			{"itemListBinary", ReportEncoders.BINARY}};
+
+	private final BenchmarkRunner runner;
+	private final Set<String> only;
+	private final File tempDir;
+
+	private HotPathBenchmarks(BenchmarkRunner runner, Set<String> only, File tempDir)
+	{
+		this.runner = runner;
+		this.only = only;
+		this.tempDir = tempDir;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int[] rows = {10000, 100000, 1000000};
+		int warmup = 3;
+		int iterations = 5;
+		Set<String> only = new HashSet<String>(Arrays.asList(BENCHMARKS));
+
+		for (int i = 0; i < args.length; i++)
+		{
+			if (i + 1 >= args.length)
+			{
+				usage("Missing value of " + args[i]);
+			}
+			String value = args[++i];
+			if (args[i - 1].equals("--rows"))
+			{
+				String[] parts = value.split(",");
+				rows = new int[parts.length];
+				for (int j = 0; j < parts.length; j++)
+				{
+					rows[j] = Integer.parseInt(parts[j].trim());
+				}
+			}
+			else if (args[i - 1].equals("--warmup"))
+			{
+				warmup = Integer.parseInt(value);
+			}
+			else if (args[i - 1].equals("--iterations"))
+			{
+				iterations = Integer.parseInt(value);
+			}
+			else if (args[i - 1].equals("--only"))
+			{
+				only = new HashSet<String>(Arrays.asList(value.split(",")));
+			}
+			else
+			{
+				usage("Unknown option " + args[i - 1]);
+			}
+		}
+
+		File tempDir = File.createTempFile("hotpath", "");
+		if (!tempDir.delete() || !tempDir.mkdir())
+		{
+			throw new IOException("Can't create " + tempDir);
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, System.out);
+		HotPathBenchmarks benchmarks = new HotPathBenchmarks(runner, only, tempDir);
+		System.out.println("Warmup iterations: " + warmup + ", iterations: " + iterations + ", max heap: "
+				+ Runtime.getRuntime().maxMemory() / (1024 * 1024) + "MB");
+		runner.printHeader();
+		try
+		{
+			for (int n : rows)
+			{
+				benchmarks.runAll(n);
+			}
+		}
+		finally
+		{
+			deleteRecursively(tempDir);
+		}
+	}
+
+	private static void usage(String message)
+	{
+		System.err.println(message);
+		System.err.println("Usage: HotPathBenchmarks [--rows 10000,100000,1000000] [--warmup n] [--iterations n] "
+				+ "[--only " + String.join(",", BENCHMARKS) + "]");
+		System.exit(1);
+	}
+
+	/**
+	 * Private helper that runs the selected benchmarks on a dataset of the passed size
+	 * @param rows - the number of items of the dataset
+	 * @throws Exception
+	 */
+	private void runAll(int rows) throws Exception
+	{
+		final List<ItemRecord> records = SyntheticItems.records(rows, SEED);
+
+		if (only.contains("blobRead"))
+		{
+			final File blob = new File(tempDir, "items.blob");
+			writeBlob(records, blob);
+			runner.measure("blobRead", rows, new BenchmarkRunner.Benchmark() {
+				public Object run() throws Exception
+				{
+					return readBlob(blob);
+				}
+			});
+			blob.delete();
+		}
+
+		if (only.contains("itemStoreRead"))
+		{
+			File storeFile = new File(tempDir, "items.store");
+			final ItemStore store = new ItemStore(storeFile);
+			store.append(records);
+			runner.measure("itemStoreRead", rows, new BenchmarkRunner.Benchmark() {
+				public Object run() throws Exception
+				{
+					long sum = 0;
+					ItemStore.RecordReader reader = store.openReader();
+					try
+					{
+						ItemRecord record;
+						while ((record = reader.next()) != null)
+						{
+							sum += record.getEndTime();
+						}
+					}
+					finally
+					{
+						reader.close();
+					}
+					return sum;
+				}
+			});
+			storeFile.delete();
+		}
+
+		if (only.contains("dedup"))
+		{
+			runner.measure("dedup", rows, new BenchmarkRunner.Benchmark() {
+				private File indexDir;
+				private ItemIdIndex index;
+
+				public void setUp(int iteration) throws Exception
+				{
+					indexDir = new File(tempDir, "index" + iteration);
+					index = new ItemIdIndex(indexDir);
+				}
+
+				public Object run() throws Exception
+				{
+					ItemIdIndex.QueryIds ids = index.forQuery("benchmark");
+					int added = 0;
+					for (ItemRecord record : records)
+					{
+						if (ids.add(record.getItemId()))
+						{
+							added++;
+						}
+					}
+					return added;
+				}
+
+				public void tearDown() throws Exception
+				{
+					index.close();
+					deleteRecursively(indexDir);
+				}
+			});
+		}
+
+		if (only.contains("sortNewestFirst"))
+		{
+			runner.measure("sortNewestFirst", rows, new BenchmarkRunner.Benchmark() {
+				private List<ItemRecord> list;
+
+				public void setUp(int iteration)
+				{
+					list = new ArrayList<ItemRecord>(records);
+				}
+
+				public Object run()
+				{
+					list.sort(AnalyzeEbay.NEWEST_FIRST);
+					return list.get(0);
+				}
+			});
+		}
+
+		if (only.contains("sortNewestFirstIndex"))
+		{
+			runner.measure("sortNewestFirstIndex", rows, new BenchmarkRunner.Benchmark() {
+				private List<ItemRecord> list;
+
+				public void setUp(int iteration)
+				{
+					list = new ArrayList<ItemRecord>(records);
+				}
+
+				public Object run()
+				{
+					AnalyzeEbay.sortNewestFirst(list);
+					return list.get(0);
+				}
+			});
+		}
+
+		if (only.contains("endTimeParse") || only.contains("endTimeParseJaxb"))
+		{
+			final String[] endTimes = new String[rows];
+			for (int i = 0; i < rows; i++)
+			{
+				endTimes[i] = EpochTime.format(records.get(i).getEndTime());
+			}
+
+			if (only.contains("endTimeParse"))
+			{
+				runner.measure("endTimeParse", rows, new BenchmarkRunner.Benchmark() {
+					public Object run()
+					{
+						long sum = 0;
+						for (String endTime : endTimes)
+						{
+							sum += EpochTime.parse(endTime);
+						}
+						return sum;
+					}
+				});
+			}
+			if (only.contains("endTimeParseJaxb"))
+			{
+				runner.measure("endTimeParseJaxb", rows, new BenchmarkRunner.Benchmark() {
+					public Object run()
+					{
+						long sum = 0;
+						for (String endTime : endTimes)
+						{
+							sum += DatatypeConverter.parseDateTime(endTime).getTimeInMillis();
+						}
+						return sum;
+					}
+				});
+			}
+		}
+
+		if (only.contains("fullReportExact") || only.contains("fullReportSketch"))
+		{
+			File columnsDir = new File(tempDir, "columns");
+			columnsDir.mkdir();
+			final PriceColumns columns = new PriceColumns(columnsDir);
+			columns.rebuild(records);
+			columns.map();
+
+			if (only.contains("fullReportExact"))
+			{
+				runner.measure("fullReportExact", rows,
+						fullReport(columns, new BucketStatsFactory(BucketStatsFactory.Mode.EXACT, 0)));
+			}
+			if (only.contains("fullReportSketch"))
+			{
+				runner.measure("fullReportSketch", rows, fullReport(columns,
+						new BucketStatsFactory(BucketStatsFactory.Mode.SKETCH, SketchBucketStats.DEFAULT_K)));
+			}
+			deleteRecursively(columnsDir);
+		}
+
+		if (only.contains("percentilesExact"))
+		{
+			runner.measure("percentilesExact", rows,
+					percentiles(records, new BucketStatsFactory(BucketStatsFactory.Mode.EXACT, 0)));
+		}
+		if (only.contains("percentilesSketch"))
+		{
+			runner.measure("percentilesSketch", rows, percentiles(records,
+					new BucketStatsFactory(BucketStatsFactory.Mode.SKETCH, SketchBucketStats.DEFAULT_K)));
+		}
+
+		if (only.contains("jaxbUnmarshal"))
+		{
+			final JAXBContext context = FindingServiceClientFactory.getJAXBContext();
+			final byte[] response = cannedResponse(context, records);
+			final int responses = Math.max(1, rows / RESPONSE_ITEMS);
+			runner.measure("jaxbUnmarshal", (long)responses * RESPONSE_ITEMS, new BenchmarkRunner.Benchmark() {
+				public Object run() throws Exception
+				{
+					Unmarshaller unmarshaller = context.createUnmarshaller();
+					int items = 0;
+					for (int i = 0; i < responses; i++)
+					{
+						FindCompletedItemsResponse parsed = unmarshaller.unmarshal(
+								new StreamSource(new ByteArrayInputStream(response)), FindCompletedItemsResponse.class)
+								.getValue();
+						items += parsed.getSearchResult().getCount();
+					}
+					return items;
+				}
+			});
+		}
+
+		if (only.contains("itemListPrintWriter"))
+		{
+			final File itemList = new File(tempDir, "items.txt");
+			runner.measure("itemListPrintWriter", rows, new BenchmarkRunner.Benchmark() {
+				public Object run() throws Exception
+				{
+					PrintWriter out = new PrintWriter(itemList);
+					for (ItemRecord item : records)
+					{
+						out.println(item.getTitle());
+						out.println(item.getPrice());
+						out.println(new Date(item.getEndTime()));
+						out.println(item.getListingType());
+						out.println(item.getSellingState());
+						out.println(item.getCondition());
+						out.println();
+					}
+					out.close();
+					return itemList.length();
+				}
+			});
+			itemList.delete();
+		}
+
+		for (final String[] format : ITEM_LIST_FORMATS)
+		{
+			if (only.contains(format[0]))
+			{
+				final File itemList = new File(tempDir, "items");
+				runner.measure(format[0], rows, new BenchmarkRunner.Benchmark() {
+					public Object run() throws Exception
+					{
+						ReportEncoder encoder = ReportEncoders.open(format[1], itemList.getPath());
+						for (ItemRecord item : records)
+						{
+							encoder.item(item);
+						}
+						encoder.close();
+						return encoder;
+					}
+				});
+				for (File file : tempDir.listFiles())
+				{
+					if (file.getName().startsWith("items."))
+					{
+						file.delete();
+					}
+				}
+			}
+		}
+	}
+
+	private static BenchmarkRunner.Benchmark fullReport(final PriceColumns columns, final BucketStatsFactory factory)
+	{
+		return new BenchmarkRunner.Benchmark() {
+			public Object run() throws Exception
+			{
+				ReportEncoder report = nullReport();
+				AnalyzeEbay.printFullReport(columns, factory, report);
+				report.close();
+				return report;
+			}
+		};
+	}
+
+	private static BenchmarkRunner.Benchmark percentiles(final List<ItemRecord> records,
+			final BucketStatsFactory factory)
+	{
+		return new BenchmarkRunner.Benchmark() {
+			public Object run() throws Exception
+			{
+				BucketStats stats = factory.newBucketStats();
+				for (ItemRecord record : records)
+				{
+					stats.addValue(record.getPrice());
+				}
+				ReportEncoder report = nullReport();
+				report.stats("All items", stats);
+				report.close();
+				return stats;
+			}
+		};
+	}
+
+	/**
+	 * Private helper that creates a text report encoder that discards what it writes
+	 */
+	private static ReportEncoder nullReport() throws IOException
+	{
+		return ReportEncoders.forFormat(ReportEncoders.TEXT,
+				new ReportOutput(Channels.newChannel(NullOutputStream.INSTANCE), ReportOutput.DEFAULT_BUFFER_SIZE));
+	}
+
+	/**
+	 * Private helper that writes records as a blob file of old versions of the program. The stream is reset every
+	 * so often, as the handle table of an object stream that is never reset keeps every written item reachable.
+	 * @param records - the records to write
+	 * @param blob - the blob file
+	 * @throws IOException
+	 */
+	private static void writeBlob(List<ItemRecord> records, File blob) throws IOException
+	{
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(blob)));
+		try
+		{
+			int written = 0;
+			for (ItemRecord record : records)
+			{
+				out.writeObject(SyntheticItems.searchItem(record));
+				if (++written % BLOB_RESET_INTERVAL == 0)
+				{
+					out.reset();
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Private helper that reads a blob file the way migrateBlob does
+	 * @param blob - the blob file
+	 * @return the records of the blob
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	private static List<ItemRecord> readBlob(File blob) throws IOException, ClassNotFoundException
+	{
+		List<ItemRecord> records = new ArrayList<ItemRecord>();
+		ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(blob)));
+		try
+		{
+			while (true)
+			{
+				records.add(ItemRecord.fromSearchItem((SearchItem)in.readObject()));
+			}
+		}
+		catch (EOFException e)
+		{
+			return records;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Private helper that marshals a FindCompletedItems response with the first items of the records
+	 * @param context - the JAXB context of the Finding service
+	 * @param records - the records
+	 * @return the XML of the response
+	 * @throws Exception
+	 */
+	private static byte[] cannedResponse(JAXBContext context, List<ItemRecord> records) throws Exception
+	{
+		FindCompletedItemsResponse response = new FindCompletedItemsResponse();
+		response.setAck(AckValue.SUCCESS);
+		response.setVersion("1.13.0");
+		SearchResult result = new SearchResult();
+		for (int i = 0; i < RESPONSE_ITEMS && i < records.size(); i++)
+		{
+			result.getItem().add(SyntheticItems.searchItem(records.get(i)));
+		}
+		result.setCount(result.getItem().size());
+		response.setSearchResult(result);
+		PaginationOutput pagination = new PaginationOutput();
+		pagination.setPageNumber(1);
+		pagination.setEntriesPerPage(RESPONSE_ITEMS);
+		pagination.setTotalPages(Math.max(1, records.size() / RESPONSE_ITEMS));
+		pagination.setTotalEntries(records.size());
+		response.setPaginationOutput(pagination);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.marshal(new ObjectFactory().createFindCompletedItemsResponse(response), out);
+		return out.toByteArray();
+	}
+
+	private static void deleteRecursively(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Output stream that discards everything, so the reports are formatted but not written anywhere
+	 */
+	private static class NullOutputStream extends OutputStream
+	{
+		static final NullOutputStream INSTANCE = new NullOutputStream();
+
+		@Override
+		public void write(int b)
+		{
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+		}
+	}
+}
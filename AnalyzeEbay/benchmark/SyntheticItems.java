@@ -0,0 +1,94 @@
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import com.ebay.services.finding.Amount;
+import com.ebay.services.finding.Condition;
+import com.ebay.services.finding.ListingInfo;
+import com.ebay.services.finding.SearchItem;
+import com.ebay.services.finding.SellerInfo;
+import com.ebay.services.finding.SellingStatus;
+
+/**
+ * Deterministic synthetic items for the benchmarks.
+ *
+ * Items end over the 90 days before a fixed time in random order, with log-normal prices around $60, a mix of listing
+ * types and conditions, and every tenth item repeating the id of an earlier one (as overlapping pages do).
+ */
+public class SyntheticItems
+{
+	private static final long END = 1475280000000L;		//2016-10-01T00:00:00Z
+	private static final long SPAN_MILLIS = 90L * 24 * 60 * 60 * 1000;
+	private static final long ID_BASE = 110000000000L;
+	private static final String[] LISTING_TYPES = {"Auction", "FixedPrice", "StoreInventory", "AuctionWithBIN"};
+	private static final int[] CONDITION_IDS = {1000, 1500, 3000, 7000};
+	private static final String[] CONDITIONS = {"New", "New other", "Used", "For parts or not working"};
+
+	private SyntheticItems()
+	{
+	}
+
+	/**
+	 * Creates item records
+	 * @param rows - the number of records
+	 * @param seed - the seed of the random values, the same seed gives the same records
+	 * @return the records
+	 */
+	public static List<ItemRecord> records(int rows, long seed)
+	{
+		Random random = new Random(seed);
+		List<ItemRecord> records = new ArrayList<ItemRecord>(rows);
+		for (int i = 0; i < rows; i++)
+		{
+			long id = i % 10 == 9 ? ID_BASE + random.nextInt(i) : ID_BASE + i;
+			double price = Math.round(Math.exp(4.1 + 0.8 * random.nextGaussian()) * 100) / 100.0;
+			long endTime = END - (long)(random.nextDouble() * SPAN_MILLIS);
+			int condition = random.nextInt(CONDITION_IDS.length);
+			records.add(new ItemRecord(Long.toString(id), price, "USD", endTime,
+					LISTING_TYPES[random.nextInt(LISTING_TYPES.length)], CONDITION_IDS[condition], CONDITIONS[condition],
+					"Synthetic item " + i, "seller" + random.nextInt(5000), "EndedWithSales"));
+		}
+		return records;
+	}
+
+	/**
+	 * Creates the SearchItem a record could have been made from
+	 * @param record - the record
+	 * @return the search item
+	 */
+	public static SearchItem searchItem(ItemRecord record)
+	{
+		SearchItem item = new SearchItem();
+		item.setItemId(record.getItemId());
+		item.setTitle(record.getTitle());
+
+		Amount price = new Amount();
+		price.setCurrencyId(record.getCurrency());
+		price.setValue(record.getPrice());
+		SellingStatus sellingStatus = new SellingStatus();
+		sellingStatus.setCurrentPrice(price);
+		sellingStatus.setConvertedCurrentPrice(price);
+		sellingStatus.setSellingState(record.getSellingState());
+		item.setSellingStatus(sellingStatus);
+
+		Calendar endTime = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+		endTime.setTimeInMillis(record.getEndTime());
+		ListingInfo listingInfo = new ListingInfo();
+		listingInfo.setEndTime(endTime);
+		listingInfo.setListingType(record.getListingType());
+		item.setListingInfo(listingInfo);
+
+		Condition condition = new Condition();
+		condition.setConditionId(record.getConditionId());
+		condition.setConditionDisplayName(record.getCondition());
+		item.setCondition(condition);
+
+		SellerInfo sellerInfo = new SellerInfo();
+		sellerInfo.setSellerUserName(record.getSeller());
+		item.setSellerInfo(sellerInfo);
+		return item;
+	}
+}
@@ -1,46 +1,49 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
-
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
+import com.ebay.common.RateLimiter;
+import com.ebay.common.ServiceClientPool;
+import com.ebay.common.metrics.ServiceMetrics;
 import com.ebay.services.client.ClientConfig;
-import com.ebay.services.client.FindingServiceClientFactory;
 import com.ebay.services.finding.FindCompletedItemsRequest;
-import com.ebay.services.finding.FindCompletedItemsResponse;
-import com.ebay.services.finding.FindingServicePortType;
 import com.ebay.services.finding.ItemFilter;
 import com.ebay.services.finding.ItemFilterType;
-import com.ebay.services.finding.PaginationInput;
+import com.ebay.services.finding.PaginationOutput;
 import com.ebay.services.finding.SearchItem;
+import com.ebay.services.finding.SortOrderType;
 
 /**
  * AnalyzeEbay command line program main class.
  * 
  * Program to be run as jar as: 
  * "analyzeEbay keyword1 keyword2 keyword3 ... --unb --min(optional) min --max(optional) max"
+ * or, to run many queries in one JVM, as "analyzeEbay --batch manifest" (see BatchRunner)
+ * or, to keep refreshing them on a schedule, as "analyzeEbay --daemon manifest" (see QueryDaemon)
  * 
  * Finds items that sold on ebay between the min and max price specified with the condition specified.
  * 
  * Stores results in a file unique to the search query. First searches for existence of this file and
- * will read from and add to it. (keyword1 keyword2 ... <Condition> --min(min)--max(max))
+ * will read from and append the new items to it. (ItemStores/keyword1 keyword2 ... <Condition> --min(min)--max(max).items)
  * 
  * Constructs report of summary stats of the items that were found in the search in a text file of the 
  * same name. (keyword1 keyword2 ... <Condition> --min(min)--max(max).txt) Also prints out a readable item
@@ -65,11 +68,14 @@ public class AnalyzeEbay
 	private static final String NEW_OPTION = "--n";
 	private static final String BROKEN_OPTION = "--b";
 	
-	private static final String TXT_EXT = ".txt";
+	private static final String ITEM_STORE_EXT = ".items";
+	private static final String CHECKPOINT_EXT = ".checkpoint";
+	private static final String SAVED_REPORT_EXT = ".stats";
 	
 	private static final String ITEMS_ALREADY_IN_FILE = "Items already in file: ";
 	private static final String REACHED_EOF = "Reached end of file";
 	private static final String EXISTING_FILE_NOT_FOUND = "Existing file not found";
+	private static final String MIGRATED_BLOB = "Items migrated from blob file: ";
 	
 	private static final String USED_CONDITION = "Used";	//includes used, refurbished, or for parts. Excludes items with new or unspecified conditions
 	private static final String NEW_CONDITION = "New";		//excludes used, refurbished, for parts, or unspecified conditions
@@ -98,8 +104,51 @@ public class AnalyzeEbay
 		    For parts or not working 
 	 */
 	
-	private static final String PAGE = "Page";
+	private static final int ITEMS_PER_PAGE = 100;
+	private static final int NUM_FETCH_THREADS = 8;
+	private static final int CHECKPOINT_PAGES = 10;		//pages fetched between saving the new items and a checkpoint
+	
+	private static final String PAGES_FETCHED = "Pages fetched: ";
+	private static final String CLIENT_POOL = "Client pool: ";
+	private static final String RATE_LIMITER = "Rate limiter: ";
+	static final String RESPONSE_CACHE_STATS = "Response cache: ";
+	private static final String METRICS_WRITTEN = "Service metrics: ";
+	private static final String END_TIME_FROM = "Fetching items that ended from: ";
+	private static final String END_TIME_TO = "Fetching items that ended up to: ";
+	private static final String RESUMING = "Resuming interrupted harvest after page ";
+	private static final String CHECKPOINT_SAVED = "Harvest checkpoint saved after page ";
+	private static final String HARVEST_FAILED = "Harvest failed: ";
+	private static final String SAVED_REPORT_ROWS = "Report stats read from the saved report, rows: ";
+	
+	private static final String SOAP_LOG_FILE_PROPERTY = "analyzeebay.soapLogFile";
+	private static final String SOAP_LOG_SAMPLE_PROPERTY = "analyzeebay.soapLogSample";
+	private static final String SOAP_LOG_MAX_BYTES_PROPERTY = "analyzeebay.soapLogMaxBytes";
+	private static final String ENDPOINT_PROPERTY = "analyzeebay.endpoint";
+	private static final String CALLS_PER_SECOND_PROPERTY = "analyzeebay.callsPerSecond";
+	private static final String DAILY_CALL_BUDGET_PROPERTY = "analyzeebay.dailyCallBudget";
+	private static final int DEFAULT_DAILY_CALL_BUDGET = 5000;	//default call limit of the finding api
+	private static final String CALL_BUDGET_FILE = "CallBudget.txt";
+	//Set -Danalyzeebay.streamingParser=all (or a list of the optional fields, e.g. TITLE,SELLER) to read the pages with a
+	//StAX parser instead of JAXB; optional fields that aren't listed are left empty in the stored items
+	private static final String STREAMING_PARSER_PROPERTY = "analyzeebay.streamingParser";
 	
+	//Set -Danalyzeebay.cacheTtlMinutes=minutes to take pages requested again within that time from a ResponseCache
+	//instead of calling the service, see ResponseCache for its other properties
+	static final ResponseCache RESPONSE_CACHE = ResponseCache.fromSystemProperties();
+	
+	//Set -Danalyzeebay.shardHarvest=true to split a search with more items than the service pages through into shards
+	//(see ShardedHarvester); a sharded harvest isn't checkpointed by page, one that fails is harvested again
+	private static final String SHARD_HARVEST_PROPERTY = "analyzeebay.shardHarvest";
+	private static final int MAX_PARALLEL_SHARDS = 4;
+	private static final String SHARDS = "Shards: ";
+	
+	//Set -Danalyzeebay.fullHarvest=true to fetch every page again instead of only items newer than the stored ones
+	private static final String FULL_HARVEST_PROPERTY = "analyzeebay.fullHarvest";
+	//Items can show up in the search a while after they end, so the newest stored end time is backed off by this much
+	private static final long HIGH_WATER_OVERLAP_MILLIS = 6L * 60 * 60 * 1000;
+	//A report kept between refreshes of a query, or saved between runs, is worked out again from all its rows once it's
+	//this old, so its weeks are counted back from close to the current time
+	static final long REPORT_REBUILD_MILLIS = EpochTime.DAY_MILLIS;
 	private static final String NUM_DUP = "Number of Duplicates: ";
 	private static final String NUM_NEW = "Number of New Items: ";
 	
@@ -126,18 +175,50 @@ public class AnalyzeEbay
 	
 	private static final String WEEKLY_AVERAGE = "Weekly Average Over Time";
 	
+	private static final String LISTING_TYPE = "Listing Type";
+	private static final String DAY_OF_WEEK = "Day of Week";
+	private static final String HOUR_BAND = "Hour Band";
+	private static final String WEEK = "Week";
+	
+	
 	private static final String BLOB_DIR = "BlobObjectes/";
+	private static final String ITEM_STORE_DIR = "ItemStores/";
+	static final String ITEM_INDEX_DIR = "ItemIndex/";
+	private static final String PRICE_COLUMN_DIR = "PriceColumns/";
 	private static final String ITEM_DIR = "ItemLists/";
 	private static final String SUMMARY_DIR = "SummaryReports/";
+	private static final String METRICS_DIR = "Metrics/";
+	private static final String CHECKPOINT_DIR = "Checkpoints/";
+	private static final String SAVED_REPORT_DIR = "SavedReports/";
+	
+	/** Orders items by end time, newest first **/
+	static final Comparator<ItemRecord> NEWEST_FIRST = new Comparator<ItemRecord>() {
+		@Override
+		public int compare(ItemRecord o1, ItemRecord o2) 
+		{
+			return Long.compare(o2.getEndTime(), o1.getEndTime());
+		}
+	};
 	
 	/**
 	 * Entry point for the analyze ebay command line program
-	 * @param args - keywords and min and max should be specified on the command line as keyword1 keyword2 ... --ubn --min min --max max
+	 * @param args - keywords and min and max should be specified on the command line as keyword1 keyword2 ... --ubn --min min --max max,
+	 * or --batch manifest to run every query of a manifest file (see BatchRunner), or --daemon manifest to keep
+	 * refreshing them (see QueryDaemon)
 	 * @throws IOException
 	 * @throws ClassNotFoundException
 	 */
     public static void main(String[] args) throws IOException, ClassNotFoundException {
         
+    	if (args.length > 0 && args[0].equals(BatchRunner.BATCH_OPTION))
+    	{
+    		System.exit(BatchRunner.run(args));
+    	}
+    	if (args.length > 0 && args[0].equals(QueryDaemon.DAEMON_OPTION))
+    	{
+    		System.exit(QueryDaemon.run(args));
+    	}
+    	
     	/** Process command line arguments **/
         Object[] commandLineResult = processCommandLineArgs(args);
         
@@ -146,50 +227,111 @@ public class AnalyzeEbay
         	System.err.println((String)commandLineResult[0]);
         	System.exit(1);
         }
+        /** End process command line arguments **/
         
-        String keywords = (String)commandLineResult[1];
-        boolean minSet = false;
-        boolean maxSet = false;
-        double min = -1;
-        double max = -1;
-        String condition = USED_CONDITION;
+        createDirectories();
         
-        if (commandLineResult[2] != null)
+        ClientConfig config = newClientConfig();
+        ExecutorService fetchWorkers = Executors.newFixedThreadPool(NUM_FETCH_THREADS);
+        ItemIdIndex itemIdIndex = new ItemIdIndex(new File(ITEM_INDEX_DIR));
+        try
         {
-        	minSet = true;
-        	min = (Double)commandLineResult[2];
+        	runQuery(commandLineResult, config, fetchWorkers, itemIdIndex, NUM_FETCH_THREADS, RateLimiter.DEFAULT_PRIORITY,
+        			System.out);
         }
-        if (commandLineResult[3] != null)
+        finally
         {
-        	maxSet = true;
-            max = (Double)commandLineResult[3];
+        	itemIdIndex.close();
+        	fetchWorkers.shutdownNow();
+        	System.out.println(CLIENT_POOL + ServiceClientPool.getStats());
+        	System.out.println(RATE_LIMITER + RateLimiter.forApplication(config));
+        	if (RESPONSE_CACHE != null)
+        	{
+        		System.out.println(RESPONSE_CACHE_STATS + RESPONSE_CACHE);
+        	}
+        	writeMetricsSummary(System.out);
         }
+    }
+    
+    /**
+     * @return a new client config for the finding service with the application id of the program
+     */
+    static ClientConfig newClientConfig()
+    {
+        // initialize service end-point configuration
+        ClientConfig config = new ClientConfig(); config.setApplicationId(APPLICATION_ID);
         
-        int conditionInt = (Integer)commandLineResult[4];
-        if (conditionInt == 0)
+        //-Danalyzeebay.endpoint=url points the program at another finding service, e.g. a FindingServiceStub
+        String endpoint = System.getProperty(ENDPOINT_PROPERTY);
+        if (endpoint != null)
         {
-        	condition = USED_CONDITION;
+        	config.setEndPointAddress(endpoint);
         }
-        else if (conditionInt == 1)
+        
+        //-Danalyzeebay.soapLogFile=file streams the raw soap messages to a rotating file instead of pretty printing them
+        String soapLogFile = System.getProperty(SOAP_LOG_FILE_PROPERTY);
+        if (soapLogFile != null)
         {
-        	condition = NEW_CONDITION;
+        	config.setSoapMessagePrettyPrint(false);
+        	config.setSoapMessageLogFile(soapLogFile);
         }
-        else if (conditionInt == 2)
+        String soapLogSample = System.getProperty(SOAP_LOG_SAMPLE_PROPERTY);
+        if (soapLogSample != null)
         {
-        	condition = BROKEN_CONDITION;
+        	config.setSoapMessageLogSampleRate(Double.parseDouble(soapLogSample));
         }
-        System.out.println(condition);
-        
-        /** End process command line arguments **/
+        config.setSoapMessageLogMaxBytes(Integer.getInteger(SOAP_LOG_MAX_BYTES_PROPERTY, 0));
         
-        /** Check for the necessary directories where the output files will be located and create if necessary **/
-        File blobDir = new File(BLOB_DIR);
+        //calls are counted against the daily limit of the application id across runs, and paused when throttled
+        String callsPerSecond = System.getProperty(CALLS_PER_SECOND_PROPERTY);
+        if (callsPerSecond != null)
+        {
+        	config.setRateLimitCallsPerSecond(Double.parseDouble(callsPerSecond));
+        }
+        config.setDailyCallBudget(Integer.getInteger(DAILY_CALL_BUDGET_PROPERTY, DEFAULT_DAILY_CALL_BUDGET));
+        config.setCallBudgetLedgerFile(CALL_BUDGET_FILE);
+        return config;
+    }
+    
+    /**
+     * Writes the service call metrics of the run as JSON to a file of its own in the metrics directory
+     * @param log - print stream the name of the file is printed to
+     */
+    static void writeMetricsSummary(PrintStream log)
+    {
+    	File metricsDir = new File(METRICS_DIR);
+    	if (!metricsDir.exists())
+    	{
+    		metricsDir.mkdir();
+    	}
+    	
+    	File metricsFile = new File(metricsDir, "run-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+    	try
+    	{
+    		PrintWriter metricsOutput = new PrintWriter(metricsFile, "UTF-8");
+    		ServiceMetrics.writeSummary(metricsOutput);
+    		metricsOutput.close();
+    		log.println(METRICS_WRITTEN + metricsFile.getPath());
+    	}
+    	catch (IOException e)
+    	{
+    		e.printStackTrace(log);
+    	}
+    }
+    
+    /**
+     * Creates the directories the output files are written to if they don't exist yet
+     */
+    static void createDirectories()
+    {
+        File itemStoreDir = new File(ITEM_STORE_DIR);
         File itemDir = new File(ITEM_DIR);
         File summaryDir = new File(SUMMARY_DIR);
+        File checkpointDir = new File(CHECKPOINT_DIR);
         
-        if (!blobDir.exists())
+        if (!itemStoreDir.exists())
         {
-            blobDir.mkdir();
+            itemStoreDir.mkdir();
         }
         if (!itemDir.exists())
         {
@@ -199,380 +341,912 @@ public class AnalyzeEbay
         {
             summaryDir.mkdir();
         }
+        if (!checkpointDir.exists())
+        {
+        	checkpointDir.mkdir();
+        }
+    }
+    
+    /**
+     * Gets the name the files of a query are stored under
+     * @param commandLineResult - the processed command line arguments of the query, without an error
+     * @return the file name
+     */
+    static String queryFileName(Object[] commandLineResult)
+    {
+        double min = commandLineResult[2] != null ? (Double)commandLineResult[2] : -1;
+        double max = commandLineResult[3] != null ? (Double)commandLineResult[3] : -1;
         
-        /** End create directories **/
+        String fileName = (String)commandLineResult[1] + " " + conditionOf(commandLineResult) + " " + MIN_COMMAND_OPTION + Double.toString(min) + " " + MAX_COMMAND_OPTION + Double.toString(max);
+        return fileName.replace("/", "");
+    }
+    
+    /**
+     * Private helper that gets the condition filter value of a query
+     * @param commandLineResult - the processed command line arguments of the query
+     * @return the condition
+     */
+    private static String conditionOf(Object[] commandLineResult)
+    {
+        int conditionInt = (Integer)commandLineResult[4];
+        if (conditionInt == 1)
+        {
+        	return NEW_CONDITION;
+        }
+        else if (conditionInt == 2)
+        {
+        	return BROKEN_CONDITION;
+        }
+        return USED_CONDITION;
+    }
+    
+    /**
+     * Runs a single query: reads the stored items, fetches the new ones, stores them and prints the reports.
+     * The output directories must already exist.
+     * @param commandLineResult - the processed command line arguments of the query, without an error
+     * @param config - the client config, shared by queries so they share pooled service clients
+     * @param fetchWorkers - the pool the pages are fetched on
+     * @param itemIdIndex - the index of the stored item ids, shared by queries
+     * @param maxPagesInFlight - the most pages of this query fetched at once
+     * @param priority - the priority the calls of this query wait for the rate limiter with, higher goes first
+     * @param log - print stream the progress of the query is printed to
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    static void runQuery(Object[] commandLineResult, ClientConfig config, ExecutorService fetchWorkers,
+    		ItemIdIndex itemIdIndex, int maxPagesInFlight, int priority, PrintStream log) throws IOException, ClassNotFoundException
+    {
+    	QueryState state = loadQuery(commandLineResult, itemIdIndex, log);
+    	refreshQuery(state, config, fetchWorkers, maxPagesInFlight, priority, log);
+    }
+    
+    /**
+     * Reads the stored items of a query into memory, moving the items of an old blob file into the item store and
+     * bringing the item id index and price columns back in step with the item store first if they need it.
+     * @param commandLineResult - the processed command line arguments of the query, without an error
+     * @param itemIdIndex - the index of the stored item ids, shared by queries
+     * @param log - print stream the progress of the query is printed to
+     * @return the state of the query, to be refreshed
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    static QueryState loadQuery(Object[] commandLineResult, ItemIdIndex itemIdIndex, PrintStream log)
+    		throws IOException, ClassNotFoundException
+    {
+        QueryState state = new QueryState(commandLineResult, itemIdIndex);
+        log.println(state.condition);
         
         /** Read in any existing items **/
-        HashMap<String, SearchItem> allItemsMap = new HashMap<String, SearchItem>();
-
-        String fileName = keywords + " " + condition + " " + MIN_COMMAND_OPTION + Double.toString(min) + " " + MAX_COMMAND_OPTION + Double.toString(max);
-        fileName = fileName.replace("/", "");
-        
-        File file = new File(BLOB_DIR + fileName);
+        File blobFile = new File(BLOB_DIR + state.fileName);
 
-        System.out.println(file.getAbsolutePath());
-        System.out.println(file.exists());
+        log.println(state.itemStore.getFile().getAbsolutePath());
+        log.println(state.itemStore.exists());
         
-        PrintWriter summaryReportOutput = new PrintWriter(SUMMARY_DIR + fileName + TXT_EXT);
-        PrintWriter itemOutput = new PrintWriter(ITEM_DIR + fileName + "_items" + TXT_EXT);
+        //Items saved by older versions are moved into the item store once
+        if (!state.itemStore.exists() && blobFile.exists())
+        {
+        	migrateBlob(blobFile, state.itemStore, log);
+        }
         
     	//Read in all existing items from the file (if any)
-        if (file.exists())
+        if (state.itemStore.exists())
         {
-        	FileInputStream fileInputStream = new FileInputStream(file);
-        	ObjectInputStream objInputStream = new ObjectInputStream(fileInputStream);
-        	
+        	ItemStore.RecordReader reader = state.itemStore.openReader();
         	try
         	{
-        		while(true)
-            	{
-    	        	SearchItem item = (SearchItem) objInputStream.readObject();
-    	        	allItemsMap.put(item.getItemId(), item);
-            	}
+        		ItemRecord record;
+        		while ((record = reader.next()) != null)
+        		{
+        			state.allItemsList.add(record);
+        			state.highWaterMark = Math.max(state.highWaterMark, record.getEndTime());
+        		}
         	}
-        	catch (EOFException e)
+        	finally
         	{
-        		System.out.println(ITEMS_ALREADY_IN_FILE + allItemsMap.size());
-        		summaryReportOutput.println(ITEMS_ALREADY_IN_FILE + allItemsMap.size());
-        		summaryReportOutput.println(REACHED_EOF);
-        		fileInputStream.close();
-        		objInputStream.close();
+        		reader.close();
         	}
+        	
+    		log.println(ITEMS_ALREADY_IN_FILE + state.allItemsList.size());
         }
         else
         {
-        	System.out.println(EXISTING_FILE_NOT_FOUND);
-        	summaryReportOutput.println(EXISTING_FILE_NOT_FOUND);
+        	log.println(EXISTING_FILE_NOT_FOUND);
+        }
+        
+        //The item id index and price columns are derived from the item store, bring them back in step if they're not
+        if (state.knownItemIds.size() != state.allItemsList.size())
+        {
+        	state.knownItemIds.resync(state.allItemsList);
+        }
+        
+        if (state.priceColumns.countRows() != state.allItemsList.size())
+        {
+        	state.priceColumns.rebuild(state.allItemsList);
         }
+        
+        /** Sort the items into a list by date **/
+		sortNewestFirst(state.allItemsList);
         /** End read in any existing items **/
+		
+		return state;
+    }
+    
+    /**
+     * Fetches the items of a query that are new since its state was loaded or last refreshed, stores them and prints
+     * the reports. The stats of the report are only worked out for the new items, unless the state doesn't have any
+     * yet or they are older than REPORT_REBUILD_MILLIS. If fetching the items fails, the items of the pages fetched
+     * so far are still stored and reported before the failure is thrown. An exception thrown by this method may leave
+     * the state out of step with the stored items, it has to be loaded again.
+     * @param state - the state of the query, updated with the new items
+     * @param config - the client config, shared by queries so they share pooled service clients
+     * @param fetchWorkers - the pool the pages are fetched on
+     * @param maxPagesInFlight - the most pages of this query fetched at once
+     * @param priority - the priority the calls of this query wait for the rate limiter with, higher goes first
+     * @param log - print stream the progress of the query is printed to
+     * @return the number of new items
+     * @throws IOException - if fetching the items failed, with the failure as the cause, or the files can't be written
+     */
+    static int refreshQuery(QueryState state, ClientConfig config, ExecutorService fetchWorkers, int maxPagesInFlight,
+    		int priority, PrintStream log) throws IOException
+    {
+        String keywords = (String)state.commandLineResult[1];
+        boolean minSet = false;
+        boolean maxSet = false;
+        double min = -1;
+        double max = -1;
+        String condition = state.condition;
+        
+        if (state.commandLineResult[2] != null)
+        {
+        	minSet = true;
+        	min = (Double)state.commandLineResult[2];
+        }
+        if (state.commandLineResult[3] != null)
+        {
+        	maxSet = true;
+            max = (Double)state.commandLineResult[3];
+        }
+        
+        HarvestCheckpoint checkpoint = new HarvestCheckpoint(new File(CHECKPOINT_DIR + state.fileName + CHECKPOINT_EXT));
+        
+        String reportFormat = ReportEncoders.formatFromSystemProperties();
+        ReportEncoder summaryReport = ReportEncoders.open(reportFormat, SUMMARY_DIR + state.fileName);
+        ReportEncoder itemReport = null;
+        try
+        {
+        	itemReport = ReportEncoders.open(reportFormat, ITEM_DIR + state.fileName + "_items");
+        
+        	if (state.itemStore.exists())
+        	{
+	    		summaryReport.note(ITEMS_ALREADY_IN_FILE + state.allItemsList.size());
+	    		summaryReport.note(REACHED_EOF);
+        	}
+        	else
+        	{
+        		summaryReport.note(EXISTING_FILE_NOT_FOUND);
+        	}
         
-        /** Make an API call **/
-        try {
-            // initialize service end-point configuration
-            ClientConfig config = new ClientConfig(); config.setApplicationId(APPLICATION_ID);
-            //create a service client
-            FindingServicePortType serviceClient = FindingServiceClientFactory.getServiceClient(config);
-            //create request object
-            FindCompletedItemsRequest request = new FindCompletedItemsRequest();
+        	/** Make an API call **/
+        	List<ItemRecord> newItems = new ArrayList<ItemRecord>();
+        	HarvestSaver saver = new HarvestSaver(state.itemStore, state.priceColumns, state.knownItemIds, newItems, checkpoint);
+        	Exception harvestFailure = null;
+        	try {
+        	    //create request object
+        	    FindCompletedItemsRequest request = new FindCompletedItemsRequest();
             
-            //set request parameters
-            System.out.println(keywords);
-            request.setKeywords(keywords);
+        	    //set request parameters
+        	    log.println(keywords);
+        	    request.setKeywords(keywords);
 
-            ItemFilter soldItemFilter = new ItemFilter();
-            soldItemFilter.setName(ItemFilterType.SOLD_ITEMS_ONLY);
-            soldItemFilter.getValue().add(Boolean.toString(true));
-            request.getItemFilter().add(soldItemFilter);
+        	    ItemFilter soldItemFilter = new ItemFilter();
+        	    soldItemFilter.setName(ItemFilterType.SOLD_ITEMS_ONLY);
+        	    soldItemFilter.getValue().add(Boolean.toString(true));
+        	    request.getItemFilter().add(soldItemFilter);
             
-            ItemFilter conditionItemFilter = new ItemFilter();
-            conditionItemFilter.setName(ItemFilterType.CONDITION);
-            conditionItemFilter.getValue().add(condition);
-            request.getItemFilter().add(conditionItemFilter);
+        	    ItemFilter conditionItemFilter = new ItemFilter();
+        	    conditionItemFilter.setName(ItemFilterType.CONDITION);
+        	    conditionItemFilter.getValue().add(condition);
+        	    request.getItemFilter().add(conditionItemFilter);
                         
-            if (minSet)
-            {
-            	ItemFilter minItemFilter = new ItemFilter();
-                minItemFilter.setName(ItemFilterType.MIN_PRICE);
-                minItemFilter.getValue().add(Double.toString(min));
-                request.getItemFilter().add(minItemFilter);
-            }
+        	    if (minSet)
+        	    {
+        	    	ItemFilter minItemFilter = new ItemFilter();
+        	        minItemFilter.setName(ItemFilterType.MIN_PRICE);
+        	        minItemFilter.getValue().add(Double.toString(min));
+        	        request.getItemFilter().add(minItemFilter);
+        	    }
             
-            if (maxSet)
-            {
-            	 ItemFilter maxItemFilter = new ItemFilter();
-                 maxItemFilter.setName(ItemFilterType.MAX_PRICE);
-                 maxItemFilter.getValue().add(Double.toString(max));
-                 request.getItemFilter().add(maxItemFilter);
-            }
-    
-            //call service 
-            int currPageNum = 1;
-            int itemsPerPage = 100;
-            
-            int numDup = 0;
-            int numNewItems = 0;
+        	    if (maxSet)
+        	    {
+        	    	 ItemFilter maxItemFilter = new ItemFilter();
+        	         maxItemFilter.setName(ItemFilterType.MAX_PRICE);
+        	         maxItemFilter.getValue().add(Double.toString(max));
+        	         request.getItemFilter().add(maxItemFilter);
+        	    }
             
-            PaginationInput pi = new PaginationInput();
-            pi.setPageNumber(currPageNum);
-            pi.setEntriesPerPage(itemsPerPage);
-            request.setPaginationInput(pi);
+        	    //a harvest that didn't finish is resumed with the same end time window, after its last stored page
+        	    int startPage = 1;
+        	    boolean incremental;
+        	    boolean resume;
+        	    try
+        	    {
+        	    	resume = checkpoint.load();
+        	    }
+        	    catch (IOException e)
+        	    {
+        	    	//a checkpoint that can't be read only costs fetching the pages again
+        	    	e.printStackTrace(log);
+        	    	checkpoint.delete();
+        	    	resume = false;
+        	    }
             
-            FindCompletedItemsResponse result = serviceClient.findCompletedItems(request);
+        	    if (resume)
+        	    {
+        	    	incremental = checkpoint.isIncremental();
+        	    	startPage = checkpoint.getLastCompletedPage() + 1;
+        	    	log.println(RESUMING + checkpoint.getLastCompletedPage() + "/" + checkpoint.getTotalPages());
+        	    	summaryReport.note(RESUMING + checkpoint.getLastCompletedPage() + "/" + checkpoint.getTotalPages());
+        	    }
+        	    else
+        	    {
+        	    	//only ask for items that ended after the newest stored one, so paging can stop at known items
+        	    	incremental = state.highWaterMark != Long.MIN_VALUE && !Boolean.getBoolean(FULL_HARVEST_PROPERTY);
+        	    	checkpoint.setIncremental(incremental);
+        	    	long endTimeFrom = state.highWaterMark - HIGH_WATER_OVERLAP_MILLIS;
+        	    	//items ending during the harvest would shift the pages, they're left for the next run
+        	    	long endTimeTo = System.currentTimeMillis();
+        	    	if (RESPONSE_CACHE != null)
+        	    	{
+        	    		//a window aligned to the time to live of the cache is the same for every run within it, so its pages
+        	    		//can be taken from the cache; items that ended since the start of the period are left to a later window
+        	    		endTimeFrom -= Math.floorMod(endTimeFrom, RESPONSE_CACHE.getTtlMillis());
+        	    		endTimeTo -= endTimeTo % RESPONSE_CACHE.getTtlMillis();
+        	    	}
+        	    	checkpoint.setEndTimeFrom(incremental ? formatEndTime(endTimeFrom) : null);
+        	    	checkpoint.setEndTimeTo(formatEndTime(endTimeTo));
+        	    }
             
-            while (result.getSearchResult() != null && result.getSearchResult().getItem() != null && !result.getSearchResult().getItem().isEmpty()
-            		&& currPageNum <= result.getPaginationOutput().getTotalPages())
-            {
-            	System.out.println(PAGE + currPageNum);
-            	List<SearchItem> items = result.getSearchResult().getItem();
+        	    if (checkpoint.getEndTimeFrom() != null)
+        	    {
+        	    	ItemFilter endTimeFromFilter = new ItemFilter();
+        	    	endTimeFromFilter.setName(ItemFilterType.END_TIME_FROM);
+        	    	endTimeFromFilter.getValue().add(checkpoint.getEndTimeFrom());
+        	    	request.getItemFilter().add(endTimeFromFilter);
             	
-	        	for (SearchItem item : items)
-	        	{
-	        		if (allItemsMap.containsKey(item.getItemId()))
-	        		{
-	        			numDup++;
-	        		}
-	        		else
-	        		{
-	        			numNewItems++;
-	        			allItemsMap.put(item.getItemId(), item);	        			
-	        		}
-	        	}
-	        	
-	        	currPageNum++;
-	        	pi = new PaginationInput();
-	            pi.setPageNumber(currPageNum);
-	            pi.setEntriesPerPage(itemsPerPage);
-	            request.setPaginationInput(pi);
-	            
-	        	result = serviceClient.findCompletedItems(request);
-            }
-            summaryReportOutput.println(NUM_DUP + numDup);
-            summaryReportOutput.println(NUM_NEW + numNewItems);
-            System.out.println(NUM_DUP + numDup);
-            System.out.println(NUM_NEW + numNewItems);
-        } 
-        catch (Exception ex) {
-            // handle exception if any 
-            ex.printStackTrace();
-        }
-        /** End make an API call **/
+        	    	log.println(END_TIME_FROM + checkpoint.getEndTimeFrom());
+        	    	summaryReport.note(END_TIME_FROM + checkpoint.getEndTimeFrom());
+        	    }
+        	    if (checkpoint.getEndTimeTo() != null)
+        	    {
+        	    	ItemFilter endTimeToFilter = new ItemFilter();
+        	    	endTimeToFilter.setName(ItemFilterType.END_TIME_TO);
+        	    	endTimeToFilter.getValue().add(checkpoint.getEndTimeTo());
+        	    	request.getItemFilter().add(endTimeToFilter);
+            	
+        	    	log.println(END_TIME_TO + checkpoint.getEndTimeTo());
+        	    }
+        	    //newest first in a fixed window keeps the pages stable, so a resumed harvest doesn't skip items
+        	    request.setSortOrder(SortOrderType.END_TIME_SOONEST);
+    
+        	    //call service, fetching the pages after the first in parallel
+        	    PageFetcher pageFetcher = new PageFetcher(config, fetchWorkers, ITEMS_PER_PAGE, maxPagesInFlight);
+        	    pageFetcher.setStopAtKnownPage(incremental);
+        	    pageFetcher.setPriority(priority);
+        	    pageFetcher.setResponseCache(RESPONSE_CACHE);
+        	    String streamingFields = System.getProperty(STREAMING_PARSER_PROPERTY);
+        	    if (streamingFields != null)
+        	    {
+        	    	pageFetcher.setStreamingParser(CompletedItemsParser.forFields(streamingFields));
+        	    }
+        	    PageFetcher.FetchResult fetchResult;
+        	    if (Boolean.getBoolean(SHARD_HARVEST_PROPERTY) && startPage == 1)
+        	    {
+        	    	//a search over the page cap is fetched as shards of price ranges and end time windows that fit
+        	    	ShardedHarvester harvester = new ShardedHarvester(pageFetcher, fetchWorkers, ITEMS_PER_PAGE, MAX_PARALLEL_SHARDS);
+        	    	List<ShardedHarvester.Shard> shards = harvester.plan(request, minSet ? min : 0,
+        	    			maxSet ? max : Double.POSITIVE_INFINITY,
+        	    			checkpoint.getEndTimeFrom() != null ? EpochTime.parse(checkpoint.getEndTimeFrom()) : Long.MIN_VALUE,
+        	    			EpochTime.parse(checkpoint.getEndTimeTo()), log);
+        	    	summaryReport.note(SHARDS + shards.size());
+        	    	if (shards.size() > 1)
+        	    	{
+        	    		try
+        	    		{
+        	    			fetchResult = harvester.harvest(request, shards, state.knownItemIds, newItems, log);
+        	    		}
+        	    		catch (Exception e)
+        	    		{
+        	    			//the shards aren't paged in order, so the next run harvests the same window again from page 1
+        	    			checkpoint.setLastCompletedPage(0);
+        	    			checkpoint.save();
+        	    			throw e;
+        	    		}
+        	    	}
+        	    	else
+        	    	{
+        	    		fetchResult = pageFetcher.fetchAll(request, startPage, state.knownItemIds, newItems, saver, log);
+        	    	}
+        	    }
+        	    else
+        	    {
+        	    	fetchResult = pageFetcher.fetchAll(request, startPage, state.knownItemIds, newItems, saver, log);
+        	    }
+            
+        	    summaryReport.note(NUM_DUP + fetchResult.getNumDup());
+        	    summaryReport.note(NUM_NEW + fetchResult.getNumNewItems());
+        	    log.println(NUM_DUP + fetchResult.getNumDup());
+        	    log.println(NUM_NEW + fetchResult.getNumNewItems());
+        	    log.println(PAGES_FETCHED + fetchResult.getPageLatencies().size() + "/" + fetchResult.getTotalPages()
+        	    		+ " in " + fetchResult.getElapsedMillis() + "ms (mean page " + fetchResult.getMeanPageLatency() 
+        	    		+ "ms, max page " + fetchResult.getMaxPageLatency() + "ms)"
+        	    		+ (fetchResult.isStoppedAtKnownPage() ? ", stopped at known items" : ""));
+            
+        	    /** Save the new items to our file **/
+        	    saver.save();
+        	    checkpoint.delete();
+        	} 
+        	catch (Exception ex) {
+        	    // keep the items of the pages fetched so far for the next run to resume after, the failure is thrown
+        	    // once they're reported
+        	    harvestFailure = ex;
+        	    summaryReport.note(HARVEST_FAILED + ex);
+        	    saver.save();
+        	    if (saver.getLastPage() > 0)
+        	    {
+        	    	log.println(CHECKPOINT_SAVED + saver.getLastPage());
+        	    }
+        	}
+        	/** End make an API call **/
         
-        /** Sort the items into a list by date **/
-        List<SearchItem> allItemsList = new ArrayList<SearchItem>();
-		allItemsList.addAll(allItemsMap.values());
-		allItemsList.sort(new Comparator<SearchItem>() {
-			@Override
-			public int compare(SearchItem o1, SearchItem o2) 
-			{
-				return o2.getListingInfo().getEndTime().getTime().compareTo(o1.getListingInfo().getEndTime().getTime());
-			}
-		});
+        	/** Merge the new items into the list by date **/
+        	state.allItemsList = mergeNewestFirst(state.allItemsList, newItems);
+        	for (ItemRecord item : newItems)
+        	{
+        		state.highWaterMark = Math.max(state.highWaterMark, item.getEndTime());
+        	}
 		
-        /** Print reports **/
-        printFullReport(allItemsList, summaryReportOutput);
+        	/** Print reports **/
+        	state.priceColumns.map();
+        	File savedReportFile = new File(SAVED_REPORT_DIR + state.fileName + SAVED_REPORT_EXT);
+        	if (state.fullReport == null || state.fullReport.getAgeMillis() >= REPORT_REBUILD_MILLIS)
+        	{
+        		BucketStatsFactory statsFactory = BucketStatsFactory.fromSystemProperties();
+        		try
+        		{
+        			state.fullReport = FullReport.load(savedReportFile, statsFactory, state.priceColumns);
+        		}
+        		catch (IOException e)
+        		{
+        			//a saved report that can't be read only costs working the stats out from every row again
+        			e.printStackTrace(log);
+        			savedReportFile.delete();
+        			state.fullReport = null;
+        		}
+        	
+        		if (state.fullReport != null)
+        		{
+        			log.println(SAVED_REPORT_ROWS + state.fullReport.getRows() + "/" + state.priceColumns.size());
+        		}
+        		else
+        		{
+        			state.fullReport = new FullReport(statsFactory);
+        		}
+        	}
+        	state.fullReport.addRows(state.priceColumns);
+        	state.fullReport.write(summaryReport);
+        	state.fullReport.save(savedReportFile, state.priceColumns);
         
-        /** Save back to our file **/
-    	ObjectOutputStream objOutputStream = new ObjectOutputStream(new FileOutputStream(file));
-
-        for (SearchItem item : allItemsList)
-        {        	
-			printItemDetails(itemOutput, item);
-        	objOutputStream.writeObject(item);
+        	for (ItemRecord item : state.allItemsList)
+        	{        	
+				itemReport.item(item);
+        	}
+        
+        	if (harvestFailure != null)
+        	{
+        		throw new IOException(HARVEST_FAILED + harvestFailure, harvestFailure);
+        	}
+        	return newItems.size();
+        }
+        finally
+        {
+        	try
+        	{
+        		if (itemReport != null)
+        		{
+        			itemReport.close();
+        		}
+        	}
+        	finally
+        	{
+        		summaryReport.close();
+        	}
         }
-        objOutputStream.close();	//object file
-        itemOutput.close();			//readable item file
-        summaryReportOutput.close();				//report summary file
     }
     
     /**
-     * Private helper method that prints out details of a SearchItem to the passed print stream.
-     * @param out - the print writer to print to
-     * @param item - the item to print the details of
+     * The files of a query and the items, newest end time and report stats kept in memory between its refreshes
      */
-    private static void printItemDetails(PrintWriter out, SearchItem item)
+    static class QueryState
     {
-    	out.println(item.getTitle());
-        out.println(item.getSellingStatus().getConvertedCurrentPrice().getValue());
-        out.println(item.getListingInfo().getEndTime().getTime());
-    	out.println(item.getListingInfo().getListingType());
-        out.println(item.getSellingStatus().getSellingState());
-        out.println(item.getCondition().getConditionDisplayName());
-        out.println();
+    	private final Object[] commandLineResult;
+    	private final String fileName;
+    	private final String condition;
+    	private final ItemIdIndex.QueryIds knownItemIds;
+    	private final ItemStore itemStore;
+    	private final PriceColumns priceColumns;
+    	
+    	private List<ItemRecord> allItemsList = new ArrayList<ItemRecord>();	//newest first
+    	private long highWaterMark = Long.MIN_VALUE;		//newest end time already stored
+    	private FullReport fullReport = null;
+    	
+    	private QueryState(Object[] commandLineResult, ItemIdIndex itemIdIndex) throws IOException
+    	{
+    		this.commandLineResult = commandLineResult;
+    		this.fileName = queryFileName(commandLineResult);
+    		this.condition = conditionOf(commandLineResult);
+    		this.knownItemIds = itemIdIndex.forQuery(fileName);
+    		this.itemStore = new ItemStore(new File(ITEM_STORE_DIR + fileName + ITEM_STORE_EXT));
+    		this.priceColumns = new PriceColumns(new File(PRICE_COLUMN_DIR + fileName));
+    	}
+    	
+    	String getFileName()
+    	{
+    		return fileName;
+    	}
+    	
+    	/**
+    	 * @return the number of stored items
+    	 */
+    	int size()
+    	{
+    		return allItemsList.size();
+    	}
     }
     
     /**
-     * Private helper that prints a report (summary stats) of all the SearchItems in the passed allItemMap to the
-     * given PrintWriter.
-     * @param allItemsList - sorted list of all the search items
-     * @param output - the printwriter to print the details of the SearchItems to
-     * @throws FileNotFoundException
+     * Saves the new items of a harvest to the item store, price columns and item id index every CHECKPOINT_PAGES
+     * pages, followed by a checkpoint of the last saved page
      */
-    private static void printFullReport(List<SearchItem> allItemsList, PrintWriter output) throws FileNotFoundException
+    private static class HarvestSaver implements PageFetcher.PageListener
     {
-    	/** Put together summary stats **/
-        DescriptiveStatistics stat = new DescriptiveStatistics();
-        
-        DescriptiveStatistics sundayStats = new DescriptiveStatistics();
-        DescriptiveStatistics mondayStats = new DescriptiveStatistics();
-        DescriptiveStatistics tuesdayStats = new DescriptiveStatistics();
-        DescriptiveStatistics wednesdayStats = new DescriptiveStatistics();
-        DescriptiveStatistics thursdayStats = new DescriptiveStatistics();
-        DescriptiveStatistics fridayStats = new DescriptiveStatistics();
-        DescriptiveStatistics saturdayStats = new DescriptiveStatistics();
-        
-        DescriptiveStatistics earlyStats = new DescriptiveStatistics();
-        DescriptiveStatistics morningStats = new DescriptiveStatistics();
-        DescriptiveStatistics afternoonStats = new DescriptiveStatistics();
-        DescriptiveStatistics eveningStats = new DescriptiveStatistics();
-        
-        DescriptiveStatistics auctionStats = new DescriptiveStatistics();
-        DescriptiveStatistics fixedPriceStats = new DescriptiveStatistics();
-        DescriptiveStatistics storeStats = new DescriptiveStatistics();
-        DescriptiveStatistics miscListingStats = new DescriptiveStatistics();
-        
-        HashMap<Date, DescriptiveStatistics> weeklyStats = new HashMap<Date, DescriptiveStatistics>();
-        Calendar weekCal = Calendar.getInstance();
-		weekCal.add(Calendar.WEEK_OF_YEAR, -1);
-		weeklyStats.put(weekCal.getTime(), new DescriptiveStatistics());
-		
-
-        for (SearchItem item : allItemsList)
-        {        	
-        	
-        	double sellValue = item.getSellingStatus().getConvertedCurrentPrice().getValue();
-    		stat.addValue(sellValue);
-    		
-    		Calendar endCal = item.getListingInfo().getEndTime();
+    	private final ItemStore itemStore;
+    	private final PriceColumns priceColumns;
+    	private final ItemIdIndex.QueryIds knownItemIds;
+    	private final List<ItemRecord> newItems;
+    	private final HarvestCheckpoint checkpoint;
+    	
+    	private int savedItems = 0;		//number of newItems already saved
+    	private int lastPage = 0;		//last merged page
+    	private int pagesSinceSave = 0;
+    	
+    	private HarvestSaver(ItemStore itemStore, PriceColumns priceColumns, ItemIdIndex.QueryIds knownItemIds,
+    			List<ItemRecord> newItems, HarvestCheckpoint checkpoint)
+    	{
+    		this.itemStore = itemStore;
+    		this.priceColumns = priceColumns;
+    		this.knownItemIds = knownItemIds;
+    		this.newItems = newItems;
+    		this.checkpoint = checkpoint;
+    	}
+    	
+    	@Override
+    	public void pageMerged(int pageNumber, PaginationOutput paginationOutput) throws IOException
+    	{
+    		lastPage = pageNumber;
+    		if (paginationOutput != null)
+    		{
+    			checkpoint.setTotalPages(paginationOutput.getTotalPages() == null ? 0 : paginationOutput.getTotalPages());
+    			checkpoint.setTotalEntries(paginationOutput.getTotalEntries() == null ? 0 : paginationOutput.getTotalEntries());
+    		}
+    		if (++pagesSinceSave >= CHECKPOINT_PAGES)
+    		{
+    			save();
+    		}
+    	}
+    	
+    	/**
+    	 * Saves the new items merged since the last save and checkpoints the last merged page
+    	 * @throws IOException
+    	 */
+    	private void save() throws IOException
+    	{
+    		List<ItemRecord> unsaved = newItems.subList(savedItems, newItems.size());
+    		itemStore.append(unsaved);
+    		priceColumns.append(unsaved);
+    		knownItemIds.commit();
+    		savedItems = newItems.size();
+    		pagesSinceSave = 0;
     		
-    		if (endCal.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY)
+    		if (lastPage > 0)
     		{
-    			sundayStats.addValue(sellValue);
+    			checkpoint.setLastCompletedPage(lastPage);
+    			checkpoint.save();
     		}
-    		else if (endCal.get(Calendar.DAY_OF_WEEK) == Calendar.MONDAY)
+    	}
+    	
+    	private int getLastPage()
+    	{
+    		return lastPage;
+    	}
+    }
+    
+    /**
+     * Private helper that formats an end time the way the finding service expects in an EndTimeFrom filter
+     * @param endTime - the end time in epoch milliseconds
+     * @return the end time in ISO 8601 format in GMT, e.g. 2016-05-01T12:00:00.000Z
+     */
+    private static String formatEndTime(long endTime)
+    {
+    	return EpochTime.format(endTime);
+    }
+    
+    /**
+     * Private helper method that moves the items of a blob file written by older versions of the program
+     * (a stream of serialized SearchItems) into an item store.
+     * @param blobFile - the blob file to read
+     * @param itemStore - the item store to append the items to
+     * @param log - print stream the number of migrated items is printed to
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private static void migrateBlob(File blobFile, ItemStore itemStore, PrintStream log) throws IOException, ClassNotFoundException
+    {
+    	List<ItemRecord> records = new ArrayList<ItemRecord>();
+    	ObjectInputStream objInputStream = new ObjectInputStream(new FileInputStream(blobFile));
+    	
+    	try
+    	{
+    		while(true)
+        	{
+	        	SearchItem item = (SearchItem) objInputStream.readObject();
+	        	records.add(ItemRecord.fromSearchItem(item));
+        	}
+    	}
+    	catch (EOFException e)
+    	{
+    		log.println(MIGRATED_BLOB + records.size());
+    	}
+    	finally
+    	{
+    		objInputStream.close();
+    	}
+    	
+    	itemStore.append(records);
+    }
+    
+    /**
+     * Helper that sorts items by end time, newest first. The end times are sorted as a primitive array and the
+     * items put in their order, rather than comparing the items themselves.
+     * @param items - the items to sort, in place; items with the same end time keep their order
+     */
+    static void sortNewestFirst(List<ItemRecord> items)
+    {
+    	long[] endTimes = new long[items.size()];
+    	for (int i = 0; i < endTimes.length; i++)
+    	{
+    		endTimes[i] = items.get(i).getEndTime();
+    	}
+    	IndexSort.reorder(items, IndexSort.sortedIndices(endTimes, true));
+    }
+    
+    /**
+     * Helper that merges new items into items sorted by end time, newest first. Gives the same order as sorting the
+     * items followed by the new items with sortNewestFirst, without sorting the items again.
+     * @param items - the items, newest first
+     * @param newItems - the new items, in the order they were stored; they are sorted in place
+     * @return the merged items, newest first
+     */
+    static List<ItemRecord> mergeNewestFirst(List<ItemRecord> items, List<ItemRecord> newItems)
+    {
+    	if (newItems.isEmpty())
+    	{
+    		return items;
+    	}
+    	sortNewestFirst(newItems);
+    	
+    	List<ItemRecord> merged = new ArrayList<ItemRecord>(items.size() + newItems.size());
+    	int i = 0;
+    	int j = 0;
+    	while (i < items.size() && j < newItems.size())
+    	{
+    		//items with the same end time keep the stored ones first
+    		if (items.get(i).getEndTime() >= newItems.get(j).getEndTime())
     		{
-    			mondayStats.addValue(sellValue);
+    			merged.add(items.get(i++));
     		}
-    		else if (endCal.get(Calendar.DAY_OF_WEEK) == Calendar.TUESDAY)
+    		else
     		{
-    			tuesdayStats.addValue(sellValue);
+    			merged.add(newItems.get(j++));
     		}
-    		else if (endCal.get(Calendar.DAY_OF_WEEK) == Calendar.WEDNESDAY)
+    	}
+    	merged.addAll(items.subList(i, items.size()));
+    	merged.addAll(newItems.subList(j, newItems.size()));
+    	return merged;
+    }
+    
+    /**
+     * Helper that writes a report (summary stats) of all the items in the passed price columns to the
+     * given report encoder.
+     * @param columns - mapped price columns of all the items
+     * @param statsFactory - creates the stats of each bucket of the report
+     * @param report - the report encoder to write the stats to
+     * @throws IOException
+     */
+    static void printFullReport(PriceColumns columns, BucketStatsFactory statsFactory, ReportEncoder report) 
+    		throws IOException
+    {
+    	FullReport fullReport = new FullReport(statsFactory);
+    	fullReport.addRows(columns);
+    	fullReport.write(report);
+    }
+    
+    /**
+     * The summary stats of the full report, kept up to date with the rows appended to the price columns.
+     * 
+     * The weeks of the report are counted back from the time the report was created, so a report that is kept
+     * while time passes puts the newer items in its most recent week; it should be created again after a while.
+     * The stats are written from copies of the buckets: a percentile of exact stats reorders their values, which would
+     * change the rounding of the mean once more rows are added.
+     * 
+     * A report of sketch stats can be saved to a file and read back by the next run, which then only adds the rows
+     * appended since. Exact stats keep every value, so their report costs as much as the history however it's kept;
+     * they're always worked out from the price columns.
+     * 
+     * Saved report layout (big endian):
+     * 	header: int magic ("AERS"), short format version, short reserved, long time created, int rows,
+     * 		long end time and double price of the last row (to tell if the price columns were rebuilt), int sketch k
+     * 	cubes: the buckets of every cube, see ReportAggregator.writeBuckets
+     */
+    static class FullReport
+    {
+    	private static final int MAGIC = 0x41455253;	//"AERS"
+    	private static final short VERSION = 1;
+    	
+    	private final BucketStatsFactory statsFactory;
+    	private final WeekIndex weekIndex;
+    	private final long created;
+    	
+    	private final Cube allCube;
+    	private final Cube listingCube;
+    	private final Cube dayCube;
+    	private final Cube hourCube;
+    	private final Cube weekCube;
+    	private final ReportAggregator aggregator;
+    	
+    	private int rows = 0;		//rows of the price columns already in the stats
+    	
+    	/**
+    	 * Constructor for a report without any rows
+    	 * @param statsFactory - creates the stats of each bucket of the report
+    	 */
+    	FullReport(BucketStatsFactory statsFactory)
+    	{
+    		this(statsFactory, System.currentTimeMillis());
+    	}
+    	
+    	/**
+    	 * Private constructor for a report without any rows whose weeks are counted back from the passed time
+    	 */
+    	private FullReport(BucketStatsFactory statsFactory, long created)
+    	{
+    		this.statsFactory = statsFactory;
+    		this.created = created;
+    		
+    		Calendar createdCal = Calendar.getInstance();
+    		createdCal.setTimeInMillis(created);
+    		weekIndex = new WeekIndex(createdCal);
+    		
+    		aggregator = new ReportAggregator(statsFactory);
+    		allCube = aggregator.addCube(ALL_STATS);
+    		listingCube = aggregator.addCube(LISTING_TYPE, Dimensions.reportListingType());
+    		dayCube = aggregator.addCube(DAY_OF_WEEK, Dimensions.dayOfWeek());
+    		hourCube = aggregator.addCube(HOUR_BAND, Dimensions.hourBand());
+    		weekCube = aggregator.addCube(WEEK, Dimensions.week(weekIndex));
+    	}
+    	
+    	/**
+    	 * Adds the rows of the price columns that aren't in the stats yet, all of them in parallel the first time
+    	 * @param columns - the mapped price columns, only ever appended to since the first call
+    	 */
+    	void addRows(PriceColumns columns)
+    	{
+    		if (columns.size() < rows)
     		{
-    			wednesdayStats.addValue(sellValue);
+    			throw new IllegalStateException("Price columns have " + columns.size() + " rows, " + rows + " already added");
     		}
-    		else if (endCal.get(Calendar.DAY_OF_WEEK) == Calendar.THURSDAY)
+    		
+    		if (rows == 0)
     		{
-    			thursdayStats.addValue(sellValue);
+    			aggregator.aggregate(columns, ForkJoinPool.commonPool());
     		}
-    		else if (endCal.get(Calendar.DAY_OF_WEEK) == Calendar.FRIDAY)
+    		else
     		{
-    			fridayStats.addValue(sellValue);
+    			aggregator.aggregateFrom(columns, rows);
     		}
-    		else if (endCal.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY)
+    		rows = columns.size();
+    	}
+    	
+    	/**
+    	 * Reads a saved report, if there is one that can be used with the passed price columns: it's of sketch stats
+    	 * of the same accuracy, younger than REPORT_REBUILD_MILLIS and of rows that are still the first rows of the
+    	 * price columns.
+    	 * @param file - the file of the saved report
+    	 * @param statsFactory - creates the stats of each bucket of the report
+    	 * @param columns - the mapped price columns
+    	 * @return the report, null if there isn't one that can be used
+    	 * @throws IOException - if the file can't be read or isn't a saved report
+    	 */
+    	static FullReport load(File file, BucketStatsFactory statsFactory, PriceColumns columns) throws IOException
+    	{
+    		if (statsFactory.getMode() != BucketStatsFactory.Mode.SKETCH || !file.exists())
     		{
-    			saturdayStats.addValue(sellValue);
+    			return null;
     		}
     		
-    		int hourOfDay = endCal.get(Calendar.HOUR_OF_DAY);
-    		if (hourOfDay >= 0 && hourOfDay < 6)
+    		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    		try
     		{
-    			earlyStats.addValue(sellValue);
+    			if (in.readInt() != MAGIC || in.readShort() != VERSION)
+    			{
+    				throw new IOException("Not a saved report of a known version: " + file);
+    			}
+    			in.readShort();
+    			
+    			long created = in.readLong();
+    			int rows = in.readInt();
+    			long lastEndTime = in.readLong();
+    			double lastPrice = in.readDouble();
+    			int sketchK = in.readInt();
+    			
+    			long age = System.currentTimeMillis() - created;
+    			if (age < 0 || age >= REPORT_REBUILD_MILLIS || sketchK != statsFactory.getSketchK()
+    					|| rows > columns.size())
+    			{
+    				return null;
+    			}
+    			if (rows > 0 && (columns.getEndTime(rows - 1) != lastEndTime
+    					|| Double.compare(columns.getPrice(rows - 1), lastPrice) != 0))
+    			{
+    				return null;
+    			}
+    			
+    			FullReport report = new FullReport(statsFactory, created);
+    			report.aggregator.readBuckets(in);
+    			report.rows = rows;
+    			return report;
     		}
-    		if (hourOfDay >= 6 && hourOfDay < 12)
+    		catch (EOFException e)
     		{
-    			morningStats.addValue(sellValue);
+    			throw new IOException("Saved report cut short: " + file, e);
     		}
-    		if (hourOfDay >= 12 && hourOfDay < 18)
+    		finally
     		{
-    			afternoonStats.addValue(sellValue);
+    			in.close();
     		}
-    		if (hourOfDay >= 18 && hourOfDay < 24)
+    	}
+    	
+    	/**
+    	 * Saves the report of sketch stats, replacing the file as a whole so a crash leaves either the old or the new
+    	 * report. Does nothing for exact stats.
+    	 * @param file - the file of the saved report
+    	 * @param columns - the mapped price columns the rows of the report were added from
+    	 * @throws IOException
+    	 */
+    	void save(File file, PriceColumns columns) throws IOException
+    	{
+    		if (statsFactory.getMode() != BucketStatsFactory.Mode.SKETCH)
     		{
-    			eveningStats.addValue(sellValue);
+    			return;
     		}
-    		
-    		String listingType = item.getListingInfo().getListingType();
-    		if (listingType.equals(AUCTION))
+    		if (!file.getParentFile().exists())
     		{
-    			auctionStats.addValue(sellValue);
+    			file.getParentFile().mkdirs();
     		}
-    		else if (listingType.equals(FIXED))
+    		
+    		File temp = new File(file.getPath() + ".tmp");
+    		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+    		try
     		{
-    			fixedPriceStats.addValue(sellValue);
+    			out.writeInt(MAGIC);
+    			out.writeShort(VERSION);
+    			out.writeShort(0);
+    			out.writeLong(created);
+    			out.writeInt(rows);
+    			out.writeLong(rows > 0 ? columns.getEndTime(rows - 1) : 0);
+    			out.writeDouble(rows > 0 ? columns.getPrice(rows - 1) : 0);
+    			out.writeInt(statsFactory.getSketchK());
+    			aggregator.writeBuckets(out);
     		}
-    		else if (listingType.equals(STORE))
+    		finally
     		{
-    			storeStats.addValue(sellValue);
+    			out.close();
     		}
-    		else
+    		
+    		//renameTo doesn't replace an existing file on every platform
+    		if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
     		{
-    			miscListingStats.addValue(sellValue);
+    			throw new IOException("Can't rename " + temp + " to " + file);
     		}
+    	}
+    	
+    	/**
+    	 * @return the number of rows of the price columns in the stats
+    	 */
+    	int getRows()
+    	{
+    		return rows;
+    	}
+    	
+    	/**
+    	 * @return the milliseconds since the report was created
+    	 */
+    	long getAgeMillis()
+    	{
+    		return System.currentTimeMillis() - created;
+    	}
+    	
+    	/**
+    	 * Writes the stats of the report
+    	 * @param report - the report encoder to write the stats to
+    	 * @throws IOException
+    	 */
+    	void write(ReportEncoder report) throws IOException
+    	{
+    		/** Print summary stats **/
+    		report.beginStats();
     		
-    		while (endCal.before(weekCal))
+    		report.stats(ALL_STATS, stats(allCube));
+    		
+    		report.stats(AUCTION, stats(listingCube, Dimensions.AUCTION_LISTINGS));
+    		report.stats(FIXED, stats(listingCube, Dimensions.FIXED_PRICE_LISTINGS));
+    		report.stats(STORE, stats(listingCube, Dimensions.STORE_LISTINGS));
+    		
+    		report.stats(SUNDAY, stats(dayCube, Calendar.SUNDAY));
+    		report.stats(MONDAY, stats(dayCube, Calendar.MONDAY));
+    		report.stats(TUESDAY, stats(dayCube, Calendar.TUESDAY));
+    		report.stats(WEDNESDAY, stats(dayCube, Calendar.WEDNESDAY));
+    		report.stats(THURSDAY, stats(dayCube, Calendar.THURSDAY));
+    		report.stats(FRIDAY, stats(dayCube, Calendar.FRIDAY));
+    		report.stats(SATURDAY, stats(dayCube, Calendar.SATURDAY));
+    		
+    		report.stats(EARLY, stats(hourCube, Dimensions.EARLY));
+    		report.stats(MORNING, stats(hourCube, Dimensions.MORNING));
+    		report.stats(AFTERNOON, stats(hourCube, Dimensions.AFTERNOON));
+    		report.stats(EVENING, stats(hourCube, Dimensions.EVENING));
+    		
+    		report.stats(MISC, stats(listingCube, Dimensions.MISC_LISTINGS));
+    		
+    		//every week up to the oldest item is reported, even if it has no items, oldest week first
+    		int[][] weekKeys = weekCube.keys();
+    		int oldestWeek = weekKeys.length == 0 ? 0 : weekKeys[weekKeys.length - 1][0];
+    		
+    		for (int week = oldestWeek; week >= 0; week--)
     		{
-    			weekCal.add(Calendar.WEEK_OF_YEAR, -1);
-    			weeklyStats.put(weekCal.getTime(), new DescriptiveStatistics());
+    			report.stats(weekIndex.weekDate(week).toString(), stats(weekCube, week));
     		}
     		
-    		weeklyStats.get(weekCal.getTime()).addValue(sellValue);
-        }
-        /** End put together summary stats **/
-        
-        /** Print summary stats **/
-        output.println();
-        output.println();
-        output.println("-------------------------------------");
-        
-        printStats(ALL_STATS, stat, output);
-        
-        printStats(AUCTION, auctionStats, output);
-        printStats(FIXED, fixedPriceStats, output);
-        printStats(STORE, storeStats, output);
-        
-        printStats(SUNDAY, sundayStats, output);
-        printStats(MONDAY, mondayStats, output);
-        printStats(TUESDAY, tuesdayStats, output);
-        printStats(WEDNESDAY, wednesdayStats, output);
-        printStats(THURSDAY, thursdayStats, output);
-        printStats(FRIDAY, fridayStats, output);
-        printStats(SATURDAY, saturdayStats, output);
-        
-        printStats(EARLY, earlyStats, output);
-        printStats(MORNING, morningStats, output);
-        printStats(AFTERNOON, afternoonStats, output);
-        printStats(EVENING, eveningStats, output);
-        
-        printStats(MISC, miscListingStats, output);
-        
-        Set<Date> dates = weeklyStats.keySet();
-        ArrayList<Date> dateList = new ArrayList<Date>(dates);
-        Collections.sort(dateList);
-        
-        for (Date dateKey : dateList)
-        {
-        	printStats(dateKey.toString(), weeklyStats.get(dateKey), output);
-        }
-        
-        output.println(WEEKLY_AVERAGE);
-        for (int i = 0; i < dateList.size(); i++)
-        {
-        	Date dateKey = dateList.get(i);
-        	if (i == dateList.size() - 1)
-        	{
-            	output.print(weeklyStats.get(dateKey).getMean());
-        	}
-        	else
-        	{
-            	output.print(weeklyStats.get(dateKey).getMean());
-            	output.print("->");
-        	}
-        }
-        
-        output.println();
-        /** End print summary stats **/
-    }
-    
-    /**
-     * Private helper method that prints out the descriptive stats for a collection of values
-     * identified by identifier.
-     * @param identifier - an identifier for the collection of values in the descriptive stats objects
-     * @param stats - the descriptive stats values to print as a string
-     */
-    private static void printStats(String identifier, DescriptiveStatistics stats, PrintWriter output)
-    {
-    	double q1 = stats.getPercentile(25);
-        double q2 = stats.getPercentile(75);
-        
-        output.println(identifier);
-        output.println("MEAN: " + stats.getMean());
-        output.println("Q1: " + q1);
-        output.println("Q2: " + q2);
-        output.println("MIN: " + stats.getMin());
-        output.println("MAX: " + stats.getMax());
-        output.println("REASONABLE PROFIT MARGIN (EXCLUDES SHIPPING & HANDLING COSTS): " + (0.87*q2-q1));
-        output.println("NUM ITEMS: " + stats.getN());
-        output.println("------------------------------");
+    		double[] weeklyMeans = new double[oldestWeek + 1];
+    		for (int week = oldestWeek; week >= 0; week--)
+    		{
+    			weeklyMeans[oldestWeek - week] = weekCube.getOrEmpty(statsFactory, week).getMean();
+    		}
+    		report.weeklyAverages(WEEKLY_AVERAGE, weeklyMeans);
+    		/** End print summary stats **/
+    	}
+    	
+    	/**
+    	 * Private helper that copies the bucket of the passed keys of a cube, an empty one if no rows had these keys
+    	 */
+    	private BucketStats stats(Cube cube, int... keys)
+    	{
+    		BucketStats copy = statsFactory.newBucketStats();
+    		BucketStats bucket = cube.get(keys);
+    		if (bucket != null)
+    		{
+    			copy.merge(bucket);
+    		}
+    		return copy;
+    	}
     }
     
     /**
@@ -585,7 +1259,7 @@ public class AnalyzeEbay
      * 			arr[3]: Double - max value if set null otherwise
      * 			arr[4]: Integer - 0 if used condition (default), 1 if new condition, 2 if broken
      */
-    private static Object[] processCommandLineArgs(String[] args)
+    static Object[] processCommandLineArgs(String[] args)
     {
     	Object[] objArr = new Object[5];
     	objArr[0] = null;
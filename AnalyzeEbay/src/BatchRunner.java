@@ -0,0 +1,249 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ebay.common.RateLimiter;
+import com.ebay.common.ServiceClientPool;
+import com.ebay.services.client.ClientConfig;
+
+/**
+ * Runs every query of a manifest file in one JVM.
+ *
+ * Run as: "analyzeEbay --batch manifest --queries(optional) n --threads(optional) n --pages(optional) n"
+ *
+ * Each line of the manifest is a query in the same form as the command line of a single query (see QueryManifest).
+ * A line may start with "--priority n": queries with a higher priority are started first and their calls are sent
+ * first when calls have to wait for the rate limiter of the application id (the default is RateLimiter.DEFAULT_PRIORITY).
+ *
+ * The queries share one client config, so they share the pooled service clients and JAXB context, the item id index,
+ * and one pool of fetch threads. --threads sets the size of that pool, the most pages fetched at once across all queries.
+ * --queries sets the most queries run at once and --pages the most pages of a single query fetched at once.
+ * The output of each query is buffered and printed as a block when the query finishes.
+ */
+public class BatchRunner
+{
+	public static final String BATCH_OPTION = "--batch";
+
+	private static final String QUERIES_OPTION = "--queries";
+	private static final String THREADS_OPTION = "--threads";
+	private static final String PAGES_OPTION = "--pages";
+
+	private static final int DEFAULT_CONCURRENT_QUERIES = 4;
+	private static final int DEFAULT_FETCH_THREADS = 16;
+	private static final int DEFAULT_PAGES_PER_QUERY = 4;
+
+	private static final String USAGE = "Usage: " + BATCH_OPTION + " manifest " + QUERIES_OPTION + " n " + THREADS_OPTION
+			+ " n " + PAGES_OPTION + " n";
+
+	private final List<QueryManifest.Entry> entries;
+
+	private final int concurrentQueries;
+	private final int fetchThreads;
+	private final int pagesPerQuery;
+
+	/**
+	 * Constructor for a batch runner
+	 * @param manifest - the manifest file of the queries
+	 * @param concurrentQueries - the most queries run at once
+	 * @param fetchThreads - the number of threads fetching pages, shared by every query
+	 * @param pagesPerQuery - the most pages of a single query fetched at once
+	 * @throws IOException - if the manifest can't be read
+	 */
+	public BatchRunner(File manifest, int concurrentQueries, int fetchThreads, int pagesPerQuery) throws IOException
+	{
+		this.concurrentQueries = concurrentQueries;
+		this.fetchThreads = fetchThreads;
+		this.pagesPerQuery = pagesPerQuery;
+		this.entries = new QueryManifest(manifest, false).getEntries();
+	}
+
+	/**
+	 * Runs a batch from the command line arguments
+	 * @param args - the command line arguments, starting with --batch
+	 * @return the exit status, 0 if every query ran
+	 * @throws IOException - if the manifest can't be read
+	 */
+	public static int run(String[] args) throws IOException
+	{
+		if (args.length < 2 || args.length % 2 != 0)
+		{
+			System.err.println(USAGE);
+			return 1;
+		}
+
+		int concurrentQueries = DEFAULT_CONCURRENT_QUERIES;
+		int fetchThreads = DEFAULT_FETCH_THREADS;
+		int pagesPerQuery = DEFAULT_PAGES_PER_QUERY;
+
+		try
+		{
+			for (int i = 2; i < args.length; i += 2)
+			{
+				int value = Integer.parseInt(args[i + 1]);
+				if (value < 1)
+				{
+					throw new NumberFormatException();
+				}
+
+				if (args[i].equals(QUERIES_OPTION))
+				{
+					concurrentQueries = value;
+				}
+				else if (args[i].equals(THREADS_OPTION))
+				{
+					fetchThreads = value;
+				}
+				else if (args[i].equals(PAGES_OPTION))
+				{
+					pagesPerQuery = value;
+				}
+				else
+				{
+					System.err.println(USAGE);
+					return 1;
+				}
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			System.err.println(USAGE);
+			return 1;
+		}
+
+		BatchRunner runner = new BatchRunner(new File(args[1]), concurrentQueries, fetchThreads, pagesPerQuery);
+		return runner.runAll(System.out) == 0 ? 0 : 1;
+	}
+
+	/**
+	 * Runs every query of the manifest
+	 * @param out - print stream the output of each query and the batch summary are printed to
+	 * @return the number of queries that failed
+	 * @throws IOException - if the item id index can't be opened
+	 */
+	public int runAll(PrintStream out) throws IOException
+	{
+		long start = System.nanoTime();
+		AnalyzeEbay.createDirectories();
+
+		final ClientConfig config = AnalyzeEbay.newClientConfig();
+		final ExecutorService fetchWorkers = Executors.newFixedThreadPool(fetchThreads);
+		final ItemIdIndex itemIdIndex = new ItemIdIndex(new File(AnalyzeEbay.ITEM_INDEX_DIR));
+		ExecutorService queryRunners = Executors.newFixedThreadPool(concurrentQueries);
+
+		int failed = 0;
+		try
+		{
+			final int[] priorities = new int[entries.size()];
+			final boolean[] queryFailed = new boolean[entries.size()];
+			List<Future<String>> futures = new ArrayList<Future<String>>(Collections.<Future<String>>nCopies(entries.size(), null));
+			List<Integer> runOrder = new ArrayList<Integer>();
+
+			for (int i = 0; i < entries.size(); i++)
+			{
+				priorities[i] = entries.get(i).getPriority();
+				if (entries.get(i).getError() == null)
+				{
+					runOrder.add(i);
+				}
+			}
+
+			//higher priority queries are started first, the output is still printed in manifest order
+			Collections.sort(runOrder, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2)
+				{
+					return priorities[o1] != priorities[o2] ? (priorities[o1] > priorities[o2] ? -1 : 1) : o1.compareTo(o2);
+				}
+			});
+
+			for (final int i : runOrder)
+			{
+				final Object[] query = entries.get(i).getQuery();
+				futures.set(i, queryRunners.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception
+					{
+						ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+						PrintStream log = new PrintStream(buffer, true);
+						try
+						{
+							AnalyzeEbay.runQuery(query, config, fetchWorkers, itemIdIndex, pagesPerQuery, priorities[i], log);
+						}
+						catch (IOException e)
+						{
+							//the output of the query so far is printed with the failure
+							e.printStackTrace(log);
+							queryFailed[i] = true;
+						}
+						finally
+						{
+							log.close();
+						}
+						return buffer.toString();
+					}
+				}));
+			}
+
+			for (int i = 0; i < entries.size(); i++)
+			{
+				QueryManifest.Entry entry = entries.get(i);
+				out.println("=== [" + (i + 1) + "/" + entries.size() + "] line " + entry.getLineNumber() + ": "
+						+ entry.getLine());
+
+				if (entry.getError() != null)
+				{
+					out.println(entry.getError());
+					failed++;
+					continue;
+				}
+
+				try
+				{
+					out.print(futures.get(i).get());
+					if (queryFailed[i])
+					{
+						failed++;
+					}
+				}
+				catch (ExecutionException e)
+				{
+					e.getCause().printStackTrace(out);
+					failed++;
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					failed++;
+					break;
+				}
+			}
+		}
+		finally
+		{
+			queryRunners.shutdownNow();
+			fetchWorkers.shutdownNow();
+			itemIdIndex.close();
+		}
+
+		out.println("Batch of " + entries.size() + " queries finished in " + (System.nanoTime() - start) / 1000000L
+				+ "ms, " + failed + " failed");
+		out.println("Client pool: " + ServiceClientPool.getStats());
+		out.println("Rate limiter: " + RateLimiter.forApplication(config));
+		if (AnalyzeEbay.RESPONSE_CACHE != null)
+		{
+			out.println(AnalyzeEbay.RESPONSE_CACHE_STATS + AnalyzeEbay.RESPONSE_CACHE);
+		}
+		AnalyzeEbay.writeMetricsSummary(out);
+		return failed;
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * Summary statistics of the selling prices in a single report bucket (a day, a listing type, a week, ...).
+ *
+ * Empty buckets return NaN for the mean, min, max and percentiles.
+ */
+public interface BucketStats
+{
+	/**
+	 * Adds a value to the bucket
+	 * @param value - the value to add
+	 */
+	void addValue(double value);
+
+	/**
+	 * @return the number of values added
+	 */
+	long getN();
+
+	double getMean();
+
+	double getMin();
+
+	double getMax();
+
+	/**
+	 * Gets an estimate of the pth percentile of the values
+	 * @param p - the percentile, in (0, 100]
+	 * @return the percentile estimate
+	 */
+	double getPercentile(double p);
+
+	/**
+	 * Adds the values of another bucket to this one, as if they had been added to this bucket after its own values.
+	 * Lets buckets computed over separate chunks of rows be combined.
+	 * @param other - a bucket of the same kind, it is not modified
+	 */
+	void merge(BucketStats other);
+}
@@ -0,0 +1,69 @@
+/**
+ * Creates the BucketStats of a report.
+ *
+ * The mode is read from the analyzeebay.stats system property ("exact", the default, or "sketch") and the sketch
+ * accuracy from analyzeebay.sketchK, e.g. java -Danalyzeebay.stats=sketch -Danalyzeebay.sketchK=400 AnalyzeEbay ...
+ */
+public class BucketStatsFactory
+{
+	public static final String MODE_PROPERTY = "analyzeebay.stats";
+	public static final String SKETCH_K_PROPERTY = "analyzeebay.sketchK";
+
+	/**
+	 * How the values of a bucket are summarized
+	 */
+	public enum Mode
+	{
+		/** keep every value, percentiles are exact **/
+		EXACT,
+		/** keep a quantile sketch, memory is bounded and percentiles are approximate **/
+		SKETCH
+	}
+
+	private final Mode mode;
+	private final int sketchK;
+
+	/**
+	 * Constructor for a factory of the passed mode
+	 * @param mode - the mode
+	 * @param sketchK - the accuracy parameter of sketches, ignored in exact mode
+	 */
+	public BucketStatsFactory(Mode mode, int sketchK)
+	{
+		this.mode = mode;
+		this.sketchK = sketchK;
+	}
+
+	/**
+	 * Creates a factory configured by the system properties
+	 * @return the factory
+	 */
+	public static BucketStatsFactory fromSystemProperties()
+	{
+		Mode mode = Mode.valueOf(System.getProperty(MODE_PROPERTY, Mode.EXACT.name()).toUpperCase());
+		int sketchK = Integer.getInteger(SKETCH_K_PROPERTY, SketchBucketStats.DEFAULT_K);
+		return new BucketStatsFactory(mode, sketchK);
+	}
+
+	public Mode getMode()
+	{
+		return mode;
+	}
+
+	public int getSketchK()
+	{
+		return sketchK;
+	}
+
+	/**
+	 * @return a new, empty bucket
+	 */
+	public BucketStats newBucketStats()
+	{
+		if (mode == Mode.SKETCH)
+		{
+			return new SketchBucketStats(sketchK);
+		}
+		return new ExactBucketStats();
+	}
+}
@@ -0,0 +1,663 @@
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.ebay.services.finding.AckValue;
+import com.ebay.services.finding.ErrorCategory;
+import com.ebay.services.finding.ErrorData;
+import com.ebay.services.finding.ErrorSeverity;
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.OutputSelectorType;
+import com.ebay.services.finding.PaginationOutput;
+
+/**
+ * Streaming parser of findCompletedItems SOAP responses that reads only the fields of the items the program uses,
+ * straight into item records.
+ *
+ * Unmarshalling a response with JAXB builds the full SearchItem tree of every item (pictures, shipping, payment
+ * methods, extension lists, a Calendar for every date) only for most of it to be thrown away by
+ * ItemRecord.fromSearchItem. This parser walks the response with a StAX reader and skips every element it wasn't
+ * asked for, so a page costs the item records and not much else.
+ *
+ * The item id, converted price and currency, end time, listing type and condition are always read, since the item
+ * store and the cubes of the report depend on them. The other fields are picked like the output selectors of a
+ * request: fields that aren't selected are skipped and left null in the records. Besides the items it reads the ack,
+ * the errors, the pagination output and, for a fault, the fault code, reason and error ids. Elements are matched by local name, so SOAP 1.1 and 1.2 envelopes
+ * both parse.
+ *
+ * A parser is immutable and can be shared by threads.
+ */
+public class CompletedItemsParser
+{
+	/**
+	 * Fields of an item record that can be left out
+	 */
+	public enum Field
+	{
+		TITLE(null),
+		SELLER(OutputSelectorType.SELLER_INFO),
+		SELLING_STATE(null);
+
+		private final OutputSelectorType outputSelector;
+
+		private Field(OutputSelectorType outputSelector)
+		{
+			this.outputSelector = outputSelector;
+		}
+
+		/**
+		 * @return the output selector a request needs for the service to return the field, null if it's returned
+		 * by default
+		 */
+		public OutputSelectorType getOutputSelector()
+		{
+			return outputSelector;
+		}
+	}
+
+	private static final String FAULT = "Fault";
+	private static final String ACK = "ack";
+	private static final String ERROR_MESSAGE = "errorMessage";
+	private static final String ERROR = "error";
+	private static final String ERROR_ID = "errorId";
+	private static final String SEARCH_RESULT = "searchResult";
+	private static final String PAGINATION_OUTPUT = "paginationOutput";
+	private static final String ITEM = "item";
+
+	private static final XMLInputFactory inputFactory = newInputFactory();
+
+	private final Set<Field> fields;
+
+	/**
+	 * Constructor for a parser of every field
+	 */
+	public CompletedItemsParser()
+	{
+		this(EnumSet.allOf(Field.class));
+	}
+
+	/**
+	 * Constructor for a parser of the passed fields
+	 * @param fields - the fields read besides the ones that are always read
+	 */
+	public CompletedItemsParser(Set<Field> fields)
+	{
+		this.fields = fields.isEmpty() ? EnumSet.noneOf(Field.class) : EnumSet.copyOf(fields);
+	}
+
+	/**
+	 * Creates a parser of the fields named in a comma separated list
+	 * @param fieldNames - the names of the fields (TITLE,SELLER,...), case insensitive, or "all"
+	 * @return the parser
+	 * @throws IllegalArgumentException - if one of the names isn't a field
+	 */
+	public static CompletedItemsParser forFields(String fieldNames)
+	{
+		if (fieldNames.trim().equalsIgnoreCase("all"))
+		{
+			return new CompletedItemsParser();
+		}
+		Set<Field> fields = EnumSet.noneOf(Field.class);
+		for (String name : fieldNames.split(","))
+		{
+			if (!name.trim().isEmpty())
+			{
+				fields.add(Field.valueOf(name.trim().toUpperCase()));
+			}
+		}
+		return new CompletedItemsParser(fields);
+	}
+
+	public Set<Field> getFields()
+	{
+		return Collections.unmodifiableSet(fields);
+	}
+
+	/**
+	 * Adds the output selectors needed for the selected fields to a request
+	 * @param request - the request
+	 */
+	public void addOutputSelectors(FindCompletedItemsRequest request)
+	{
+		for (Field field : fields)
+		{
+			if (field.getOutputSelector() != null && !request.getOutputSelector().contains(field.getOutputSelector()))
+			{
+				request.getOutputSelector().add(field.getOutputSelector());
+			}
+		}
+	}
+
+	/**
+	 * Parses a SOAP response of findCompletedItems
+	 * @param in - the response stream, not closed
+	 * @return the parsed page
+	 * @throws XMLStreamException - if the response isn't well formed XML or one of the read values is invalid
+	 */
+	public Page parse(InputStream in) throws XMLStreamException
+	{
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+		try
+		{
+			Page page = new Page();
+			//the envelope, header and body are walked into, the response element and fault are read
+			while (reader.hasNext())
+			{
+				if (reader.next() != XMLStreamConstants.START_ELEMENT)
+				{
+					continue;
+				}
+				String name = reader.getLocalName();
+				if (name.equals(FAULT))
+				{
+					readFault(reader, page);
+				}
+				else if (name.endsWith("Response"))
+				{
+					readResponse(reader, page);
+				}
+			}
+			return page;
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Private helper that reads the children of the response element
+	 * @param reader - reader positioned at the start of the response element, left at its end
+	 * @param page - the page the values are read into
+	 * @throws XMLStreamException
+	 */
+	private void readResponse(XMLStreamReader reader, Page page) throws XMLStreamException
+	{
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+		{
+			String name = reader.getLocalName();
+			if (name.equals(ACK))
+			{
+				page.ack = parseAck(reader.getElementText());
+			}
+			else if (name.equals(ERROR_MESSAGE))
+			{
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+				{
+					if (reader.getLocalName().equals(ERROR))
+					{
+						page.errors.add(readError(reader));
+					}
+					else
+					{
+						skipElement(reader);
+					}
+				}
+			}
+			else if (name.equals(SEARCH_RESULT))
+			{
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+				{
+					if (reader.getLocalName().equals(ITEM))
+					{
+						page.items.add(readItem(reader));
+					}
+					else
+					{
+						skipElement(reader);
+					}
+				}
+			}
+			else if (name.equals(PAGINATION_OUTPUT))
+			{
+				page.paginationOutput = readPaginationOutput(reader);
+			}
+			else
+			{
+				skipElement(reader);
+			}
+		}
+	}
+
+	/**
+	 * Private helper that reads an item into a record
+	 * @param reader - reader positioned at the start of the item element, left at its end
+	 * @return the record
+	 * @throws XMLStreamException - if the item has no id, price or end time
+	 */
+	private ItemRecord readItem(XMLStreamReader reader) throws XMLStreamException
+	{
+		String itemId = null;
+		double price = Double.NaN;
+		String currency = null;
+		long endTime = Long.MIN_VALUE;
+		String listingType = null;
+		int conditionId = -1;
+		String condition = null;
+		String title = null;
+		String seller = null;
+		String sellingState = null;
+
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+		{
+			String name = reader.getLocalName();
+			if (name.equals("itemId"))
+			{
+				itemId = reader.getElementText();
+			}
+			else if (name.equals("title") && fields.contains(Field.TITLE))
+			{
+				title = reader.getElementText();
+			}
+			else if (name.equals("sellingStatus"))
+			{
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+				{
+					String child = reader.getLocalName();
+					if (child.equals("convertedCurrentPrice"))
+					{
+						currency = reader.getAttributeValue(null, "currencyId");
+						price = parseDouble(reader.getElementText());
+					}
+					else if (child.equals("sellingState") && fields.contains(Field.SELLING_STATE))
+					{
+						sellingState = reader.getElementText();
+					}
+					else
+					{
+						skipElement(reader);
+					}
+				}
+			}
+			else if (name.equals("listingInfo"))
+			{
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+				{
+					String child = reader.getLocalName();
+					if (child.equals("endTime"))
+					{
+						endTime = parseDateTime(reader.getElementText());
+					}
+					else if (child.equals("listingType"))
+					{
+						listingType = reader.getElementText();
+					}
+					else
+					{
+						skipElement(reader);
+					}
+				}
+			}
+			else if (name.equals("condition"))
+			{
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+				{
+					String child = reader.getLocalName();
+					if (child.equals("conditionId"))
+					{
+						conditionId = parseInt(reader.getElementText());
+					}
+					else if (child.equals("conditionDisplayName"))
+					{
+						condition = reader.getElementText();
+					}
+					else
+					{
+						skipElement(reader);
+					}
+				}
+			}
+			else if (name.equals("sellerInfo") && fields.contains(Field.SELLER))
+			{
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+				{
+					if (reader.getLocalName().equals("sellerUserName"))
+					{
+						seller = reader.getElementText();
+					}
+					else
+					{
+						skipElement(reader);
+					}
+				}
+			}
+			else
+			{
+				skipElement(reader);
+			}
+		}
+
+		if (itemId == null || Double.isNaN(price) || endTime == Long.MIN_VALUE)
+		{
+			throw new XMLStreamException("Item without an id, converted price or end time: " + itemId,
+					reader.getLocation());
+		}
+		return new ItemRecord(itemId, price, currency, endTime, listingType, conditionId, condition, title, seller,
+				sellingState);
+	}
+
+	/**
+	 * Private helper that reads an error of the errorMessage
+	 * @param reader - reader positioned at the start of the error element, left at its end
+	 * @return the error
+	 * @throws XMLStreamException
+	 */
+	private static ErrorData readError(XMLStreamReader reader) throws XMLStreamException
+	{
+		ErrorData error = new ErrorData();
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+		{
+			String name = reader.getLocalName();
+			if (name.equals(ERROR_ID))
+			{
+				error.setErrorId(parseLong(reader.getElementText()));
+			}
+			else if (name.equals("domain"))
+			{
+				error.setDomain(reader.getElementText());
+			}
+			else if (name.equals("subdomain"))
+			{
+				error.setSubdomain(reader.getElementText());
+			}
+			else if (name.equals("severity"))
+			{
+				error.setSeverity(parseSeverity(reader.getElementText()));
+			}
+			else if (name.equals("category"))
+			{
+				error.setCategory(parseCategory(reader.getElementText()));
+			}
+			else if (name.equals("message"))
+			{
+				error.setMessage(reader.getElementText());
+			}
+			else
+			{
+				skipElement(reader);
+			}
+		}
+		return error;
+	}
+
+	/**
+	 * Private helper that reads the pagination output
+	 * @param reader - reader positioned at the start of the paginationOutput element, left at its end
+	 * @return the pagination output
+	 * @throws XMLStreamException
+	 */
+	private static PaginationOutput readPaginationOutput(XMLStreamReader reader) throws XMLStreamException
+	{
+		PaginationOutput pagination = new PaginationOutput();
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+		{
+			String name = reader.getLocalName();
+			if (name.equals("pageNumber"))
+			{
+				pagination.setPageNumber(parseInt(reader.getElementText()));
+			}
+			else if (name.equals("entriesPerPage"))
+			{
+				pagination.setEntriesPerPage(parseInt(reader.getElementText()));
+			}
+			else if (name.equals("totalPages"))
+			{
+				pagination.setTotalPages(parseInt(reader.getElementText()));
+			}
+			else if (name.equals("totalEntries"))
+			{
+				pagination.setTotalEntries(parseInt(reader.getElementText()));
+			}
+			else
+			{
+				skipElement(reader);
+			}
+		}
+		return pagination;
+	}
+
+	/**
+	 * Private helper that reads the code, reason and error ids of a SOAP 1.1 or 1.2 fault
+	 * @param reader - reader positioned at the start of the Fault element, left at its end
+	 * @param page - the page the fault is read into
+	 * @throws XMLStreamException
+	 */
+	private static void readFault(XMLStreamReader reader, Page page) throws XMLStreamException
+	{
+		page.fault = true;
+		int depth = 1;
+		while (depth > 0)
+		{
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				depth--;
+				continue;
+			}
+			if (event != XMLStreamConstants.START_ELEMENT)
+			{
+				continue;
+			}
+
+			String name = reader.getLocalName();
+			if (page.faultCode == null && (name.equals("faultcode") || name.equals("Value")))
+			{
+				//the first Value of a 1.2 fault is the code, the ones of nested Subcodes are more specific
+				String code = reader.getElementText().trim();
+				page.faultCode = code.substring(code.indexOf(':') + 1);
+			}
+			else if (page.faultString == null && (name.equals("faultstring") || name.equals("Text")))
+			{
+				page.faultString = reader.getElementText().trim();
+			}
+			else if (name.equals(ERROR_ID))
+			{
+				page.faultErrorIds.add(reader.getElementText().trim());
+			}
+			else
+			{
+				depth++;
+			}
+		}
+	}
+
+	/**
+	 * Private helper that skips an element and everything in it
+	 * @param reader - reader positioned at the start of the element, left at its end
+	 * @throws XMLStreamException
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException
+	{
+		int depth = 1;
+		while (depth > 0)
+		{
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				depth--;
+			}
+		}
+	}
+
+	private static long parseDateTime(String text) throws XMLStreamException
+	{
+		try
+		{
+			return EpochTime.parse(text);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new XMLStreamException("Invalid dateTime: " + text, e);
+		}
+	}
+
+	private static double parseDouble(String text) throws XMLStreamException
+	{
+		try
+		{
+			return Double.parseDouble(text.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			throw new XMLStreamException("Invalid double: " + text, e);
+		}
+	}
+
+	private static int parseInt(String text) throws XMLStreamException
+	{
+		try
+		{
+			return Integer.parseInt(text.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			throw new XMLStreamException("Invalid int: " + text, e);
+		}
+	}
+
+	private static long parseLong(String text) throws XMLStreamException
+	{
+		try
+		{
+			return Long.parseLong(text.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			throw new XMLStreamException("Invalid long: " + text, e);
+		}
+	}
+
+	/**
+	 * Private helpers that parse the kit enums, null for values the kit doesn't know (as JAXB does)
+	 */
+	private static AckValue parseAck(String text)
+	{
+		try
+		{
+			return AckValue.fromValue(text.trim());
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	private static ErrorSeverity parseSeverity(String text)
+	{
+		try
+		{
+			return ErrorSeverity.fromValue(text.trim());
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	private static ErrorCategory parseCategory(String text)
+	{
+		try
+		{
+			return ErrorCategory.fromValue(text.trim());
+		}
+		catch (IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+
+	private static XMLInputFactory newInputFactory()
+	{
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		//responses never need external entities or a DTD, and reading them would be a hole
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+
+	/**
+	 * The parsed values of a response
+	 */
+	public static class Page
+	{
+		private AckValue ack;
+		private final List<ErrorData> errors = new ArrayList<ErrorData>();
+		private PaginationOutput paginationOutput;
+		private final List<ItemRecord> items = new ArrayList<ItemRecord>();
+		private boolean fault = false;
+		private String faultCode;
+		private String faultString;
+		private final List<String> faultErrorIds = new ArrayList<String>();
+
+		/**
+		 * @return the ack of the response, null if it had none or it's a fault
+		 */
+		public AckValue getAck()
+		{
+			return ack;
+		}
+
+		public List<ErrorData> getErrors()
+		{
+			return errors;
+		}
+
+		/**
+		 * @return the pagination output of the response, null if it had none
+		 */
+		public PaginationOutput getPaginationOutput()
+		{
+			return paginationOutput;
+		}
+
+		/**
+		 * @return the records of the items of the search result, in response order
+		 */
+		public List<ItemRecord> getItems()
+		{
+			return items;
+		}
+
+		/**
+		 * @return true if the response is a SOAP fault
+		 */
+		public boolean isFault()
+		{
+			return fault;
+		}
+
+		/**
+		 * @return the local part of the fault code (Server, Receiver, Client, Sender, ...), null if not a fault
+		 */
+		public String getFaultCode()
+		{
+			return faultCode;
+		}
+
+		public String getFaultString()
+		{
+			return faultString;
+		}
+
+		/**
+		 * @return the error ids in the detail of the fault
+		 */
+		public List<String> getFaultErrorIds()
+		{
+			return faultErrorIds;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Bucket stats of the rows of a report grouped by one or more dimensions, e.g. listing type x day of week.
+ *
+ * The keys of a row in each dimension are packed into a single long, each dimension getting an equal share of the
+ * 64 bits. A cube without dimensions has a single bucket of every row.
+ */
+public class Cube
+{
+	private final String name;
+	private final Dimension[] dimensions;
+	private final int bitsPerKey;
+	private final long keyMask;
+	private final LongBucketMap buckets = new LongBucketMap();
+
+	/**
+	 * Constructor for an empty cube
+	 * @param name - the name of the cube
+	 * @param dimensions - the dimensions the rows are grouped by, at most 8
+	 */
+	public Cube(String name, Dimension... dimensions)
+	{
+		if (dimensions.length > 8)
+		{
+			throw new IllegalArgumentException("A cube can have at most 8 dimensions");
+		}
+		this.name = name;
+		this.dimensions = dimensions.clone();
+		this.bitsPerKey = dimensions.length == 0 ? 0 : 64 / dimensions.length;
+		this.keyMask = bitsPerKey == 64 ? -1L : (1L << bitsPerKey) - 1;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Gets the bucket of the passed keys
+	 * @param keys - the key in each dimension of the cube
+	 * @return the bucket, null if no rows had these keys
+	 */
+	public BucketStats get(int... keys)
+	{
+		return buckets.get(pack(keys));
+	}
+
+	/**
+	 * Gets the bucket of the passed keys, an empty one if no rows had these keys
+	 * @param factory - creates the empty bucket
+	 * @param keys - the key in each dimension of the cube
+	 * @return the bucket
+	 */
+	public BucketStats getOrEmpty(BucketStatsFactory factory, int... keys)
+	{
+		BucketStats bucket = get(keys);
+		return bucket != null ? bucket : factory.newBucketStats();
+	}
+
+	/**
+	 * @return the keys of every bucket with rows, in ascending order of the first dimension's key, then the
+	 * second's and so on
+	 */
+	public int[][] keys()
+	{
+		long[] packed = buckets.sortedKeys();
+		int[][] result = new int[packed.length][];
+		for (int i = 0; i < packed.length; i++)
+		{
+			result[i] = unpack(packed[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Merges buckets keyed the same way as this cube's into it, e.g. the partial buckets of a chunk of rows
+	 * @param partial - the buckets to merge, from rows after any already in the cube
+	 */
+	void mergeBuckets(LongBucketMap partial)
+	{
+		buckets.mergeAll(partial);
+	}
+
+	LongBucketMap getBuckets()
+	{
+		return buckets;
+	}
+
+	long pack(int[] keys)
+	{
+		if (keys.length != dimensions.length)
+		{
+			throw new IllegalArgumentException("Expected " + dimensions.length + " keys, got " + keys.length);
+		}
+
+		long packed = 0;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] < 0 || (bitsPerKey < 32 && keys[i] > keyMask))
+			{
+				throw new IllegalArgumentException("Key out of range for " + dimensions[i].getName() + ": " + keys[i]);
+			}
+			packed = (packed << bitsPerKey) | keys[i];
+		}
+		return packed;
+	}
+
+	int[] unpack(long packed)
+	{
+		int[] keys = new int[dimensions.length];
+		for (int i = dimensions.length - 1; i >= 0; i--)
+		{
+			keys[i] = (int)(packed & keyMask);
+			packed >>>= bitsPerKey;
+		}
+		return keys;
+	}
+}
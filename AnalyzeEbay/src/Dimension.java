@@ -0,0 +1,20 @@
+/**
+ * A way of grouping the rows of a report, e.g. by day of the week or by listing type.
+ *
+ * Each row maps to a small non-negative int key, so rows can be grouped without boxing or string keys.
+ */
+public interface Dimension
+{
+	/**
+	 * @return the name of the dimension
+	 */
+	String getName();
+
+	/**
+	 * Gets the key of a row
+	 * @param columns - the price columns of the report
+	 * @param row - the row
+	 * @return the key of the row, a negative key leaves the row out of any cube using this dimension
+	 */
+	int keyOf(PriceColumns columns, int row);
+}
@@ -0,0 +1,117 @@
+import java.util.Calendar;
+
+/**
+ * The dimensions the report groups rows by.
+ *
+ * Time dimensions are in GMT, the time zone the finding service returns end times in, and read the day and hour
+ * the price columns worked out when the rows were written. Every dimension can be used by several threads at once.
+ */
+public class Dimensions
+{
+	public static final int EARLY = 0;
+	public static final int MORNING = 1;
+	public static final int AFTERNOON = 2;
+	public static final int EVENING = 3;
+
+	public static final int AUCTION_LISTINGS = 0;
+	public static final int FIXED_PRICE_LISTINGS = 1;
+	public static final int STORE_LISTINGS = 2;
+	public static final int MISC_LISTINGS = 3;
+
+	private Dimensions()
+	{
+	}
+
+	/**
+	 * @return dimension keyed by Calendar.DAY_OF_WEEK of the end time
+	 */
+	public static Dimension dayOfWeek()
+	{
+		return new Dimension() {
+			@Override
+			public String getName()
+			{
+				return "Day of Week";
+			}
+
+			@Override
+			public int keyOf(PriceColumns columns, int row)
+			{
+				return columns.getDayOfWeek(row);
+			}
+		};
+	}
+
+	/**
+	 * @return dimension keyed by the six hour band of the end time: EARLY, MORNING, AFTERNOON or EVENING
+	 */
+	public static Dimension hourBand()
+	{
+		return new Dimension() {
+			@Override
+			public String getName()
+			{
+				return "Hour Band";
+			}
+
+			@Override
+			public int keyOf(PriceColumns columns, int row)
+			{
+				return columns.getHourOfDay(row) / 6;
+			}
+		};
+	}
+
+	/**
+	 * @return dimension keyed by the listing types the report breaks out: AUCTION_LISTINGS, FIXED_PRICE_LISTINGS,
+	 * STORE_LISTINGS, or MISC_LISTINGS for every other listing type
+	 */
+	public static Dimension reportListingType()
+	{
+		return new Dimension() {
+			@Override
+			public String getName()
+			{
+				return "Listing Type";
+			}
+
+			@Override
+			public int keyOf(PriceColumns columns, int row)
+			{
+				switch (columns.getListingType(row))
+				{
+					case AUCTION:
+						return AUCTION_LISTINGS;
+					case FIXED_PRICE:
+						return FIXED_PRICE_LISTINGS;
+					case STORE_INVENTORY:
+						return STORE_LISTINGS;
+					default:
+						return MISC_LISTINGS;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates a dimension keyed by the week of the end time
+	 * @param weekIndex - the week index the weeks are counted back from
+	 * @return dimension keyed by week index, 0 for the most recent week
+	 */
+	public static Dimension week(final WeekIndex weekIndex)
+	{
+		return new Dimension() {
+			@Override
+			public String getName()
+			{
+				return "Week";
+			}
+
+			@Override
+			public int keyOf(PriceColumns columns, int row)
+			{
+				return weekIndex.indexOf(columns.getEndTime(row));
+			}
+		};
+	}
+}
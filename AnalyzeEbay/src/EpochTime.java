@@ -0,0 +1,262 @@
+import java.util.Calendar;
+
+/**
+ * Conversions between the xs:dateTime text of the finding service and epoch milliseconds, and the GMT calendar
+ * fields of epoch milliseconds, without Calendar, Date or format objects.
+ *
+ * The finding service returns times in GMT, which has no daylight savings, so the day of the week and hour of the
+ * day follow from the epoch milliseconds with integer arithmetic. Dates are converted with the days from civil
+ * algorithm of the proleptic Gregorian calendar, the calendar of xs:dateTime.
+ */
+public final class EpochTime
+{
+	public static final long SECOND_MILLIS = 1000L;
+	public static final long MINUTE_MILLIS = 60L * SECOND_MILLIS;
+	public static final long HOUR_MILLIS = 60L * MINUTE_MILLIS;
+	public static final long DAY_MILLIS = 24L * HOUR_MILLIS;
+
+	//1 January 1970 was a Thursday
+	private static final int EPOCH_DAY_OF_WEEK = Calendar.THURSDAY;
+
+	private EpochTime()
+	{
+	}
+
+	/**
+	 * Parses an xs:dateTime, e.g. 2016-09-30T12:00:00.000Z, into epoch milliseconds. Fractions of a second beyond
+	 * milliseconds are dropped and a time without a time zone is taken to be in GMT.
+	 * @param text - the date time text, surrounding whitespace is ignored
+	 * @return the epoch milliseconds
+	 * @throws IllegalArgumentException - if the text isn't a valid date time
+	 */
+	public static long parse(CharSequence text)
+	{
+		int end = text.length();
+		while (end > 0 && Character.isWhitespace(text.charAt(end - 1)))
+		{
+			end--;
+		}
+		int pos = 0;
+		while (pos < end && Character.isWhitespace(text.charAt(pos)))
+		{
+			pos++;
+		}
+
+		//the year has at least 4 digits
+		int yearStart = pos;
+		long year = 0;
+		while (pos < end && isDigit(text.charAt(pos)))
+		{
+			year = year * 10 + (text.charAt(pos++) - '0');
+			if (year > 999999)
+			{
+				throw invalid(text);
+			}
+		}
+		if (pos - yearStart < 4)
+		{
+			throw invalid(text);
+		}
+		expect(text, pos++, end, '-');
+		int month = digits2(text, pos, end);
+		pos += 2;
+		expect(text, pos++, end, '-');
+		int day = digits2(text, pos, end);
+		pos += 2;
+		expect(text, pos++, end, 'T');
+		int hour = digits2(text, pos, end);
+		pos += 2;
+		expect(text, pos++, end, ':');
+		int minute = digits2(text, pos, end);
+		pos += 2;
+		expect(text, pos++, end, ':');
+		int second = digits2(text, pos, end);
+		pos += 2;
+
+		int millis = 0;
+		if (pos < end && text.charAt(pos) == '.')
+		{
+			pos++;
+			int fractionStart = pos;
+			int scale = 100;
+			while (pos < end && isDigit(text.charAt(pos)))
+			{
+				millis += (text.charAt(pos++) - '0') * scale;
+				scale /= 10;
+			}
+			if (pos == fractionStart)
+			{
+				throw invalid(text);
+			}
+		}
+
+		long offsetMillis = 0;
+		if (pos < end)
+		{
+			char zone = text.charAt(pos++);
+			if (zone == '+' || zone == '-')
+			{
+				int offsetHours = digits2(text, pos, end);
+				pos += 2;
+				expect(text, pos++, end, ':');
+				int offsetMinutes = digits2(text, pos, end);
+				pos += 2;
+				if (offsetHours > 14 || offsetMinutes > 59)
+				{
+					throw invalid(text);
+				}
+				offsetMillis = offsetHours * HOUR_MILLIS + offsetMinutes * MINUTE_MILLIS;
+				if (zone == '-')
+				{
+					offsetMillis = -offsetMillis;
+				}
+			}
+			else if (zone != 'Z')
+			{
+				throw invalid(text);
+			}
+		}
+		if (pos != end)
+		{
+			throw invalid(text);
+		}
+
+		if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour > 23 || minute > 59
+				|| second > 59)
+		{
+			throw invalid(text);
+		}
+
+		return daysFromCivil(year, month, day) * DAY_MILLIS + hour * HOUR_MILLIS + minute * MINUTE_MILLIS
+				+ second * SECOND_MILLIS + millis - offsetMillis;
+	}
+
+	/**
+	 * Formats epoch milliseconds as an xs:dateTime in GMT, e.g. 2016-09-30T12:00:00.000Z
+	 * @param epochMillis - the epoch milliseconds, of a year from 0 to 9999
+	 * @return the date time text
+	 */
+	public static String format(long epochMillis)
+	{
+		long epochDay = Math.floorDiv(epochMillis, DAY_MILLIS);
+		int millisOfDay = (int)Math.floorMod(epochMillis, DAY_MILLIS);
+
+		//civil from days, the inverse of daysFromCivil
+		long z = epochDay + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		int day = (int)(dayOfYear - (153 * mp + 2) / 5 + 1);
+		int month = (int)(mp < 10 ? mp + 3 : mp - 9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		if (year < 0 || year > 9999)
+		{
+			throw new IllegalArgumentException("Year out of range: " + year);
+		}
+
+		char[] chars = new char[24];
+		put(chars, 0, (int)year, 4);
+		chars[4] = '-';
+		put(chars, 5, month, 2);
+		chars[7] = '-';
+		put(chars, 8, day, 2);
+		chars[10] = 'T';
+		put(chars, 11, millisOfDay / (int)HOUR_MILLIS, 2);
+		chars[13] = ':';
+		put(chars, 14, millisOfDay / (int)MINUTE_MILLIS % 60, 2);
+		chars[16] = ':';
+		put(chars, 17, millisOfDay / (int)SECOND_MILLIS % 60, 2);
+		chars[19] = '.';
+		put(chars, 20, millisOfDay % (int)SECOND_MILLIS, 3);
+		chars[23] = 'Z';
+		return new String(chars);
+	}
+
+	/**
+	 * Gets the GMT day of the week of epoch milliseconds
+	 * @param epochMillis - the epoch milliseconds
+	 * @return the day of the week, Calendar.SUNDAY to Calendar.SATURDAY
+	 */
+	public static int dayOfWeek(long epochMillis)
+	{
+		long epochDay = Math.floorDiv(epochMillis, DAY_MILLIS);
+		return (int)Math.floorMod(epochDay + EPOCH_DAY_OF_WEEK - Calendar.SUNDAY, 7L) + Calendar.SUNDAY;
+	}
+
+	/**
+	 * Gets the GMT hour of the day of epoch milliseconds
+	 * @param epochMillis - the epoch milliseconds
+	 * @return the hour of the day, 0 to 23
+	 */
+	public static int hourOfDay(long epochMillis)
+	{
+		return (int)(Math.floorMod(epochMillis, DAY_MILLIS) / HOUR_MILLIS);
+	}
+
+	/**
+	 * Private helper that counts the days from 1970-01-01 to a date of the proleptic Gregorian calendar
+	 */
+	private static long daysFromCivil(long year, int month, int day)
+	{
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static int daysInMonth(long year, int month)
+	{
+		switch (month)
+		{
+			case 2:
+				return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+			case 4:
+			case 6:
+			case 9:
+			case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+
+	private static int digits2(CharSequence text, int pos, int end)
+	{
+		if (pos + 2 > end || !isDigit(text.charAt(pos)) || !isDigit(text.charAt(pos + 1)))
+		{
+			throw invalid(text);
+		}
+		return (text.charAt(pos) - '0') * 10 + (text.charAt(pos + 1) - '0');
+	}
+
+	private static void expect(CharSequence text, int pos, int end, char c)
+	{
+		if (pos >= end || text.charAt(pos) != c)
+		{
+			throw invalid(text);
+		}
+	}
+
+	private static boolean isDigit(char c)
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	private static void put(char[] chars, int offset, int value, int width)
+	{
+		for (int i = offset + width - 1; i >= offset; i--)
+		{
+			chars[i] = (char)('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static IllegalArgumentException invalid(CharSequence text)
+	{
+		return new IllegalArgumentException("Invalid dateTime: " + text);
+	}
+}
@@ -0,0 +1,252 @@
+import java.util.Arrays;
+
+/**
+ * Bucket statistics that keep every value in a primitive array.
+ *
+ * Percentiles are found by in-place selection rather than sorting a copy of the values, and are estimated the
+ * same way as the commons-math DescriptiveStatistics the report used before (the legacy Percentile estimation).
+ */
+public class ExactBucketStats implements BucketStats
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private double[] values = new double[INITIAL_CAPACITY];
+	private int n = 0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	//selection reorders the values, so the mean is computed over them in insertion order first
+	private double mean = Double.NaN;
+	private boolean meanValid = false;
+
+	@Override
+	public void addValue(double value)
+	{
+		if (n == values.length)
+		{
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+		values[n++] = value;
+		meanValid = false;
+
+		if (n == 1 || value < min)
+		{
+			min = value;
+		}
+		if (n == 1 || value > max)
+		{
+			max = value;
+		}
+	}
+
+	/**
+	 * Appends the values of another exact bucket. Merging chunks in row order gives the same values in the same order
+	 * as adding every row to one bucket, so the statistics are identical.
+	 * @param other - an ExactBucketStats
+	 */
+	@Override
+	public void merge(BucketStats other)
+	{
+		ExactBucketStats exact = (ExactBucketStats)other;
+		if (exact.n == 0)
+		{
+			return;
+		}
+
+		if (n + exact.n > values.length)
+		{
+			values = Arrays.copyOf(values, Math.max(values.length * 2, n + exact.n));
+		}
+		System.arraycopy(exact.values, 0, values, n, exact.n);
+		n += exact.n;
+		meanValid = false;
+
+		if (n == exact.n || exact.min < min)
+		{
+			min = exact.min;
+		}
+		if (n == exact.n || exact.max > max)
+		{
+			max = exact.max;
+		}
+	}
+
+	@Override
+	public long getN()
+	{
+		return n;
+	}
+
+	@Override
+	public double getMean()
+	{
+		if (!meanValid)
+		{
+			computeMean();
+		}
+		return mean;
+	}
+
+	/**
+	 * Private helper that computes the mean with the same correction for rounding errors as commons-math Mean. The
+	 * sum is taken over the values in insertion order so merged buckets give the same mean as a single bucket.
+	 */
+	private void computeMean()
+	{
+		if (n == 0)
+		{
+			mean = Double.NaN;
+		}
+		else
+		{
+			double sum = 0;
+			for (int i = 0; i < n; i++)
+			{
+				sum += values[i];
+			}
+			double xbar = sum / n;
+			double correction = 0;
+			for (int i = 0; i < n; i++)
+			{
+				correction += values[i] - xbar;
+			}
+			mean = xbar + correction / n;
+		}
+		meanValid = true;
+	}
+
+	@Override
+	public double getMin()
+	{
+		return min;
+	}
+
+	@Override
+	public double getMax()
+	{
+		return max;
+	}
+
+	@Override
+	public double getPercentile(double p)
+	{
+		if (p <= 0 || p > 100)
+		{
+			throw new IllegalArgumentException("percentile out of range: " + p);
+		}
+		if (n == 0)
+		{
+			return Double.NaN;
+		}
+		if (n == 1)
+		{
+			return values[0];
+		}
+
+		double pos = p / 100 * (n + 1);
+		double fpos = Math.floor(pos);
+		int intPos = (int)fpos;
+		double dif = pos - fpos;
+
+		if (pos < 1)
+		{
+			return min;
+		}
+		if (pos >= n)
+		{
+			return max;
+		}
+
+		if (!meanValid)
+		{
+			computeMean();
+		}
+		double lower = select(values, n, intPos - 1);
+
+		//select leaves everything after the kth value greater or equal to it
+		double upper = values[intPos];
+		for (int i = intPos + 1; i < n; i++)
+		{
+			if (values[i] < upper)
+			{
+				upper = values[i];
+			}
+		}
+
+		return lower + dif * (upper - lower);
+	}
+
+	/**
+	 * Rearranges the first n values so the kth smallest is at index k, the values before it are less or equal and
+	 * the values after it greater or equal.
+	 * @param a - the values
+	 * @param n - the number of values in use
+	 * @param k - the zero based rank to select
+	 * @return the kth smallest value
+	 */
+	static double select(double[] a, int n, int k)
+	{
+		int left = 0;
+		int right = n - 1;
+
+		while (right > left)
+		{
+			//median of three pivot
+			int mid = (left + right) >>> 1;
+			if (a[mid] < a[left])
+			{
+				swap(a, left, mid);
+			}
+			if (a[right] < a[left])
+			{
+				swap(a, left, right);
+			}
+			if (a[right] < a[mid])
+			{
+				swap(a, mid, right);
+			}
+			double pivot = a[mid];
+
+			//three way partition so runs of equal prices don't degrade to quadratic time
+			int lt = left;
+			int gt = right;
+			int i = left;
+			while (i <= gt)
+			{
+				if (a[i] < pivot)
+				{
+					swap(a, lt++, i++);
+				}
+				else if (a[i] > pivot)
+				{
+					swap(a, i, gt--);
+				}
+				else
+				{
+					i++;
+				}
+			}
+
+			if (k < lt)
+			{
+				right = lt - 1;
+			}
+			else if (k > gt)
+			{
+				left = gt + 1;
+			}
+			else
+			{
+				return pivot;
+			}
+		}
+		return a[k];
+	}
+
+	private static void swap(double[] a, int i, int j)
+	{
+		double tmp = a[i];
+		a[i] = a[j];
+		a[j] = tmp;
+	}
+}
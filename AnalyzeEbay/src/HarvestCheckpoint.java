@@ -0,0 +1,205 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Progress of the harvest of a single search query, saved so a harvest that failed or was killed part way can be
+ * resumed at the next page instead of fetched again from page 1.
+ *
+ * It records the end time window of the search (so the resumed search asks for the same items, sorted the same way),
+ * whether it was incremental, the last page whose items are in the item store and the pagination totals of the
+ * search. The checkpoint is only saved after the items of its pages were appended to the item store, and deleted when
+ * the harvest finishes.
+ *
+ * The file is a properties file, written to a temporary file and renamed over the old one.
+ */
+public class HarvestCheckpoint
+{
+	private static final String END_TIME_FROM = "endTimeFrom";
+	private static final String END_TIME_TO = "endTimeTo";
+	private static final String INCREMENTAL = "incremental";
+	private static final String LAST_COMPLETED_PAGE = "lastCompletedPage";
+	private static final String TOTAL_PAGES = "totalPages";
+	private static final String TOTAL_ENTRIES = "totalEntries";
+
+	private final File file;
+
+	private String endTimeFrom;
+	private String endTimeTo;
+	private boolean incremental;
+	private int lastCompletedPage;
+	private int totalPages;
+	private int totalEntries;
+
+	/**
+	 * Constructor for a checkpoint
+	 * @param file - the file the checkpoint is saved in, does not need to exist yet
+	 */
+	public HarvestCheckpoint(File file)
+	{
+		this.file = file;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Loads the checkpoint from its file
+	 * @return true if there was a checkpoint to load, false if the last harvest finished
+	 * @throws IOException - if the file can't be read or isn't a valid checkpoint
+	 */
+	public boolean load() throws IOException
+	{
+		if (!file.exists())
+		{
+			return false;
+		}
+
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			properties.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		try
+		{
+			endTimeFrom = properties.getProperty(END_TIME_FROM);
+			endTimeTo = properties.getProperty(END_TIME_TO);
+			incremental = Boolean.parseBoolean(properties.getProperty(INCREMENTAL));
+			lastCompletedPage = Integer.parseInt(properties.getProperty(LAST_COMPLETED_PAGE));
+			totalPages = Integer.parseInt(properties.getProperty(TOTAL_PAGES));
+			totalEntries = Integer.parseInt(properties.getProperty(TOTAL_ENTRIES));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IOException("Invalid harvest checkpoint: " + file, e);
+		}
+		return true;
+	}
+
+	/**
+	 * Saves the checkpoint, replacing the file as a whole so a crash leaves either the old or the new checkpoint
+	 * @throws IOException
+	 */
+	public void save() throws IOException
+	{
+		Properties properties = new Properties();
+		if (endTimeFrom != null)
+		{
+			properties.setProperty(END_TIME_FROM, endTimeFrom);
+		}
+		if (endTimeTo != null)
+		{
+			properties.setProperty(END_TIME_TO, endTimeTo);
+		}
+		properties.setProperty(INCREMENTAL, Boolean.toString(incremental));
+		properties.setProperty(LAST_COMPLETED_PAGE, Integer.toString(lastCompletedPage));
+		properties.setProperty(TOTAL_PAGES, Integer.toString(totalPages));
+		properties.setProperty(TOTAL_ENTRIES, Integer.toString(totalEntries));
+
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try
+		{
+			properties.store(out, "Harvest checkpoint");
+		}
+		finally
+		{
+			out.close();
+		}
+
+		//renameTo doesn't replace an existing file on every platform
+		if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+		{
+			throw new IOException("Can't rename " + temp + " to " + file);
+		}
+	}
+
+	/**
+	 * Deletes the checkpoint once the harvest finished
+	 */
+	public void delete()
+	{
+		file.delete();
+	}
+
+	/**
+	 * @return the EndTimeFrom filter value of the search, null if it has none
+	 */
+	public String getEndTimeFrom()
+	{
+		return endTimeFrom;
+	}
+
+	public void setEndTimeFrom(String endTimeFrom)
+	{
+		this.endTimeFrom = endTimeFrom;
+	}
+
+	/**
+	 * @return the EndTimeTo filter value of the search, null if it has none
+	 */
+	public String getEndTimeTo()
+	{
+		return endTimeTo;
+	}
+
+	public void setEndTimeTo(String endTimeTo)
+	{
+		this.endTimeTo = endTimeTo;
+	}
+
+	public boolean isIncremental()
+	{
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental)
+	{
+		this.incremental = incremental;
+	}
+
+	/**
+	 * @return the last page whose items are in the item store, 0 if none
+	 */
+	public int getLastCompletedPage()
+	{
+		return lastCompletedPage;
+	}
+
+	public void setLastCompletedPage(int lastCompletedPage)
+	{
+		this.lastCompletedPage = lastCompletedPage;
+	}
+
+	public int getTotalPages()
+	{
+		return totalPages;
+	}
+
+	public void setTotalPages(int totalPages)
+	{
+		this.totalPages = totalPages;
+	}
+
+	public int getTotalEntries()
+	{
+		return totalEntries;
+	}
+
+	public void setTotalEntries(int totalEntries)
+	{
+		this.totalEntries = totalEntries;
+	}
+}
@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorts rows by a numeric column without comparators or boxing: the keys are pulled out into a primitive array once
+ * and the result is the order of the row indices.
+ *
+ * When the range of the keys and the row index fit in 63 bits together, as the end times of years of listings and
+ * millions of rows do, each key is packed with its index into a single long and the packed longs are sorted with
+ * Arrays.parallelSort. Wider keys are sorted with a least significant digit radix sort of the indices. Both are
+ * stable: rows with equal keys keep their order, in either direction.
+ */
+public final class IndexSort
+{
+	private static final int RADIX_BITS = 16;
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	private IndexSort()
+	{
+	}
+
+	/**
+	 * Sorts row indices by long keys
+	 * @param keys - the key of each row
+	 * @param descending - true for the largest key first
+	 * @return the row indices in key order
+	 */
+	public static int[] sortedIndices(long[] keys, boolean descending)
+	{
+		int n = keys.length;
+		if (n == 0)
+		{
+			return new int[0];
+		}
+
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (long key : keys)
+		{
+			min = Math.min(min, key);
+			max = Math.max(max, key);
+		}
+
+		//keys are sorted as unsigned offsets from the smallest key, from the largest one when descending
+		long range = max - min;
+		int indexBits = bitLength(n - 1);
+		if (bitLength(range) + indexBits <= 63)
+		{
+			long[] packed = new long[n];
+			for (int i = 0; i < n; i++)
+			{
+				long offset = descending ? max - keys[i] : keys[i] - min;
+				packed[i] = offset << indexBits | i;
+			}
+			Arrays.parallelSort(packed);
+
+			int[] order = new int[n];
+			long indexMask = (1L << indexBits) - 1;
+			for (int i = 0; i < n; i++)
+			{
+				order[i] = (int)(packed[i] & indexMask);
+			}
+			return order;
+		}
+
+		long[] offsets = new long[n];
+		for (int i = 0; i < n; i++)
+		{
+			offsets[i] = descending ? max - keys[i] : keys[i] - min;
+		}
+		return radixSort(offsets);
+	}
+
+	/**
+	 * Sorts row indices by double keys. NaN keys sort after every other key ascending and before them descending.
+	 * @param keys - the key of each row
+	 * @param descending - true for the largest key first
+	 * @return the row indices in key order
+	 */
+	public static int[] sortedIndices(double[] keys, boolean descending)
+	{
+		long[] sortable = new long[keys.length];
+		for (int i = 0; i < keys.length; i++)
+		{
+			sortable[i] = sortableBits(keys[i]);
+		}
+		return sortedIndices(sortable, descending);
+	}
+
+	/**
+	 * Puts a list in the order of sorted indices
+	 * @param list - the list, reordered in place
+	 * @param order - the index of the element that goes at each position, a permutation of the list's indices
+	 */
+	public static <T> void reorder(List<T> list, int[] order)
+	{
+		if (order.length != list.size())
+		{
+			throw new IllegalArgumentException("Order of " + order.length + " rows for a list of " + list.size());
+		}
+		List<T> copy = new ArrayList<T>(list);
+		for (int i = 0; i < order.length; i++)
+		{
+			list.set(i, copy.get(order[i]));
+		}
+	}
+
+	/**
+	 * Private helper that maps a double to a long with the same order, -0.0 before 0.0 and NaN last
+	 */
+	private static long sortableBits(double value)
+	{
+		long bits = Double.doubleToLongBits(value);
+		//negative doubles order backwards by their bits, flipping the rest of them turns that around
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	/**
+	 * Private helper that sorts indices by unsigned keys, RADIX_BITS bits at a time from the lowest. A pass whose
+	 * digit is the same for every key is skipped.
+	 */
+	private static int[] radixSort(long[] keys)
+	{
+		int n = keys.length;
+		int[] order = new int[n];
+		int[] scratch = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			order[i] = i;
+		}
+
+		int[] counts = new int[RADIX + 1];
+		for (int shift = 0; shift < 64; shift += RADIX_BITS)
+		{
+			Arrays.fill(counts, 0);
+			for (int i = 0; i < n; i++)
+			{
+				counts[(int)(keys[i] >>> shift) & (RADIX - 1)]++;
+			}
+			if (counts[(int)(keys[0] >>> shift) & (RADIX - 1)] == n)
+			{
+				continue;
+			}
+
+			//counts become the start of each digit's run
+			int start = 0;
+			for (int d = 0; d < RADIX; d++)
+			{
+				int count = counts[d];
+				counts[d] = start;
+				start += count;
+			}
+			for (int i = 0; i < n; i++)
+			{
+				int row = order[i];
+				scratch[counts[(int)(keys[row] >>> shift) & (RADIX - 1)]++] = row;
+			}
+			int[] swap = order;
+			order = scratch;
+			scratch = swap;
+		}
+		return order;
+	}
+
+	/**
+	 * Private helper that counts the bits needed to hold an unsigned value, 0 for 0
+	 */
+	private static int bitLength(long value)
+	{
+		return 64 - Long.numberOfLeadingZeros(value);
+	}
+}
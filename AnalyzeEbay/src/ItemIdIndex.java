@@ -0,0 +1,667 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent index of the item ids already stored by each query, shared by every query run in the JVM.
+ *
+ * The ids are kept as primitive longs in an open addressing hash table in a memory mapped file, so the index is
+ * ready as soon as it is opened and doesn't need any heap for the ids. The key of an id packs the code of the
+ * query into the high bits and the numeric item id into the low 44 bits, so the same item found by two queries is
+ * new to each of them. Item ids that aren't numbers of up to 13 digits are hashed into the low bits instead.
+ *
+ * Table file layout (little endian):
+ * 	header: int magic ("AEII"), short format version, short reserved, long capacity, long size
+ * 	slots: capacity longs, 0 for an empty slot
+ *
+ * The table is rehashed (to grow it, or to remove the ids of a query) into a scratch table mapped after it in the
+ * same file, which is then copied over the table and cut off, so the ids are never copied to the heap. A mapping is
+ * released as soon as it is replaced rather than when it's garbage collected.
+ *
+ * The names of the queries and the number of ids of each are kept in a text file next to the table, the code of a
+ * query is its line number. The index is derived from the item stores: the ids a query finds are only added to the
+ * table once they have been stored (see QueryIds.commit), and a query whose count doesn't match its store is
+ * resynced from it. The table is locked so only one process can use it at a time.
+ */
+public class ItemIdIndex implements Closeable
+{
+	private static final int MAGIC = 0x41454949;	//"AEII"
+	private static final short VERSION = 1;
+	private static final int CAPACITY_OFFSET = 8;
+	private static final int SIZE_OFFSET = 16;
+	private static final int HEADER_LENGTH = 24;
+
+	/** size written to the header while the table is being rehashed, a table left this way is discarded **/
+	private static final long REHASHING = -1;
+
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	private static final int MAX_CAPACITY = 1 << 27;
+
+	private static final int ITEM_ID_BITS = 44;
+	private static final long ITEM_ID_MASK = (1L << ITEM_ID_BITS) - 1;
+	private static final long HASHED_FLAG = 1L << ITEM_ID_BITS;
+	private static final int QUERY_SHIFT = ITEM_ID_BITS + 1;
+	private static final int MAX_QUERIES = (1 << (64 - QUERY_SHIFT)) - 1;
+
+	private static final String TABLE_FILE = "ids.idx";
+	private static final String QUERY_FILE = "queries.txt";
+
+	/** how a mapping is released before it's garbage collected, null if the JVM doesn't allow it **/
+	private static final Object UNMAPPER;
+	private static final Method UNMAP;
+	static
+	{
+		Object unmapper = null;
+		Method unmap = null;
+		try
+		{
+			//Java 9+
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			unmap = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unmapper = theUnsafe.get(null);
+		}
+		catch (Exception e)
+		{
+			try
+			{
+				//Java 8, DirectBuffer.cleaner().clean()
+				unmap = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			}
+			catch (Exception e8)
+			{
+				unmap = null;
+			}
+		}
+		UNMAPPER = unmapper;
+		UNMAP = unmap;
+	}
+
+	private final File dir;
+	private final RandomAccessFile tableFile;
+	private final FileLock lock;
+
+	private MappedByteBuffer table;
+	private int capacity;
+	private long size;
+
+	private final List<String> queryNames = new ArrayList<String>();
+	private final List<Integer> queryCounts = new ArrayList<Integer>();
+	private final Map<String, Integer> queryCodes = new HashMap<String, Integer>();
+
+	/**
+	 * Constructor that opens the index in a directory, creating it if it doesn't exist
+	 * @param dir - the directory of the index files
+	 * @throws IOException - if the index can't be opened or is in use by another process
+	 */
+	public ItemIdIndex(File dir) throws IOException
+	{
+		this.dir = dir;
+		if (!dir.exists())
+		{
+			dir.mkdirs();
+		}
+
+		tableFile = new RandomAccessFile(new File(dir, TABLE_FILE), "rw");
+		FileLock tableLock;
+		try
+		{
+			tableLock = tableFile.getChannel().tryLock();
+		}
+		catch (OverlappingFileLockException e)
+		{
+			//already open in this JVM
+			tableLock = null;
+		}
+		lock = tableLock;
+		if (lock == null)
+		{
+			tableFile.close();
+			throw new IOException("Item id index is already in use: " + dir.getAbsolutePath());
+		}
+
+		readQueries();
+
+		if (!openTable())
+		{
+			//a missing or broken table is started over, every query is resynced from its store on its next run
+			createTable(INITIAL_CAPACITY);
+			for (int i = 0; i < queryCounts.size(); i++)
+			{
+				queryCounts.set(i, 0);
+			}
+			writeQueries();
+		}
+	}
+
+	/**
+	 * Gets the ids of a query, registering the query if it's new to the index
+	 * @param queryName - the unique name of the query, e.g. the name of its item store
+	 * @return the ids of the query
+	 * @throws IOException - if the query list can't be written
+	 */
+	public synchronized QueryIds forQuery(String queryName) throws IOException
+	{
+		Integer code = queryCodes.get(queryName);
+		if (code == null)
+		{
+			if (queryNames.size() >= MAX_QUERIES)
+			{
+				throw new IllegalStateException("Item id index is full, it can hold at most " + MAX_QUERIES + " queries");
+			}
+			queryNames.add(queryName);
+			queryCounts.add(0);
+			code = queryNames.size();
+			queryCodes.put(queryName, code);
+			writeQueries();
+		}
+		return new QueryIds(code);
+	}
+
+	/**
+	 * @return the number of ids in the index, over every query
+	 */
+	public synchronized long size()
+	{
+		return size;
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if (table != null)
+		{
+			table.force();
+			unmap();
+		}
+		lock.release();
+		tableFile.close();
+	}
+
+	/**
+	 * Private helper that maps the table file if it holds a complete table of the current version
+	 * @return true if the table was mapped
+	 */
+	private boolean openTable() throws IOException
+	{
+		if (tableFile.length() < HEADER_LENGTH)
+		{
+			return false;
+		}
+
+		//the header is read without mapping, so a table that's started over has no mapping open
+		tableFile.seek(0);
+		int magic = Integer.reverseBytes(tableFile.readInt());
+		short version = Short.reverseBytes(tableFile.readShort());
+		tableFile.readShort();
+		long storedCapacity = Long.reverseBytes(tableFile.readLong());
+		long storedSize = Long.reverseBytes(tableFile.readLong());
+
+		if (magic != MAGIC || version != VERSION || storedSize == REHASHING || storedCapacity < INITIAL_CAPACITY
+				|| storedCapacity > MAX_CAPACITY || Long.bitCount(storedCapacity) != 1
+				|| tableFile.length() < HEADER_LENGTH + storedCapacity * 8)
+		{
+			return false;
+		}
+
+		capacity = (int)storedCapacity;
+		size = storedSize;
+		map(HEADER_LENGTH + capacity * 8L);
+		return true;
+	}
+
+	/**
+	 * Private helper that replaces the table file with an empty table
+	 */
+	private void createTable(int newCapacity) throws IOException
+	{
+		unmap();
+		tableFile.setLength(0);
+		tableFile.setLength(HEADER_LENGTH + newCapacity * 8L);
+
+		capacity = newCapacity;
+		size = 0;
+		map(HEADER_LENGTH + capacity * 8L);
+		table.putInt(0, MAGIC);
+		table.putShort(4, VERSION);
+		table.putLong(CAPACITY_OFFSET, capacity);
+		table.putLong(SIZE_OFFSET, size);
+	}
+
+	private void map(long length) throws IOException
+	{
+		unmap();
+		table = tableFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+		table.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Private helper that releases the mapping of the table, if any. Only the table field refers to it, so nothing
+	 * can touch the released memory; if the JVM doesn't allow releasing it, it's left to the garbage collector.
+	 */
+	private void unmap()
+	{
+		MappedByteBuffer mapping = table;
+		table = null;
+		if (mapping == null || UNMAP == null)
+		{
+			return;
+		}
+
+		try
+		{
+			if (UNMAPPER != null)
+			{
+				UNMAP.invoke(UNMAPPER, mapping);
+			}
+			else
+			{
+				Object cleaner = UNMAP.invoke(mapping);
+				if (cleaner != null)
+				{
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			//left to the garbage collector
+		}
+	}
+
+	private long slot(int index)
+	{
+		return table.getLong(HEADER_LENGTH + index * 8);
+	}
+
+	private static int hash(long key, int capacity)
+	{
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & (capacity - 1);
+	}
+
+	private synchronized boolean containsKey(long key)
+	{
+		int index = hash(key, capacity);
+		long current;
+		while ((current = slot(index)) != 0)
+		{
+			if (current == key)
+			{
+				return true;
+			}
+			index = (index + 1) & (capacity - 1);
+		}
+		return false;
+	}
+
+	/**
+	 * Private helper that adds a key to the table
+	 * @return true if the key wasn't in the table
+	 */
+	private synchronized boolean addKey(long key) throws IOException
+	{
+		int index = hash(key, capacity);
+		long current;
+		while ((current = slot(index)) != 0)
+		{
+			if (current == key)
+			{
+				return false;
+			}
+			index = (index + 1) & (capacity - 1);
+		}
+
+		table.putLong(HEADER_LENGTH + index * 8, key);
+		size++;
+		table.putLong(SIZE_OFFSET, size);
+
+		//keep the load factor at or under a half
+		if (size * 2 > capacity)
+		{
+			grow();
+		}
+		return true;
+	}
+
+	/**
+	 * Private helper that doubles the capacity of the table
+	 */
+	private void grow() throws IOException
+	{
+		if (capacity >= MAX_CAPACITY)
+		{
+			throw new IllegalStateException("Item id index is full, it can hold at most " + MAX_CAPACITY / 2 + " ids");
+		}
+		rehash(capacity * 2, 0);
+	}
+
+	/**
+	 * Private helper that removes every key of a query from the table. Open addressing can't leave holes in a probe
+	 * sequence, so the keys of the other queries are rehashed, the way grow does.
+	 */
+	private synchronized void removeKeys(int queryCode) throws IOException
+	{
+		for (int index = 0; index < capacity; index++)
+		{
+			if (slot(index) >>> QUERY_SHIFT == queryCode)
+			{
+				rehash(capacity, queryCode);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Private helper that rehashes the table into a scratch table mapped after it, leaving out the keys of a query,
+	 * copies the scratch table over the table and cuts it off. The size in the header says the table is being
+	 * rehashed until it's done, so a table left half rehashed is started over when it's opened.
+	 * @param newCapacity - the capacity of the rehashed table
+	 * @param removedQueryCode - the code of the query whose keys are left out, 0 for none
+	 */
+	private void rehash(int newCapacity, int removedQueryCode) throws IOException
+	{
+		//at most 3/2 of the largest table (1GB), so the offsets fit an int
+		int scratch = HEADER_LENGTH + capacity * 8;
+		table.putLong(SIZE_OFFSET, REHASHING);
+		map(scratch + newCapacity * 8L);
+		for (int index = 0; index < newCapacity; index++)
+		{
+			table.putLong(scratch + index * 8, 0);
+		}
+
+		long count = 0;
+		for (int index = 0; index < capacity; index++)
+		{
+			long key = slot(index);
+			if (key != 0 && key >>> QUERY_SHIFT != removedQueryCode)
+			{
+				int newIndex = hash(key, newCapacity);
+				while (table.getLong(scratch + newIndex * 8) != 0)
+				{
+					newIndex = (newIndex + 1) & (newCapacity - 1);
+				}
+				table.putLong(scratch + newIndex * 8, key);
+				count++;
+			}
+		}
+
+		//the scratch table starts after the table, so copying forward never overwrites a slot before it's copied
+		for (int index = 0; index < newCapacity; index++)
+		{
+			table.putLong(HEADER_LENGTH + index * 8, table.getLong(scratch + index * 8));
+		}
+		capacity = newCapacity;
+		size = count;
+		table.putLong(CAPACITY_OFFSET, capacity);
+		table.putLong(SIZE_OFFSET, size);
+
+		//the mapping over the scratch table is released before the file is cut
+		unmap();
+		tableFile.setLength(HEADER_LENGTH + capacity * 8L);
+		map(HEADER_LENGTH + capacity * 8L);
+	}
+
+	private synchronized void setCount(int queryCode, int count) throws IOException
+	{
+		queryCounts.set(queryCode - 1, count);
+		writeQueries();
+	}
+
+	private synchronized int getCount(int queryCode)
+	{
+		return queryCounts.get(queryCode - 1);
+	}
+
+	/**
+	 * Private helper that reads the names and id counts of the queries, one "count name" line per query
+	 */
+	private void readQueries() throws IOException
+	{
+		File file = new File(dir, QUERY_FILE);
+		if (!file.exists())
+		{
+			return;
+		}
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				int tab = line.indexOf('\t');
+				String name = line.substring(tab + 1);
+				queryNames.add(name);
+				queryCounts.add(Integer.parseInt(line.substring(0, tab)));
+				queryCodes.put(name, queryNames.size());
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Private helper that rewrites the query file, through a temporary file so it's never left half written
+	 */
+	private void writeQueries() throws IOException
+	{
+		File file = new File(dir, QUERY_FILE);
+		File tmp = new File(dir, QUERY_FILE + ".tmp");
+
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
+		try
+		{
+			for (int i = 0; i < queryNames.size(); i++)
+			{
+				writer.print(queryCounts.get(i));
+				writer.print('\t');
+				writer.print(queryNames.get(i));
+				writer.print('\n');
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Gets the key of an item id of a query
+	 * @param queryCode - the code of the query
+	 * @param itemId - the item id
+	 * @return the key, never 0
+	 */
+	static long key(int queryCode, String itemId)
+	{
+		long id = -1;
+		if (itemId.length() <= 13)
+		{
+			id = 0;
+			for (int i = 0; i < itemId.length() && id >= 0; i++)
+			{
+				char c = itemId.charAt(i);
+				id = c >= '0' && c <= '9' ? id * 10 + (c - '0') : -1;
+			}
+		}
+
+		long low;
+		if (id >= 0 && id <= ITEM_ID_MASK && !itemId.isEmpty())
+		{
+			low = id;
+		}
+		else
+		{
+			//FNV-1a
+			long h = 0xcbf29ce484222325L;
+			for (int i = 0; i < itemId.length(); i++)
+			{
+				h ^= itemId.charAt(i);
+				h *= 0x100000001b3L;
+			}
+			low = (h & ITEM_ID_MASK) | HASHED_FLAG;
+		}
+		return ((long)queryCode << QUERY_SHIFT) | low;
+	}
+
+	/**
+	 * The item ids of a single query.
+	 *
+	 * Ids added during a run are held as pending until commit, after the items have been stored, so an item that
+	 * was found but not stored (e.g. the program was killed) is still new on the next run. Only one thread should
+	 * use a QueryIds at a time.
+	 */
+	public class QueryIds
+	{
+		private final int code;
+		private long[] pending = new long[16];
+		private int pendingSize = 0;
+
+		private QueryIds(int code)
+		{
+			this.code = code;
+		}
+
+		/**
+		 * Adds an item id if it isn't already known
+		 * @param itemId - the item id
+		 * @return true if the id wasn't stored or pending yet
+		 */
+		public boolean add(String itemId)
+		{
+			long key = key(code, itemId);
+			if (containsKey(key))
+			{
+				return false;
+			}
+			return addPending(key);
+		}
+
+		/**
+		 * @return the number of committed ids of the query
+		 */
+		public int size()
+		{
+			return getCount(code);
+		}
+
+		/**
+		 * @return the number of ids added since the last commit
+		 */
+		public int pendingSize()
+		{
+			return pendingSize;
+		}
+
+		/**
+		 * Adds the pending ids to the index, to be called once their items are stored
+		 * @throws IOException - if the index can't be written
+		 */
+		public void commit() throws IOException
+		{
+			synchronized (ItemIdIndex.this)
+			{
+				int added = 0;
+				for (long key : pending)
+				{
+					if (key != 0 && addKey(key))
+					{
+						added++;
+					}
+				}
+				setCount(code, getCount(code) + added);
+			}
+
+			Arrays.fill(pending, 0);
+			pendingSize = 0;
+		}
+
+		/**
+		 * Makes the ids of the query in the index match the stored items, for a query whose index count differs
+		 * from its store (the index is new or was lost, the program stopped between storing and committing, or the
+		 * store was deleted or cut short). Ids of the query that aren't in the store any more are removed, so their
+		 * items are new again. The count is set to the number of stored items, so a store with an id twice (e.g.
+		 * migrated from an old blob) doesn't have to be resynced on every run.
+		 * @param storedItems - every item in the query's store
+		 * @throws IOException - if the index can't be written
+		 */
+		public void resync(List<ItemRecord> storedItems) throws IOException
+		{
+			synchronized (ItemIdIndex.this)
+			{
+				removeKeys(code);
+				for (ItemRecord item : storedItems)
+				{
+					addKey(key(code, item.getItemId()));
+				}
+				setCount(code, storedItems.size());
+			}
+		}
+
+		/**
+		 * Private helper that adds a key to the pending set, an open addressing set of its own
+		 * @return true if the key wasn't pending yet
+		 */
+		private boolean addPending(long key)
+		{
+			int index = hash(key, pending.length);
+			while (pending[index] != 0)
+			{
+				if (pending[index] == key)
+				{
+					return false;
+				}
+				index = (index + 1) & (pending.length - 1);
+			}
+			pending[index] = key;
+			pendingSize++;
+
+			if (pendingSize * 2 > pending.length)
+			{
+				long[] old = pending;
+				pending = new long[old.length * 2];
+				for (long oldKey : old)
+				{
+					if (oldKey != 0)
+					{
+						int newIndex = hash(oldKey, pending.length);
+						while (pending[newIndex] != 0)
+						{
+							newIndex = (newIndex + 1) & (pending.length - 1);
+						}
+						pending[newIndex] = oldKey;
+					}
+				}
+			}
+			return true;
+		}
+	}
+}
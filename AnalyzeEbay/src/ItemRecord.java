@@ -0,0 +1,135 @@
+import com.ebay.services.finding.Amount;
+import com.ebay.services.finding.SearchItem;
+
+/**
+ * Compact record of the fields of a sold SearchItem that the reports use.
+ *
+ * End times are kept as epoch milliseconds rather than the Calendar of the SearchItem.
+ */
+public class ItemRecord
+{
+	private final String itemId;
+	private final double price;
+	private final String currency;
+	private final long endTime;
+	private final String listingType;
+	private final int conditionId;
+	private final String condition;
+	private final String title;
+	private final String seller;
+	private final String sellingState;
+
+	/**
+	 * Constructor for an item record
+	 * @param itemId - the ebay item id
+	 * @param price - the converted selling price
+	 * @param currency - the currency id of the converted selling price
+	 * @param endTime - the listing end time in epoch milliseconds
+	 * @param listingType - the listing type (Auction, FixedPrice, ...)
+	 * @param conditionId - the condition id, -1 if unknown
+	 * @param condition - the condition display name
+	 * @param title - the item title
+	 * @param seller - the seller user name
+	 * @param sellingState - the selling state
+	 */
+	public ItemRecord(String itemId, double price, String currency, long endTime, String listingType, int conditionId,
+			String condition, String title, String seller, String sellingState)
+	{
+		this.itemId = itemId;
+		this.price = price;
+		this.currency = currency;
+		this.endTime = endTime;
+		this.listingType = listingType;
+		this.conditionId = conditionId;
+		this.condition = condition;
+		this.title = title;
+		this.seller = seller;
+		this.sellingState = sellingState;
+	}
+
+	/**
+	 * Creates a record from the fields of a SearchItem returned by the finding service
+	 * @param item - the search item
+	 * @return the item record
+	 */
+	public static ItemRecord fromSearchItem(SearchItem item)
+	{
+		Amount convertedPrice = item.getSellingStatus().getConvertedCurrentPrice();
+
+		int conditionId = -1;
+		String condition = null;
+		if (item.getCondition() != null)
+		{
+			if (item.getCondition().getConditionId() != null)
+			{
+				conditionId = item.getCondition().getConditionId();
+			}
+			condition = item.getCondition().getConditionDisplayName();
+		}
+
+		String seller = item.getSellerInfo() != null ? item.getSellerInfo().getSellerUserName() : null;
+
+		return new ItemRecord(item.getItemId(), convertedPrice.getValue(), convertedPrice.getCurrencyId(),
+				item.getListingInfo().getEndTime().getTimeInMillis(), item.getListingInfo().getListingType(),
+				conditionId, condition, item.getTitle(), seller, item.getSellingStatus().getSellingState());
+	}
+
+	public String getItemId()
+	{
+		return itemId;
+	}
+
+	public double getPrice()
+	{
+		return price;
+	}
+
+	public String getCurrency()
+	{
+		return currency;
+	}
+
+	/**
+	 * @return the listing end time in epoch milliseconds
+	 */
+	public long getEndTime()
+	{
+		return endTime;
+	}
+
+	public String getListingType()
+	{
+		return listingType;
+	}
+
+	/**
+	 * @return the condition id, -1 if unknown
+	 */
+	public int getConditionId()
+	{
+		return conditionId;
+	}
+
+	/**
+	 * @return the condition display name
+	 */
+	public String getCondition()
+	{
+		return condition;
+	}
+
+	public String getTitle()
+	{
+		return title;
+	}
+
+	public String getSeller()
+	{
+		return seller;
+	}
+
+	public String getSellingState()
+	{
+		return sellingState;
+	}
+}
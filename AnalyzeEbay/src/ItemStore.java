@@ -0,0 +1,287 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * Append-only binary file of ItemRecords for a single search query.
+ *
+ * File layout:
+ * 	header: int magic ("AEIS"), short format version, short reserved
+ * 	records: int payload length, payload
+ *
+ * Each run only appends the records of the new items. A record that was only partly written (e.g. the program
+ * was killed during an append) is ignored by the reader and cut off before the next append.
+ */
+public class ItemStore
+{
+	private static final int MAGIC = 0x41454953;	//"AEIS"
+	private static final short VERSION = 1;
+	private static final int HEADER_LENGTH = 8;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final File file;
+
+	/**
+	 * Constructor for an item store
+	 * @param file - the file the records are stored in, does not need to exist yet
+	 */
+	public ItemStore(File file)
+	{
+		this.file = file;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	public boolean exists()
+	{
+		return file.exists();
+	}
+
+	/**
+	 * Opens a reader that streams the records of the store one at a time
+	 * @return the reader
+	 * @throws IOException - if the file can't be opened or isn't an item store of a known version
+	 */
+	public RecordReader openReader() throws IOException
+	{
+		return new RecordReader(file);
+	}
+
+	/**
+	 * Appends records to the end of the store, creating the store if it doesn't exist yet
+	 * @param records - the records to append
+	 * @throws IOException
+	 */
+	public void append(List<ItemRecord> records) throws IOException
+	{
+		if (!file.exists() || file.length() < HEADER_LENGTH)
+		{
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+			try
+			{
+				out.writeInt(MAGIC);
+				out.writeShort(VERSION);
+				out.writeShort(0);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		else
+		{
+			truncatePartialRecord();
+		}
+
+		if (records.isEmpty())
+		{
+			return;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+		ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+		DataOutputStream recordOut = new DataOutputStream(recordBytes);
+		try
+		{
+			for (ItemRecord record : records)
+			{
+				recordBytes.reset();
+				writeRecord(recordOut, record);
+				recordOut.flush();
+
+				out.writeInt(recordBytes.size());
+				recordBytes.writeTo(out);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Private helper that cuts off a record at the end of the file that was only partly written
+	 */
+	private void truncatePartialRecord() throws IOException
+	{
+		long validLength = HEADER_LENGTH;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+		try
+		{
+			readHeader(in);
+			long fileLength = file.length();
+			while (validLength + 4 <= fileLength)
+			{
+				int length = in.readInt();
+				if (length < 0 || validLength + 4 + length > fileLength)
+				{
+					break;
+				}
+				skipFully(in, length);
+				validLength += 4 + length;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		if (validLength < file.length())
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try
+			{
+				raf.setLength(validLength);
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+	}
+
+	private static void readHeader(DataInputStream in) throws IOException
+	{
+		int magic = in.readInt();
+		short version = in.readShort();
+		in.readShort();
+
+		if (magic != MAGIC)
+		{
+			throw new IOException("Not an item store file");
+		}
+		if (version != VERSION)
+		{
+			throw new IOException("Unsupported item store version: " + version);
+		}
+	}
+
+	private static void skipFully(DataInputStream in, int length) throws IOException
+	{
+		int skipped = 0;
+		while (skipped < length)
+		{
+			int n = in.skipBytes(length - skipped);
+			if (n <= 0)
+			{
+				throw new EOFException();
+			}
+			skipped += n;
+		}
+	}
+
+	static void writeRecord(DataOutputStream out, ItemRecord record) throws IOException
+	{
+		out.writeUTF(record.getItemId());
+		out.writeDouble(record.getPrice());
+		writeString(out, record.getCurrency());
+		out.writeLong(record.getEndTime());
+		writeString(out, record.getListingType());
+		out.writeInt(record.getConditionId());
+		writeString(out, record.getCondition());
+		writeString(out, record.getTitle());
+		writeString(out, record.getSeller());
+		writeString(out, record.getSellingState());
+	}
+
+	static ItemRecord readRecord(DataInputStream in) throws IOException
+	{
+		String itemId = in.readUTF();
+		double price = in.readDouble();
+		String currency = readString(in);
+		long endTime = in.readLong();
+		String listingType = readString(in);
+		int conditionId = in.readInt();
+		String condition = readString(in);
+		String title = readString(in);
+		String seller = readString(in);
+		String sellingState = readString(in);
+
+		return new ItemRecord(itemId, price, currency, endTime, listingType, conditionId, condition, title, seller,
+				sellingState);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		out.writeBoolean(value != null);
+		if (value != null)
+		{
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * Streams the records of an item store, one record at a time
+	 */
+	public static class RecordReader implements Closeable
+	{
+		private final DataInputStream in;
+		private final long fileLength;
+		private long position;
+
+		private RecordReader(File file) throws IOException
+		{
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+			this.fileLength = file.length();
+			try
+			{
+				readHeader(in);
+			}
+			catch (IOException e)
+			{
+				in.close();
+				throw e;
+			}
+			this.position = HEADER_LENGTH;
+		}
+
+		/**
+		 * Reads the next record
+		 * @return the next record, null if there are no more complete records
+		 * @throws IOException
+		 */
+		public ItemRecord next() throws IOException
+		{
+			if (position + 4 > fileLength)
+			{
+				return null;
+			}
+
+			int length = in.readInt();
+			if (length < 0 || position + 4 + length > fileLength)
+			{
+				//partly written record at the end of the file
+				return null;
+			}
+
+			ItemRecord record = readRecord(in);
+			position += 4 + length;
+			return record;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			in.close();
+		}
+	}
+}
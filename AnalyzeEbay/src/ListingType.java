@@ -0,0 +1,63 @@
+/**
+ * Listing types returned by the finding service, with the byte codes they are stored as in the price columns.
+ */
+public enum ListingType
+{
+	AUCTION("Auction", (byte)0),
+	FIXED_PRICE("FixedPrice", (byte)1),
+	STORE_INVENTORY("StoreInventory", (byte)2),
+	AUCTION_WITH_BIN("AuctionWithBIN", (byte)3),
+	CLASSIFIED("Classified", (byte)4),
+	OTHER(null, (byte)5);
+
+	private static final ListingType[] BY_CODE = values();
+
+	private final String serviceName;
+	private final byte code;
+
+	private ListingType(String serviceName, byte code)
+	{
+		this.serviceName = serviceName;
+		this.code = code;
+	}
+
+	/**
+	 * @return the name the finding service uses for the listing type, null for OTHER
+	 */
+	public String getServiceName()
+	{
+		return serviceName;
+	}
+
+	public byte getCode()
+	{
+		return code;
+	}
+
+	/**
+	 * Gets the listing type of a finding service listing type name
+	 * @param serviceName - the listing type name returned by the finding service
+	 * @return the listing type, OTHER if the name is unknown or null
+	 */
+	public static ListingType fromServiceName(String serviceName)
+	{
+		for (ListingType listingType : BY_CODE)
+		{
+			if (listingType.serviceName != null && listingType.serviceName.equals(serviceName))
+			{
+				return listingType;
+			}
+		}
+		return OTHER;
+	}
+
+	/**
+	 * Gets the listing type of a byte code
+	 * @param code - the byte code
+	 * @return the listing type, OTHER if the code is unknown
+	 */
+	public static ListingType fromCode(byte code)
+	{
+		return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : OTHER;
+	}
+}
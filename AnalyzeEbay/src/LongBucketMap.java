@@ -0,0 +1,165 @@
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to BucketStats, so grouping rows doesn't box keys.
+ */
+public class LongBucketMap
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private BucketStats[] values = new BucketStats[INITIAL_CAPACITY];
+	private int size = 0;
+
+	/**
+	 * Gets the bucket of a key
+	 * @param key - the key
+	 * @return the bucket, null if there is none
+	 */
+	public BucketStats get(long key)
+	{
+		int slot = slot(key, keys.length);
+		while (values[slot] != null)
+		{
+			if (keys[slot] == key)
+			{
+				return values[slot];
+			}
+			slot = (slot + 1) & (keys.length - 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the bucket of a key, creating it if there is none
+	 * @param key - the key
+	 * @param factory - creates the bucket
+	 * @return the bucket
+	 */
+	public BucketStats getOrCreate(long key, BucketStatsFactory factory)
+	{
+		int slot = slot(key, keys.length);
+		while (values[slot] != null)
+		{
+			if (keys[slot] == key)
+			{
+				return values[slot];
+			}
+			slot = (slot + 1) & (keys.length - 1);
+		}
+
+		BucketStats bucket = factory.newBucketStats();
+		keys[slot] = key;
+		values[slot] = bucket;
+		size++;
+
+		//keep the load factor at or under a half
+		if (size * 2 > keys.length)
+		{
+			resize();
+		}
+		return bucket;
+	}
+
+	/**
+	 * Puts the bucket of a key, replacing any bucket it already had
+	 * @param key - the key
+	 * @param bucket - the bucket
+	 */
+	public void put(long key, BucketStats bucket)
+	{
+		int slot = slot(key, keys.length);
+		while (values[slot] != null)
+		{
+			if (keys[slot] == key)
+			{
+				values[slot] = bucket;
+				return;
+			}
+			slot = (slot + 1) & (keys.length - 1);
+		}
+
+		keys[slot] = key;
+		values[slot] = bucket;
+		size++;
+		if (size * 2 > keys.length)
+		{
+			resize();
+		}
+	}
+
+	/**
+	 * Merges the buckets of another map into this one, a bucket whose key is only in the other map is taken as is
+	 * @param other - the map to merge, its buckets may be taken over by this map
+	 */
+	public void mergeAll(LongBucketMap other)
+	{
+		for (int slot = 0; slot < other.keys.length; slot++)
+		{
+			if (other.values[slot] != null)
+			{
+				BucketStats bucket = get(other.keys[slot]);
+				if (bucket == null)
+				{
+					put(other.keys[slot], other.values[slot]);
+				}
+				else
+				{
+					bucket.merge(other.values[slot]);
+				}
+			}
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the keys of the map in ascending order
+	 */
+	public long[] sortedKeys()
+	{
+		long[] result = new long[size];
+		int count = 0;
+		for (int slot = 0; slot < keys.length; slot++)
+		{
+			if (values[slot] != null)
+			{
+				result[count++] = keys[slot];
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	private void resize()
+	{
+		long[] oldKeys = keys;
+		BucketStats[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new BucketStats[oldKeys.length * 2];
+
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldValues[i] != null)
+			{
+				int slot = slot(oldKeys[i], keys.length);
+				while (values[slot] != null)
+				{
+					slot = (slot + 1) & (keys.length - 1);
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private static int slot(long key, int capacity)
+	{
+		//mix the bits so packed keys that differ only in high bits spread out
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & (capacity - 1);
+	}
+}
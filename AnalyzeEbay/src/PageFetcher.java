@@ -0,0 +1,747 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import com.ebay.common.CallBudgetExceededException;
+import com.ebay.common.Constants;
+import com.ebay.common.RateLimiter;
+import com.ebay.common.metrics.ServiceMetrics;
+import com.ebay.services.client.ClientConfig;
+import com.ebay.services.client.FindingServiceClientFactory;
+import com.ebay.services.finding.AckValue;
+import com.ebay.services.finding.ErrorCategory;
+import com.ebay.services.finding.ErrorData;
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.FindCompletedItemsResponse;
+import com.ebay.services.finding.FindingServicePortType;
+import com.ebay.services.finding.PaginationInput;
+import com.ebay.services.finding.PaginationOutput;
+import com.ebay.services.finding.SearchItem;
+
+/**
+ * Fetches all the pages of a findCompletedItems search.
+ *
+ * The first page is fetched on the calling thread to find out the total number of pages. The remaining pages
+ * are then fetched in parallel on the passed worker pool. Pages are merged in page order so the result (and the
+ * duplicate/new counts) are the same as fetching the pages one at a time. At most maxPagesInFlight pages are
+ * submitted to the pool at once, so several searches can share a pool without one of them taking all of it.
+ *
+ * For searches sorted newest first, stopAtKnownPage makes the fetch stop at the first page without any new items
+ * since every page after it only has older, already stored, items.
+ *
+ * Transient failures of a page (transport errors, server faults, and Failure acks with a System error or a throttling
+ * error id) are retried with a jittered exponential backoff, up to maxAttempts calls per page. A page that still fails,
+ * or whose Failure ack has only errors that retrying doesn't help, fails the fetch, so a partial result is never
+ * mistaken for a complete one; only a page without items ends it early. A fetch can start at a later page and
+ * report every merged page to a PageListener, which is how a harvest is checkpointed and resumed.
+ *
+ * Each page request carries the priority of the fetch, so when calls have to wait for the rate limiter of the
+ * application id the pages of higher priority searches are sent first.
+ *
+ * Pages are unmarshalled by the JAX-WS port of the thread, or read straight into item records by a
+ * StreamingCompletedItemsClient when a streaming parser is set. With a ResponseCache set, a page whose request was
+ * answered within the time to live of the cache is taken from the cache without calling the service.
+ */
+public class PageFetcher
+{
+	private static final String PAGE = "Page";
+	private static final String MS = "ms";
+	private static final String OPERATION = "findCompletedItems";
+	private static final String FAILED = " failed:";
+	private static final String FAILED_AFTER = " failed after ";
+	private static final String ATTEMPTS = " attempts:";
+	private static final String JAXB_FIELDS = "jaxb";
+
+	private static final int DEFAULT_MAX_ATTEMPTS = 4;
+	private static final long BASE_BACKOFF_MILLIS = 500;
+	private static final long MAX_BACKOFF_MILLIS = 30000;
+
+	private final ClientConfig config;
+	private final ExecutorService workers;
+	private final int itemsPerPage;
+	private final int maxPagesInFlight;
+	private boolean stopAtKnownPage = false;
+	private int priority = RateLimiter.DEFAULT_PRIORITY;
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private StreamingCompletedItemsClient streamingClient = null;
+	private ResponseCache responseCache = null;
+
+	/**
+	 * Constructor for a page fetcher that submits every page to the pool at once
+	 * @param config - the client config used to create the service clients
+	 * @param workers - the pool the pages after the first are fetched on
+	 * @param itemsPerPage - the number of entries to request per page
+	 */
+	public PageFetcher(ClientConfig config, ExecutorService workers, int itemsPerPage)
+	{
+		this(config, workers, itemsPerPage, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Constructor for a page fetcher
+	 * @param config - the client config used to create the service clients
+	 * @param workers - the pool the pages after the first are fetched on
+	 * @param itemsPerPage - the number of entries to request per page
+	 * @param maxPagesInFlight - the most pages submitted to the pool and not yet merged at any time
+	 */
+	public PageFetcher(ClientConfig config, ExecutorService workers, int itemsPerPage, int maxPagesInFlight)
+	{
+		if (maxPagesInFlight < 1)
+		{
+			throw new IllegalArgumentException("maxPagesInFlight must be at least 1: " + maxPagesInFlight);
+		}
+		this.config = config;
+		this.workers = workers;
+		this.itemsPerPage = itemsPerPage;
+		this.maxPagesInFlight = maxPagesInFlight;
+	}
+
+	/**
+	 * Sets whether the fetch stops at the first page whose items are all already known
+	 * @param stopAtKnownPage - true to stop at the first page without new items, only correct for searches sorted
+	 * newest first
+	 */
+	public void setStopAtKnownPage(boolean stopAtKnownPage)
+	{
+		this.stopAtKnownPage = stopAtKnownPage;
+	}
+
+	/**
+	 * Sets the priority the page requests wait for the rate limiter with
+	 * @param priority - the priority, higher is sent first (RateLimiter.DEFAULT_PRIORITY if not set)
+	 */
+	public void setPriority(int priority)
+	{
+		this.priority = priority;
+	}
+
+	/**
+	 * Sets the most calls made for a page before its failure fails the fetch
+	 * @param maxAttempts - the most calls per page, 1 for no retries
+	 */
+	public void setMaxAttempts(int maxAttempts)
+	{
+		if (maxAttempts < 1)
+		{
+			throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Sets the parser the pages are read with instead of unmarshalling them with JAXB
+	 * @param parser - the parser, null to unmarshal the pages (the default)
+	 */
+	public void setStreamingParser(CompletedItemsParser parser)
+	{
+		this.streamingClient = parser == null ? null : new StreamingCompletedItemsClient(config, parser);
+	}
+
+	/**
+	 * Sets the cache pages are taken from and added to
+	 * @param responseCache - the cache, null to call the service for every page (the default)
+	 */
+	public void setResponseCache(ResponseCache responseCache)
+	{
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * Fetches every page of the search described by the request. Items whose id is already known are counted as
+	 * duplicates, the others are added to newItems. Stops at the last page or the first page without any items, or
+	 * the first page without new items if stopAtKnownPage is set.
+	 * @param request - the request to fetch; its keywords and item filters are copied into each page request
+	 * @param knownItemIds - ids of the items already stored, the ids of new items are added to it as pending
+	 * @param newItems - list the records of the new items are added to
+	 * @param log - print stream that the page numbers and latencies are printed to
+	 * @return the result of the fetch
+	 * @throws InterruptedException
+	 * @throws ExecutionException - if fetching one of the pages failed
+	 */
+	public FetchResult fetchAll(final FindCompletedItemsRequest request, ItemIdIndex.QueryIds knownItemIds, List<ItemRecord> newItems,
+			PrintStream log)
+			throws InterruptedException, ExecutionException
+	{
+		try
+		{
+			return fetchAll(request, 1, knownItemIds, newItems, null, log);
+		}
+		catch (IOException e)
+		{
+			//only thrown by a listener
+			throw new ExecutionException(e);
+		}
+	}
+
+	/**
+	 * Fetches the pages of the search described by the request from startPage on, see fetchAll. Each page is merged
+	 * and then reported to the listener, in page order.
+	 * @param request - the request to fetch; its keywords and item filters are copied into each page request
+	 * @param startPage - the first page to fetch
+	 * @param knownItemIds - ids of the items already stored, the ids of new items are added to it as pending
+	 * @param newItems - list the records of the new items are added to
+	 * @param listener - listener told about every merged page, null for none
+	 * @param log - print stream that the page numbers and latencies are printed to
+	 * @return the result of the fetch
+	 * @throws InterruptedException
+	 * @throws ExecutionException - if fetching one of the pages failed
+	 * @throws IOException - if the listener failed
+	 */
+	public FetchResult fetchAll(final FindCompletedItemsRequest request, int startPage, ItemIdIndex.QueryIds knownItemIds,
+			List<ItemRecord> newItems, PageListener listener, PrintStream log)
+			throws InterruptedException, ExecutionException, IOException
+	{
+		FetchResult fetchResult = new FetchResult();
+		long fetchStart = System.nanoTime();
+
+		PageResult firstPage;
+		try
+		{
+			firstPage = fetchPage(request, startPage);
+		}
+		catch (WebServiceException e)
+		{
+			throw new ExecutionException(e);
+		}
+
+		if (!firstPage.hasItems())
+		{
+			fetchResult.elapsedMillis = toMillis(System.nanoTime() - fetchStart);
+			return fetchResult;
+		}
+
+		//a response without pagination totals is taken to have no pages after its own
+		int totalPages = Math.max(startPage, totalPagesOf(firstPage.paginationOutput));
+		fetchResult.totalPages = totalPages;
+
+		//pages are submitted in page order, keeping at most maxPagesInFlight ahead of the page being merged
+		List<Future<PageResult>> futures = new ArrayList<Future<PageResult>>();
+		int nextPage = startPage + 1;
+
+		try
+		{
+			boolean pageHadNewItems = merge(firstPage, knownItemIds, newItems, fetchResult, log);
+			if (listener != null)
+			{
+				listener.pageMerged(firstPage.pageNumber, firstPage.paginationOutput);
+			}
+
+			//when stopping at known pages there's no point fetching ahead of a first page without new items
+			if (!stopAtKnownPage || pageHadNewItems)
+			{
+				while (nextPage <= totalPages && futures.size() < maxPagesInFlight)
+				{
+					futures.add(submitPage(request, nextPage++));
+				}
+			}
+			else if (totalPages > startPage)
+			{
+				fetchResult.stoppedAtKnownPage = true;
+			}
+
+			for (int i = 0; i < futures.size(); i++)
+			{
+				if (stopAtKnownPage && !pageHadNewItems)
+				{
+					fetchResult.stoppedAtKnownPage = true;
+					break;
+				}
+
+				PageResult pageResult = futures.get(i).get();
+				if (!pageResult.hasItems())
+				{
+					break;
+				}
+				pageHadNewItems = merge(pageResult, knownItemIds, newItems, fetchResult, log);
+				if (listener != null)
+				{
+					listener.pageMerged(pageResult.pageNumber, pageResult.paginationOutput);
+				}
+
+				if (nextPage <= totalPages)
+				{
+					futures.add(submitPage(request, nextPage++));
+				}
+			}
+		}
+		finally
+		{
+			//Don't leave pages running if one of them failed or we stopped early
+			for (Future<PageResult> future : futures)
+			{
+				future.cancel(true);
+			}
+		}
+
+		fetchResult.elapsedMillis = toMillis(System.nanoTime() - fetchStart);
+		return fetchResult;
+	}
+
+	/**
+	 * Counts the items of the search described by the request, by fetching a first page of a single item
+	 * @param request - the request to count the items of
+	 * @return the total entries of the search, 0 if the service didn't return any
+	 * @throws InterruptedException - if interrupted while backing off
+	 * @throws WebServiceException - if the page failed and can't be retried, or still failed after maxAttempts calls
+	 */
+	public int countEntries(FindCompletedItemsRequest request) throws InterruptedException
+	{
+		PageResult pageResult = fetchPage(request, 1, 1);
+		if (pageResult.paginationOutput == null || pageResult.paginationOutput.getTotalEntries() == null)
+		{
+			return 0;
+		}
+		return pageResult.paginationOutput.getTotalEntries();
+	}
+
+	/**
+	 * Private helper that submits a page to the worker pool
+	 * @param request - the request to copy the search parameters from
+	 * @param pageNum - the page to fetch
+	 * @return the future of the page result
+	 */
+	private Future<PageResult> submitPage(final FindCompletedItemsRequest request, final int pageNum)
+	{
+		return workers.submit(new Callable<PageResult>() {
+			@Override
+			public PageResult call() throws Exception
+			{
+				return fetchPage(request, pageNum);
+			}
+		});
+	}
+
+	/**
+	 * Private helper that fetches a single page, retrying transient failures, or takes it from the response cache
+	 * @param request - the request to copy the search parameters from
+	 * @param pageNum - the page to fetch
+	 * @return the page result
+	 * @throws InterruptedException - if interrupted while backing off
+	 * @throws WebServiceException - if the page failed and can't be retried, or still failed after maxAttempts calls;
+	 * a Failure ack is a failed page
+	 */
+	private PageResult fetchPage(FindCompletedItemsRequest request, int pageNum) throws InterruptedException
+	{
+		return fetchPage(request, pageNum, itemsPerPage);
+	}
+
+	/**
+	 * Private helper that fetches a single page of the passed size, see fetchPage(request, pageNum)
+	 */
+	private PageResult fetchPage(FindCompletedItemsRequest request, int pageNum, int entriesPerPage)
+			throws InterruptedException
+	{
+		FindCompletedItemsRequest pageRequest = copyRequest(request);
+
+		PaginationInput pi = new PaginationInput();
+		pi.setPageNumber(pageNum);
+		pi.setEntriesPerPage(entriesPerPage);
+		pageRequest.setPaginationInput(pi);
+
+		String cacheKey = null;
+		if (responseCache != null)
+		{
+			//pages read by the streaming parser only have its fields, so they're cached apart from unmarshalled pages
+			cacheKey = ResponseCache.keyOf(pageRequest, config.getGlobalId(),
+					streamingClient != null ? streamingClient.getParser().getFields().toString() : JAXB_FIELDS);
+			ResponseCache.Page cachedPage = responseCache.get(cacheKey);
+			if (cachedPage != null)
+			{
+				return new PageResult(pageNum, cachedPage.getAck(), Collections.<ErrorData>emptyList(),
+						cachedPage.getPaginationOutput(), cachedPage.getItems());
+			}
+		}
+
+		for (int attempt = 1; ; attempt++)
+		{
+			long start = System.nanoTime();
+			PageResult pageResult;
+			try
+			{
+				if (streamingClient != null)
+				{
+					CompletedItemsParser.Page page = streamingClient.findCompletedItems(pageRequest, priority);
+					pageResult = new PageResult(pageNum, page.getAck(), page.getErrors(), page.getPaginationOutput(),
+							page.getItems());
+				}
+				else
+				{
+					pageResult = unmarshalPage(pageRequest, pageNum);
+				}
+			}
+			catch (WebServiceException e)
+			{
+				if (attempt >= maxAttempts || !isTransient(e))
+				{
+					throw e;
+				}
+				backOff(attempt);
+				continue;
+			}
+			pageResult.latencyMillis = toMillis(System.nanoTime() - start);
+
+			ServiceMetrics.forOperation(OPERATION).recordResponse(pageResult.ack == null ? null : pageResult.ack.value(),
+					pageResult.items.size());
+
+			if (isTransientFailure(pageResult))
+			{
+				if (attempt >= maxAttempts)
+				{
+					throw new WebServiceException(PAGE + pageNum + FAILED_AFTER + attempt + ATTEMPTS + describeErrors(pageResult));
+				}
+				backOff(attempt);
+				continue;
+			}
+			if (pageResult.ack == AckValue.FAILURE)
+			{
+				//e.g. a request error, the same call would fail again
+				throw new WebServiceException(PAGE + pageNum + FAILED + describeErrors(pageResult));
+			}
+
+			if (responseCache != null)
+			{
+				responseCache.put(cacheKey, pageResult.ack, pageResult.paginationOutput, pageResult.items);
+			}
+			return pageResult;
+		}
+	}
+
+	/**
+	 * Private helper that calls findCompletedItems with the calling thread's pooled service client (JAX-WS ports
+	 * are not thread safe so each worker thread gets its own)
+	 * @param pageRequest - the request of the page
+	 * @param pageNum - the number of the page
+	 * @return the page result, without its latency
+	 */
+	private PageResult unmarshalPage(FindCompletedItemsRequest pageRequest, int pageNum)
+	{
+		FindingServicePortType serviceClient = FindingServiceClientFactory.getPooledServiceClient(config);
+		//the port is shared by every search fetched on this thread, so the priority is set on each call
+		Map<String, Object> requestContext = ((BindingProvider)serviceClient).getRequestContext();
+		requestContext.put(Constants.CALL_PRIORITY, Integer.valueOf(priority));
+		//the errors are unmarshalled here anyway, so the rate limiter is told about throttling from them rather than
+		//by RateLimitHandler reading every response body a second time
+		requestContext.put(Constants.RATE_LIMIT_REPORTED_BY_CALLER, Boolean.TRUE);
+		FindCompletedItemsResponse response = serviceClient.findCompletedItems(pageRequest);
+
+		List<ItemRecord> items = new ArrayList<ItemRecord>();
+		if (response.getSearchResult() != null && response.getSearchResult().getItem() != null)
+		{
+			for (SearchItem item : response.getSearchResult().getItem())
+			{
+				items.add(ItemRecord.fromSearchItem(item));
+			}
+		}
+		List<ErrorData> errors = response.getErrorMessage() == null ? Collections.<ErrorData>emptyList()
+				: response.getErrorMessage().getError();
+		if (config.isRateLimitEnabled())
+		{
+			if (isThrottled(errors))
+			{
+				RateLimiter.forApplication(config).onThrottled();
+			}
+			else
+			{
+				RateLimiter.forApplication(config).onSuccess();
+			}
+		}
+		return new PageResult(pageNum, response.getAck(), errors, response.getPaginationOutput(), items);
+	}
+
+	/**
+	 * Private helper that sleeps before a retry, for a random time between half and all of an exponential backoff
+	 * (so pages that failed together don't retry together)
+	 * @param attempt - the number of the call that failed, starting at 1
+	 * @throws InterruptedException
+	 */
+	private static void backOff(int attempt) throws InterruptedException
+	{
+		ServiceMetrics.forOperation(OPERATION).recordRetry();
+		long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 16));
+		Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+	}
+
+	/**
+	 * Private helper that decides whether a call that threw can be retried: transport failures and server faults
+	 * can, client faults and a used up call budget can't
+	 */
+	private static boolean isTransient(WebServiceException e)
+	{
+		if (e instanceof CallBudgetExceededException)
+		{
+			return false;
+		}
+		if (e instanceof SOAPFaultException)
+		{
+			QName faultCode = ((SOAPFaultException)e).getFault().getFaultCodeAsQName();
+			return faultCode != null && ("Server".equals(faultCode.getLocalPart()) || "Receiver".equals(faultCode.getLocalPart()));
+		}
+		return true;
+	}
+
+	/**
+	 * Private helper that decides whether a Failure response can be retried: it can if one of its errors is a System
+	 * error or a throttling error
+	 */
+	private boolean isTransientFailure(PageResult pageResult)
+	{
+		if (pageResult.ack != AckValue.FAILURE)
+		{
+			return false;
+		}
+		for (ErrorData error : pageResult.errors)
+		{
+			if (error.getCategory() == ErrorCategory.SYSTEM)
+			{
+				return true;
+			}
+		}
+		return isThrottled(pageResult.errors);
+	}
+
+	/**
+	 * Private helper that decides whether one of the errors of a response has a throttling error id
+	 */
+	private boolean isThrottled(List<ErrorData> errors)
+	{
+		Set<String> throttlingErrorIds = config.getThrottlingErrorIds();
+		if (throttlingErrorIds == null || throttlingErrorIds.isEmpty())
+		{
+			return false;
+		}
+		for (ErrorData error : errors)
+		{
+			if (throttlingErrorIds.contains(Long.toString(error.getErrorId())))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Private helper that lists the error ids and messages of a response
+	 */
+	private static String describeErrors(PageResult pageResult)
+	{
+		StringBuilder errors = new StringBuilder();
+		for (ErrorData error : pageResult.errors)
+		{
+			errors.append(" [").append(error.getErrorId()).append("] ").append(error.getMessage());
+		}
+		return errors.toString();
+	}
+
+	/**
+	 * Private helper that adds the new items of a page to newItems, counting duplicates and new items. Merges into the
+	 * same known ids are made one at a time, so several fetches of a query (e.g. its shards) can run at once.
+	 * @return true if the page had any new items
+	 */
+	private static boolean merge(PageResult pageResult, ItemIdIndex.QueryIds knownItemIds, List<ItemRecord> newItems,
+			FetchResult fetchResult, PrintStream log)
+	{
+		log.println(PAGE + pageResult.pageNumber + " " + pageResult.latencyMillis + MS);
+
+		int numNewItems = fetchResult.numNewItems;
+		synchronized (knownItemIds)
+		{
+			for (ItemRecord item : pageResult.items)
+			{
+				if (!knownItemIds.add(item.getItemId()))
+				{
+					fetchResult.numDup++;
+				}
+				else
+				{
+					fetchResult.numNewItems++;
+					newItems.add(item);
+				}
+			}
+		}
+
+		fetchResult.pageLatencies.add(pageResult.latencyMillis);
+		return fetchResult.numNewItems > numNewItems;
+	}
+
+	/**
+	 * Copies the search parameters of a request so each page can be requested with its own pagination input
+	 * without sharing the request object between threads.
+	 * @param request - the request to copy
+	 * @return a new request with the same search parameters and no pagination input
+	 */
+	public static FindCompletedItemsRequest copyRequest(FindCompletedItemsRequest request)
+	{
+		FindCompletedItemsRequest copy = new FindCompletedItemsRequest();
+		copy.setKeywords(request.getKeywords());
+		copy.getCategoryId().addAll(request.getCategoryId());
+		copy.getItemFilter().addAll(request.getItemFilter());
+		copy.getAspectFilter().addAll(request.getAspectFilter());
+		copy.getOutputSelector().addAll(request.getOutputSelector());
+		copy.getDomainFilter().addAll(request.getDomainFilter());
+		copy.setProductId(request.getProductId());
+		copy.setBuyerPostalCode(request.getBuyerPostalCode());
+		copy.setAffiliate(request.getAffiliate());
+		copy.setSortOrder(request.getSortOrder());
+		return copy;
+	}
+
+	/**
+	 * Private helper that gets the total pages of a pagination output, 0 if the service didn't return them
+	 */
+	private static int totalPagesOf(PaginationOutput paginationOutput)
+	{
+		return paginationOutput == null || paginationOutput.getTotalPages() == null ? 0 : paginationOutput.getTotalPages();
+	}
+
+	private static long toMillis(long nanos)
+	{
+		return nanos / 1000000L;
+	}
+
+	/**
+	 * Told about every page merged by a fetch, in page order
+	 */
+	public interface PageListener
+	{
+		/**
+		 * Called after the new items of a page were added to the new items list
+		 * @param pageNumber - the number of the merged page
+		 * @param paginationOutput - the pagination output of the page's response
+		 * @throws IOException
+		 */
+		void pageMerged(int pageNumber, PaginationOutput paginationOutput) throws IOException;
+	}
+
+	/**
+	 * The parts of a single fetched page that the fetch uses and how long it took to fetch
+	 */
+	private static class PageResult
+	{
+		private final int pageNumber;
+		private final AckValue ack;
+		private final List<ErrorData> errors;
+		private final PaginationOutput paginationOutput;
+		private final List<ItemRecord> items;
+		private long latencyMillis;
+
+		private PageResult(int pageNumber, AckValue ack, List<ErrorData> errors, PaginationOutput paginationOutput,
+				List<ItemRecord> items)
+		{
+			this.pageNumber = pageNumber;
+			this.ack = ack;
+			this.errors = errors;
+			this.paginationOutput = paginationOutput;
+			this.items = items;
+		}
+
+		private boolean hasItems()
+		{
+			return !items.isEmpty();
+		}
+	}
+
+	/**
+	 * The counts and page latencies of a fetch
+	 */
+	public static class FetchResult
+	{
+		private int totalPages = 0;
+		private int numDup = 0;
+		private int numNewItems = 0;
+		private long elapsedMillis = 0;
+		private boolean stoppedAtKnownPage = false;
+		private final List<Long> pageLatencies = new ArrayList<Long>();
+
+		/**
+		 * Combines the results of fetches of parts of a search, e.g. its shards
+		 * @param results - the results of the parts
+		 * @param elapsedMillis - the time the parts took to fetch together
+		 * @return the result of the whole search
+		 */
+		public static FetchResult combine(List<FetchResult> results, long elapsedMillis)
+		{
+			FetchResult combined = new FetchResult();
+			for (FetchResult result : results)
+			{
+				combined.totalPages += result.totalPages;
+				combined.numDup += result.numDup;
+				combined.numNewItems += result.numNewItems;
+				combined.stoppedAtKnownPage |= result.stoppedAtKnownPage;
+				combined.pageLatencies.addAll(result.pageLatencies);
+			}
+			combined.elapsedMillis = elapsedMillis;
+			return combined;
+		}
+
+		public int getTotalPages()
+		{
+			return totalPages;
+		}
+
+		public int getNumDup()
+		{
+			return numDup;
+		}
+
+		public int getNumNewItems()
+		{
+			return numNewItems;
+		}
+
+		public long getElapsedMillis()
+		{
+			return elapsedMillis;
+		}
+
+		/**
+		 * @return true if the fetch stopped before the last page because a page had no new items
+		 */
+		public boolean isStoppedAtKnownPage()
+		{
+			return stoppedAtKnownPage;
+		}
+
+		/**
+		 * @return the latency in milliseconds of each merged page, in page order
+		 */
+		public List<Long> getPageLatencies()
+		{
+			return Collections.unmodifiableList(pageLatencies);
+		}
+
+		/**
+		 * @return the slowest page latency in milliseconds, 0 if no pages were fetched
+		 */
+		public long getMaxPageLatency()
+		{
+			return pageLatencies.isEmpty() ? 0 : Collections.max(pageLatencies);
+		}
+
+		/**
+		 * @return the mean page latency in milliseconds, 0 if no pages were fetched
+		 */
+		public double getMeanPageLatency()
+		{
+			long sum = 0;
+			for (long latency : pageLatencies)
+			{
+				sum += latency;
+			}
+			return pageLatencies.isEmpty() ? 0 : (double)sum / pageLatencies.size();
+		}
+	}
+}
@@ -0,0 +1,303 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Columnar price history of a single search query.
+ *
+ * Each column is a file of fixed width little endian values in a directory unique to the query: the selling
+ * prices (double), the end times in epoch milliseconds (long), byte codes of the listing types and
+ * conditions, and the GMT day of the week and hour of the day of the end times (worked out once when the row is
+ * written, so a report doesn't do it for every cube that groups by them). Rows are in the same order as the
+ * records of the query's item store. The columns are read through memory mapped buffers so a report over the full
+ * history doesn't need any of it on the heap. A single column file can be at most 2GB, i.e. 268 million rows.
+ *
+ * A column missing from columns written by an older version counts as having no rows, so they are rebuilt.
+ */
+public class PriceColumns
+{
+	private static final String PRICE_FILE = "price.col";
+	private static final String END_TIME_FILE = "endTime.col";
+	private static final String LISTING_TYPE_FILE = "listingType.col";
+	private static final String CONDITION_FILE = "condition.col";
+	private static final String DAY_HOUR_FILE = "dayHour.col";
+
+	private static final int BATCH_ROWS = 8192;
+
+	/** The condition ids of the finding service, the code of a condition is its index **/
+	private static final int[] CONDITION_IDS = {1000, 1500, 1750, 2000, 2500, 3000, 4000, 5000, 6000, 7000};
+	public static final byte UNKNOWN_CONDITION = -1;
+
+	private final File dir;
+
+	private int size = 0;
+	private DoubleBuffer prices;
+	private LongBuffer endTimes;
+	private ByteBuffer listingTypes;
+	private ByteBuffer conditions;
+	private ByteBuffer dayHours;
+
+	/**
+	 * Constructor for the price columns stored in a directory
+	 * @param dir - the directory of the column files, created on the first write if it doesn't exist
+	 */
+	public PriceColumns(File dir)
+	{
+		this.dir = dir;
+	}
+
+	/**
+	 * Counts the complete rows on disk, i.e. the rows that were written to every column
+	 * @return the number of rows
+	 */
+	public int countRows()
+	{
+		long rows = Math.min(new File(dir, PRICE_FILE).length() / 8, new File(dir, END_TIME_FILE).length() / 8);
+		rows = Math.min(rows, new File(dir, LISTING_TYPE_FILE).length());
+		rows = Math.min(rows, new File(dir, CONDITION_FILE).length());
+		rows = Math.min(rows, new File(dir, DAY_HOUR_FILE).length());
+		return (int)rows;
+	}
+
+	/**
+	 * Replaces the columns with the rows of the passed records
+	 * @param records - the records, in item store order
+	 * @throws IOException
+	 */
+	public void rebuild(List<ItemRecord> records) throws IOException
+	{
+		write(records, false);
+	}
+
+	/**
+	 * Appends the rows of the passed records to the columns. Rows that were only written to some of the columns
+	 * are cut off first.
+	 * @param records - the records to append, in item store order
+	 * @throws IOException
+	 */
+	public void append(List<ItemRecord> records) throws IOException
+	{
+		int rows = countRows();
+		truncate(PRICE_FILE, rows * 8L);
+		truncate(END_TIME_FILE, rows * 8L);
+		truncate(LISTING_TYPE_FILE, rows);
+		truncate(CONDITION_FILE, rows);
+		truncate(DAY_HOUR_FILE, rows);
+
+		write(records, true);
+	}
+
+	/**
+	 * Maps the columns on disk for reading. Rows written after the columns were mapped are not visible until they
+	 * are mapped again.
+	 * @throws IOException
+	 */
+	public void map() throws IOException
+	{
+		size = countRows();
+		prices = mapColumn(PRICE_FILE, size * 8L).asDoubleBuffer();
+		endTimes = mapColumn(END_TIME_FILE, size * 8L).asLongBuffer();
+		listingTypes = mapColumn(LISTING_TYPE_FILE, size);
+		conditions = mapColumn(CONDITION_FILE, size);
+		dayHours = mapColumn(DAY_HOUR_FILE, size);
+	}
+
+	/**
+	 * @return the number of mapped rows
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public double getPrice(int row)
+	{
+		return prices.get(row);
+	}
+
+	/**
+	 * @return the end time of the row in epoch milliseconds
+	 */
+	public long getEndTime(int row)
+	{
+		return endTimes.get(row);
+	}
+
+	public ListingType getListingType(int row)
+	{
+		return ListingType.fromCode(listingTypes.get(row));
+	}
+
+	/**
+	 * @return the condition code of the row, UNKNOWN_CONDITION if the condition is unknown
+	 */
+	public byte getConditionCode(int row)
+	{
+		return conditions.get(row);
+	}
+
+	/**
+	 * @return the GMT day of the week of the end time of the row, Calendar.SUNDAY to Calendar.SATURDAY
+	 */
+	public int getDayOfWeek(int row)
+	{
+		return (dayHours.get(row) & 0xFF) / 24 + Calendar.SUNDAY;
+	}
+
+	/**
+	 * @return the GMT hour of the day of the end time of the row, 0 to 23
+	 */
+	public int getHourOfDay(int row)
+	{
+		return (dayHours.get(row) & 0xFF) % 24;
+	}
+
+	/**
+	 * Gets the byte code of a condition id
+	 * @param conditionId - the condition id
+	 * @return the condition code, UNKNOWN_CONDITION if the condition id is unknown
+	 */
+	public static byte conditionCode(int conditionId)
+	{
+		for (int i = 0; i < CONDITION_IDS.length; i++)
+		{
+			if (CONDITION_IDS[i] == conditionId)
+			{
+				return (byte)i;
+			}
+		}
+		return UNKNOWN_CONDITION;
+	}
+
+	/**
+	 * Gets the condition id of a byte code
+	 * @param code - the condition code
+	 * @return the condition id, -1 if the code is unknown
+	 */
+	public static int conditionId(byte code)
+	{
+		return code >= 0 && code < CONDITION_IDS.length ? CONDITION_IDS[code] : -1;
+	}
+
+	/**
+	 * Private helper that writes the rows of the records to every column, in batches
+	 */
+	private void write(List<ItemRecord> records, boolean append) throws IOException
+	{
+		if (!dir.exists())
+		{
+			dir.mkdirs();
+		}
+
+		FileChannel priceOut = new FileOutputStream(new File(dir, PRICE_FILE), append).getChannel();
+		FileChannel endTimeOut = new FileOutputStream(new File(dir, END_TIME_FILE), append).getChannel();
+		FileChannel listingTypeOut = new FileOutputStream(new File(dir, LISTING_TYPE_FILE), append).getChannel();
+		FileChannel conditionOut = new FileOutputStream(new File(dir, CONDITION_FILE), append).getChannel();
+		FileChannel dayHourOut = new FileOutputStream(new File(dir, DAY_HOUR_FILE), append).getChannel();
+
+		ByteBuffer priceBuf = ByteBuffer.allocateDirect(BATCH_ROWS * 8).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer endTimeBuf = ByteBuffer.allocateDirect(BATCH_ROWS * 8).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer listingTypeBuf = ByteBuffer.allocateDirect(BATCH_ROWS);
+		ByteBuffer conditionBuf = ByteBuffer.allocateDirect(BATCH_ROWS);
+		ByteBuffer dayHourBuf = ByteBuffer.allocateDirect(BATCH_ROWS);
+
+		try
+		{
+			for (int start = 0; start < records.size(); start += BATCH_ROWS)
+			{
+				int end = Math.min(records.size(), start + BATCH_ROWS);
+				for (int i = start; i < end; i++)
+				{
+					ItemRecord record = records.get(i);
+					priceBuf.putDouble(record.getPrice());
+					endTimeBuf.putLong(record.getEndTime());
+					listingTypeBuf.put(ListingType.fromServiceName(record.getListingType()).getCode());
+					conditionBuf.put(conditionCode(record.getConditionId()));
+					dayHourBuf.put(dayHourCode(record.getEndTime()));
+				}
+
+				writeFully(priceOut, priceBuf);
+				writeFully(endTimeOut, endTimeBuf);
+				writeFully(listingTypeOut, listingTypeBuf);
+				writeFully(conditionOut, conditionBuf);
+				writeFully(dayHourOut, dayHourBuf);
+			}
+		}
+		finally
+		{
+			priceOut.close();
+			endTimeOut.close();
+			listingTypeOut.close();
+			conditionOut.close();
+			dayHourOut.close();
+		}
+	}
+
+	/**
+	 * Private helper that packs the day of the week and hour of the day of an end time into a byte, read back as an
+	 * unsigned value from 0 to 167
+	 */
+	private static byte dayHourCode(long endTime)
+	{
+		return (byte)((EpochTime.dayOfWeek(endTime) - Calendar.SUNDAY) * 24 + EpochTime.hourOfDay(endTime));
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException
+	{
+		buf.flip();
+		while (buf.hasRemaining())
+		{
+			channel.write(buf);
+		}
+		buf.clear();
+	}
+
+	private void truncate(String fileName, long length) throws IOException
+	{
+		File file = new File(dir, fileName);
+		if (file.exists() && file.length() > length)
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try
+			{
+				raf.setLength(length);
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+	}
+
+	private ByteBuffer mapColumn(String fileName, long length) throws IOException
+	{
+		File file = new File(dir, fileName);
+		if (length == 0)
+		{
+			//nothing to map, and the file may not exist yet
+			return ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return buffer;
+		}
+		finally
+		{
+			//the mapping stays valid after the channel is closed
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,369 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.ebay.common.RateLimiter;
+import com.ebay.common.ServiceClientPool;
+import com.ebay.common.metrics.LatencyHistogram;
+import com.ebay.services.client.ClientConfig;
+
+/**
+ * Keeps refreshing the queries of a manifest file until the JVM is shut down (e.g. by kill or Ctrl-C), instead of
+ * running them from cron.
+ *
+ * Run as: "analyzeEbay --daemon manifest --interval(optional) minutes --refreshes(optional) n --threads(optional) n
+ * --pages(optional) n"
+ *
+ * The manifest is a batch manifest (see QueryManifest) whose lines may also start with "--every minutes", the time
+ * between the end of a refresh of the query and the start of the next one. --interval sets it for the queries that
+ * don't (the default is 60 minutes). --refreshes sets the most queries refreshed at once, --threads the number of
+ * threads fetching pages and --pages the most pages of a single query fetched at once.
+ *
+ * The items, newest end time and report stats of every query are kept in memory after its first refresh, so a
+ * refresh only reads the pages of the items that are new since the last one and adds just those items to the stats
+ * of the report. The client config, service clients and item id index are shared by every query for the life of
+ * the daemon. A query whose refresh fails is read from its files again on the next one. The time every refresh takes
+ * is printed with the refresh latencies of the query so far.
+ */
+public class QueryDaemon
+{
+	public static final String DAEMON_OPTION = "--daemon";
+
+	private static final String INTERVAL_OPTION = "--interval";
+	private static final String REFRESHES_OPTION = "--refreshes";
+	private static final String THREADS_OPTION = "--threads";
+	private static final String PAGES_OPTION = "--pages";
+
+	private static final int DEFAULT_INTERVAL_MINUTES = 60;
+	private static final int DEFAULT_CONCURRENT_REFRESHES = 4;
+	private static final int DEFAULT_FETCH_THREADS = 16;
+	private static final int DEFAULT_PAGES_PER_QUERY = 4;
+	private static final long SHUTDOWN_WAIT_SECONDS = 60;
+
+	private static final String USAGE = "Usage: " + DAEMON_OPTION + " manifest " + INTERVAL_OPTION + " minutes "
+			+ REFRESHES_OPTION + " n " + THREADS_OPTION + " n " + PAGES_OPTION + " n";
+
+	private final List<QueryManifest.Entry> entries;
+
+	private final int intervalMinutes;
+	private final int concurrentRefreshes;
+	private final int fetchThreads;
+	private final int pagesPerQuery;
+
+	private final CountDownLatch stopRequested = new CountDownLatch(1);
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	/**
+	 * Constructor for a daemon
+	 * @param manifest - the manifest file of the queries
+	 * @param intervalMinutes - the minutes between refreshes of the queries that don't set their own
+	 * @param concurrentRefreshes - the most queries refreshed at once
+	 * @param fetchThreads - the number of threads fetching pages, shared by every query
+	 * @param pagesPerQuery - the most pages of a single query fetched at once
+	 * @throws IOException - if the manifest can't be read
+	 */
+	public QueryDaemon(File manifest, int intervalMinutes, int concurrentRefreshes, int fetchThreads, int pagesPerQuery)
+			throws IOException
+	{
+		this.intervalMinutes = intervalMinutes;
+		this.concurrentRefreshes = concurrentRefreshes;
+		this.fetchThreads = fetchThreads;
+		this.pagesPerQuery = pagesPerQuery;
+		this.entries = new QueryManifest(manifest, true).getEntries();
+	}
+
+	/**
+	 * Runs a daemon from the command line arguments until the JVM is shut down
+	 * @param args - the command line arguments, starting with --daemon
+	 * @return the exit status, 0 unless the arguments are wrong
+	 * @throws IOException - if the manifest can't be read
+	 */
+	public static int run(String[] args) throws IOException
+	{
+		if (args.length < 2 || args.length % 2 != 0)
+		{
+			System.err.println(USAGE);
+			return 1;
+		}
+
+		int intervalMinutes = DEFAULT_INTERVAL_MINUTES;
+		int concurrentRefreshes = DEFAULT_CONCURRENT_REFRESHES;
+		int fetchThreads = DEFAULT_FETCH_THREADS;
+		int pagesPerQuery = DEFAULT_PAGES_PER_QUERY;
+
+		try
+		{
+			for (int i = 2; i < args.length; i += 2)
+			{
+				int value = Integer.parseInt(args[i + 1]);
+				if (value < 1)
+				{
+					throw new NumberFormatException();
+				}
+
+				if (args[i].equals(INTERVAL_OPTION))
+				{
+					intervalMinutes = value;
+				}
+				else if (args[i].equals(REFRESHES_OPTION))
+				{
+					concurrentRefreshes = value;
+				}
+				else if (args[i].equals(THREADS_OPTION))
+				{
+					fetchThreads = value;
+				}
+				else if (args[i].equals(PAGES_OPTION))
+				{
+					pagesPerQuery = value;
+				}
+				else
+				{
+					System.err.println(USAGE);
+					return 1;
+				}
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			System.err.println(USAGE);
+			return 1;
+		}
+
+		final QueryDaemon daemon = new QueryDaemon(new File(args[1]), intervalMinutes, concurrentRefreshes,
+				fetchThreads, pagesPerQuery);
+		Runtime.getRuntime().addShutdownHook(new Thread("QueryDaemon shutdown") {
+			@Override
+			public void run()
+			{
+				daemon.stop();
+			}
+		});
+		daemon.runUntilStopped(System.out);
+		return 0;
+	}
+
+	/**
+	 * Schedules every query of the manifest and refreshes them until the daemon is stopped
+	 * @param out - print stream the output of every refresh and the summary at the end are printed to
+	 * @throws IOException - if the item id index can't be opened
+	 */
+	public void runUntilStopped(PrintStream out) throws IOException
+	{
+		try
+		{
+			refreshUntilStopped(out);
+		}
+		finally
+		{
+			stopped.countDown();
+		}
+	}
+
+	/**
+	 * Private helper that schedules the queries, waits for the daemon to be stopped and shuts the schedule down
+	 * @param out - print stream the output of every refresh and the summary at the end are printed to
+	 * @throws IOException - if the item id index can't be opened
+	 */
+	private void refreshUntilStopped(PrintStream out) throws IOException
+	{
+		AnalyzeEbay.createDirectories();
+
+		ClientConfig config = AnalyzeEbay.newClientConfig();
+		ExecutorService fetchWorkers = Executors.newFixedThreadPool(fetchThreads);
+		ItemIdIndex itemIdIndex = new ItemIdIndex(new File(AnalyzeEbay.ITEM_INDEX_DIR));
+		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(concurrentRefreshes);
+
+		List<TrackedQuery> tracked = new ArrayList<TrackedQuery>();
+		try
+		{
+			for (QueryManifest.Entry entry : entries)
+			{
+				if (entry.getError() != null)
+				{
+					out.println("=== line " + entry.getLineNumber() + ": " + entry.getLine());
+					out.println(entry.getError());
+					continue;
+				}
+
+				int every = entry.getEveryMinutes(intervalMinutes);
+				TrackedQuery trackedQuery = new TrackedQuery(entry.getLineNumber(), entry.getLine(), entry.getQuery(),
+						entry.getPriority(), every, pagesPerQuery, config, fetchWorkers, itemIdIndex, out);
+				tracked.add(trackedQuery);
+				scheduler.scheduleWithFixedDelay(trackedQuery, 0, every, TimeUnit.MINUTES);
+			}
+			out.println("Tracking " + tracked.size() + " of " + entries.size() + " queries");
+
+			stopRequested.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			//a refresh cut short is resumed from its checkpoint by the next run
+			scheduler.shutdown();
+			try
+			{
+				if (!scheduler.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS))
+				{
+					scheduler.shutdownNow();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				scheduler.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			fetchWorkers.shutdownNow();
+			itemIdIndex.close();
+
+			for (TrackedQuery trackedQuery : tracked)
+			{
+				out.println(trackedQuery.summary());
+			}
+			out.println("Client pool: " + ServiceClientPool.getStats());
+			out.println("Rate limiter: " + RateLimiter.forApplication(config));
+			if (AnalyzeEbay.RESPONSE_CACHE != null)
+			{
+				out.println(AnalyzeEbay.RESPONSE_CACHE_STATS + AnalyzeEbay.RESPONSE_CACHE);
+			}
+			AnalyzeEbay.writeMetricsSummary(out);
+		}
+	}
+
+	/**
+	 * Stops the daemon, waiting for the refreshes that are running to finish
+	 */
+	public void stop()
+	{
+		stopRequested.countDown();
+		try
+		{
+			stopped.await(SHUTDOWN_WAIT_SECONDS * 2, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A query of the manifest and the state kept in memory between its refreshes
+	 */
+	static class TrackedQuery implements Runnable
+	{
+		private final int lineNumber;
+		private final String line;
+		private final Object[] query;
+		private final int priority;
+		private final int intervalMinutes;
+		private final int pagesPerQuery;
+		private final ClientConfig config;
+		private final ExecutorService fetchWorkers;
+		private final ItemIdIndex itemIdIndex;
+		private final PrintStream out;
+
+		//latencies of the refreshes of the loaded state in microseconds, reading the files is left out
+		private final LatencyHistogram refreshLatency = new LatencyHistogram();
+		private AnalyzeEbay.QueryState state = null;
+		private volatile int failures = 0;
+
+		TrackedQuery(int lineNumber, String line, Object[] query, int priority, int intervalMinutes, int pagesPerQuery,
+				ClientConfig config, ExecutorService fetchWorkers, ItemIdIndex itemIdIndex, PrintStream out)
+		{
+			this.lineNumber = lineNumber;
+			this.line = line;
+			this.query = query;
+			this.priority = priority;
+			this.intervalMinutes = intervalMinutes;
+			this.pagesPerQuery = pagesPerQuery;
+			this.config = config;
+			this.fetchWorkers = fetchWorkers;
+			this.itemIdIndex = itemIdIndex;
+			this.out = out;
+		}
+
+		/**
+		 * Refreshes the query and prints the output. Never throws, not even an Error: anything thrown would cancel
+		 * the refreshes that are still scheduled.
+		 */
+		@Override
+		public void run()
+		{
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			PrintStream log = new PrintStream(buffer, true);
+			String result;
+			try
+			{
+				result = refresh(log);
+			}
+			catch (Throwable e)
+			{
+				//the state may be out of step with the files after a failure
+				e.printStackTrace(log);
+				state = null;
+				failures++;
+				result = "Refresh failed: " + e;
+			}
+			finally
+			{
+				log.close();
+			}
+
+			synchronized (out)
+			{
+				out.println("=== line " + lineNumber + ": " + line);
+				out.print(buffer.toString());
+				out.println(result + ", next in " + intervalMinutes + " minutes");
+				out.println(summary());
+			}
+		}
+
+		/**
+		 * Refreshes the query, reading its files first if it has no state
+		 * @param log - print stream the output of the refresh is printed to
+		 * @return a line on how the refresh went
+		 * @throws Exception - if the files can't be read or the refresh fails
+		 */
+		String refresh(PrintStream log) throws Exception
+		{
+			long loadMillis = -1;
+			if (state == null)
+			{
+				long loadStart = System.nanoTime();
+				state = AnalyzeEbay.loadQuery(query, itemIdIndex, log);
+				loadMillis = (System.nanoTime() - loadStart) / 1000000L;
+			}
+
+			long start = System.nanoTime();
+			int newItems = AnalyzeEbay.refreshQuery(state, config, fetchWorkers, pagesPerQuery, priority, log);
+			long micros = (System.nanoTime() - start) / 1000L;
+			refreshLatency.record(micros);
+
+			return "Refreshed in " + micros / 1000L + "ms" + (loadMillis >= 0 ? " after reading the files in "
+					+ loadMillis + "ms" : "") + ", " + newItems + " new items, " + state.size() + " items";
+		}
+
+		/**
+		 * @return the number of refreshes of the query and their latencies
+		 */
+		String summary()
+		{
+			return "Line " + lineNumber + " refreshes: " + refreshLatency.getCount() + " (" + failures + " failed)"
+					+ (refreshLatency.getCount() == 0 ? "" : ", mean " + Math.round(refreshLatency.getMean() / 1000)
+					+ "ms, p50 " + refreshLatency.getValueAtPercentile(50) / 1000 + "ms, p90 "
+					+ refreshLatency.getValueAtPercentile(90) / 1000 + "ms, max " + refreshLatency.getMax() / 1000
+					+ "ms");
+		}
+	}
+}
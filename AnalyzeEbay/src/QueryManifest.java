@@ -0,0 +1,202 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ebay.common.RateLimiter;
+
+/**
+ * The queries of a manifest file, read the same way by the batch runner and the query daemon.
+ *
+ * Each line of the manifest is a query in the same form as the command line of a single query
+ * (keyword1 keyword2 ... --ubn --min min --max max). Blank lines and lines starting with # are skipped.
+ * A line may start with "--priority n" and, if the manifest allows it, "--every minutes", in either order.
+ * A query with the same files as a query on an earlier line is not run, they would overwrite each other's files.
+ */
+public class QueryManifest
+{
+	public static final String PRIORITY_OPTION = "--priority";
+	public static final String EVERY_OPTION = "--every";
+
+	private static final String DUPLICATE_QUERY = "Skipped, same files as line ";
+	private static final String INVALID_PRIORITY = "ERROR: INVALID VALUE SPECIFIED FOR PRIORITY";
+	private static final String INVALID_INTERVAL = "ERROR: INVALID VALUE SPECIFIED FOR EVERY";
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	/**
+	 * Constructor for a manifest, reading and parsing every line of the file
+	 * @param manifest - the manifest file of the queries
+	 * @param everyAllowed - true if a line may set the minutes between its refreshes with --every
+	 * @throws IOException - if the manifest can't be read
+	 */
+	public QueryManifest(File manifest, boolean everyAllowed) throws IOException
+	{
+		Map<String, Integer> fileNameLines = new HashMap<String, Integer>();
+		BufferedReader reader = new BufferedReader(new FileReader(manifest));
+		try
+		{
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#"))
+				{
+					entries.add(parse(lineNumber, line, everyAllowed, fileNameLines));
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return the queries of the manifest in the order of their lines, including the ones with an error
+	 */
+	public List<Entry> getEntries()
+	{
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Private helper that parses a line of the manifest
+	 * @param lineNumber - the number of the line in the file, from 1
+	 * @param line - the trimmed line
+	 * @param everyAllowed - true if the line may set the minutes between its refreshes
+	 * @param fileNameLines - the file names of the queries of the lines before and the lines they're on
+	 * @return the query of the line
+	 */
+	private static Entry parse(int lineNumber, String line, boolean everyAllowed, Map<String, Integer> fileNameLines)
+	{
+		Entry entry = new Entry(lineNumber, line);
+		String[] args = line.split("\\s+");
+
+		int start = 0;
+		while (start < args.length
+				&& (args[start].equals(PRIORITY_OPTION) || (everyAllowed && args[start].equals(EVERY_OPTION))))
+		{
+			boolean priority = args[start].equals(PRIORITY_OPTION);
+			int value;
+			try
+			{
+				value = Integer.parseInt(start + 1 < args.length ? args[start + 1] : "");
+			}
+			catch (NumberFormatException e)
+			{
+				entry.error = priority ? INVALID_PRIORITY : INVALID_INTERVAL;
+				return entry;
+			}
+
+			if (priority)
+			{
+				entry.priority = value;
+			}
+			else if (value < 1)
+			{
+				entry.error = INVALID_INTERVAL;
+				return entry;
+			}
+			else
+			{
+				entry.everyMinutes = value;
+			}
+			start += 2;
+		}
+
+		String[] queryArgs = new String[args.length - start];
+		System.arraycopy(args, start, queryArgs, 0, queryArgs.length);
+		Object[] query = AnalyzeEbay.processCommandLineArgs(queryArgs);
+		if (query[0] != null)
+		{
+			entry.error = (String)query[0];
+			return entry;
+		}
+
+		String fileName = AnalyzeEbay.queryFileName(query);
+		if (fileNameLines.containsKey(fileName))
+		{
+			entry.error = DUPLICATE_QUERY + fileNameLines.get(fileName);
+			return entry;
+		}
+		fileNameLines.put(fileName, lineNumber);
+		entry.query = query;
+		return entry;
+	}
+
+	/**
+	 * A line of the manifest and the query on it
+	 */
+	public static class Entry
+	{
+		private final int lineNumber;
+		private final String line;
+		private Object[] query = null;
+		private int priority = RateLimiter.DEFAULT_PRIORITY;
+		private int everyMinutes = 0;
+		private String error = null;
+
+		private Entry(int lineNumber, String line)
+		{
+			this.lineNumber = lineNumber;
+			this.line = line;
+		}
+
+		/**
+		 * @return the number of the line in the file, from 1
+		 */
+		public int getLineNumber()
+		{
+			return lineNumber;
+		}
+
+		/**
+		 * @return the trimmed line
+		 */
+		public String getLine()
+		{
+			return line;
+		}
+
+		/**
+		 * @return the processed command line arguments of the query, null if the line has an error
+		 */
+		public Object[] getQuery()
+		{
+			return query;
+		}
+
+		/**
+		 * @return the priority of the calls of the query, RateLimiter.DEFAULT_PRIORITY if the line doesn't set it
+		 */
+		public int getPriority()
+		{
+			return priority;
+		}
+
+		/**
+		 * @param defaultMinutes - the minutes for a line that doesn't set them
+		 * @return the minutes between refreshes of the query
+		 */
+		public int getEveryMinutes(int defaultMinutes)
+		{
+			return everyMinutes > 0 ? everyMinutes : defaultMinutes;
+		}
+
+		/**
+		 * @return the reason the query isn't run, null if it is
+		 */
+		public String getError()
+		{
+			return error;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the cubes of a report in a single pass over the price columns.
+ *
+ * Cubes are added with the dimensions they group by, then aggregate fills every cube at once. The key of each
+ * dimension is computed once per row no matter how many cubes share the dimension.
+ */
+public class ReportAggregator
+{
+	/** rows aggregated by a single task of the parallel aggregate **/
+	static final int CHUNK_ROWS = 1 << 15;
+
+	private final BucketStatsFactory statsFactory;
+
+	private final List<Dimension> dimensions = new ArrayList<Dimension>();
+	private final List<Cube> cubes = new ArrayList<Cube>();
+	private final List<int[]> cubeDimensionIndexes = new ArrayList<int[]>();
+
+	/**
+	 * Constructor for an aggregator without any cubes
+	 * @param statsFactory - creates the bucket stats of the cubes
+	 */
+	public ReportAggregator(BucketStatsFactory statsFactory)
+	{
+		this.statsFactory = statsFactory;
+	}
+
+	/**
+	 * Adds a cube to be computed by the next aggregate
+	 * @param name - the name of the cube
+	 * @param cubeDimensions - the dimensions the cube groups rows by, none for a single bucket of every row
+	 * @return the cube
+	 */
+	public Cube addCube(String name, Dimension... cubeDimensions)
+	{
+		int[] indexes = new int[cubeDimensions.length];
+		for (int i = 0; i < cubeDimensions.length; i++)
+		{
+			int index = dimensions.indexOf(cubeDimensions[i]);
+			if (index < 0)
+			{
+				index = dimensions.size();
+				dimensions.add(cubeDimensions[i]);
+			}
+			indexes[i] = index;
+		}
+
+		Cube cube = new Cube(name, cubeDimensions);
+		cubes.add(cube);
+		cubeDimensionIndexes.add(indexes);
+		return cube;
+	}
+
+	/**
+	 * Adds every row of the price columns to the cubes
+	 * @param columns - the mapped price columns
+	 */
+	public void aggregate(PriceColumns columns)
+	{
+		aggregateFrom(columns, 0);
+	}
+
+	/**
+	 * Adds the rows of the price columns from a row on to the cubes, e.g. the rows appended since the columns were
+	 * last aggregated
+	 * @param columns - the mapped price columns
+	 * @param fromRow - the first row to add
+	 */
+	public void aggregateFrom(PriceColumns columns, int fromRow)
+	{
+		LongBucketMap[] cubeBuckets = new LongBucketMap[cubes.size()];
+		for (int c = 0; c < cubes.size(); c++)
+		{
+			cubeBuckets[c] = cubes.get(c).getBuckets();
+		}
+		aggregateRows(columns, fromRow, columns.size(), cubeBuckets);
+	}
+
+	/**
+	 * Adds every row of the price columns to the cubes, splitting the rows into chunks that are aggregated in
+	 * parallel on the pool and then merged in row order. Exact statistics are identical to aggregate(columns),
+	 * sketches are within the same error bounds. Dimensions must be safe to use from several threads at once.
+	 * @param columns - the mapped price columns
+	 * @param pool - the pool the chunks are aggregated on
+	 */
+	public void aggregate(PriceColumns columns, ForkJoinPool pool)
+	{
+		if (columns.size() <= CHUNK_ROWS)
+		{
+			aggregate(columns);
+			return;
+		}
+
+		LongBucketMap[] partials = pool.invoke(new AggregateTask(columns, 0, columns.size()));
+		for (int c = 0; c < cubes.size(); c++)
+		{
+			cubes.get(c).mergeBuckets(partials[c]);
+		}
+	}
+
+	/**
+	 * Writes the buckets of every cube, so they can be read back into an aggregator with the same cubes and more
+	 * rows added. Only sketch buckets can be written.
+	 * @param out - the output
+	 * @throws IOException
+	 */
+	public void writeBuckets(DataOutput out) throws IOException
+	{
+		if (statsFactory.getMode() != BucketStatsFactory.Mode.SKETCH)
+		{
+			throw new IllegalStateException("Only sketch buckets can be written");
+		}
+
+		out.writeInt(cubes.size());
+		for (Cube cube : cubes)
+		{
+			LongBucketMap buckets = cube.getBuckets();
+			long[] keys = buckets.sortedKeys();
+			out.writeUTF(cube.getName());
+			out.writeInt(keys.length);
+			for (long key : keys)
+			{
+				out.writeLong(key);
+				((SketchBucketStats)buckets.get(key)).writeTo(out);
+			}
+		}
+	}
+
+	/**
+	 * Reads buckets written by writeBuckets into the cubes, which must be the same cubes added in the same order
+	 * and still be empty
+	 * @param in - the input
+	 * @throws IOException - if the input can't be read or is for other cubes
+	 */
+	public void readBuckets(DataInput in) throws IOException
+	{
+		if (statsFactory.getMode() != BucketStatsFactory.Mode.SKETCH)
+		{
+			throw new IllegalStateException("Only sketch buckets can be read");
+		}
+
+		int cubeCount = in.readInt();
+		if (cubeCount != cubes.size())
+		{
+			throw new IOException("Buckets of " + cubeCount + " cubes, expected " + cubes.size());
+		}
+		for (Cube cube : cubes)
+		{
+			String name = in.readUTF();
+			if (!name.equals(cube.getName()))
+			{
+				throw new IOException("Buckets of cube " + name + ", expected " + cube.getName());
+			}
+
+			int bucketCount = in.readInt();
+			for (int i = 0; i < bucketCount; i++)
+			{
+				long key = in.readLong();
+				cube.getBuckets().put(key, SketchBucketStats.readFrom(in));
+			}
+		}
+	}
+
+	/**
+	 * Private helper that adds a range of rows to buckets of each cube
+	 * @param columns - the mapped price columns
+	 * @param from - the first row, inclusive
+	 * @param to - the last row, exclusive
+	 * @param cubeBuckets - the buckets of each cube, in cube order
+	 */
+	private void aggregateRows(PriceColumns columns, int from, int to, LongBucketMap[] cubeBuckets)
+	{
+		int[] rowKeys = new int[dimensions.size()];
+		int[][] cubeKeys = new int[cubes.size()][];
+		for (int c = 0; c < cubes.size(); c++)
+		{
+			cubeKeys[c] = new int[cubeDimensionIndexes.get(c).length];
+		}
+
+		for (int row = from; row < to; row++)
+		{
+			double price = columns.getPrice(row);
+
+			for (int d = 0; d < rowKeys.length; d++)
+			{
+				rowKeys[d] = dimensions.get(d).keyOf(columns, row);
+			}
+
+			for (int c = 0; c < cubeKeys.length; c++)
+			{
+				int[] indexes = cubeDimensionIndexes.get(c);
+				int[] keys = cubeKeys[c];
+				boolean skip = false;
+				for (int i = 0; i < indexes.length; i++)
+				{
+					keys[i] = rowKeys[indexes[i]];
+					if (keys[i] < 0)
+					{
+						skip = true;
+					}
+				}
+
+				if (!skip)
+				{
+					long packed = cubes.get(c).pack(keys);
+					cubeBuckets[c].getOrCreate(packed, statsFactory).addValue(price);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Aggregates a range of rows into partial buckets of each cube, forking halves until the range is a chunk
+	 */
+	private class AggregateTask extends RecursiveTask<LongBucketMap[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final PriceColumns columns;
+		private final int from;
+		private final int to;
+
+		AggregateTask(PriceColumns columns, int from, int to)
+		{
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected LongBucketMap[] compute()
+		{
+			if (to - from <= CHUNK_ROWS)
+			{
+				LongBucketMap[] partials = new LongBucketMap[cubes.size()];
+				for (int c = 0; c < partials.length; c++)
+				{
+					partials[c] = new LongBucketMap();
+				}
+				aggregateRows(columns, from, to, partials);
+				return partials;
+			}
+
+			int mid = (from + to) >>> 1;
+			AggregateTask left = new AggregateTask(columns, from, mid);
+			AggregateTask right = new AggregateTask(columns, mid, to);
+			left.fork();
+			LongBucketMap[] rightPartials = right.compute();
+			LongBucketMap[] leftPartials = left.join();
+
+			//the right rows come after the left ones, so they are merged into the left buckets
+			for (int c = 0; c < leftPartials.length; c++)
+			{
+				leftPartials[c].mergeAll(rightPartials[c]);
+			}
+			return leftPartials;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes the records of the summary report and item list of a query in one output format, see ReportEncoders.
+ *
+ * A summary report is a few notes about the harvest followed by the stats of every bucket and the weekly averages,
+ * an item list is a record for every item. Closing the encoder closes its output.
+ */
+public interface ReportEncoder extends Closeable
+{
+	/**
+	 * @return the extension of the files of the format, with the dot
+	 */
+	String getFileExtension();
+
+	/**
+	 * Writes a line of free text about the harvest, e.g. how many items were already stored
+	 * @param text - the text
+	 * @throws IOException
+	 */
+	void note(String text) throws IOException;
+
+	/**
+	 * Starts the stats of the report, after the notes
+	 * @throws IOException
+	 */
+	void beginStats() throws IOException;
+
+	/**
+	 * Writes the stats of a bucket
+	 * @param identifier - the name of the bucket
+	 * @param stats - the stats
+	 * @throws IOException
+	 */
+	void stats(String identifier, BucketStats stats) throws IOException;
+
+	/**
+	 * Writes a series of weekly mean prices
+	 * @param label - the name of the series
+	 * @param means - the mean price of every week, oldest first
+	 * @throws IOException
+	 */
+	void weeklyAverages(String label, double[] means) throws IOException;
+
+	/**
+	 * Writes an item of the item list
+	 * @param item - the item
+	 * @throws IOException
+	 */
+	void item(ItemRecord item) throws IOException;
+}
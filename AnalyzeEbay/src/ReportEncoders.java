@@ -0,0 +1,522 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * The output formats of the reports:
+ *
+ * text - the free text reports of the program, for people, in the platform charset
+ * csv - a header row and a row for every bucket or item; notes and weekly averages are # comment lines
+ * jsonl - a JSON object per line with a "type" of note, stats, weeklyAverages or item; NaN stats are null
+ * binary - the magic bytes AERP and a version byte, then per record a tag byte (1 note, 2 stats, 3 weekly averages,
+ * 4 item) and its fields in the order of the encoder, big endian, strings as a UTF-8 length (-1 for null) and bytes
+ *
+ * The structured formats name the quartiles p25 and p75 (the text report calls them Q1 and Q2) and carry the profit
+ * margin of the text report as margin.
+ */
+public class ReportEncoders
+{
+	public static final String FORMAT_PROPERTY = "analyzeebay.reportFormat";
+
+	public static final String TEXT = "text";
+	public static final String CSV = "csv";
+	public static final String JSON_LINES = "jsonl";
+	public static final String BINARY = "binary";
+
+	private static final int BINARY_VERSION = 1;
+	private static final int NOTE_TAG = 1;
+	private static final int STATS_TAG = 2;
+	private static final int WEEKLY_AVERAGES_TAG = 3;
+	private static final int ITEM_TAG = 4;
+
+	private ReportEncoders()
+	{
+	}
+
+	/**
+	 * Creates an encoder
+	 * @param format - the name of the format: text, csv, jsonl or binary
+	 * @param output - the output the encoder writes to
+	 * @return the encoder
+	 * @throws IOException
+	 * @throws IllegalArgumentException - if the format is unknown
+	 */
+	public static ReportEncoder forFormat(String format, ReportOutput output) throws IOException
+	{
+		if (format.equalsIgnoreCase(TEXT))
+		{
+			return new TextEncoder(output);
+		}
+		if (format.equalsIgnoreCase(CSV))
+		{
+			return new CsvEncoder(output);
+		}
+		if (format.equalsIgnoreCase(JSON_LINES))
+		{
+			return new JsonLinesEncoder(output);
+		}
+		if (format.equalsIgnoreCase(BINARY))
+		{
+			return new BinaryEncoder(output);
+		}
+		throw new IllegalArgumentException("Unknown report format: " + format);
+	}
+
+	/**
+	 * Creates an encoder writing to a file named by a base name and the extension of the format
+	 * @param format - the name of the format
+	 * @param baseName - the path of the file without the extension
+	 * @return the encoder
+	 * @throws IOException
+	 */
+	public static ReportEncoder open(String format, String baseName) throws IOException
+	{
+		//the text report is in the platform charset like the PrintWriter reports before it, the others are UTF-8
+		ReportOutput output = new ReportOutput(new File(baseName + extension(format)),
+				format.equalsIgnoreCase(TEXT) ? Charset.defaultCharset() : StandardCharsets.UTF_8);
+		try
+		{
+			return forFormat(format, output);
+		}
+		catch (IOException e)
+		{
+			output.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the format named by the system property, text if not set
+	 */
+	public static String formatFromSystemProperties()
+	{
+		return System.getProperty(FORMAT_PROPERTY, TEXT);
+	}
+
+	private static String extension(String format)
+	{
+		if (format.equalsIgnoreCase(TEXT))
+		{
+			return ".txt";
+		}
+		if (format.equalsIgnoreCase(CSV) || format.equalsIgnoreCase(JSON_LINES))
+		{
+			return "." + format.toLowerCase();
+		}
+		if (format.equalsIgnoreCase(BINARY))
+		{
+			return ".bin";
+		}
+		throw new IllegalArgumentException("Unknown report format: " + format);
+	}
+
+	/**
+	 * Private helper that works out the profit margin the text report prints for a bucket
+	 */
+	private static double margin(double p25, double p75)
+	{
+		return 0.87 * p75 - p25;
+	}
+
+	/**
+	 * Base of the encoders, owns the output
+	 */
+	private static abstract class BaseEncoder implements ReportEncoder
+	{
+		protected final ReportOutput out;
+
+		protected BaseEncoder(ReportOutput out)
+		{
+			this.out = out;
+		}
+
+		@Override
+		public String getFileExtension()
+		{
+			return extension(getFormat());
+		}
+
+		protected abstract String getFormat();
+
+		@Override
+		public void beginStats() throws IOException
+		{
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * The free text reports
+	 */
+	private static class TextEncoder extends BaseEncoder
+	{
+		private TextEncoder(ReportOutput out)
+		{
+			super(out);
+		}
+
+		@Override
+		protected String getFormat()
+		{
+			return TEXT;
+		}
+
+		@Override
+		public void note(String text) throws IOException
+		{
+			out.text(text).newLine();
+		}
+
+		@Override
+		public void beginStats() throws IOException
+		{
+			out.newLine();
+			out.newLine();
+			out.text("-------------------------------------").newLine();
+		}
+
+		@Override
+		public void stats(String identifier, BucketStats stats) throws IOException
+		{
+			double q1 = stats.getPercentile(25);
+			double q2 = stats.getPercentile(75);
+
+			out.text(identifier).newLine();
+			out.text("MEAN: ").text(stats.getMean()).newLine();
+			out.text("Q1: ").text(q1).newLine();
+			out.text("Q2: ").text(q2).newLine();
+			out.text("MIN: ").text(stats.getMin()).newLine();
+			out.text("MAX: ").text(stats.getMax()).newLine();
+			out.text("REASONABLE PROFIT MARGIN (EXCLUDES SHIPPING & HANDLING COSTS): ").text(margin(q1, q2)).newLine();
+			out.text("NUM ITEMS: ").text(stats.getN()).newLine();
+			out.text("------------------------------").newLine();
+		}
+
+		@Override
+		public void weeklyAverages(String label, double[] means) throws IOException
+		{
+			out.text(label).newLine();
+			for (int i = 0; i < means.length; i++)
+			{
+				if (i > 0)
+				{
+					out.text("->");
+				}
+				out.text(means[i]);
+			}
+			out.newLine();
+		}
+
+		@Override
+		public void item(ItemRecord item) throws IOException
+		{
+			out.text(item.getTitle()).newLine();
+			out.text(item.getPrice()).newLine();
+			out.text(new Date(item.getEndTime()).toString()).newLine();
+			out.text(item.getListingType()).newLine();
+			out.text(item.getSellingState()).newLine();
+			out.text(item.getCondition()).newLine();
+			out.newLine();
+		}
+	}
+
+	/**
+	 * Comma separated values, quoted as in RFC 4180
+	 */
+	private static class CsvEncoder extends BaseEncoder
+	{
+		private boolean statsHeaderWritten = false;
+		private boolean itemHeaderWritten = false;
+
+		private CsvEncoder(ReportOutput out)
+		{
+			super(out);
+		}
+
+		@Override
+		protected String getFormat()
+		{
+			return CSV;
+		}
+
+		@Override
+		public void note(String text) throws IOException
+		{
+			out.text("# ").text(text.replace('\n', ' ').replace('\r', ' ')).newLine();
+		}
+
+		@Override
+		public void stats(String identifier, BucketStats stats) throws IOException
+		{
+			if (!statsHeaderWritten)
+			{
+				out.text("identifier,n,mean,p25,p75,min,max,margin").newLine();
+				statsHeaderWritten = true;
+			}
+			double p25 = stats.getPercentile(25);
+			double p75 = stats.getPercentile(75);
+			field(identifier);
+			out.text(',').text(stats.getN());
+			out.text(',').text(stats.getMean());
+			out.text(',').text(p25);
+			out.text(',').text(p75);
+			out.text(',').text(stats.getMin());
+			out.text(',').text(stats.getMax());
+			out.text(',').text(margin(p25, p75));
+			out.newLine();
+		}
+
+		@Override
+		public void weeklyAverages(String label, double[] means) throws IOException
+		{
+			out.text("# ").text(label).text(':');
+			for (double mean : means)
+			{
+				out.text(' ').text(mean);
+			}
+			out.newLine();
+		}
+
+		@Override
+		public void item(ItemRecord item) throws IOException
+		{
+			if (!itemHeaderWritten)
+			{
+				out.text("itemId,endTime,price,currency,listingType,conditionId,condition,sellingState,seller,title")
+						.newLine();
+				itemHeaderWritten = true;
+			}
+			field(item.getItemId());
+			out.text(',').text(EpochTime.format(item.getEndTime()));
+			out.text(',').text(item.getPrice());
+			out.text(',');
+			field(item.getCurrency());
+			out.text(',');
+			field(item.getListingType());
+			out.text(',').text(item.getConditionId());
+			out.text(',');
+			field(item.getCondition());
+			out.text(',');
+			field(item.getSellingState());
+			out.text(',');
+			field(item.getSeller());
+			out.text(',');
+			field(item.getTitle());
+			out.newLine();
+		}
+
+		/**
+		 * Private helper that writes a text field, quoted if it has a comma, quote or line break, empty if null
+		 */
+		private void field(String value) throws IOException
+		{
+			if (value == null)
+			{
+				return;
+			}
+			if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+					&& value.indexOf('\r') < 0)
+			{
+				out.text(value);
+				return;
+			}
+			out.text('"').text(value.replace("\"", "\"\"")).text('"');
+		}
+	}
+
+	/**
+	 * JSON Lines, a JSON object per line
+	 */
+	private static class JsonLinesEncoder extends BaseEncoder
+	{
+		private JsonLinesEncoder(ReportOutput out)
+		{
+			super(out);
+		}
+
+		@Override
+		protected String getFormat()
+		{
+			return JSON_LINES;
+		}
+
+		@Override
+		public void note(String text) throws IOException
+		{
+			out.text("{\"type\":\"note\",\"text\":");
+			string(text);
+			out.text('}').newLine();
+		}
+
+		@Override
+		public void stats(String identifier, BucketStats stats) throws IOException
+		{
+			double p25 = stats.getPercentile(25);
+			double p75 = stats.getPercentile(75);
+			out.text("{\"type\":\"stats\",\"identifier\":");
+			string(identifier);
+			out.text(",\"n\":").text(stats.getN());
+			out.text(",\"mean\":");
+			number(stats.getMean());
+			out.text(",\"p25\":");
+			number(p25);
+			out.text(",\"p75\":");
+			number(p75);
+			out.text(",\"min\":");
+			number(stats.getMin());
+			out.text(",\"max\":");
+			number(stats.getMax());
+			out.text(",\"margin\":");
+			number(margin(p25, p75));
+			out.text('}').newLine();
+		}
+
+		@Override
+		public void weeklyAverages(String label, double[] means) throws IOException
+		{
+			out.text("{\"type\":\"weeklyAverages\",\"label\":");
+			string(label);
+			out.text(",\"means\":[");
+			for (int i = 0; i < means.length; i++)
+			{
+				if (i > 0)
+				{
+					out.text(',');
+				}
+				number(means[i]);
+			}
+			out.text("]}").newLine();
+		}
+
+		@Override
+		public void item(ItemRecord item) throws IOException
+		{
+			out.text("{\"type\":\"item\",\"itemId\":");
+			string(item.getItemId());
+			out.text(",\"endTime\":");
+			string(EpochTime.format(item.getEndTime()));
+			out.text(",\"price\":");
+			number(item.getPrice());
+			out.text(",\"currency\":");
+			string(item.getCurrency());
+			out.text(",\"listingType\":");
+			string(item.getListingType());
+			out.text(",\"conditionId\":").text(item.getConditionId());
+			out.text(",\"condition\":");
+			string(item.getCondition());
+			out.text(",\"sellingState\":");
+			string(item.getSellingState());
+			out.text(",\"seller\":");
+			string(item.getSeller());
+			out.text(",\"title\":");
+			string(item.getTitle());
+			out.text('}').newLine();
+		}
+
+		/**
+		 * Private helper that writes a number, null for NaN and infinities which JSON doesn't have
+		 */
+		private void number(double value) throws IOException
+		{
+			if (Double.isNaN(value) || Double.isInfinite(value))
+			{
+				out.text("null");
+			}
+			else
+			{
+				out.text(value);
+			}
+		}
+
+		/**
+		 * Private helper that writes a quoted and escaped string, null if null
+		 */
+		private void string(String value) throws IOException
+		{
+			if (value == null)
+			{
+				out.text("null");
+				return;
+			}
+			out.text('"');
+			int start = 0;
+			for (int i = 0; i < value.length(); i++)
+			{
+				char c = value.charAt(i);
+				if (c == '"' || c == '\\' || c < 0x20)
+				{
+					out.text(value.substring(start, i));
+					if (c == '"' || c == '\\')
+					{
+						out.text('\\').text(c);
+					}
+					else
+					{
+						out.text(String.format("\\u%04x", (int)c));
+					}
+					start = i + 1;
+				}
+			}
+			out.text(value.substring(start));
+			out.text('"');
+		}
+	}
+
+	/**
+	 * Compact binary records
+	 */
+	private static class BinaryEncoder extends BaseEncoder
+	{
+		private BinaryEncoder(ReportOutput out) throws IOException
+		{
+			super(out);
+			out.putByte('A').putByte('E').putByte('R').putByte('P').putByte(BINARY_VERSION);
+		}
+
+		@Override
+		protected String getFormat()
+		{
+			return BINARY;
+		}
+
+		@Override
+		public void note(String text) throws IOException
+		{
+			out.putByte(NOTE_TAG).putString(text);
+		}
+
+		@Override
+		public void stats(String identifier, BucketStats stats) throws IOException
+		{
+			out.putByte(STATS_TAG).putString(identifier).putLong(stats.getN()).putDouble(stats.getMean())
+					.putDouble(stats.getPercentile(25)).putDouble(stats.getPercentile(75))
+					.putDouble(stats.getMin()).putDouble(stats.getMax());
+		}
+
+		@Override
+		public void weeklyAverages(String label, double[] means) throws IOException
+		{
+			out.putByte(WEEKLY_AVERAGES_TAG).putString(label).putInt(means.length);
+			for (double mean : means)
+			{
+				out.putDouble(mean);
+			}
+		}
+
+		@Override
+		public void item(ItemRecord item) throws IOException
+		{
+			out.putByte(ITEM_TAG).putString(item.getItemId()).putLong(item.getEndTime()).putDouble(item.getPrice())
+					.putString(item.getCurrency()).putString(item.getListingType()).putInt(item.getConditionId())
+					.putString(item.getCondition()).putString(item.getSellingState()).putString(item.getSeller())
+					.putString(item.getTitle());
+		}
+	}
+}
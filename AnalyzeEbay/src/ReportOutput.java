@@ -0,0 +1,321 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Buffered output of a report file: text and binary values are put into a large buffer that is written to the
+ * channel of the file only when it fills up, so a report of millions of items is written in a few hundred large
+ * writes instead of one or more per line.
+ *
+ * Text is written in the charset of the output, UTF-8 unless another one is passed (the text report uses the
+ * platform default, as the PrintWriter it replaced did). ASCII text skips the encoder if the charset encodes ASCII as
+ * itself. Binary values are big endian, the byte order of DataInputStream. Not thread safe.
+ */
+public class ReportOutput implements Closeable
+{
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private static final String ASCII_PROBE = asciiProbe();
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	private final Charset charset;
+	private final boolean asciiAsIs;
+	private final byte[] newLine;
+
+	/**
+	 * Constructor for an output to a file, replacing it if it exists
+	 * @param file - the file
+	 * @throws IOException
+	 */
+	public ReportOutput(File file) throws IOException
+	{
+		this(file, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Constructor for an output to a file, replacing it if it exists
+	 * @param file - the file
+	 * @param charset - the charset text is written in
+	 * @throws IOException
+	 */
+	public ReportOutput(File file, Charset charset) throws IOException
+	{
+		this(new FileOutputStream(file).getChannel(), DEFAULT_BUFFER_SIZE, charset);
+	}
+
+	/**
+	 * Constructor for an output to a channel
+	 * @param channel - the channel, closed with the output
+	 * @param bufferSize - the size of the buffer in bytes, at least 16
+	 */
+	public ReportOutput(WritableByteChannel channel, int bufferSize)
+	{
+		this(channel, bufferSize, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Constructor for an output to a channel
+	 * @param channel - the channel, closed with the output
+	 * @param bufferSize - the size of the buffer in bytes, at least 16
+	 * @param charset - the charset text is written in
+	 */
+	public ReportOutput(WritableByteChannel channel, int bufferSize, Charset charset)
+	{
+		if (bufferSize < 16)
+		{
+			throw new IllegalArgumentException("bufferSize must be at least 16: " + bufferSize);
+		}
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.charset = charset;
+		this.asciiAsIs = Arrays.equals(ASCII_PROBE.getBytes(charset), ASCII_PROBE.getBytes(StandardCharsets.US_ASCII));
+		this.newLine = System.lineSeparator().getBytes(charset);
+	}
+
+	/**
+	 * @return the charset text is written in
+	 */
+	public Charset getCharset()
+	{
+		return charset;
+	}
+
+	/**
+	 * Writes text
+	 * @param text - the text, "null" if null as a PrintWriter would
+	 * @return this output
+	 * @throws IOException
+	 */
+	public ReportOutput text(String text) throws IOException
+	{
+		if (text == null)
+		{
+			text = "null";
+		}
+		if (!asciiAsIs)
+		{
+			return bytes(text.getBytes(charset));
+		}
+		int length = text.length();
+		for (int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if (c >= 0x80)
+			{
+				//not ASCII, the rest of the text goes through the encoder
+				return bytes(text.substring(i).getBytes(charset));
+			}
+			ensure(1);
+			buffer.put((byte)c);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes a character
+	 * @param c - the character
+	 * @return this output
+	 * @throws IOException
+	 */
+	public ReportOutput text(char c) throws IOException
+	{
+		if (c >= 0x80 || !asciiAsIs)
+		{
+			return text(String.valueOf(c));
+		}
+		ensure(1);
+		buffer.put((byte)c);
+		return this;
+	}
+
+	/**
+	 * Writes a long as decimal text
+	 * @param value - the value
+	 * @return this output
+	 * @throws IOException
+	 */
+	public ReportOutput text(long value) throws IOException
+	{
+		if (value == Long.MIN_VALUE || !asciiAsIs)
+		{
+			return text(Long.toString(value));
+		}
+		ensure(20);
+		if (value < 0)
+		{
+			buffer.put((byte)'-');
+			value = -value;
+		}
+		int start = buffer.position();
+		do
+		{
+			buffer.put((byte)('0' + value % 10));
+			value /= 10;
+		}
+		while (value > 0);
+
+		//the digits were put lowest first
+		for (int i = start, j = buffer.position() - 1; i < j; i++, j--)
+		{
+			byte b = buffer.get(i);
+			buffer.put(i, buffer.get(j));
+			buffer.put(j, b);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes a double as text, the way Double.toString does
+	 * @param value - the value
+	 * @return this output
+	 * @throws IOException
+	 */
+	public ReportOutput text(double value) throws IOException
+	{
+		if (value == (long)value && Math.abs(value) < 1e7 && !(value == 0 && 1 / value < 0))
+		{
+			//whole numbers, e.g. counts and prices, without the garbage of Double.toString
+			return text((long)value).text(".0");
+		}
+		return text(Double.toString(value));
+	}
+
+	/**
+	 * Ends a line with the line separator of the platform
+	 * @return this output
+	 * @throws IOException
+	 */
+	public ReportOutput newLine() throws IOException
+	{
+		return bytes(newLine);
+	}
+
+	/**
+	 * Writes bytes
+	 * @param bytes - the bytes
+	 * @return this output
+	 * @throws IOException
+	 */
+	public ReportOutput bytes(byte[] bytes) throws IOException
+	{
+		int offset = 0;
+		while (offset < bytes.length)
+		{
+			if (!buffer.hasRemaining())
+			{
+				flush();
+			}
+			int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+		}
+		return this;
+	}
+
+	public ReportOutput putByte(int value) throws IOException
+	{
+		ensure(1);
+		buffer.put((byte)value);
+		return this;
+	}
+
+	public ReportOutput putInt(int value) throws IOException
+	{
+		ensure(4);
+		buffer.putInt(value);
+		return this;
+	}
+
+	public ReportOutput putLong(long value) throws IOException
+	{
+		ensure(8);
+		buffer.putLong(value);
+		return this;
+	}
+
+	public ReportOutput putDouble(double value) throws IOException
+	{
+		ensure(8);
+		buffer.putDouble(value);
+		return this;
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length (int) followed by its UTF-8 bytes, a length of -1 for null
+	 * @param value - the string
+	 * @return this output
+	 * @throws IOException
+	 */
+	public ReportOutput putString(String value) throws IOException
+	{
+		if (value == null)
+		{
+			return putInt(-1);
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		putInt(bytes.length);
+		return bytes(bytes);
+	}
+
+	/**
+	 * Writes the buffered bytes to the channel
+	 * @throws IOException
+	 */
+	public void flush() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Flushes the output and closes its channel
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Private helper that makes the text of every ASCII character, to tell whether a charset encodes ASCII as itself
+	 */
+	private static String asciiProbe()
+	{
+		char[] chars = new char[0x80];
+		for (int i = 0; i < chars.length; i++)
+		{
+			chars[i] = (char)i;
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Private helper that flushes the buffer if it has less room than needed
+	 */
+	private void ensure(int bytes) throws IOException
+	{
+		if (buffer.remaining() < bytes)
+		{
+			flush();
+		}
+	}
+}
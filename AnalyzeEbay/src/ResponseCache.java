@@ -0,0 +1,551 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.ebay.services.finding.AckValue;
+import com.ebay.services.finding.AspectFilter;
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.ItemFilter;
+import com.ebay.services.finding.OutputSelectorType;
+import com.ebay.services.finding.PaginationInput;
+import com.ebay.services.finding.PaginationOutput;
+
+/**
+ * Cache of findCompletedItems pages, so searches that send the same request within the time to live of the cache
+ * (the same query run again, or the same query in several manifests) don't call the service again.
+ *
+ * Pages are keyed by the canonical form of their request: keywords trimmed, lower case and with single spaces, item
+ * filters, aspect filters, categories and output selectors sorted, then the sort order and the pagination input.
+ * The key also has the global id of the site and the fields the pages are read with, since a page read by a
+ * streaming parser of a few fields can't stand in for a page of every field.
+ *
+ * Pages are kept in memory, least recently used first out once their estimated size is over maxBytes, and
+ * optionally in a directory as a file each, so the pages outlive the run. A page older than the time to live is a
+ * miss in either tier. Only Success and Warning pages are cached, their errors aren't kept.
+ *
+ * Disk page layout (big endian):
+ * 	header: int magic ("AERC"), short format version, short reserved, long time cached, UTF key
+ * 	page: UTF ack, int page number, int entries per page, int total pages, int total entries, int item count
+ * 	items: the records of the items, as in an ItemStore
+ *
+ * The cache is configured by system properties: analyzeebay.cacheTtlMinutes (no cache if not set),
+ * analyzeebay.cacheMaxBytes and analyzeebay.cacheDir (no disk tier if not set). Thread safe.
+ */
+public class ResponseCache
+{
+	public static final String TTL_MINUTES_PROPERTY = "analyzeebay.cacheTtlMinutes";
+	public static final String MAX_BYTES_PROPERTY = "analyzeebay.cacheMaxBytes";
+	public static final String DIR_PROPERTY = "analyzeebay.cacheDir";
+	public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+	private static final int MAGIC = 0x41455243;	//"AERC"
+	private static final short VERSION = 1;
+	private static final String PAGE_EXT = ".page";
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	//rough sizes of the objects of a cached page on a 64 bit vm, enough to bound the memory of the cache
+	private static final int PAGE_OVERHEAD_BYTES = 128;
+	private static final int ITEM_OVERHEAD_BYTES = 96;
+	private static final int STRING_OVERHEAD_BYTES = 40;
+
+	private final long ttlMillis;
+	private final long maxBytes;
+	private final File dir;
+
+	//access ordered, so the first entry is the least recently used
+	private final LinkedHashMap<String, Page> pages = new LinkedHashMap<String, Page>(16, 0.75f, true);
+	private long bytes = 0;
+
+	private long hits = 0;
+	private long diskHits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Constructor for a cache
+	 * @param ttlMillis - how long a page is used after it was cached
+	 * @param maxBytes - the most bytes of pages kept in memory
+	 * @param dir - the directory pages are also kept in, null to keep them in memory only
+	 */
+	public ResponseCache(long ttlMillis, long maxBytes, File dir)
+	{
+		if (ttlMillis <= 0)
+		{
+			throw new IllegalArgumentException("ttlMillis must be positive: " + ttlMillis);
+		}
+		this.ttlMillis = ttlMillis;
+		this.maxBytes = maxBytes;
+		this.dir = dir;
+
+		if (dir != null && !dir.exists())
+		{
+			dir.mkdirs();
+		}
+	}
+
+	/**
+	 * Creates a cache configured by the system properties
+	 * @return the cache, null if analyzeebay.cacheTtlMinutes isn't set. Expired pages of its directory are deleted.
+	 */
+	public static ResponseCache fromSystemProperties()
+	{
+		String ttlMinutes = System.getProperty(TTL_MINUTES_PROPERTY);
+		if (ttlMinutes == null)
+		{
+			return null;
+		}
+		long maxBytes = Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES);
+		String dir = System.getProperty(DIR_PROPERTY);
+		ResponseCache cache = new ResponseCache((long)(Double.parseDouble(ttlMinutes) * 60000), maxBytes,
+				dir == null ? null : new File(dir));
+		cache.purgeExpired();
+		return cache;
+	}
+
+	public long getTtlMillis()
+	{
+		return ttlMillis;
+	}
+
+	/**
+	 * Gets the canonical key of a page request
+	 * @param request - the request, with its pagination input
+	 * @param globalId - the global id of the site the request is sent to, null for the default site
+	 * @param fields - the fields the page is read with
+	 * @return the key
+	 */
+	public static String keyOf(FindCompletedItemsRequest request, String globalId, String fields)
+	{
+		StringBuilder key = new StringBuilder(256);
+		key.append("site=").append(globalId);
+		key.append("|fields=").append(fields);
+
+		String keywords = request.getKeywords();
+		key.append("|keywords=").append(keywords == null ? null
+				: keywords.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT));
+
+		List<String> categories = new ArrayList<String>(request.getCategoryId());
+		Collections.sort(categories);
+		key.append("|categories=").append(categories);
+
+		List<String> itemFilters = new ArrayList<String>();
+		for (ItemFilter filter : request.getItemFilter())
+		{
+			List<String> values = new ArrayList<String>(filter.getValue());
+			Collections.sort(values);
+			itemFilters.add((filter.getName() == null ? null : filter.getName().value()) + "(" + filter.getParamName()
+					+ "=" + filter.getParamValue() + ")" + values);
+		}
+		Collections.sort(itemFilters);
+		key.append("|itemFilters=").append(itemFilters);
+
+		List<String> aspectFilters = new ArrayList<String>();
+		for (AspectFilter filter : request.getAspectFilter())
+		{
+			List<String> values = new ArrayList<String>(filter.getAspectValueName());
+			Collections.sort(values);
+			aspectFilters.add(filter.getAspectName() + values);
+		}
+		Collections.sort(aspectFilters);
+		key.append("|aspectFilters=").append(aspectFilters);
+
+		List<String> outputSelectors = new ArrayList<String>();
+		for (OutputSelectorType outputSelector : request.getOutputSelector())
+		{
+			outputSelectors.add(outputSelector.value());
+		}
+		Collections.sort(outputSelectors);
+		key.append("|outputSelectors=").append(outputSelectors);
+
+		if (request.getProductId() != null)
+		{
+			key.append("|product=").append(request.getProductId().getType()).append(':')
+					.append(request.getProductId().getValue());
+		}
+		if (request.getBuyerPostalCode() != null)
+		{
+			key.append("|postalCode=").append(request.getBuyerPostalCode());
+		}
+		key.append("|sortOrder=").append(request.getSortOrder() == null ? null : request.getSortOrder().value());
+
+		PaginationInput pagination = request.getPaginationInput();
+		if (pagination != null)
+		{
+			key.append("|page=").append(pagination.getPageNumber());
+			key.append("|entriesPerPage=").append(pagination.getEntriesPerPage());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Gets a cached page
+	 * @param key - the key of the page's request, see keyOf
+	 * @return the page, null if it isn't cached or is older than the time to live
+	 */
+	public Page get(String key)
+	{
+		long now = System.currentTimeMillis();
+		synchronized (this)
+		{
+			Page page = pages.get(key);
+			if (page != null && now - page.cached < ttlMillis)
+			{
+				hits++;
+				return page;
+			}
+			if (page != null)
+			{
+				remove(key);
+			}
+		}
+
+		Page page = dir != null ? readPage(key, now) : null;
+		synchronized (this)
+		{
+			if (page == null)
+			{
+				misses++;
+				return null;
+			}
+			diskHits++;
+			add(key, page);
+			return page;
+		}
+	}
+
+	/**
+	 * Caches a page, unless it's a Failure or has no pagination output
+	 * @param key - the key of the page's request, see keyOf
+	 * @param ack - the ack of the page
+	 * @param paginationOutput - the pagination output of the page
+	 * @param items - the items of the page
+	 */
+	public void put(String key, AckValue ack, PaginationOutput paginationOutput, List<ItemRecord> items)
+	{
+		if ((ack != AckValue.SUCCESS && ack != AckValue.WARNING) || paginationOutput == null)
+		{
+			return;
+		}
+
+		Page page = new Page(System.currentTimeMillis(), ack, valueOf(paginationOutput.getPageNumber()),
+				valueOf(paginationOutput.getEntriesPerPage()), valueOf(paginationOutput.getTotalPages()),
+				valueOf(paginationOutput.getTotalEntries()), new ArrayList<ItemRecord>(items));
+		synchronized (this)
+		{
+			remove(key);
+			add(key, page);
+		}
+
+		if (dir != null)
+		{
+			try
+			{
+				writePage(key, page);
+			}
+			catch (IOException e)
+			{
+				//the page is still cached in memory, the disk tier is only lost for it
+				fileOf(key).delete();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the pages in the directory that are older than the time to live
+	 * @return the number of deleted pages
+	 */
+	public int purgeExpired()
+	{
+		if (dir == null || dir.listFiles() == null)
+		{
+			return 0;
+		}
+
+		int purged = 0;
+		long now = System.currentTimeMillis();
+		for (File file : dir.listFiles())
+		{
+			if (file.getName().endsWith(PAGE_EXT) && now - file.lastModified() >= ttlMillis && file.delete())
+			{
+				purged++;
+			}
+		}
+		return purged;
+	}
+
+	public synchronized long getHits()
+	{
+		return hits + diskHits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return the share of gets that were hits, 0 if there were none
+	 */
+	public synchronized double getHitRate()
+	{
+		long gets = hits + diskHits + misses;
+		return gets == 0 ? 0 : (double)(hits + diskHits) / gets;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "hits=" + hits + ", diskHits=" + diskHits + ", misses=" + misses
+			+ ", hitRate=" + String.format(Locale.ROOT, "%.3f", getHitRate())
+			+ ", pages=" + pages.size() + ", bytes=" + bytes + ", evictions=" + evictions;
+	}
+
+	/**
+	 * Private helper that adds a page to memory, evicting the least recently used pages while over maxBytes
+	 */
+	private void add(String key, Page page)
+	{
+		pages.put(key, page);
+		bytes += page.bytes + STRING_OVERHEAD_BYTES + 2L * key.length();
+
+		Iterator<Map.Entry<String, Page>> eldest = pages.entrySet().iterator();
+		while (bytes > maxBytes && eldest.hasNext())
+		{
+			Map.Entry<String, Page> entry = eldest.next();
+			bytes -= entry.getValue().bytes + STRING_OVERHEAD_BYTES + 2L * entry.getKey().length();
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Private helper that removes a page from memory
+	 */
+	private void remove(String key)
+	{
+		Page page = pages.remove(key);
+		if (page != null)
+		{
+			bytes -= page.bytes + STRING_OVERHEAD_BYTES + 2L * key.length();
+		}
+	}
+
+	/**
+	 * Private helper that reads a page of the disk tier
+	 * @return the page, null if there isn't one younger than the time to live
+	 */
+	private Page readPage(String key, long now)
+	{
+		File file = fileOf(key);
+		if (!file.exists())
+		{
+			return null;
+		}
+
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+			try
+			{
+				if (in.readInt() != MAGIC || in.readShort() != VERSION)
+				{
+					throw new IOException("Not a cached page of a known version: " + file);
+				}
+				in.readShort();
+				long cached = in.readLong();
+				//two keys of the same hash are told apart by the key in the file
+				if (!key.equals(in.readUTF()))
+				{
+					return null;
+				}
+				if (now - cached >= ttlMillis || cached > now)
+				{
+					in.close();
+					file.delete();
+					return null;
+				}
+
+				AckValue ack = AckValue.fromValue(in.readUTF());
+				int pageNumber = in.readInt();
+				int entriesPerPage = in.readInt();
+				int totalPages = in.readInt();
+				int totalEntries = in.readInt();
+				int count = in.readInt();
+				if (count < 0)
+				{
+					throw new IOException("Negative item count in " + file);
+				}
+				List<ItemRecord> items = new ArrayList<ItemRecord>(Math.min(count, 1 << 16));
+				for (int i = 0; i < count; i++)
+				{
+					items.add(ItemStore.readRecord(in));
+				}
+				return new Page(cached, ack, pageNumber, entriesPerPage, totalPages, totalEntries, items);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			//a page that can't be read only costs calling the service again
+			file.delete();
+			return null;
+		}
+		catch (IllegalArgumentException e)
+		{
+			//an ack the kit doesn't know
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Private helper that writes a page to the disk tier, to a temporary file renamed over the old page
+	 */
+	private void writePage(String key, Page page) throws IOException
+	{
+		File file = fileOf(key);
+		File temp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(0);
+			out.writeLong(page.cached);
+			out.writeUTF(key);
+			out.writeUTF(page.ack.value());
+			out.writeInt(page.pageNumber);
+			out.writeInt(page.entriesPerPage);
+			out.writeInt(page.totalPages);
+			out.writeInt(page.totalEntries);
+			out.writeInt(page.items.size());
+			for (ItemRecord item : page.items)
+			{
+				ItemStore.writeRecord(out, item);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		//renameTo doesn't replace an existing file on every platform
+		if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+		{
+			temp.delete();
+			throw new IOException("Can't rename " + temp + " to " + file);
+		}
+	}
+
+	/**
+	 * Private helper that gets the file of a page in the disk tier, named by the SHA-256 of its key
+	 */
+	private File fileOf(String key)
+	{
+		try
+		{
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder(hash.length * 2 + PAGE_EXT.length());
+			for (byte b : hash)
+			{
+				name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return new File(dir, name.append(PAGE_EXT).toString());
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			//every java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static int valueOf(Integer value)
+	{
+		return value == null ? 0 : value;
+	}
+
+	/**
+	 * A cached page: its ack, pagination output and items
+	 */
+	public static class Page
+	{
+		private final long cached;
+		private final AckValue ack;
+		private final int pageNumber;
+		private final int entriesPerPage;
+		private final int totalPages;
+		private final int totalEntries;
+		private final List<ItemRecord> items;
+		private final long bytes;
+
+		private Page(long cached, AckValue ack, int pageNumber, int entriesPerPage, int totalPages, int totalEntries,
+				List<ItemRecord> items)
+		{
+			this.cached = cached;
+			this.ack = ack;
+			this.pageNumber = pageNumber;
+			this.entriesPerPage = entriesPerPage;
+			this.totalPages = totalPages;
+			this.totalEntries = totalEntries;
+			this.items = Collections.unmodifiableList(items);
+
+			long size = PAGE_OVERHEAD_BYTES;
+			for (ItemRecord item : items)
+			{
+				size += ITEM_OVERHEAD_BYTES + sizeOf(item.getItemId()) + sizeOf(item.getCurrency())
+						+ sizeOf(item.getListingType()) + sizeOf(item.getCondition()) + sizeOf(item.getTitle())
+						+ sizeOf(item.getSeller()) + sizeOf(item.getSellingState());
+			}
+			this.bytes = size;
+		}
+
+		private static long sizeOf(String value)
+		{
+			return value == null ? 0 : STRING_OVERHEAD_BYTES + 2L * value.length();
+		}
+
+		public AckValue getAck()
+		{
+			return ack;
+		}
+
+		/**
+		 * @return a new pagination output of the page
+		 */
+		public PaginationOutput getPaginationOutput()
+		{
+			PaginationOutput paginationOutput = new PaginationOutput();
+			paginationOutput.setPageNumber(pageNumber);
+			paginationOutput.setEntriesPerPage(entriesPerPage);
+			paginationOutput.setTotalPages(totalPages);
+			paginationOutput.setTotalEntries(totalEntries);
+			return paginationOutput;
+		}
+
+		/**
+		 * @return the items of the page, unmodifiable
+		 */
+		public List<ItemRecord> getItems()
+		{
+			return items;
+		}
+	}
+}
@@ -0,0 +1,338 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.ItemFilter;
+import com.ebay.services.finding.ItemFilterType;
+
+/**
+ * Harvests a search with more items than the finding service pages through (MAX_PAGES pages) by splitting it into
+ * shards that each fit.
+ *
+ * The shards are planned by counting the items of the search with a page of a single item. A search over the cap is
+ * bisected on its price range, and once the range is down to a cent on its end time window, and the halves are
+ * counted again, all the searches of a round at once on the fetch pool. A search without a max price is split at
+ * twice its min price (or OPEN_PRICE_STEP), so the open range is covered by doubling ranges. A shard that can't be
+ * split any further is harvested up to the cap and logged as truncated.
+ *
+ * The shards are then fetched at once, each with the page fetcher of the harvest (so with its retries, priority and
+ * cache, and its pages in parallel on the fetch pool). Prices at the edge of two shards are in both, the known item
+ * ids drop the second of them. The new items are added to the new items list in shard order once every shard has
+ * stopped, also when one of them failed, so the items whose ids were added are the items of the list.
+ */
+public class ShardedHarvester
+{
+	/** the most pages of a search the finding service returns **/
+	public static final int MAX_PAGES = 100;
+
+	/** where an open price range is first split, if it has no min price **/
+	static final double OPEN_PRICE_STEP = 100;
+	//completed items are searchable for about 90 days, a window without a start is split from then on
+	static final long SEARCH_HISTORY_MILLIS = 90L * EpochTime.DAY_MILLIS;
+	private static final double MIN_PRICE_SPLIT = 0.02;
+	private static final long MIN_WINDOW_SPLIT_MILLIS = 2 * EpochTime.MINUTE_MILLIS;
+	private static final int MAX_SHARDS = 4096;
+
+	private static final String SHARDS = "Shards: ";
+	private static final String TRUNCATED = "Shard can't be split and has more items than can be paged: ";
+
+	private final PageFetcher pageFetcher;
+	private final ExecutorService fetchWorkers;
+	private final int maxEntries;
+	private final int maxParallelShards;
+
+	/**
+	 * Constructor for a harvester
+	 * @param pageFetcher - the fetcher the shards are counted and fetched with
+	 * @param fetchWorkers - the pool the counts of a round are fetched on, the pool of the page fetcher
+	 * @param itemsPerPage - the entries per page of the page fetcher
+	 * @param maxParallelShards - the most shards fetched at once
+	 */
+	public ShardedHarvester(PageFetcher pageFetcher, ExecutorService fetchWorkers, int itemsPerPage, int maxParallelShards)
+	{
+		if (maxParallelShards < 1)
+		{
+			throw new IllegalArgumentException("maxParallelShards must be at least 1: " + maxParallelShards);
+		}
+		this.pageFetcher = pageFetcher;
+		this.fetchWorkers = fetchWorkers;
+		this.maxEntries = MAX_PAGES * itemsPerPage;
+		this.maxParallelShards = maxParallelShards;
+	}
+
+	/**
+	 * Plans the shards of a search
+	 * @param request - the request of the search, its price and end time filters are replaced by those of the shards
+	 * @param minPrice - the min price of the search, 0 for none
+	 * @param maxPrice - the max price of the search, Double.POSITIVE_INFINITY for none
+	 * @param endTimeFrom - the start of the end time window of the search, Long.MIN_VALUE for none
+	 * @param endTimeTo - the end of the end time window of the search
+	 * @param log - print stream the shards are printed to
+	 * @return the shards, a single shard of the whole search if it fits
+	 * @throws InterruptedException
+	 * @throws ExecutionException - if counting the items of a shard failed
+	 */
+	public List<Shard> plan(FindCompletedItemsRequest request, double minPrice, double maxPrice, long endTimeFrom,
+			long endTimeTo, PrintStream log) throws InterruptedException, ExecutionException
+	{
+		List<Shard> planned = new ArrayList<Shard>();
+		List<Shard> round = new ArrayList<Shard>();
+		round.add(new Shard(minPrice, maxPrice, endTimeFrom, endTimeTo));
+
+		while (!round.isEmpty())
+		{
+			count(request, round);
+
+			List<Shard> next = new ArrayList<Shard>();
+			for (Shard shard : round)
+			{
+				Shard[] halves = shard.totalEntries > maxEntries && planned.size() + next.size() + round.size() < MAX_SHARDS
+						? shard.split() : null;
+				if (halves != null)
+				{
+					next.add(halves[0]);
+					next.add(halves[1]);
+				}
+				else
+				{
+					if (shard.totalEntries > maxEntries)
+					{
+						log.println(TRUNCATED + shard);
+					}
+					planned.add(shard);
+				}
+			}
+			round = next;
+		}
+
+		log.println(SHARDS + planned.size());
+		return planned;
+	}
+
+	/**
+	 * Fetches every page of the shards of a search, see PageFetcher.fetchAll
+	 * @param request - the request of the search
+	 * @param shards - the shards, see plan
+	 * @param knownItemIds - ids of the items already stored, the ids of new items are added to it as pending
+	 * @param newItems - list the records of the new items are added to
+	 * @param log - print stream that the shards, page numbers and latencies are printed to
+	 * @return the combined result of the shards
+	 * @throws InterruptedException
+	 * @throws ExecutionException - if fetching one of the shards failed
+	 */
+	public PageFetcher.FetchResult harvest(FindCompletedItemsRequest request, List<Shard> shards,
+			final ItemIdIndex.QueryIds knownItemIds, List<ItemRecord> newItems, final PrintStream log)
+			throws InterruptedException, ExecutionException
+	{
+		long start = System.nanoTime();
+		List<List<ItemRecord>> shardItems = new ArrayList<List<ItemRecord>>();
+		List<Future<PageFetcher.FetchResult>> futures = new ArrayList<Future<PageFetcher.FetchResult>>();
+		ExecutorService shardRunners = Executors.newFixedThreadPool(Math.min(shards.size(), maxParallelShards));
+		try
+		{
+			for (final Shard shard : shards)
+			{
+				final FindCompletedItemsRequest shardRequest = shard.applyTo(request);
+				final List<ItemRecord> items = new ArrayList<ItemRecord>();
+				shardItems.add(items);
+				futures.add(shardRunners.submit(new Callable<PageFetcher.FetchResult>() {
+					@Override
+					public PageFetcher.FetchResult call() throws Exception
+					{
+						log.println(shard);
+						return pageFetcher.fetchAll(shardRequest, knownItemIds, items, log);
+					}
+				}));
+			}
+
+			List<PageFetcher.FetchResult> results = new ArrayList<PageFetcher.FetchResult>();
+			for (Future<PageFetcher.FetchResult> future : futures)
+			{
+				results.add(future.get());
+			}
+			return PageFetcher.FetchResult.combine(results, (System.nanoTime() - start) / 1000000L);
+		}
+		finally
+		{
+			//every shard has to stop adding items before its items are handed over
+			for (Future<PageFetcher.FetchResult> future : futures)
+			{
+				future.cancel(true);
+			}
+			shardRunners.shutdownNow();
+			while (!shardRunners.awaitTermination(1, TimeUnit.MINUTES))
+			{
+				log.println("Waiting for the shards to stop");
+			}
+			for (List<ItemRecord> items : shardItems)
+			{
+				newItems.addAll(items);
+			}
+		}
+	}
+
+	/**
+	 * Private helper that counts the items of every shard of a round on the fetch pool
+	 */
+	private void count(final FindCompletedItemsRequest request, List<Shard> round)
+			throws InterruptedException, ExecutionException
+	{
+		List<Future<Integer>> counts = new ArrayList<Future<Integer>>();
+		try
+		{
+			for (final Shard shard : round)
+			{
+				counts.add(fetchWorkers.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception
+					{
+						return pageFetcher.countEntries(shard.applyTo(request));
+					}
+				}));
+			}
+			Iterator<Future<Integer>> count = counts.iterator();
+			for (Shard shard : round)
+			{
+				shard.totalEntries = count.next().get();
+			}
+		}
+		finally
+		{
+			for (Future<Integer> count : counts)
+			{
+				count.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * A part of a search: a price range and an end time window
+	 */
+	public static class Shard
+	{
+		private final double minPrice;
+		private final double maxPrice;
+		private final long endTimeFrom;
+		private final long endTimeTo;
+		private int totalEntries = -1;
+
+		/**
+		 * Constructor for a shard
+		 * @param minPrice - the min price, 0 for none
+		 * @param maxPrice - the max price, Double.POSITIVE_INFINITY for none
+		 * @param endTimeFrom - the start of the end time window, Long.MIN_VALUE for none
+		 * @param endTimeTo - the end of the end time window
+		 */
+		Shard(double minPrice, double maxPrice, long endTimeFrom, long endTimeTo)
+		{
+			this.minPrice = minPrice;
+			this.maxPrice = maxPrice;
+			this.endTimeFrom = endTimeFrom;
+			this.endTimeTo = endTimeTo;
+		}
+
+		/**
+		 * @return the total entries of the shard, -1 if it wasn't counted
+		 */
+		public int getTotalEntries()
+		{
+			return totalEntries;
+		}
+
+		/**
+		 * Splits the shard in two, on its price range if it's at least two cents wide and on its end time window if
+		 * not. The halves share the split price, the windows are split to the millisecond.
+		 * @return the halves, null if the shard can't be split
+		 */
+		Shard[] split()
+		{
+			if (Double.isInfinite(maxPrice))
+			{
+				double splitPrice = minPrice > 0 ? 2 * minPrice : OPEN_PRICE_STEP;
+				return new Shard[] {
+						new Shard(minPrice, splitPrice, endTimeFrom, endTimeTo),
+						new Shard(splitPrice, maxPrice, endTimeFrom, endTimeTo)};
+			}
+			if (maxPrice - minPrice >= MIN_PRICE_SPLIT)
+			{
+				//cents, so the filters ask for the prices the service compares
+				double splitPrice = Math.floor((minPrice + maxPrice) * 50) / 100;
+				if (splitPrice > minPrice && splitPrice < maxPrice)
+				{
+					return new Shard[] {
+							new Shard(minPrice, splitPrice, endTimeFrom, endTimeTo),
+							new Shard(splitPrice, maxPrice, endTimeFrom, endTimeTo)};
+				}
+			}
+
+			long from = endTimeFrom != Long.MIN_VALUE ? endTimeFrom : endTimeTo - SEARCH_HISTORY_MILLIS;
+			if (endTimeTo - from < MIN_WINDOW_SPLIT_MILLIS)
+			{
+				return null;
+			}
+			long splitTime = from + (endTimeTo - from) / 2;
+			return new Shard[] {
+					new Shard(minPrice, maxPrice, from, splitTime),
+					new Shard(minPrice, maxPrice, splitTime + 1, endTimeTo)};
+		}
+
+		/**
+		 * Copies a request with the price and end time filters of the shard instead of its own
+		 * @param request - the request of the search
+		 * @return the request of the shard
+		 */
+		FindCompletedItemsRequest applyTo(FindCompletedItemsRequest request)
+		{
+			FindCompletedItemsRequest shardRequest = PageFetcher.copyRequest(request);
+			Iterator<ItemFilter> filters = shardRequest.getItemFilter().iterator();
+			while (filters.hasNext())
+			{
+				ItemFilterType name = filters.next().getName();
+				if (name == ItemFilterType.MIN_PRICE || name == ItemFilterType.MAX_PRICE
+						|| name == ItemFilterType.END_TIME_FROM || name == ItemFilterType.END_TIME_TO)
+				{
+					filters.remove();
+				}
+			}
+
+			if (minPrice > 0)
+			{
+				shardRequest.getItemFilter().add(filter(ItemFilterType.MIN_PRICE, Double.toString(minPrice)));
+			}
+			if (!Double.isInfinite(maxPrice))
+			{
+				shardRequest.getItemFilter().add(filter(ItemFilterType.MAX_PRICE, Double.toString(maxPrice)));
+			}
+			if (endTimeFrom != Long.MIN_VALUE)
+			{
+				shardRequest.getItemFilter().add(filter(ItemFilterType.END_TIME_FROM, EpochTime.format(endTimeFrom)));
+			}
+			shardRequest.getItemFilter().add(filter(ItemFilterType.END_TIME_TO, EpochTime.format(endTimeTo)));
+			return shardRequest;
+		}
+
+		private static ItemFilter filter(ItemFilterType name, String value)
+		{
+			ItemFilter filter = new ItemFilter();
+			filter.setName(name);
+			filter.getValue().add(value);
+			return filter;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Shard price " + minPrice + "-" + (Double.isInfinite(maxPrice) ? "" : Double.toString(maxPrice))
+				+ " ended " + (endTimeFrom != Long.MIN_VALUE ? EpochTime.format(endTimeFrom) : "")
+				+ "/" + EpochTime.format(endTimeTo) + " entries " + totalEntries;
+		}
+	}
+}
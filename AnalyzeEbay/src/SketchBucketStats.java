@@ -0,0 +1,390 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bucket statistics in bounded memory, for reports over more values than fit on the heap.
+ *
+ * The count, mean, min and max are exact. Percentiles come from a KLL quantile sketch: a stack of compactors where
+ * level h holds values of weight 2^h. When a level fills up it is sorted and every other value is promoted to the
+ * next level. The sketch keeps O(k log(n/k)) values and the rank error of a percentile is roughly 1.7/k, so the
+ * default k of 200 is within about 1% of the true rank. Compaction alternates between keeping the odd and the even
+ * values instead of flipping a coin, so the same values added in the same order always give the same sketch.
+ */
+public class SketchBucketStats implements BucketStats
+{
+	public static final int DEFAULT_K = 200;
+
+	private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+	private final int k;
+
+	private final List<double[]> levels = new ArrayList<double[]>();
+	private int[] levelSizes = new int[0];
+	private int retained = 0;
+	private int maxRetained = 0;
+	private boolean keepOdd = false;
+
+	private long n = 0;
+	private double sum = 0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+
+	//sorted view of the retained values and their cumulative weights, built on the first query after an add
+	private double[] sortedValues;
+	private long[] cumulativeWeights;
+
+	/**
+	 * Constructor for a sketch with the default accuracy
+	 */
+	public SketchBucketStats()
+	{
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Constructor for a sketch
+	 * @param k - accuracy parameter, the rank error is roughly 1.7/k
+	 */
+	public SketchBucketStats(int k)
+	{
+		if (k < 8)
+		{
+			throw new IllegalArgumentException("k must be at least 8: " + k);
+		}
+		this.k = k;
+		grow();
+	}
+
+	public int getK()
+	{
+		return k;
+	}
+
+	@Override
+	public void addValue(double value)
+	{
+		n++;
+		sum += value;
+		if (n == 1 || value < min)
+		{
+			min = value;
+		}
+		if (n == 1 || value > max)
+		{
+			max = value;
+		}
+
+		append(0, value);
+		if (retained >= maxRetained)
+		{
+			compress();
+		}
+		sortedValues = null;
+	}
+
+	/**
+	 * Merges another sketch into this one by adding its levels to the same levels of this sketch and compacting.
+	 * The merged sketch has the same error bounds as one built from every value.
+	 * @param other - a SketchBucketStats
+	 */
+	@Override
+	public void merge(BucketStats other)
+	{
+		SketchBucketStats sketch = (SketchBucketStats)other;
+		if (sketch.n == 0)
+		{
+			return;
+		}
+
+		if (n == 0 || sketch.min < min)
+		{
+			min = sketch.min;
+		}
+		if (n == 0 || sketch.max > max)
+		{
+			max = sketch.max;
+		}
+		n += sketch.n;
+		sum += sketch.sum;
+
+		while (levels.size() < sketch.levels.size())
+		{
+			grow();
+		}
+		for (int level = 0; level < sketch.levels.size(); level++)
+		{
+			double[] items = sketch.levels.get(level);
+			for (int i = 0; i < sketch.levelSizes[level]; i++)
+			{
+				append(level, items[i]);
+			}
+		}
+
+		while (retained >= maxRetained)
+		{
+			compress();
+		}
+		sortedValues = null;
+	}
+
+	@Override
+	public long getN()
+	{
+		return n;
+	}
+
+	@Override
+	public double getMean()
+	{
+		return n == 0 ? Double.NaN : sum / n;
+	}
+
+	@Override
+	public double getMin()
+	{
+		return min;
+	}
+
+	@Override
+	public double getMax()
+	{
+		return max;
+	}
+
+	@Override
+	public double getPercentile(double p)
+	{
+		if (p <= 0 || p > 100)
+		{
+			throw new IllegalArgumentException("percentile out of range: " + p);
+		}
+		if (n == 0)
+		{
+			return Double.NaN;
+		}
+		if (p == 100)
+		{
+			return max;
+		}
+
+		if (sortedValues == null)
+		{
+			buildSortedView();
+		}
+
+		//first value whose cumulative weight reaches the rank; p / 100 * n would round twice, e.g. to just over 7 for
+		//the 7th percentile of 100 values
+		double rank = p * n / 100;
+		int lo = 0;
+		int hi = sortedValues.length - 1;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (cumulativeWeights[mid] < rank)
+			{
+				lo = mid + 1;
+			}
+			else
+			{
+				hi = mid;
+			}
+		}
+		return sortedValues[lo];
+	}
+
+	/**
+	 * Writes the sketch, everything needed to read it back and carry on adding values as if it had never been
+	 * written
+	 * @param out - the output
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.writeInt(k);
+		out.writeLong(n);
+		out.writeDouble(sum);
+		out.writeDouble(min);
+		out.writeDouble(max);
+		out.writeBoolean(keepOdd);
+		out.writeInt(levels.size());
+		for (int level = 0; level < levels.size(); level++)
+		{
+			double[] items = levels.get(level);
+			out.writeInt(levelSizes[level]);
+			for (int i = 0; i < levelSizes[level]; i++)
+			{
+				out.writeDouble(items[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a sketch written by writeTo
+	 * @param in - the input
+	 * @return the sketch
+	 * @throws IOException - if the input can't be read or isn't a sketch
+	 */
+	public static SketchBucketStats readFrom(DataInput in) throws IOException
+	{
+		int k = in.readInt();
+		if (k < 8)
+		{
+			throw new IOException("Invalid sketch k: " + k);
+		}
+		SketchBucketStats sketch = new SketchBucketStats(k);
+		sketch.n = in.readLong();
+		sketch.sum = in.readDouble();
+		sketch.min = in.readDouble();
+		sketch.max = in.readDouble();
+		sketch.keepOdd = in.readBoolean();
+
+		int levelCount = in.readInt();
+		if (levelCount < 1 || levelCount > 64)
+		{
+			throw new IOException("Invalid sketch level count: " + levelCount);
+		}
+		while (sketch.levels.size() < levelCount)
+		{
+			sketch.grow();
+		}
+		for (int level = 0; level < levelCount; level++)
+		{
+			int size = in.readInt();
+			if (size < 0 || sketch.retained + size >= sketch.maxRetained)
+			{
+				throw new IOException("Invalid sketch level size: " + size);
+			}
+			for (int i = 0; i < size; i++)
+			{
+				sketch.append(level, in.readDouble());
+			}
+		}
+		return sketch;
+	}
+
+	/**
+	 * @return the number of values the sketch currently holds
+	 */
+	public int getRetained()
+	{
+		return retained;
+	}
+
+	private int capacity(int level)
+	{
+		int depth = levels.size() - level - 1;
+		return (int)Math.ceil(Math.pow(CAPACITY_DECAY, depth) * k) + 1;
+	}
+
+	private void grow()
+	{
+		levels.add(new double[8]);
+		levelSizes = Arrays.copyOf(levelSizes, levels.size());
+
+		maxRetained = 0;
+		for (int level = 0; level < levels.size(); level++)
+		{
+			maxRetained += capacity(level);
+		}
+	}
+
+	private void append(int level, double value)
+	{
+		double[] items = levels.get(level);
+		if (levelSizes[level] == items.length)
+		{
+			items = Arrays.copyOf(items, items.length * 2);
+			levels.set(level, items);
+		}
+		items[levelSizes[level]++] = value;
+		retained++;
+	}
+
+	/**
+	 * Private helper that compacts full levels, lowest first, until the sketch is back under its size limit
+	 */
+	private void compress()
+	{
+		for (int level = 0; level < levels.size(); level++)
+		{
+			if (levelSizes[level] >= capacity(level))
+			{
+				if (level + 1 >= levels.size())
+				{
+					grow();
+				}
+				compact(level);
+
+				if (retained < maxRetained)
+				{
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Private helper that sorts a level and promotes every other value to the next level. An odd value out stays.
+	 */
+	private void compact(int level)
+	{
+		double[] items = levels.get(level);
+		int size = levelSizes[level];
+		Arrays.sort(items, 0, size);
+
+		int pairs = size / 2;
+		int offset = keepOdd ? 1 : 0;
+		keepOdd = !keepOdd;
+
+		for (int i = 0; i < pairs; i++)
+		{
+			append(level + 1, items[2 * i + offset]);
+		}
+
+		//an odd value out is the largest one, it stays at this level
+		if (size % 2 == 1)
+		{
+			items[0] = items[size - 1];
+			levelSizes[level] = 1;
+		}
+		else
+		{
+			levelSizes[level] = 0;
+		}
+		retained -= 2 * pairs;
+	}
+
+	private void buildSortedView()
+	{
+		double[] values = new double[retained];
+		long[] weights = new long[retained];
+		int count = 0;
+		for (int level = 0; level < levels.size(); level++)
+		{
+			double[] items = levels.get(level);
+			for (int i = 0; i < levelSizes[level]; i++)
+			{
+				values[count] = items[i];
+				weights[count] = 1L << level;
+				count++;
+			}
+		}
+
+		//sort by value, carrying the weights along
+		int[] order = IndexSort.sortedIndices(values, false);
+
+		sortedValues = new double[count];
+		cumulativeWeights = new long[count];
+		long cumulative = 0;
+		for (int i = 0; i < count; i++)
+		{
+			sortedValues[i] = values[order[i]];
+			cumulative += weights[order[i]];
+			cumulativeWeights[i] = cumulative;
+		}
+	}
+}
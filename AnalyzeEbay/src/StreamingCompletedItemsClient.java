@@ -0,0 +1,297 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPFactory;
+import javax.xml.soap.SOAPFault;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import com.ebay.common.Constants;
+import com.ebay.common.RateLimiter;
+import com.ebay.common.metrics.ServiceMetrics;
+import com.ebay.services.client.ClientConfig;
+import com.ebay.services.client.FindingServiceClientFactory;
+import com.ebay.services.finding.ErrorData;
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.ObjectFactory;
+
+/**
+ * Calls findCompletedItems over plain HTTP and reads the response with a CompletedItemsParser instead of JAX-WS.
+ *
+ * The request is marshalled with the JAXB context of the kit into a SOAP 1.2 envelope and sent with the same headers
+ * the kit's ports send. The call goes through the RateLimiter of the application id and is recorded in
+ * ServiceMetrics like a call through the handler chain, but the SOAP message logging of the ClientConfig doesn't
+ * apply to it.
+ *
+ * Transport failures and unreadable responses are thrown as WebServiceExceptions and faults as SOAPFaultExceptions,
+ * as a port would, so the callers can handle both kinds of calls the same way. A client can be shared by threads.
+ */
+public class StreamingCompletedItemsClient
+{
+	private static final String OPERATION = "findCompletedItems";
+	private static final String DEFAULT_ADDRESS = "https://svcs.ebay.com/services/search/FindingService/v1";
+	private static final String CONTENT_TYPE = "application/soap+xml; charset=utf-8";
+	private static final byte[] ENVELOPE_START = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<soap:Envelope xmlns:soap=\"" + SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE + "\"><soap:Body>")
+			.getBytes(StandardCharsets.UTF_8);
+	private static final byte[] ENVELOPE_END = "</soap:Body></soap:Envelope>".getBytes(StandardCharsets.UTF_8);
+
+	private static final ObjectFactory objectFactory = new ObjectFactory();
+
+	//marshallers aren't thread safe and creating one for every call isn't free, so each thread keeps one
+	private static final ThreadLocal<Marshaller> marshaller = new ThreadLocal<Marshaller>() {
+		@Override
+		protected Marshaller initialValue()
+		{
+			try
+			{
+				Marshaller marshaller = FindingServiceClientFactory.getJAXBContext().createMarshaller();
+				marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+				return marshaller;
+			}
+			catch (JAXBException e)
+			{
+				throw new IllegalStateException("Can't create a marshaller of the finding service", e);
+			}
+		}
+	};
+
+	private final ClientConfig config;
+	private final CompletedItemsParser parser;
+
+	/**
+	 * Constructor for a client
+	 * @param config - the client config of the calls: endpoint, application id, headers, timeout, rate limiting
+	 * and metrics
+	 * @param parser - the parser the responses are read with
+	 */
+	public StreamingCompletedItemsClient(ClientConfig config, CompletedItemsParser parser)
+	{
+		this.config = config;
+		this.parser = parser;
+	}
+
+	public CompletedItemsParser getParser()
+	{
+		return parser;
+	}
+
+	/**
+	 * Calls findCompletedItems
+	 * @param request - the request, the output selectors the parser needs are added to it
+	 * @param priority - the priority the call waits for the rate limiter with
+	 * @return the parsed response
+	 * @throws InterruptedException - if interrupted while waiting for the rate limiter
+	 * @throws WebServiceException - if the call failed, SOAPFaultException if the service answered with a fault
+	 */
+	public CompletedItemsParser.Page findCompletedItems(FindCompletedItemsRequest request, int priority)
+			throws InterruptedException
+	{
+		parser.addOutputSelectors(request);
+		byte[] body = marshal(request);
+
+		RateLimiter limiter = config.isRateLimitEnabled() ? RateLimiter.forApplication(config) : null;
+		if (limiter != null)
+		{
+			limiter.acquire(priority);
+		}
+
+		CompletedItemsParser.Page page;
+		long start = System.nanoTime();
+		long wireBytes;
+		try
+		{
+			HttpURLConnection connection = openConnection();
+			OutputStream out = connection.getOutputStream();
+			try
+			{
+				out.write(body);
+			}
+			finally
+			{
+				out.close();
+			}
+
+			int status = connection.getResponseCode();
+			InputStream in = status >= HttpURLConnection.HTTP_BAD_REQUEST ? connection.getErrorStream()
+					: connection.getInputStream();
+			if (in == null)
+			{
+				throw new WebServiceException("HTTP " + status + " without a body from " + connection.getURL());
+			}
+			wireBytes = connection.getContentLengthLong();
+			try
+			{
+				if (Constants.HTTP_GZIP_ENCODING.equalsIgnoreCase(connection.getContentEncoding()))
+				{
+					in = new GZIPInputStream(in);
+				}
+				page = parser.parse(in);
+			}
+			finally
+			{
+				in.close();
+			}
+
+			if (status != HttpURLConnection.HTTP_OK && !page.isFault())
+			{
+				throw new WebServiceException("HTTP " + status + " from " + connection.getURL());
+			}
+		}
+		catch (IOException e)
+		{
+			throw new WebServiceException(e);
+		}
+		catch (XMLStreamException e)
+		{
+			throw new WebServiceException("Can't parse the " + OPERATION + " response", e);
+		}
+		long end = System.nanoTime();
+
+		if (config.isMetricsEnabled())
+		{
+			ServiceMetrics.forOperation(OPERATION).recordCall(start, end, body.length, wireBytes, -1, page.isFault());
+		}
+
+		if (limiter != null)
+		{
+			if (isThrottled(page, config.getThrottlingErrorIds()))
+			{
+				limiter.onThrottled();
+			}
+			else if (!page.isFault())
+			{
+				limiter.onSuccess();
+			}
+		}
+
+		if (page.isFault())
+		{
+			throw new SOAPFaultException(createFault(page));
+		}
+		return page;
+	}
+
+	/**
+	 * Private helper that opens the connection of a call and sets its headers
+	 * @return the connection
+	 * @throws IOException
+	 */
+	private HttpURLConnection openConnection() throws IOException
+	{
+		String address = config.getEndPointAddress() != null ? config.getEndPointAddress() : DEFAULT_ADDRESS;
+		HttpURLConnection connection = (HttpURLConnection)new URL(address).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		if (config.getHttpTimeout() > 0)
+		{
+			connection.setConnectTimeout(config.getHttpTimeout());
+			connection.setReadTimeout(config.getHttpTimeout());
+		}
+
+		connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+		connection.setRequestProperty(Constants.SERVICE_OPERATION_NAME, OPERATION);
+		connection.setRequestProperty(Constants.MESSAGE_PROTOCOL, Constants.MSG_PROTOCOL_SOAP_12);
+		connection.setRequestProperty(Constants.HEADER_USER_AGENT,
+				Constants.USER_AGENT_VALUE + "-" + Constants.FINDING_SERVICE_TRACKING_NAME);
+		setHeader(connection, Constants.VERSION, config.getServiceVersion());
+		setHeader(connection, Constants.GLOBAL_ID, config.getGlobalId());
+		setHeader(connection, Constants.AUTH_APPNAME, config.getApplicationId());
+		if (config.isHttpCompressionEnabled())
+		{
+			connection.setRequestProperty(Constants.HTTP_ACCEPT_ENCODING, Constants.HTTP_GZIP_ENCODING);
+		}
+		return connection;
+	}
+
+	private static void setHeader(HttpURLConnection connection, String name, String value)
+	{
+		if (value != null && value.length() > 0)
+		{
+			connection.setRequestProperty(name, value);
+		}
+	}
+
+	/**
+	 * Private helper that marshals a request into a SOAP envelope
+	 * @param request - the request
+	 * @return the bytes of the envelope
+	 */
+	private static byte[] marshal(FindCompletedItemsRequest request)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		try
+		{
+			out.write(ENVELOPE_START);
+			marshaller.get().marshal(objectFactory.createFindCompletedItemsRequest(request), out);
+			out.write(ENVELOPE_END);
+		}
+		catch (IOException e)
+		{
+			throw new WebServiceException(e);
+		}
+		catch (JAXBException e)
+		{
+			throw new WebServiceException("Can't marshal the " + OPERATION + " request", e);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Private helper that decides whether a response or fault carries one of the throttling error ids
+	 */
+	private static boolean isThrottled(CompletedItemsParser.Page page, Set<String> throttlingErrorIds)
+	{
+		if (throttlingErrorIds == null || throttlingErrorIds.isEmpty())
+		{
+			return false;
+		}
+		for (String errorId : page.getFaultErrorIds())
+		{
+			if (throttlingErrorIds.contains(errorId))
+			{
+				return true;
+			}
+		}
+		for (ErrorData error : page.getErrors())
+		{
+			if (throttlingErrorIds.contains(Long.toString(error.getErrorId())))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Private helper that creates the SOAPFault of a parsed fault. It's a SOAP 1.1 fault since 1.1 allows any fault
+	 * code, the code keeps the local part the service sent (Server, Receiver, ...).
+	 */
+	private static SOAPFault createFault(CompletedItemsParser.Page page)
+	{
+		try
+		{
+			String code = page.getFaultCode() != null ? page.getFaultCode() : "Server";
+			String reason = page.getFaultString() != null ? page.getFaultString() : "";
+			return SOAPFactory.newInstance(SOAPConstants.SOAP_1_1_PROTOCOL).createFault(reason,
+					new QName(SOAPConstants.URI_NS_SOAP_1_1_ENVELOPE, code));
+		}
+		catch (SOAPException e)
+		{
+			throw new WebServiceException("Fault " + page.getFaultCode() + ": " + page.getFaultString(), e);
+		}
+	}
+}
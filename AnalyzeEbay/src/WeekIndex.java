@@ -0,0 +1,112 @@
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Maps end times to the weeks of the weekly report.
+ *
+ * Week 0 starts one week before the time the index was created, week 1 starts two weeks before it and so on.
+ * An end time belongs to the first week whose start is at or before it, so items newer than the start of week 0
+ * are in week 0. Week starts are stepped back with Calendar.add in the default time zone, the same way the report
+ * always has, so weeks that span a daylight savings change are an hour shorter or longer. Week starts are worked out
+ * as they are first needed; an index can be used by several threads at once.
+ */
+public class WeekIndex
+{
+	private static final long WEEK_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+	private final long now;
+	private final Calendar weekCal;
+
+	//replaced by a longer copy when more weeks are needed, so readers never see a partly written array
+	private volatile long[] weekStarts;
+
+	/**
+	 * Constructor for a week index whose week 0 starts one week before now
+	 */
+	public WeekIndex()
+	{
+		this(Calendar.getInstance());
+	}
+
+	/**
+	 * Constructor for a week index whose week 0 starts one week before the passed calendar
+	 * @param nowCal - the calendar of the current time, it is not modified
+	 */
+	public WeekIndex(Calendar nowCal)
+	{
+		this.now = nowCal.getTimeInMillis();
+		this.weekCal = (Calendar)nowCal.clone();
+		weekCal.add(Calendar.WEEK_OF_YEAR, -1);
+		weekStarts = new long[] {weekCal.getTimeInMillis()};
+	}
+
+	/**
+	 * Gets the week an end time belongs to
+	 * @param endTime - end time in epoch milliseconds
+	 * @return the week index, 0 for the most recent week
+	 */
+	public int indexOf(long endTime)
+	{
+		//start from the estimate for 7 day weeks and correct for daylight savings changes
+		int week = (int)Math.max(0, (now - endTime) / WEEK_MILLIS - 1);
+		while (weekStart(week) > endTime)
+		{
+			week++;
+		}
+		while (week > 0 && weekStart(week - 1) <= endTime)
+		{
+			week--;
+		}
+		return week;
+	}
+
+	/**
+	 * Gets the start of a week
+	 * @param week - the week index
+	 * @return the start of the week in epoch milliseconds
+	 */
+	public long weekStart(int week)
+	{
+		long[] starts = weekStarts;
+		if (week >= starts.length)
+		{
+			starts = extend(week);
+		}
+		return starts[week];
+	}
+
+	/**
+	 * Private helper that works out the week starts up to the passed week
+	 * @param week - the week index
+	 * @return the week starts, at least up to the passed week
+	 */
+	private synchronized long[] extend(int week)
+	{
+		long[] starts = weekStarts;
+		if (week < starts.length)
+		{
+			return starts;
+		}
+
+		int count = starts.length;
+		starts = Arrays.copyOf(starts, Math.max(week + 1, count * 2));
+		for (int i = count; i < starts.length; i++)
+		{
+			weekCal.add(Calendar.WEEK_OF_YEAR, -1);
+			starts[i] = weekCal.getTimeInMillis();
+		}
+		weekStarts = starts;
+		return starts;
+	}
+
+	/**
+	 * Gets the start of a week as a date, the key the weekly report prints weeks under
+	 * @param week - the week index
+	 * @return the start of the week
+	 */
+	public Date weekDate(int week)
+	{
+		return new Date(weekStart(week));
+	}
+}
@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ebay.common.CallBudgetLedger;
+
+public class CallBudgetLedgerTest
+{
+	private File dir;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("ledger").toFile();
+		file = new File(dir, "calls.ledger");
+	}
+
+	@After
+	public void tearDown()
+	{
+		File[] files = dir.listFiles();
+		if (files != null)
+		{
+			for (File child : files)
+			{
+				child.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void savedCountIsLoadedByTheNextRun()
+	{
+		CallBudgetLedger ledger = new CallBudgetLedger(file, 100);
+		for (int i = 0; i < 7; i++)
+		{
+			assertTrue(ledger.tryRecordCall());
+		}
+		ledger.save();
+
+		CallBudgetLedger restarted = new CallBudgetLedger(file, 100);
+		assertEquals(7, restarted.getCallsToday());
+		assertEquals(93, restarted.getRemaining());
+	}
+
+	@Test
+	public void countIsSavedEveryFewCallsWithoutSave()
+	{
+		CallBudgetLedger ledger = new CallBudgetLedger(file, 0);
+		for (int i = 0; i < 40; i++)
+		{
+			ledger.tryRecordCall();
+		}
+		//a run that ends without saving loses at most the calls since the last save
+		int loaded = new CallBudgetLedger(file, 0).getCallsToday();
+		assertTrue("loaded " + loaded, loaded >= 40 - 16 && loaded <= 40);
+	}
+
+	@Test
+	public void budgetUsedUpByAnEarlierRunStaysUsedUp()
+	{
+		CallBudgetLedger ledger = new CallBudgetLedger(file, 5);
+		for (int i = 0; i < 5; i++)
+		{
+			assertTrue(ledger.tryRecordCall());
+		}
+		assertFalse(ledger.tryRecordCall());
+		ledger.save();
+
+		CallBudgetLedger restarted = new CallBudgetLedger(file, 5);
+		assertEquals(0, restarted.getRemaining());
+		assertFalse(restarted.tryRecordCall());
+	}
+
+	@Test
+	public void countOfAnotherDayIsNotLoaded() throws IOException
+	{
+		SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+		dayFormat.setTimeZone(TimeZone.getTimeZone("America/Los_Angeles"));
+		String yesterday = dayFormat.format(new Date(System.currentTimeMillis() - 24L * 60 * 60 * 1000));
+		Files.write(file.toPath(), (yesterday + "\t50\n").getBytes(StandardCharsets.UTF_8));
+
+		CallBudgetLedger ledger = new CallBudgetLedger(file, 50);
+		assertEquals(0, ledger.getCallsToday());
+		assertTrue(ledger.tryRecordCall());
+	}
+
+	@Test
+	public void ledgerWithoutAFileOnlyCountsInMemory()
+	{
+		CallBudgetLedger ledger = new CallBudgetLedger(null, 0);
+		ledger.tryRecordCall();
+		ledger.save();
+		assertEquals(1, ledger.getCallsToday());
+		assertEquals(Integer.MAX_VALUE, ledger.getRemaining());
+	}
+}
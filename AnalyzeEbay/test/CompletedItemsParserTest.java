@@ -0,0 +1,148 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.FindCompletedItemsResponse;
+import com.ebay.services.finding.ObjectFactory;
+import com.ebay.services.finding.PaginationInput;
+import com.ebay.services.finding.SearchItem;
+import com.ebay.services.stub.FindingServiceStub;
+
+public class CompletedItemsParserTest
+{
+	private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Header/><S:Body>";
+	private static final String ENVELOPE_END = "</S:Body></S:Envelope>";
+
+	private static JAXBContext context;
+	private static byte[] responseXml;
+
+	@BeforeClass
+	public static void writeResponse() throws Exception
+	{
+		FindCompletedItemsRequest request = new FindCompletedItemsRequest();
+		request.setKeywords("ipod");
+		PaginationInput pagination = new PaginationInput();
+		pagination.setPageNumber(1);
+		pagination.setEntriesPerPage(50);
+		request.setPaginationInput(pagination);
+		FindCompletedItemsResponse response = new FindingServiceStub().findCompletedItems(request);
+
+		//an item without the optional elements
+		SearchItem bare = response.getSearchResult().getItem().get(1);
+		bare.setCondition(null);
+		bare.setSellerInfo(null);
+		bare.setTitle(null);
+
+		context = JAXBContext.newInstance(FindCompletedItemsResponse.class);
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(ENVELOPE_START.getBytes(StandardCharsets.UTF_8));
+		marshaller.marshal(new ObjectFactory().createFindCompletedItemsResponse(response), out);
+		out.write(ENVELOPE_END.getBytes(StandardCharsets.UTF_8));
+		responseXml = out.toByteArray();
+	}
+
+	@Test
+	public void everyFieldMatchesTheUnmarshalledResponse() throws Exception
+	{
+		FindCompletedItemsResponse unmarshalled = unmarshal();
+		CompletedItemsParser.Page page = new CompletedItemsParser().parse(new ByteArrayInputStream(responseXml));
+
+		assertEquals(unmarshalled.getAck(), page.getAck());
+		assertEquals(unmarshalled.getPaginationOutput().getTotalEntries(), page.getPaginationOutput().getTotalEntries());
+		assertEquals(unmarshalled.getPaginationOutput().getTotalPages(), page.getPaginationOutput().getTotalPages());
+
+		List<ItemRecord> expected = records(unmarshalled);
+		assertEquals(50, expected.size());
+		assertEquals(expected.size(), page.getItems().size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			ItemRecord jaxb = expected.get(i);
+			ItemRecord streamed = page.getItems().get(i);
+			assertRequiredFieldsEqual(jaxb, streamed);
+			assertEquals(jaxb.getTitle(), streamed.getTitle());
+			assertEquals(jaxb.getSeller(), streamed.getSeller());
+			assertEquals(jaxb.getSellingState(), streamed.getSellingState());
+		}
+		assertEquals(-1, page.getItems().get(1).getConditionId());
+		assertNull(page.getItems().get(1).getSeller());
+	}
+
+	@Test
+	public void fieldSelectionOnlyLeavesOutTheOptionalFields() throws Exception
+	{
+		List<ItemRecord> expected = records(unmarshal());
+		CompletedItemsParser.Page page = CompletedItemsParser.forFields("title").parse(
+				new ByteArrayInputStream(responseXml));
+
+		assertEquals(expected.size(), page.getItems().size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			ItemRecord streamed = page.getItems().get(i);
+			assertRequiredFieldsEqual(expected.get(i), streamed);
+			assertEquals(expected.get(i).getTitle(), streamed.getTitle());
+			assertNull(streamed.getSeller());
+			assertNull(streamed.getSellingState());
+		}
+		assertFalse(page.getItems().get(0).getListingType().isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void requiredFieldsCantBeSelected()
+	{
+		CompletedItemsParser.forFields("LISTING_TYPE");
+	}
+
+	private static void assertRequiredFieldsEqual(ItemRecord jaxb, ItemRecord streamed)
+	{
+		assertEquals(jaxb.getItemId(), streamed.getItemId());
+		assertEquals(jaxb.getPrice(), streamed.getPrice(), 0);
+		assertEquals(jaxb.getCurrency(), streamed.getCurrency());
+		assertEquals(jaxb.getEndTime(), streamed.getEndTime());
+		assertEquals(jaxb.getListingType(), streamed.getListingType());
+		assertEquals(jaxb.getConditionId(), streamed.getConditionId());
+		assertEquals(jaxb.getCondition(), streamed.getCondition());
+	}
+
+	/**
+	 * Private helper that unmarshals the response element of the envelope with JAXB, the way the service client does
+	 */
+	private static FindCompletedItemsResponse unmarshal() throws Exception
+	{
+		XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(
+				new ByteArrayInputStream(responseXml));
+		while (reader.next() != XMLStreamConstants.START_ELEMENT
+				|| !reader.getLocalName().equals("findCompletedItemsResponse"))
+		{
+		}
+		return context.createUnmarshaller().unmarshal(reader, FindCompletedItemsResponse.class).getValue();
+	}
+
+	private static List<ItemRecord> records(FindCompletedItemsResponse response)
+	{
+		List<ItemRecord> records = new ArrayList<ItemRecord>();
+		for (SearchItem item : response.getSearchResult().getItem())
+		{
+			records.add(ItemRecord.fromSearchItem(item));
+		}
+		return records;
+	}
+}
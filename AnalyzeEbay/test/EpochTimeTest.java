@@ -0,0 +1,116 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class EpochTimeTest
+{
+	private static final DateTimeFormatter MILLIS_FORMAT =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+	@Test
+	public void parsesUtcTimes()
+	{
+		assertEquals(0L, EpochTime.parse("1970-01-01T00:00:00.000Z"));
+		assertEquals(Instant.parse("2016-09-30T12:34:56.789Z").toEpochMilli(), EpochTime.parse("2016-09-30T12:34:56.789Z"));
+		assertEquals(Instant.parse("1969-12-31T23:59:59Z").toEpochMilli(), EpochTime.parse("1969-12-31T23:59:59Z"));
+	}
+
+	@Test
+	public void parsesLeapDays()
+	{
+		assertEquals(Instant.parse("2016-02-29T00:00:00Z").toEpochMilli(), EpochTime.parse("2016-02-29T00:00:00Z"));
+		assertEquals(Instant.parse("2000-02-29T00:00:00Z").toEpochMilli(), EpochTime.parse("2000-02-29T00:00:00Z"));
+	}
+
+	@Test
+	public void appliesTimeZoneOffsets()
+	{
+		long utc = EpochTime.parse("2016-09-30T12:00:00Z");
+		assertEquals(utc - 2 * EpochTime.HOUR_MILLIS, EpochTime.parse("2016-09-30T12:00:00+02:00"));
+		assertEquals(utc + 5 * EpochTime.HOUR_MILLIS + 30 * EpochTime.MINUTE_MILLIS,
+				EpochTime.parse("2016-09-30T12:00:00-05:30"));
+	}
+
+	@Test
+	public void takesTimesWithoutZoneAsGmt()
+	{
+		assertEquals(EpochTime.parse("2016-09-30T12:00:00Z"), EpochTime.parse("2016-09-30T12:00:00"));
+	}
+
+	@Test
+	public void dropsFractionsBeyondMillis()
+	{
+		assertEquals(EpochTime.parse("2016-09-30T12:00:00.123Z"), EpochTime.parse("2016-09-30T12:00:00.123456Z"));
+		assertEquals(EpochTime.parse("2016-09-30T12:00:00.500Z"), EpochTime.parse("2016-09-30T12:00:00.5Z"));
+	}
+
+	@Test
+	public void ignoresSurroundingWhitespace()
+	{
+		assertEquals(EpochTime.parse("2016-09-30T12:00:00Z"), EpochTime.parse(" \n2016-09-30T12:00:00Z\t"));
+	}
+
+	@Test
+	public void rejectsInvalidTimes()
+	{
+		String[] invalid = {"", "2016-09-30", "16-09-30T12:00:00Z", "2016-13-01T00:00:00Z", "2015-02-29T00:00:00Z",
+				"2016-09-31T00:00:00Z", "2016-09-30T24:00:00Z", "2016-09-30T12:60:00Z", "2016-09-30T12:00:00.Z",
+				"2016-09-30T12:00:00X", "2016-09-30T12:00:00+15:00", "2016-09-30T12:00:00Z trailing", "2016/09/30T12:00:00Z"};
+		for (String text : invalid)
+		{
+			try
+			{
+				EpochTime.parse(text);
+				fail("parsed " + text);
+			}
+			catch (IllegalArgumentException e)
+			{
+				//expected
+			}
+		}
+	}
+
+	@Test
+	public void formatsLikeInstant()
+	{
+		assertEquals("1970-01-01T00:00:00.000Z", EpochTime.format(0));
+		assertEquals("2016-09-30T12:34:56.789Z", EpochTime.format(Instant.parse("2016-09-30T12:34:56.789Z").toEpochMilli()));
+		assertEquals("1969-12-31T23:59:59.999Z", EpochTime.format(-1));
+	}
+
+	@Test
+	public void formatAndParseRoundTrip()
+	{
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++)
+		{
+			//1900 to 2100
+			long epochMillis = -2208988800000L + (long)(random.nextDouble() * 6311433600000L);
+			String text = EpochTime.format(epochMillis);
+			assertEquals(MILLIS_FORMAT.format(Instant.ofEpochMilli(epochMillis)), text);
+			assertEquals(text, epochMillis, EpochTime.parse(text));
+		}
+	}
+
+	@Test
+	public void daysAndHoursAreInGmt()
+	{
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+		Random random = new Random(7);
+		for (int i = 0; i < 10000; i++)
+		{
+			long epochMillis = (long)(random.nextDouble() * 4102444800000L) - 1000000000000L;
+			calendar.setTimeInMillis(epochMillis);
+			assertEquals(calendar.get(Calendar.DAY_OF_WEEK), EpochTime.dayOfWeek(epochMillis));
+			assertEquals(calendar.get(Calendar.HOUR_OF_DAY), EpochTime.hourOfDay(epochMillis));
+		}
+	}
+}
@@ -0,0 +1,217 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FullReportTest
+{
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	private static final String[] LISTING_TYPES = {"Auction", "FixedPrice", "StoreInventory", "AuctionWithBIN",
+			"Classified"};
+
+	private final BucketStatsFactory sketchFactory = new BucketStatsFactory(BucketStatsFactory.Mode.SKETCH,
+			SketchBucketStats.DEFAULT_K);
+
+	private File dir;
+	private File reportFile;
+	private PriceColumns columns;
+	private Random random;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("fullReport").toFile();
+		reportFile = new File(dir, "report.stats");
+		random = new Random(23);
+		columns = new PriceColumns(new File(dir, "columns"));
+		columns.rebuild(records(5000));
+		columns.map();
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(dir);
+	}
+
+	@Test
+	public void loadedReportWritesTheSameStats() throws IOException
+	{
+		AnalyzeEbay.FullReport saved = new AnalyzeEbay.FullReport(sketchFactory);
+		saved.addRows(columns);
+		saved.save(reportFile, columns);
+
+		AnalyzeEbay.FullReport loaded = AnalyzeEbay.FullReport.load(reportFile, sketchFactory, columns);
+		assertNotNull(loaded);
+		assertEquals(5000, loaded.getRows());
+		assertArrayEquals(text(saved), text(loaded));
+	}
+
+	@Test
+	public void loadedReportAddsTheAppendedRows() throws IOException
+	{
+		AnalyzeEbay.FullReport saved = new AnalyzeEbay.FullReport(sketchFactory);
+		saved.addRows(columns);
+		saved.save(reportFile, columns);
+
+		columns.append(records(1500));
+		columns.map();
+		AnalyzeEbay.FullReport loaded = AnalyzeEbay.FullReport.load(reportFile, sketchFactory, columns);
+		assertNotNull(loaded);
+		assertEquals(5000, loaded.getRows());
+		loaded.addRows(columns);
+		assertEquals(6500, loaded.getRows());
+
+		//the same as the report that stayed in memory and added the rows itself
+		saved.addRows(columns);
+		byte[] expected = text(saved);
+		assertArrayEquals(expected, text(loaded));
+		assertTrue(new String(expected, "UTF-8").contains("NUM ITEMS: 6500"));
+
+		//and saved again, the next run starts from every row
+		loaded.save(reportFile, columns);
+		AnalyzeEbay.FullReport reloaded = AnalyzeEbay.FullReport.load(reportFile, sketchFactory, columns);
+		assertEquals(6500, reloaded.getRows());
+		assertArrayEquals(expected, text(reloaded));
+	}
+
+	@Test
+	public void exactReportIsNeverSaved() throws IOException
+	{
+		BucketStatsFactory exactFactory = new BucketStatsFactory(BucketStatsFactory.Mode.EXACT, 0);
+		AnalyzeEbay.FullReport exact = new AnalyzeEbay.FullReport(exactFactory);
+		exact.addRows(columns);
+		exact.save(reportFile, columns);
+		assertFalse(reportFile.exists());
+
+		//nor loaded from a saved sketch report
+		AnalyzeEbay.FullReport sketch = new AnalyzeEbay.FullReport(sketchFactory);
+		sketch.addRows(columns);
+		sketch.save(reportFile, columns);
+		assertTrue(reportFile.exists());
+		assertNull(AnalyzeEbay.FullReport.load(reportFile, exactFactory, columns));
+	}
+
+	@Test
+	public void reportOfOtherRowsOrAccuracyIsNotLoaded() throws IOException
+	{
+		AnalyzeEbay.FullReport saved = new AnalyzeEbay.FullReport(sketchFactory);
+		saved.addRows(columns);
+		saved.save(reportFile, columns);
+
+		assertNull(AnalyzeEbay.FullReport.load(reportFile,
+				new BucketStatsFactory(BucketStatsFactory.Mode.SKETCH, SketchBucketStats.DEFAULT_K * 2), columns));
+
+		//columns rebuilt from other items
+		columns.rebuild(records(6000));
+		columns.map();
+		assertNull(AnalyzeEbay.FullReport.load(reportFile, sketchFactory, columns));
+
+		//columns with fewer rows than the report
+		columns.rebuild(records(10));
+		columns.map();
+		assertNull(AnalyzeEbay.FullReport.load(reportFile, sketchFactory, columns));
+
+		assertNull(AnalyzeEbay.FullReport.load(new File(dir, "missing.stats"), sketchFactory, columns));
+	}
+
+	@Test
+	public void damagedReportFailsToLoad() throws IOException
+	{
+		AnalyzeEbay.FullReport saved = new AnalyzeEbay.FullReport(sketchFactory);
+		saved.addRows(columns);
+		saved.save(reportFile, columns);
+
+		RandomAccessFile file = new RandomAccessFile(reportFile, "rw");
+		try
+		{
+			file.setLength(file.length() / 2);
+		}
+		finally
+		{
+			file.close();
+		}
+		assertLoadFails();
+
+		Files.write(reportFile.toPath(), "not a report".getBytes("UTF-8"));
+		assertLoadFails();
+	}
+
+	private void assertLoadFails()
+	{
+		try
+		{
+			AnalyzeEbay.FullReport.load(reportFile, sketchFactory, columns);
+			fail("a damaged report must not load");
+		}
+		catch (IOException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains(reportFile.getPath()));
+		}
+	}
+
+	/**
+	 * Private helper that writes the stats of a report as text
+	 */
+	private static byte[] text(AnalyzeEbay.FullReport fullReport) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ReportEncoder report = ReportEncoders.forFormat(ReportEncoders.TEXT,
+				new ReportOutput(Channels.newChannel(bytes), 4096));
+		try
+		{
+			fullReport.write(report);
+		}
+		finally
+		{
+			report.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Private helper that makes items ending in the last ten weeks
+	 */
+	private List<ItemRecord> records(int count)
+	{
+		long now = System.currentTimeMillis();
+		List<ItemRecord> records = new ArrayList<ItemRecord>();
+		for (int i = 0; i < count; i++)
+		{
+			long endTime = now - (long)(random.nextDouble() * 70 * DAY_MILLIS);
+			records.add(new ItemRecord(Integer.toString(random.nextInt()), random.nextInt(50000) / 100.0, "USD",
+					endTime, LISTING_TYPES[random.nextInt(LISTING_TYPES.length)], 1000, "New", null, null, null));
+		}
+		return records;
+	}
+
+	private static void delete(File file)
+	{
+		File[] files = file.listFiles();
+		if (files != null)
+		{
+			for (File child : files)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,102 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IndexSortTest
+{
+	@Test
+	public void sortsNothing()
+	{
+		assertEquals(0, IndexSort.sortedIndices(new long[0], false).length);
+		assertEquals(0, IndexSort.sortedIndices(new double[0], true).length);
+	}
+
+	@Test
+	public void sortsPackedKeysStably()
+	{
+		//end times of a few years, with repeats
+		Random random = new Random(1);
+		long[] keys = new long[50000];
+		for (int i = 0; i < keys.length; i++)
+		{
+			keys[i] = 1400000000000L + random.nextInt(1000) * 3600000L;
+		}
+
+		assertArrayEquals(stableOrder(keys, false), IndexSort.sortedIndices(keys, false));
+		assertArrayEquals(stableOrder(keys, true), IndexSort.sortedIndices(keys, true));
+	}
+
+	@Test
+	public void sortsWideKeysStably()
+	{
+		//too wide to pack with the index, sorted by the radix sort
+		Random random = new Random(2);
+		long[] keys = new long[20000];
+		for (int i = 0; i < keys.length; i++)
+		{
+			keys[i] = random.nextInt(4) == 0 ? keys[random.nextInt(i + 1)] : random.nextLong();
+		}
+		keys[0] = Long.MIN_VALUE;
+		keys[1] = Long.MAX_VALUE;
+
+		assertArrayEquals(stableOrder(keys, false), IndexSort.sortedIndices(keys, false));
+		assertArrayEquals(stableOrder(keys, true), IndexSort.sortedIndices(keys, true));
+	}
+
+	@Test
+	public void sortsDoublesLikeDoubleCompare()
+	{
+		double[] keys = {3.5, -0.0, Double.NaN, 0.0, -7.25, Double.NEGATIVE_INFINITY, 3.5, Double.POSITIVE_INFINITY, -0.0};
+
+		assertArrayEquals(new int[] {5, 4, 1, 8, 3, 0, 6, 7, 2}, IndexSort.sortedIndices(keys, false));
+		assertArrayEquals(new int[] {2, 7, 0, 6, 3, 1, 8, 4, 5}, IndexSort.sortedIndices(keys, true));
+	}
+
+	@Test
+	public void reordersAList()
+	{
+		List<String> list = new ArrayList<String>(Arrays.asList("c", "a", "b"));
+		IndexSort.reorder(list, new int[] {1, 2, 0});
+		assertEquals(Arrays.asList("a", "b", "c"), list);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnOrderOfAnotherSize()
+	{
+		IndexSort.reorder(new ArrayList<String>(Arrays.asList("a", "b")), new int[] {0});
+	}
+
+	/**
+	 * Private helper that sorts the indices with a stable comparator sort, the order IndexSort has to match
+	 */
+	private static int[] stableOrder(final long[] keys, final boolean descending)
+	{
+		List<Integer> indices = new ArrayList<Integer>();
+		for (int i = 0; i < keys.length; i++)
+		{
+			indices.add(i);
+		}
+		Collections.sort(indices, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2)
+			{
+				return descending ? Long.compare(keys[o2], keys[o1]) : Long.compare(keys[o1], keys[o2]);
+			}
+		});
+
+		int[] order = new int[keys.length];
+		for (int i = 0; i < order.length; i++)
+		{
+			order[i] = indices.get(i);
+		}
+		return order;
+	}
+}
@@ -0,0 +1,185 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ItemIdIndexTest
+{
+	private File dir;
+	private ItemIdIndex index;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("itemIdIndex").toFile();
+		index = new ItemIdIndex(dir);
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		if (index != null)
+		{
+			index.close();
+		}
+		for (File file : dir.listFiles())
+		{
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void committedIdsAreKnownAfterReopening() throws IOException
+	{
+		ItemIdIndex.QueryIds ids = index.forQuery("q");
+		assertTrue(ids.add("110000000001"));
+		assertFalse(ids.add("110000000001"));
+		ids.commit();
+		assertEquals(1, ids.size());
+
+		reopen();
+		ids = index.forQuery("q");
+		assertEquals(1, ids.size());
+		assertFalse(ids.add("110000000001"));
+		assertTrue(ids.add("110000000002"));
+	}
+
+	@Test
+	public void pendingIdsAreNotKeptWithoutCommit() throws IOException
+	{
+		index.forQuery("q").add("110000000001");
+
+		reopen();
+		ItemIdIndex.QueryIds ids = index.forQuery("q");
+		assertEquals(0, ids.size());
+		assertTrue(ids.add("110000000001"));
+	}
+
+	@Test
+	public void sameIdIsNewToEachQuery() throws IOException
+	{
+		ItemIdIndex.QueryIds first = index.forQuery("first");
+		ItemIdIndex.QueryIds second = index.forQuery("second");
+		first.add("110000000001");
+		first.commit();
+
+		assertTrue(second.add("110000000001"));
+		assertTrue(first.add("not a number"));
+		assertFalse(first.add("not a number"));
+	}
+
+	@Test
+	public void growingKeepsEveryId() throws IOException
+	{
+		ItemIdIndex.QueryIds ids = index.forQuery("q");
+		for (long id = 0; id < 100000; id++)
+		{
+			assertTrue(ids.add(Long.toString(110000000000L + id)));
+		}
+		ids.commit();
+		//the table doubled to 2^18 slots and the scratch table it was rehashed through was cut off
+		assertEquals(24 + 8 * (1 << 18), new File(dir, "ids.idx").length());
+
+		reopen();
+		ids = index.forQuery("q");
+		assertEquals(100000, ids.size());
+		for (long id = 0; id < 100000; id += 997)
+		{
+			assertFalse(ids.add(Long.toString(110000000000L + id)));
+		}
+	}
+
+	@Test
+	public void resyncAddsStoredIds() throws IOException
+	{
+		ItemIdIndex.QueryIds ids = index.forQuery("q");
+		ids.resync(items("1", "2", "3"));
+
+		assertEquals(3, ids.size());
+		assertFalse(ids.add("2"));
+	}
+
+	@Test
+	public void resyncRemovesIdsNotInTheStore() throws IOException
+	{
+		ItemIdIndex.QueryIds ids = index.forQuery("q");
+		ItemIdIndex.QueryIds other = index.forQuery("other");
+		for (String id : Arrays.asList("1", "2", "3"))
+		{
+			ids.add(id);
+			other.add(id);
+		}
+		ids.commit();
+		other.commit();
+
+		//the store was cut short to its first item
+		ids.resync(items("1"));
+
+		assertEquals(1, ids.size());
+		assertFalse(ids.add("1"));
+		assertTrue(ids.add("2"));
+		assertTrue(ids.add("3"));
+		assertEquals(3, other.size());
+		assertFalse(other.add("2"));
+		assertEquals(4, index.size());
+		assertEquals(24 + 8 * (1 << 16), new File(dir, "ids.idx").length());
+
+		reopen();
+		assertEquals(4, index.size());
+		assertTrue(index.forQuery("q").add("2"));
+		assertFalse(index.forQuery("other").add("3"));
+	}
+
+	@Test
+	public void resyncCountsEveryStoredItem() throws IOException
+	{
+		ItemIdIndex.QueryIds ids = index.forQuery("q");
+		ids.resync(items("1", "2", "2"));
+
+		assertEquals(3, ids.size());
+	}
+
+	@Test
+	public void secondOpenOfTheSameDirectoryFails()
+	{
+		try
+		{
+			new ItemIdIndex(dir);
+			fail("opened an index that is in use");
+		}
+		catch (IOException e)
+		{
+			//expected
+		}
+	}
+
+	private void reopen() throws IOException
+	{
+		index.close();
+		index = null;
+		index = new ItemIdIndex(dir);
+	}
+
+	private static List<ItemRecord> items(String... itemIds)
+	{
+		List<ItemRecord> items = new ArrayList<ItemRecord>();
+		for (String itemId : itemIds)
+		{
+			items.add(new ItemRecord(itemId, 1.0, "USD", 0L, "FixedPrice", 1000, "New", "title", "seller",
+					"EndedWithSales"));
+		}
+		return items;
+	}
+}
@@ -0,0 +1,163 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ItemStoreTest
+{
+	private File file;
+	private ItemStore store;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = File.createTempFile("itemStore", ".store");
+		file.delete();
+		store = new ItemStore(file);
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	@Test
+	public void appendedRecordsAreReadBackInOrder() throws IOException
+	{
+		assertFalse(store.exists());
+		store.append(Arrays.asList(item("1", 10.5), item("2", 20)));
+		store.append(Collections.singletonList(item("3", 30)));
+		assertTrue(store.exists());
+
+		List<ItemRecord> records = readAll();
+		assertEquals(3, records.size());
+		assertEquals("1", records.get(0).getItemId());
+		assertEquals(10.5, records.get(0).getPrice(), 0);
+		assertEquals("3", records.get(2).getItemId());
+	}
+
+	@Test
+	public void nullFieldsAreKept() throws IOException
+	{
+		store.append(Collections.singletonList(new ItemRecord("1", 5, null, 1400000000000L, null, 0, null, null, null,
+				null)));
+		ItemRecord record = readAll().get(0);
+		assertEquals(1400000000000L, record.getEndTime());
+		assertNull(record.getCurrency());
+		assertNull(record.getTitle());
+		assertNull(record.getSellingState());
+	}
+
+	@Test
+	public void emptyAppendCreatesAnEmptyStore() throws IOException
+	{
+		store.append(Collections.<ItemRecord>emptyList());
+		assertTrue(store.exists());
+		assertTrue(readAll().isEmpty());
+	}
+
+	@Test
+	public void partlyWrittenRecordIsIgnoredAndCutOffByTheNextAppend() throws IOException
+	{
+		store.append(Arrays.asList(item("1", 10), item("2", 20)));
+		long length = file.length();
+		truncate(length - 5);
+
+		List<ItemRecord> records = readAll();
+		assertEquals(1, records.size());
+		assertEquals("1", records.get(0).getItemId());
+
+		store.append(Collections.singletonList(item("3", 30)));
+		records = readAll();
+		assertEquals(2, records.size());
+		assertEquals("1", records.get(0).getItemId());
+		assertEquals("3", records.get(1).getItemId());
+	}
+
+	@Test
+	public void partlyWrittenLengthIsCutOff() throws IOException
+	{
+		store.append(Collections.singletonList(item("1", 10)));
+		long length = file.length();
+		FileOutputStream out = new FileOutputStream(file, true);
+		try
+		{
+			out.write(new byte[] { 0, 0 });
+		}
+		finally
+		{
+			out.close();
+		}
+
+		store.append(Collections.<ItemRecord>emptyList());
+		assertEquals(length, file.length());
+		assertEquals(1, readAll().size());
+	}
+
+	@Test(expected = IOException.class)
+	public void otherFilesAreNotRead() throws IOException
+	{
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(new byte[] { 'n', 'o', 't', ' ', 'a', ' ', 's', 't', 'o', 'r', 'e' });
+		}
+		finally
+		{
+			out.close();
+		}
+		store.openReader();
+	}
+
+	private List<ItemRecord> readAll() throws IOException
+	{
+		List<ItemRecord> records = new ArrayList<ItemRecord>();
+		ItemStore.RecordReader reader = store.openReader();
+		try
+		{
+			ItemRecord record;
+			while ((record = reader.next()) != null)
+			{
+				records.add(record);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return records;
+	}
+
+	private void truncate(long length) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.setLength(length);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static ItemRecord item(String itemId, double price)
+	{
+		return new ItemRecord(itemId, price, "USD", 1400000000000L, "Auction", 3000, "Used", "Item " + itemId, "seller",
+				"EndedWithSales");
+	}
+}
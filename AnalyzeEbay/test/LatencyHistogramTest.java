@@ -0,0 +1,119 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ebay.common.metrics.LatencyHistogram;
+
+public class LatencyHistogramTest
+{
+	@Test
+	public void emptyHistogramIsAllZero()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getMean(), 0);
+		assertEquals(0, histogram.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void smallValuesAreExact()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int value = 1; value <= 100; value++)
+		{
+			histogram.record(value);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(1, histogram.getMin());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50.5, histogram.getMean(), 1e-9);
+		assertEquals(1, histogram.getValueAtPercentile(0));
+		assertEquals(50, histogram.getValueAtPercentile(50));
+		assertEquals(90, histogram.getValueAtPercentile(90));
+		assertEquals(99, histogram.getValueAtPercentile(99));
+		assertEquals(100, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void largeValuesAreWithinTheBucketPrecision()
+	{
+		for (long value = 128; value < 1L << 36; value = value * 3 / 2 + 7)
+		{
+			LatencyHistogram histogram = new LatencyHistogram();
+			histogram.record(value);
+			//the max caps the bucket value, so look at a bucket below it
+			histogram.record(value * 2);
+			long atMedian = histogram.getValueAtPercentile(50);
+			assertTrue(value + " reported as " + atMedian, atMedian >= value);
+			assertTrue(value + " reported as " + atMedian, atMedian - value <= value / 64);
+		}
+	}
+
+	@Test
+	public void percentileIsTheBucketOfItsRank()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int value = 1; value <= 1000; value++)
+		{
+			histogram.record(value * 1000L);
+		}
+		for (int percentile = 10; percentile < 100; percentile += 10)
+		{
+			long expected = percentile * 10 * 1000L;
+			long actual = histogram.getValueAtPercentile(percentile);
+			assertTrue(percentile + "th is " + actual, actual >= expected && actual - expected <= expected / 64);
+		}
+		assertEquals(1000 * 1000L, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void outOfRangeValuesAreClamped()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE / 2);
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(Long.MAX_VALUE / 2, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		//counted in the last bucket, reported as the top of it
+		assertEquals((1L << 37) - 1, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void concurrentRecordsAreAllCounted() throws InterruptedException
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final int threads = 8;
+		final int perThread = 10000;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++)
+		{
+			final int offset = t;
+			new Thread() {
+				@Override
+				public void run()
+				{
+					for (int i = 0; i < perThread; i++)
+					{
+						histogram.record(offset * perThread + i);
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		long n = (long)threads * perThread;
+		assertEquals(n, histogram.getCount());
+		assertEquals(0, histogram.getMin());
+		assertEquals(n - 1, histogram.getMax());
+		assertEquals((n - 1) / 2.0, histogram.getMean(), 1e-9);
+		assertEquals(n - 1, histogram.getValueAtPercentile(100));
+	}
+}
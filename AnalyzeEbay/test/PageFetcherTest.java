@@ -0,0 +1,230 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.ws.Endpoint;
+import javax.xml.ws.WebServiceException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ebay.common.RateLimiter;
+import com.ebay.services.client.ClientConfig;
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.PaginationOutput;
+import com.ebay.services.finding.SortOrderType;
+import com.ebay.services.stub.FindingServiceStub;
+
+public class PageFetcherTest
+{
+	private static final int ITEMS_PER_PAGE = 100;
+	private static final PrintStream NO_LOG = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b)
+		{
+		}
+	});
+
+	private FindingServiceStub stub;
+	private Endpoint endpoint;
+	private ExecutorService workers;
+	private File dir;
+	private ItemIdIndex itemIdIndex;
+	private String endpointAddress;
+	private PageFetcher pageFetcher;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		stub = new FindingServiceStub();
+		stub.setTotalEntries(5 * ITEMS_PER_PAGE);
+		int port;
+		ServerSocket socket = new ServerSocket(0);
+		try
+		{
+			port = socket.getLocalPort();
+		}
+		finally
+		{
+			socket.close();
+		}
+		endpoint = FindingServiceStub.publish(stub, port, 4);
+		endpointAddress = FindingServiceStub.getAddress(port);
+
+		ClientConfig config = new ClientConfig();
+		config.setApplicationId("PageFetcherTest");
+		config.setEndPointAddress(endpointAddress);
+		config.setSoapMessageLoggingEnabled(false);
+		config.setHttpHeaderLoggingEnabled(false);
+		config.setRateLimitEnabled(false);
+
+		workers = Executors.newFixedThreadPool(4);
+		dir = Files.createTempDirectory("pageFetcher").toFile();
+		itemIdIndex = new ItemIdIndex(new File(dir, "index"));
+		//one page in flight, so a page is only requested once the pages before it are merged
+		pageFetcher = new PageFetcher(config, workers, ITEMS_PER_PAGE, 1);
+		pageFetcher.setMaxAttempts(2);
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		endpoint.stop();
+		workers.shutdownNow();
+		itemIdIndex.close();
+		delete(dir);
+	}
+
+	@Test
+	public void fetchesEveryPage() throws Exception
+	{
+		List<ItemRecord> newItems = new ArrayList<ItemRecord>();
+		PageFetcher.FetchResult result = pageFetcher.fetchAll(request(), itemIdIndex.forQuery("q"), newItems, NO_LOG);
+		assertEquals(5, result.getTotalPages());
+		assertEquals(5 * ITEMS_PER_PAGE, result.getNumNewItems());
+		assertEquals(5 * ITEMS_PER_PAGE, newItems.size());
+	}
+
+	@Test
+	public void requestErrorFailsTheFetchAndKeepsTheCheckpoint() throws Exception
+	{
+		//an error that retrying doesn't help, not retried
+		Throwable cause = failAfterTheFirstPage(false);
+		assertTrue(cause.getMessage(), cause.getMessage().contains("10002"));
+		assertEquals(2, stub.getCalls());
+	}
+
+	@Test
+	public void systemErrorsFailTheFetchAfterTheRetriesAndKeepTheCheckpoint() throws Exception
+	{
+		failAfterTheFirstPage(true);
+		assertEquals(1 + 2, stub.getCalls());
+	}
+
+	/**
+	 * Fetches the pages, saving a checkpoint after the first one the way HarvestSaver does, and from then on the stub
+	 * answers with a Failure ack; asserts that the fetch fails, that only the first page was merged, and that the
+	 * checkpoint still names it.
+	 * @param systemErrors - whether the Failure acks are SYSTEM errors or request errors
+	 * @return the cause the fetch failed with
+	 */
+	private Throwable failAfterTheFirstPage(final boolean systemErrors) throws Exception
+	{
+		final HarvestCheckpoint checkpoint = new HarvestCheckpoint(new File(dir, "q.checkpoint"));
+		checkpoint.setEndTimeTo("2014-05-01T00:00:00.000Z");
+		List<ItemRecord> newItems = new ArrayList<ItemRecord>();
+		PageFetcher.PageListener listener = new PageFetcher.PageListener() {
+			@Override
+			public void pageMerged(int pageNumber, PaginationOutput paginationOutput) throws IOException
+			{
+				checkpoint.setLastCompletedPage(pageNumber);
+				checkpoint.save();
+				if (systemErrors)
+				{
+					stub.setFailureRate(1);
+				}
+				else
+				{
+					stub.setRequestErrorRate(1);
+				}
+			}
+		};
+
+		Throwable cause = null;
+		try
+		{
+			pageFetcher.fetchAll(request(), 1, itemIdIndex.forQuery("q"), newItems, listener, NO_LOG);
+			fail("a page with a Failure ack must fail the fetch");
+		}
+		catch (ExecutionException e)
+		{
+			cause = e.getCause();
+			assertTrue(cause instanceof WebServiceException);
+		}
+		assertEquals(ITEMS_PER_PAGE, newItems.size());
+
+		HarvestCheckpoint saved = new HarvestCheckpoint(checkpoint.getFile());
+		assertTrue(saved.load());
+		assertEquals(1, saved.getLastCompletedPage());
+		return cause;
+	}
+
+	@Test
+	public void firstPageWithARequestErrorIsNotAnEmptySearch() throws Exception
+	{
+		stub.setRequestErrorRate(1);
+		try
+		{
+			pageFetcher.countEntries(request());
+			fail("a count with a Failure ack must fail");
+		}
+		catch (WebServiceException e)
+		{
+			assertFalse(e.getMessage().isEmpty());
+		}
+	}
+
+	@Test
+	public void throttledPagesAreReportedToTheRateLimiterOnce() throws Exception
+	{
+		ClientConfig config = new ClientConfig();
+		config.setApplicationId("PageFetcherTest-throttled");
+		config.setEndPointAddress(endpointAddress);
+		config.setSoapMessageLoggingEnabled(false);
+		config.setHttpHeaderLoggingEnabled(false);
+		config.setRateLimitEnabled(true);
+		config.setRateLimitCallsPerSecond(0);
+		PageFetcher throttledFetcher = new PageFetcher(config, workers, ITEMS_PER_PAGE, 1);
+		throttledFetcher.setMaxAttempts(2);
+		stub.setThrottleRate(1);
+		try
+		{
+			throttledFetcher.countEntries(request());
+			fail("a throttled count must fail once the attempts are used");
+		}
+		catch (WebServiceException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("10001"));
+		}
+		//PageFetcher reports each response, RateLimitHandler leaves them to it
+		RateLimiter limiter = RateLimiter.forApplication(config);
+		assertEquals(2, stub.getCalls());
+		assertEquals(2, limiter.getThrottles());
+		assertEquals(2, limiter.getCalls());
+	}
+
+	private static FindCompletedItemsRequest request()
+	{
+		FindCompletedItemsRequest request = new FindCompletedItemsRequest();
+		request.setKeywords("ipod");
+		request.setSortOrder(SortOrderType.END_TIME_SOONEST);
+		return request;
+	}
+
+	private static void delete(File file)
+	{
+		File[] files = file.listFiles();
+		if (files != null)
+		{
+			for (File child : files)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
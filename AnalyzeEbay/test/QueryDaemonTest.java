@@ -0,0 +1,84 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class QueryDaemonTest
+{
+	@Test
+	public void failedRefreshesDontCancelTheSchedule() throws InterruptedException
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(output, true);
+		final AtomicInteger refreshes = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(4);
+		QueryDaemon.TrackedQuery query = new QueryDaemon.TrackedQuery(3, "ipod", null, 0, 1, 1, null, null, null, out) {
+			@Override
+			String refresh(PrintStream log) throws Exception
+			{
+				try
+				{
+					switch (refreshes.incrementAndGet())
+					{
+						case 1:
+							throw new Error("first");
+						case 2:
+							throw new IllegalStateException("second");
+						default:
+							return "Refreshed";
+					}
+				}
+				finally
+				{
+					done.countDown();
+				}
+			}
+		};
+
+		//scheduled as the daemon does, a refresh that throws would be the last
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		try
+		{
+			scheduler.scheduleWithFixedDelay(query, 0, 10, TimeUnit.MILLISECONDS);
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		}
+		finally
+		{
+			scheduler.shutdown();
+			assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+		}
+
+		String printed = output.toString();
+		assertTrue(printed, printed.contains("=== line 3: ipod"));
+		assertTrue(printed, printed.contains("Refresh failed: java.lang.Error: first"));
+		assertTrue(printed, printed.contains("Refresh failed: java.lang.IllegalStateException: second"));
+		assertTrue(printed, printed.contains("Refreshed, next in 1 minutes"));
+		assertTrue(query.summary(), query.summary().contains("(2 failed)"));
+	}
+
+	@Test
+	public void refreshThatThrowsIsCountedAsFailed()
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		QueryDaemon.TrackedQuery query = new QueryDaemon.TrackedQuery(1, "ipod", null, 0, 60, 1, null, null, null,
+				new PrintStream(output, true)) {
+			@Override
+			String refresh(PrintStream log) throws Exception
+			{
+				throw new StackOverflowError();
+			}
+		};
+		query.run();
+		query.run();
+		assertEquals("Line 1 refreshes: 0 (2 failed)", query.summary());
+		assertTrue(output.toString().contains("java.lang.StackOverflowError"));
+	}
+}
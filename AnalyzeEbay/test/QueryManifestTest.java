@@ -0,0 +1,92 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.ebay.common.RateLimiter;
+
+public class QueryManifestTest
+{
+	private File file;
+
+	@After
+	public void tearDown()
+	{
+		if (file != null)
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void skipsBlankAndCommentLines() throws IOException
+	{
+		List<QueryManifest.Entry> entries = read(false, "# queries", "", "  ipod --n  ", "\t", "#kindle", "kindle");
+		assertEquals(2, entries.size());
+		assertEquals(3, entries.get(0).getLineNumber());
+		assertEquals("ipod --n", entries.get(0).getLine());
+		assertEquals(6, entries.get(1).getLineNumber());
+		assertNull(entries.get(0).getError());
+		assertNotNull(entries.get(0).getQuery());
+		assertEquals("ipod", entries.get(0).getQuery()[1]);
+		assertEquals(RateLimiter.DEFAULT_PRIORITY, entries.get(0).getPriority());
+		assertEquals(60, entries.get(0).getEveryMinutes(60));
+	}
+
+	@Test
+	public void readsLeadingOptionsInEitherOrder() throws IOException
+	{
+		List<QueryManifest.Entry> entries = read(true, "--priority 5 --every 15 ipod", "--every 30 --priority -2 kindle");
+		assertEquals(5, entries.get(0).getPriority());
+		assertEquals(15, entries.get(0).getEveryMinutes(60));
+		assertEquals("ipod", entries.get(0).getQuery()[1]);
+		assertEquals(-2, entries.get(1).getPriority());
+		assertEquals(30, entries.get(1).getEveryMinutes(60));
+		assertEquals("kindle", entries.get(1).getQuery()[1]);
+	}
+
+	@Test
+	public void rejectsInvalidOptionValues() throws IOException
+	{
+		List<QueryManifest.Entry> entries = read(true, "--priority high ipod", "--every 0 ipod", "--every", "--min 5");
+		for (QueryManifest.Entry entry : entries)
+		{
+			assertNotNull(entry.getError());
+			assertNull(entry.getQuery());
+		}
+	}
+
+	@Test
+	public void everyIsOnlyAnOptionWhereAllowed() throws IOException
+	{
+		List<QueryManifest.Entry> entries = read(false, "--priority 1 --every 15 ipod");
+		assertNull(entries.get(0).getError());
+		assertEquals(1, entries.get(0).getPriority());
+		assertEquals("--every 15 ipod", entries.get(0).getQuery()[1]);
+	}
+
+	@Test
+	public void skipsQueriesWithTheSameFiles() throws IOException
+	{
+		List<QueryManifest.Entry> entries = read(false, "ipod --n", "--priority 3 ipod --n", "ipod --u");
+		assertNull(entries.get(0).getError());
+		assertEquals("Skipped, same files as line 1", entries.get(1).getError());
+		assertNull(entries.get(2).getError());
+	}
+
+	private List<QueryManifest.Entry> read(boolean everyAllowed, String... lines) throws IOException
+	{
+		file = File.createTempFile("manifest", ".txt");
+		Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+		return new QueryManifest(file, everyAllowed).getEntries();
+	}
+}
@@ -0,0 +1,145 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ebay.common.CallBudgetExceededException;
+import com.ebay.common.CallBudgetLedger;
+import com.ebay.common.RateLimiter;
+
+public class RateLimiterTest
+{
+	@Test
+	public void burstIsLetThroughWithoutWaiting() throws InterruptedException
+	{
+		RateLimiter limiter = new RateLimiter(1, 5, new CallBudgetLedger(null, 0));
+		long start = System.nanoTime();
+		for (int i = 0; i < 5; i++)
+		{
+			limiter.acquire(RateLimiter.DEFAULT_PRIORITY);
+		}
+		assertTrue(elapsedMillis(start) < 500);
+		assertEquals(5, limiter.getCalls());
+	}
+
+	@Test
+	public void callsWaitForTheTokensToRefill() throws InterruptedException
+	{
+		RateLimiter limiter = new RateLimiter(20, 1, new CallBudgetLedger(null, 0));
+		limiter.acquire(RateLimiter.DEFAULT_PRIORITY);
+		long start = System.nanoTime();
+		//one token every 50ms once the burst is used
+		for (int i = 0; i < 4; i++)
+		{
+			limiter.acquire(RateLimiter.DEFAULT_PRIORITY);
+		}
+		long elapsed = elapsedMillis(start);
+		assertTrue("waited " + elapsed + "ms", elapsed >= 190);
+		assertTrue("waited " + elapsed + "ms", elapsed < 2000);
+		assertTrue(limiter.getWaitMillis() >= 190);
+	}
+
+	@Test
+	public void tokensDontBuildUpPastTheBurst() throws InterruptedException
+	{
+		RateLimiter limiter = new RateLimiter(100, 2, new CallBudgetLedger(null, 0));
+		//long enough to earn 20 tokens, only 2 are kept
+		Thread.sleep(200);
+		long start = System.nanoTime();
+		for (int i = 0; i < 12; i++)
+		{
+			limiter.acquire(RateLimiter.DEFAULT_PRIORITY);
+		}
+		long elapsed = elapsedMillis(start);
+		assertTrue("waited " + elapsed + "ms", elapsed >= 90);
+	}
+
+	@Test
+	public void waitingCallsAreServedHighestPriorityFirst() throws InterruptedException
+	{
+		final RateLimiter limiter = new RateLimiter(10, 1, new CallBudgetLedger(null, 0));
+		limiter.acquire(RateLimiter.DEFAULT_PRIORITY);
+		final List<Integer> served = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(3);
+		for (final int priority : new int[] { 1, 9, 5 })
+		{
+			new Thread() {
+				@Override
+				public void run()
+				{
+					try
+					{
+						limiter.acquire(priority);
+						served.add(priority);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+					finally
+					{
+						done.countDown();
+					}
+				}
+			}.start();
+			//the next token is 100ms away, so all three are waiting before it comes
+			Thread.sleep(10);
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(Integer.valueOf(9), served.get(0));
+		assertEquals(Integer.valueOf(5), served.get(1));
+		assertEquals(Integer.valueOf(1), served.get(2));
+	}
+
+	@Test
+	public void throttlePausesCallsAndHalvesTheRate() throws InterruptedException
+	{
+		RateLimiter limiter = new RateLimiter(100, 10, new CallBudgetLedger(null, 0));
+		limiter.onThrottled();
+		assertEquals(50, limiter.getCurrentRate(), 0);
+		//a throttle during the pause doesn't extend it
+		limiter.onThrottled();
+		assertEquals(50, limiter.getCurrentRate(), 0);
+		assertEquals(2, limiter.getThrottles());
+
+		long start = System.nanoTime();
+		limiter.acquire(RateLimiter.DEFAULT_PRIORITY);
+		long elapsed = elapsedMillis(start);
+		assertTrue("waited " + elapsed + "ms", elapsed >= 900);
+
+		limiter.onSuccess();
+		assertEquals(60, limiter.getCurrentRate(), 1e-9);
+	}
+
+	@Test
+	public void callsFailOnceTheBudgetIsUsedUp() throws InterruptedException
+	{
+		RateLimiter limiter = new RateLimiter(0, 1, new CallBudgetLedger(null, 3));
+		for (int i = 0; i < 3; i++)
+		{
+			limiter.acquire(RateLimiter.DEFAULT_PRIORITY);
+		}
+		try
+		{
+			limiter.acquire(RateLimiter.DEFAULT_PRIORITY);
+			fail("the fourth call is over the budget");
+		}
+		catch (CallBudgetExceededException e)
+		{
+			assertEquals(0, limiter.getLedger().getRemaining());
+		}
+		assertEquals(3, limiter.getCalls());
+	}
+
+	private static long elapsedMillis(long start)
+	{
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+}
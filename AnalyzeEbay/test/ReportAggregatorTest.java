@@ -0,0 +1,199 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ReportAggregatorTest
+{
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	private static final String[] LISTING_TYPES = {"Auction", "FixedPrice", "StoreInventory", "AuctionWithBIN",
+			"Classified"};
+	private static final double[] PERCENTILES = {1, 10, 25, 50, 75, 90, 99, 100};
+
+	//several chunks and a partial one, so the rows are split over tasks
+	private static final int ROWS = 3 * ReportAggregator.CHUNK_ROWS + 1234;
+
+	private static File dir;
+	private static PriceColumns columns;
+	private static WeekIndex weekIndex;
+
+	@BeforeClass
+	public static void writeColumns() throws IOException
+	{
+		dir = Files.createTempDirectory("reportAggregator").toFile();
+		Random random = new Random(7);
+		long now = System.currentTimeMillis();
+		List<ItemRecord> records = new ArrayList<ItemRecord>();
+		for (int i = 0; i < ROWS; i++)
+		{
+			long endTime = now - (long)(random.nextDouble() * 120 * DAY_MILLIS);
+			//prices whose sums round differently depending on the order they are added in
+			double price = random.nextInt(100000) / 100.0 + random.nextDouble() / 3;
+			records.add(new ItemRecord(Integer.toString(i), price, "USD", endTime,
+					LISTING_TYPES[random.nextInt(LISTING_TYPES.length)], 1000, "New", null, null, null));
+		}
+		columns = new PriceColumns(dir);
+		columns.rebuild(records);
+		columns.map();
+		weekIndex = new WeekIndex();
+	}
+
+	@AfterClass
+	public static void deleteColumns()
+	{
+		File[] files = dir.listFiles();
+		if (files != null)
+		{
+			for (File file : files)
+			{
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void parallelExactCubesAreTheSameAsSequential()
+	{
+		BucketStatsFactory statsFactory = new BucketStatsFactory(BucketStatsFactory.Mode.EXACT, 0);
+		List<Cube> sequential = aggregate(statsFactory, null);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			List<Cube> parallel = aggregate(statsFactory, pool);
+			assertEquals(sequential.size(), parallel.size());
+			for (int c = 0; c < sequential.size(); c++)
+			{
+				Cube expected = sequential.get(c);
+				Cube actual = parallel.get(c);
+				assertTrue(expected.getName(), Arrays.deepEquals(expected.keys(), actual.keys()));
+				for (int[] keys : expected.keys())
+				{
+					String bucket = expected.getName() + " " + Arrays.toString(keys);
+					BucketStats expectedStats = expected.get(keys);
+					BucketStats actualStats = actual.get(keys);
+					assertEquals(bucket, expectedStats.getN(), actualStats.getN());
+					//bit for bit, the mean included
+					assertEquals(bucket, expectedStats.getMean(), actualStats.getMean(), 0);
+					assertEquals(bucket, expectedStats.getMin(), actualStats.getMin(), 0);
+					assertEquals(bucket, expectedStats.getMax(), actualStats.getMax(), 0);
+					for (double p : PERCENTILES)
+					{
+						assertEquals(bucket + " p" + p, expectedStats.getPercentile(p), actualStats.getPercentile(p), 0);
+					}
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parallelSketchCubesAreWithinTheSketchError()
+	{
+		int k = SketchBucketStats.DEFAULT_K;
+		List<Cube> exact = aggregate(new BucketStatsFactory(BucketStatsFactory.Mode.EXACT, 0), null);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			List<Cube> parallel = aggregate(new BucketStatsFactory(BucketStatsFactory.Mode.SKETCH, k), pool);
+			//twice the rank error of a single sketch
+			double rankError = 100 * 2 * 1.7 / k;
+			for (int c = 0; c < exact.size(); c++)
+			{
+				Cube expected = exact.get(c);
+				Cube actual = parallel.get(c);
+				assertTrue(expected.getName(), Arrays.deepEquals(expected.keys(), actual.keys()));
+				for (int[] keys : expected.keys())
+				{
+					String bucket = expected.getName() + " " + Arrays.toString(keys);
+					BucketStats expectedStats = expected.get(keys);
+					BucketStats actualStats = actual.get(keys);
+					assertEquals(bucket, expectedStats.getN(), actualStats.getN());
+					assertEquals(bucket, expectedStats.getMean(), actualStats.getMean(), 1e-6);
+					assertEquals(bucket, expectedStats.getMin(), actualStats.getMin(), 0);
+					assertEquals(bucket, expectedStats.getMax(), actualStats.getMax(), 0);
+					for (double p : PERCENTILES)
+					{
+						double value = actualStats.getPercentile(p);
+						double low = expectedStats.getPercentile(Math.max(1e-9, p - rankError));
+						double high = expectedStats.getPercentile(Math.min(100, p + rankError));
+						assertTrue(bucket + " p" + p + " " + value + " not in [" + low + ", " + high + "]",
+								value >= low && value <= high);
+					}
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void everyRowIsCountedOnce()
+	{
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			List<Cube> parallel = aggregate(new BucketStatsFactory(BucketStatsFactory.Mode.EXACT, 0), pool);
+			BucketStats all = parallel.get(0).get();
+			assertNotNull(all);
+			assertEquals(ROWS, all.getN());
+
+			long dayRows = 0;
+			Cube dayCube = parallel.get(2);
+			for (int[] keys : dayCube.keys())
+			{
+				dayRows += dayCube.get(keys).getN();
+			}
+			assertEquals(ROWS, dayRows);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Private helper that aggregates the cubes of the report, with a cube of two dimensions as well
+	 * @param statsFactory - creates the bucket stats
+	 * @param pool - the pool to aggregate on, null to aggregate sequentially
+	 * @return the cubes, the single bucket of every row first and the day of week cube third
+	 */
+	private static List<Cube> aggregate(BucketStatsFactory statsFactory, ForkJoinPool pool)
+	{
+		ReportAggregator aggregator = new ReportAggregator(statsFactory);
+		List<Cube> cubes = new ArrayList<Cube>();
+		cubes.add(aggregator.addCube("All"));
+		cubes.add(aggregator.addCube("ListingType", Dimensions.reportListingType()));
+		Dimension dayOfWeek = Dimensions.dayOfWeek();
+		cubes.add(aggregator.addCube("Day", dayOfWeek));
+		cubes.add(aggregator.addCube("Hour", Dimensions.hourBand()));
+		cubes.add(aggregator.addCube("Week", Dimensions.week(weekIndex)));
+		cubes.add(aggregator.addCube("DayHour", dayOfWeek, Dimensions.hourBand()));
+		if (pool == null)
+		{
+			aggregator.aggregate(columns);
+		}
+		else
+		{
+			aggregator.aggregate(columns, pool);
+		}
+		return cubes;
+	}
+}
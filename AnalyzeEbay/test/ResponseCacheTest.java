@@ -0,0 +1,220 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ebay.services.finding.AckValue;
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.ItemFilter;
+import com.ebay.services.finding.ItemFilterType;
+import com.ebay.services.finding.OutputSelectorType;
+import com.ebay.services.finding.PaginationInput;
+import com.ebay.services.finding.PaginationOutput;
+import com.ebay.services.finding.SortOrderType;
+
+public class ResponseCacheTest
+{
+	private static final long HOUR = 3600000L;
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("responseCache").toFile();
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (File file : dir.listFiles())
+		{
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void keyIgnoresKeywordCaseAndSpacing()
+	{
+		FindCompletedItemsRequest a = request("  Apple  iPod\tnano ", 1);
+		FindCompletedItemsRequest b = request("apple ipod nano", 1);
+		assertEquals(ResponseCache.keyOf(a, null, "all"), ResponseCache.keyOf(b, null, "all"));
+	}
+
+	@Test
+	public void keyIgnoresTheOrderOfFiltersAndValues()
+	{
+		FindCompletedItemsRequest a = request("ipod", 1);
+		a.getItemFilter().add(filter(ItemFilterType.CONDITION, "1000", "3000"));
+		a.getItemFilter().add(filter(ItemFilterType.MIN_PRICE, "10.0"));
+		a.getOutputSelector().add(OutputSelectorType.SELLER_INFO);
+		a.getOutputSelector().add(OutputSelectorType.ASPECT_HISTOGRAM);
+
+		FindCompletedItemsRequest b = request("ipod", 1);
+		b.getItemFilter().add(filter(ItemFilterType.MIN_PRICE, "10.0"));
+		b.getItemFilter().add(filter(ItemFilterType.CONDITION, "3000", "1000"));
+		b.getOutputSelector().add(OutputSelectorType.ASPECT_HISTOGRAM);
+		b.getOutputSelector().add(OutputSelectorType.SELLER_INFO);
+
+		assertEquals(ResponseCache.keyOf(a, null, "all"), ResponseCache.keyOf(b, null, "all"));
+	}
+
+	@Test
+	public void keyDiffersByPageFilterSortSiteAndFields()
+	{
+		String key = ResponseCache.keyOf(request("ipod", 1), null, "all");
+		assertNotEquals(key, ResponseCache.keyOf(request("ipod", 2), null, "all"));
+		assertNotEquals(key, ResponseCache.keyOf(request("ipod", 1), "EBAY-GB", "all"));
+		assertNotEquals(key, ResponseCache.keyOf(request("ipod", 1), null, "itemId,price"));
+
+		FindCompletedItemsRequest filtered = request("ipod", 1);
+		filtered.getItemFilter().add(filter(ItemFilterType.MIN_PRICE, "10.0"));
+		assertNotEquals(key, ResponseCache.keyOf(filtered, null, "all"));
+
+		FindCompletedItemsRequest sorted = request("ipod", 1);
+		sorted.setSortOrder(SortOrderType.PRICE_PLUS_SHIPPING_LOWEST);
+		assertNotEquals(key, ResponseCache.keyOf(sorted, null, "all"));
+	}
+
+	@Test
+	public void cachedPageIsReturned()
+	{
+		ResponseCache cache = new ResponseCache(HOUR, ResponseCache.DEFAULT_MAX_BYTES, null);
+		assertNull(cache.get("k"));
+		List<ItemRecord> items = Arrays.asList(item("1"), item("2"));
+		cache.put("k", AckValue.WARNING, pagination(3, 7), items);
+
+		ResponseCache.Page page = cache.get("k");
+		assertNotNull(page);
+		assertEquals(AckValue.WARNING, page.getAck());
+		assertEquals(3, (int)page.getPaginationOutput().getPageNumber());
+		assertEquals(7, (int)page.getPaginationOutput().getTotalPages());
+		assertEquals(2, page.getItems().size());
+		assertEquals("2", page.getItems().get(1).getItemId());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void failuresAreNotCached()
+	{
+		ResponseCache cache = new ResponseCache(HOUR, ResponseCache.DEFAULT_MAX_BYTES, dir);
+		cache.put("failure", AckValue.FAILURE, pagination(1, 1), Collections.<ItemRecord>emptyList());
+		cache.put("noPagination", AckValue.SUCCESS, null, Collections.<ItemRecord>emptyList());
+		assertNull(cache.get("failure"));
+		assertNull(cache.get("noPagination"));
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	@Test
+	public void pagesExpireAfterTheTimeToLive() throws InterruptedException
+	{
+		ResponseCache cache = new ResponseCache(50, ResponseCache.DEFAULT_MAX_BYTES, dir);
+		cache.put("k", AckValue.SUCCESS, pagination(1, 1), Collections.singletonList(item("1")));
+		assertNotNull(cache.get("k"));
+		Thread.sleep(100);
+		assertNull(cache.get("k"));
+		assertNull(new ResponseCache(50, ResponseCache.DEFAULT_MAX_BYTES, dir).get("k"));
+	}
+
+	@Test
+	public void leastRecentlyUsedPageIsEvicted()
+	{
+		//a page without items and a one letter key takes 128 + 40 + 2 bytes, two fit
+		ResponseCache cache = new ResponseCache(HOUR, 400, null);
+		cache.put("a", AckValue.SUCCESS, pagination(1, 1), Collections.<ItemRecord>emptyList());
+		cache.put("b", AckValue.SUCCESS, pagination(1, 1), Collections.<ItemRecord>emptyList());
+		assertNotNull(cache.get("a"));
+		cache.put("c", AckValue.SUCCESS, pagination(1, 1), Collections.<ItemRecord>emptyList());
+
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+	}
+
+	@Test
+	public void diskTierOutlivesTheCache()
+	{
+		ResponseCache first = new ResponseCache(HOUR, ResponseCache.DEFAULT_MAX_BYTES, dir);
+		first.put("k", AckValue.SUCCESS, pagination(2, 5), Arrays.asList(item("1"), item("2"), item("3")));
+
+		ResponseCache second = new ResponseCache(HOUR, ResponseCache.DEFAULT_MAX_BYTES, dir);
+		ResponseCache.Page page = second.get("k");
+		assertNotNull(page);
+		assertEquals(2, (int)page.getPaginationOutput().getPageNumber());
+		assertEquals(3, page.getItems().size());
+		assertEquals("3", page.getItems().get(2).getItemId());
+		assertEquals(19.99, page.getItems().get(2).getPrice(), 0);
+		assertNull(second.get("other"));
+	}
+
+	@Test
+	public void unreadablePageIsAMiss() throws IOException
+	{
+		new ResponseCache(HOUR, ResponseCache.DEFAULT_MAX_BYTES, dir).put("k", AckValue.SUCCESS, pagination(1, 1),
+				Collections.singletonList(item("1")));
+		File[] files = dir.listFiles();
+		assertEquals(1, files.length);
+		RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+		try
+		{
+			file.setLength(file.length() - 3);
+		}
+		finally
+		{
+			file.close();
+		}
+
+		assertNull(new ResponseCache(HOUR, ResponseCache.DEFAULT_MAX_BYTES, dir).get("k"));
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	private static FindCompletedItemsRequest request(String keywords, int pageNumber)
+	{
+		FindCompletedItemsRequest request = new FindCompletedItemsRequest();
+		request.setKeywords(keywords);
+		request.setSortOrder(SortOrderType.END_TIME_SOONEST);
+		PaginationInput pagination = new PaginationInput();
+		pagination.setPageNumber(pageNumber);
+		pagination.setEntriesPerPage(100);
+		request.setPaginationInput(pagination);
+		return request;
+	}
+
+	private static ItemFilter filter(ItemFilterType name, String... values)
+	{
+		ItemFilter filter = new ItemFilter();
+		filter.setName(name);
+		filter.getValue().addAll(Arrays.asList(values));
+		return filter;
+	}
+
+	private static PaginationOutput pagination(int pageNumber, int totalPages)
+	{
+		PaginationOutput pagination = new PaginationOutput();
+		pagination.setPageNumber(pageNumber);
+		pagination.setEntriesPerPage(100);
+		pagination.setTotalPages(totalPages);
+		pagination.setTotalEntries(totalPages * 100);
+		return pagination;
+	}
+
+	private static ItemRecord item(String itemId)
+	{
+		return new ItemRecord(itemId, 19.99, "USD", 1400000000000L, "FixedPrice", 3000, "Used", "Apple iPod " + itemId,
+				"seller", "EndedWithSales");
+	}
+}
@@ -0,0 +1,126 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.ebay.services.finding.FindCompletedItemsRequest;
+import com.ebay.services.finding.ItemFilter;
+import com.ebay.services.finding.ItemFilterType;
+
+public class ShardedHarvesterTest
+{
+	private static final long END = EpochTime.parse("2014-05-01T00:00:00.000Z");
+	private static final long START = END - 10 * EpochTime.DAY_MILLIS;
+
+	@Test
+	public void openPriceRangeIsSplitAtTheStep()
+	{
+		ShardedHarvester.Shard[] halves = new ShardedHarvester.Shard(0, Double.POSITIVE_INFINITY, START, END).split();
+		assertFilters(halves[0], null, "100.0");
+		assertFilters(halves[1], "100.0", null);
+	}
+
+	@Test
+	public void openPriceRangeWithAMinIsSplitAtTwiceTheMin()
+	{
+		ShardedHarvester.Shard[] halves = new ShardedHarvester.Shard(25, Double.POSITIVE_INFINITY, START, END).split();
+		assertFilters(halves[0], "25.0", "50.0");
+		assertFilters(halves[1], "50.0", null);
+	}
+
+	@Test
+	public void priceRangeIsBisectedToTheCent()
+	{
+		ShardedHarvester.Shard[] halves = new ShardedHarvester.Shard(10, 20.05, START, END).split();
+		assertFilters(halves[0], "10.0", "15.02");
+		assertFilters(halves[1], "15.02", "20.05");
+		assertEquals(EpochTime.format(START), filters(halves[0]).get(ItemFilterType.END_TIME_FROM));
+	}
+
+	@Test
+	public void centWideRangeIsSplitOnTheEndTimeWindow()
+	{
+		ShardedHarvester.Shard[] halves = new ShardedHarvester.Shard(10, 10.01, START, END).split();
+		long split = START + (END - START) / 2;
+		assertFilters(halves[0], "10.0", "10.01");
+		assertEquals(EpochTime.format(START), filters(halves[0]).get(ItemFilterType.END_TIME_FROM));
+		assertEquals(EpochTime.format(split), filters(halves[0]).get(ItemFilterType.END_TIME_TO));
+		assertEquals(EpochTime.format(split + 1), filters(halves[1]).get(ItemFilterType.END_TIME_FROM));
+		assertEquals(EpochTime.format(END), filters(halves[1]).get(ItemFilterType.END_TIME_TO));
+	}
+
+	@Test
+	public void windowWithoutAStartIsSplitFromTheSearchHistory()
+	{
+		ShardedHarvester.Shard[] halves = new ShardedHarvester.Shard(10, 10, Long.MIN_VALUE, END).split();
+		long from = END - ShardedHarvester.SEARCH_HISTORY_MILLIS;
+		assertEquals(EpochTime.format(from), filters(halves[0]).get(ItemFilterType.END_TIME_FROM));
+		assertEquals(EpochTime.format(from + (END - from) / 2), filters(halves[0]).get(ItemFilterType.END_TIME_TO));
+	}
+
+	@Test
+	public void shortWindowOfOnePriceIsNotSplit()
+	{
+		assertNull(new ShardedHarvester.Shard(10, 10, END - 60000, END).split());
+	}
+
+	@Test
+	public void shardFiltersReplaceThoseOfTheSearch()
+	{
+		FindCompletedItemsRequest request = new FindCompletedItemsRequest();
+		request.setKeywords("ipod");
+		request.getItemFilter().add(filter(ItemFilterType.CONDITION, "3000"));
+		request.getItemFilter().add(filter(ItemFilterType.MIN_PRICE, "1.0"));
+		request.getItemFilter().add(filter(ItemFilterType.END_TIME_TO, EpochTime.format(START)));
+
+		FindCompletedItemsRequest shardRequest = new ShardedHarvester.Shard(5, 7.5, Long.MIN_VALUE, END).applyTo(request);
+		Map<ItemFilterType, String> filters = filtersOf(shardRequest);
+		assertEquals("ipod", shardRequest.getKeywords());
+		assertEquals(4, shardRequest.getItemFilter().size());
+		assertEquals("3000", filters.get(ItemFilterType.CONDITION));
+		assertEquals("5.0", filters.get(ItemFilterType.MIN_PRICE));
+		assertEquals("7.5", filters.get(ItemFilterType.MAX_PRICE));
+		assertEquals(EpochTime.format(END), filters.get(ItemFilterType.END_TIME_TO));
+		assertFalse(filters.containsKey(ItemFilterType.END_TIME_FROM));
+
+		//the search itself is left as it was
+		assertEquals(3, request.getItemFilter().size());
+		assertEquals("1.0", filtersOf(request).get(ItemFilterType.MIN_PRICE));
+	}
+
+	private static void assertFilters(ShardedHarvester.Shard shard, String minPrice, String maxPrice)
+	{
+		Map<ItemFilterType, String> filters = filters(shard);
+		assertEquals(minPrice, filters.get(ItemFilterType.MIN_PRICE));
+		assertEquals(maxPrice, filters.get(ItemFilterType.MAX_PRICE));
+	}
+
+	private static Map<ItemFilterType, String> filters(ShardedHarvester.Shard shard)
+	{
+		return filtersOf(shard.applyTo(new FindCompletedItemsRequest()));
+	}
+
+	private static Map<ItemFilterType, String> filtersOf(FindCompletedItemsRequest request)
+	{
+		Map<ItemFilterType, String> filters = new HashMap<ItemFilterType, String>();
+		for (ItemFilter filter : request.getItemFilter())
+		{
+			List<String> values = filter.getValue();
+			filters.put(filter.getName(), values.get(0));
+		}
+		return filters;
+	}
+
+	private static ItemFilter filter(ItemFilterType name, String value)
+	{
+		ItemFilter filter = new ItemFilter();
+		filter.setName(name);
+		filter.getValue().add(value);
+		return filter;
+	}
+}
@@ -0,0 +1,150 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SketchBucketStatsTest
+{
+	private static final int N = 1000000;
+
+	@Test
+	public void emptySketchIsNaN()
+	{
+		SketchBucketStats sketch = new SketchBucketStats();
+		assertEquals(0, sketch.getN());
+		assertTrue(Double.isNaN(sketch.getMean()));
+		assertTrue(Double.isNaN(sketch.getMin()));
+		assertTrue(Double.isNaN(sketch.getPercentile(50)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void percentileOutOfRangeIsRejected()
+	{
+		SketchBucketStats sketch = new SketchBucketStats();
+		sketch.addValue(1);
+		sketch.getPercentile(0);
+	}
+
+	@Test
+	public void fewValuesAreExact()
+	{
+		SketchBucketStats sketch = new SketchBucketStats();
+		for (int value = 100; value >= 1; value--)
+		{
+			sketch.addValue(value);
+		}
+		assertEquals(100, sketch.getN());
+		assertEquals(50.5, sketch.getMean(), 1e-9);
+		assertEquals(1, sketch.getMin(), 0);
+		assertEquals(100, sketch.getMax(), 0);
+		for (int p = 1; p <= 100; p++)
+		{
+			assertEquals(p, sketch.getPercentile(p), 0);
+		}
+	}
+
+	@Test
+	public void percentilesAreWithinTheRankError()
+	{
+		SketchBucketStats sketch = new SketchBucketStats();
+		for (int value : shuffled(N, 1))
+		{
+			sketch.addValue(value);
+		}
+		assertEquals(N, sketch.getN());
+		assertEquals(1, sketch.getMin(), 0);
+		assertEquals(N, sketch.getMax(), 0);
+		assertEquals((N + 1) / 2.0, sketch.getMean(), 1e-6);
+		assertRanksWithin(sketch, 0.02);
+		assertTrue(sketch.getRetained() < 10 * SketchBucketStats.DEFAULT_K);
+	}
+
+	@Test
+	public void mergedSketchesAreWithinTheRankError()
+	{
+		SketchBucketStats merged = new SketchBucketStats();
+		SketchBucketStats other = new SketchBucketStats();
+		int i = 0;
+		for (int value : shuffled(N, 2))
+		{
+			(i++ % 3 == 0 ? merged : other).addValue(value);
+		}
+		merged.merge(other);
+		assertEquals(N, merged.getN());
+		assertEquals(1, merged.getMin(), 0);
+		assertEquals(N, merged.getMax(), 0);
+		assertRanksWithin(merged, 0.02);
+	}
+
+	@Test
+	public void readSketchCarriesOnAsIfNeverWritten() throws IOException
+	{
+		int[] values = shuffled(100000, 3);
+		SketchBucketStats sketch = new SketchBucketStats(64);
+		for (int i = 0; i < values.length / 2; i++)
+		{
+			sketch.addValue(values[i]);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		sketch.writeTo(new DataOutputStream(bytes));
+		SketchBucketStats read = SketchBucketStats.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(64, read.getK());
+
+		for (int i = values.length / 2; i < values.length; i++)
+		{
+			sketch.addValue(values[i]);
+			read.addValue(values[i]);
+		}
+		assertEquals(sketch.getN(), read.getN());
+		assertEquals(sketch.getMean(), read.getMean(), 0);
+		assertEquals(sketch.getRetained(), read.getRetained());
+		for (int p = 1; p <= 100; p++)
+		{
+			assertEquals(sketch.getPercentile(p), read.getPercentile(p), 0);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void invalidSketchIsRejected() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeInt(2);
+		SketchBucketStats.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	private static void assertRanksWithin(SketchBucketStats sketch, double error)
+	{
+		//the values are 1..n, so a value is its own rank
+		for (int p = 1; p < 100; p++)
+		{
+			double rank = sketch.getPercentile(p) / sketch.getN();
+			assertTrue("p" + p + " at rank " + rank, Math.abs(rank - p / 100.0) <= error);
+		}
+	}
+
+	private static int[] shuffled(int n, long seed)
+	{
+		int[] values = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			values[i] = i + 1;
+		}
+		Random random = new Random(seed);
+		for (int i = n - 1; i > 0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			int swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+		return values;
+	}
+}
@@ -0,0 +1,268 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Golden output tests: the text encoder must write the summary report and item list byte for byte as the
+ * PrintWriter formatter it replaced, kept below as LegacyTextReport.
+ */
+public class TextReportTest
+{
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	private static final String[] LISTING_TYPES = {"Auction", "FixedPrice", "StoreInventory", "AuctionWithBIN",
+			"Classified", "AdFormat"};
+	private static final int[] CONDITION_IDS = {1000, 1500, 3000, 7000, -1};
+	private static final String[] CONDITIONS = {"New", "New other (see details)", "Used", "For parts or not working",
+			null};
+
+	private File dir;
+	private List<ItemRecord> records;
+	private PriceColumns columns;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory("textReport").toFile();
+		records = fixedRecords();
+		columns = new PriceColumns(new File(dir, "columns"));
+		columns.rebuild(records);
+		columns.map();
+	}
+
+	@After
+	public void tearDown()
+	{
+		delete(dir);
+	}
+
+	@Test
+	public void exactSummaryReportMatchesTheBaseline() throws IOException
+	{
+		assertSummaryReportMatches(new BucketStatsFactory(BucketStatsFactory.Mode.EXACT, 0));
+	}
+
+	@Test
+	public void sketchSummaryReportMatchesTheBaseline() throws IOException
+	{
+		assertSummaryReportMatches(new BucketStatsFactory(BucketStatsFactory.Mode.SKETCH, SketchBucketStats.DEFAULT_K));
+	}
+
+	@Test
+	public void itemListMatchesTheBaseline() throws IOException
+	{
+		ReportEncoder encoded = ReportEncoders.open(ReportEncoders.TEXT, new File(dir, "items").getPath());
+		LegacyTextReport baseline = new LegacyTextReport(new File(dir, "items_baseline.txt"));
+		try
+		{
+			for (ItemRecord record : records)
+			{
+				encoded.item(record);
+				baseline.item(record);
+			}
+		}
+		finally
+		{
+			encoded.close();
+			baseline.close();
+		}
+		assertSameBytes(baseline.file, new File(dir, "items.txt"));
+	}
+
+	@Test
+	public void emptyReportMatchesTheBaseline() throws IOException
+	{
+		PriceColumns empty = new PriceColumns(new File(dir, "empty"));
+		empty.rebuild(new ArrayList<ItemRecord>());
+		empty.map();
+		BucketStatsFactory statsFactory = new BucketStatsFactory(BucketStatsFactory.Mode.EXACT, 0);
+
+		ReportEncoder encoded = ReportEncoders.open(ReportEncoders.TEXT, new File(dir, "empty").getPath());
+		LegacyTextReport baseline = new LegacyTextReport(new File(dir, "empty_baseline.txt"));
+		try
+		{
+			encoded.note("EXISTING FILE NOT FOUND");
+			baseline.note("EXISTING FILE NOT FOUND");
+			AnalyzeEbay.printFullReport(empty, statsFactory, encoded);
+			AnalyzeEbay.printFullReport(empty, statsFactory, baseline);
+		}
+		finally
+		{
+			encoded.close();
+			baseline.close();
+		}
+		assertSameBytes(baseline.file, new File(dir, "empty.txt"));
+	}
+
+	/**
+	 * Private helper that writes the summary report of the fixed rows with the text encoder and the baseline
+	 * formatter and asserts the files are the same
+	 */
+	private void assertSummaryReportMatches(BucketStatsFactory statsFactory) throws IOException
+	{
+		ReportEncoder encoded = ReportEncoders.open(ReportEncoders.TEXT, new File(dir, "summary").getPath());
+		LegacyTextReport baseline = new LegacyTextReport(new File(dir, "summary_baseline.txt"));
+		try
+		{
+			for (ReportEncoder report : new ReportEncoder[] {encoded, baseline})
+			{
+				report.note("ITEMS ALREADY IN FILE: " + records.size());
+				report.note("REACHED EOF");
+				AnalyzeEbay.printFullReport(columns, statsFactory, report);
+			}
+		}
+		finally
+		{
+			encoded.close();
+			baseline.close();
+		}
+		assertSameBytes(baseline.file, new File(dir, "summary.txt"));
+	}
+
+	private static void assertSameBytes(File expected, File actual) throws IOException
+	{
+		byte[] expectedBytes = Files.readAllBytes(expected.toPath());
+		assertTrue(expectedBytes.length > 0);
+		assertArrayEquals(expectedBytes, Files.readAllBytes(actual.toPath()));
+	}
+
+	/**
+	 * Private helper that makes a fixed set of items: every listing type and condition, prices with fractions that
+	 * don't print short, a title outside ASCII, missing fields, and end times over ten weeks with a week left empty
+	 */
+	private static List<ItemRecord> fixedRecords()
+	{
+		Random random = new Random(21);
+		long now = System.currentTimeMillis();
+		List<ItemRecord> records = new ArrayList<ItemRecord>();
+		for (int i = 0; i < 2000; i++)
+		{
+			int day = random.nextInt(70);
+			if (day / 7 == 3)
+			{
+				day += 7;
+			}
+			long endTime = now - day * DAY_MILLIS - random.nextInt((int)DAY_MILLIS);
+			double price = random.nextInt(50000) / 100.0 + (i % 7 == 0 ? 0.1 + 0.2 : 0);
+			int condition = i % CONDITION_IDS.length;
+			String title = i % 11 == 0 ? null : (i % 13 == 0 ? "Ñandú café 中文 " + i : "Item " + i);
+			records.add(new ItemRecord(Integer.toString(100000 + i), price, "USD", endTime,
+					LISTING_TYPES[i % LISTING_TYPES.length], CONDITION_IDS[condition], CONDITIONS[condition], title,
+					"seller" + (i % 17), i % 19 == 0 ? null : "EndedWithSales"));
+		}
+		return records;
+	}
+
+	private static void delete(File file)
+	{
+		File[] files = file.listFiles();
+		if (files != null)
+		{
+			for (File child : files)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * The text report as it was printed before the report encoders, through a PrintWriter on the file
+	 */
+	private static class LegacyTextReport implements ReportEncoder
+	{
+		private final File file;
+		private final PrintWriter output;
+
+		private LegacyTextReport(File file) throws IOException
+		{
+			this.file = file;
+			this.output = new PrintWriter(file);
+		}
+
+		@Override
+		public String getFileExtension()
+		{
+			return ".txt";
+		}
+
+		@Override
+		public void note(String text)
+		{
+			output.println(text);
+		}
+
+		@Override
+		public void beginStats()
+		{
+			output.println();
+			output.println();
+			output.println("-------------------------------------");
+		}
+
+		@Override
+		public void stats(String identifier, BucketStats stats)
+		{
+			double q1 = stats.getPercentile(25);
+			double q2 = stats.getPercentile(75);
+
+			output.println(identifier);
+			output.println("MEAN: " + stats.getMean());
+			output.println("Q1: " + q1);
+			output.println("Q2: " + q2);
+			output.println("MIN: " + stats.getMin());
+			output.println("MAX: " + stats.getMax());
+			output.println("REASONABLE PROFIT MARGIN (EXCLUDES SHIPPING & HANDLING COSTS): " + (0.87*q2-q1));
+			output.println("NUM ITEMS: " + stats.getN());
+			output.println("------------------------------");
+		}
+
+		@Override
+		public void weeklyAverages(String label, double[] means)
+		{
+			output.println(label);
+			for (int i = 0; i < means.length; i++)
+			{
+				if (i == means.length - 1)
+				{
+					output.print(means[i]);
+				}
+				else
+				{
+					output.print(means[i]);
+					output.print("->");
+				}
+			}
+			output.println();
+		}
+
+		@Override
+		public void item(ItemRecord item)
+		{
+			output.println(item.getTitle());
+			output.println(item.getPrice());
+			output.println(new Date(item.getEndTime()));
+			output.println(item.getListingType());
+			output.println(item.getSellingState());
+			output.println(item.getCondition());
+			output.println();
+		}
+
+		@Override
+		public void close()
+		{
+			output.close();
+		}
+	}
+}